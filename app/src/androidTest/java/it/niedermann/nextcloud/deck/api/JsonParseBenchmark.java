@@ -0,0 +1,106 @@
+package it.niedermann.nextcloud.deck.api;
+
+import android.os.Debug;
+import android.util.Log;
+
+import androidx.test.runner.AndroidJUnit4;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.reflect.TypeToken;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.StringReader;
+import java.lang.reflect.Type;
+import java.util.List;
+
+import it.niedermann.nextcloud.deck.DeckConsts;
+import it.niedermann.nextcloud.deck.model.full.FullStack;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares building a {@link JsonElement} tree and reading the stacks from it (as before)
+ * with reading the same stacks directly via the {@link StreamingEntityParser}, on a synthetic response with 10k cards.
+ * Results are written to logcat with the tag {@value DeckConsts#DEBUG_TAG}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class JsonParseBenchmark {
+
+    private static final int STACK_COUNT = 10;
+    private static final int CARDS_PER_STACK = 1_000;
+    private static final int RUNS = 5;
+
+    private static final Type STACKS = new TypeToken<List<FullStack>>() {}.getType();
+
+    private final Gson gson = GsonConfig.getGson();
+
+    @SuppressWarnings("deprecation")
+    @Test
+    public void compareTreeAndStreaming() {
+        String json = createResponse();
+        // warm up both code paths
+        parseTree(json);
+        parseStreaming(json);
+
+        for (int run = 0; run < RUNS; run++) {
+            Debug.startAllocCounting();
+            Debug.resetThreadAllocSize();
+            long start = System.currentTimeMillis();
+            List<FullStack> tree = parseTree(json);
+            long treeMillis = System.currentTimeMillis() - start;
+            long treeBytes = Debug.getThreadAllocSize();
+
+            Debug.resetThreadAllocSize();
+            start = System.currentTimeMillis();
+            List<FullStack> streamed = parseStreaming(json);
+            long streamingMillis = System.currentTimeMillis() - start;
+            long streamingBytes = Debug.getThreadAllocSize();
+            Debug.stopAllocCounting();
+
+            assertEquals(tree, streamed);
+            Log.i(DeckConsts.DEBUG_TAG, "parse " + STACK_COUNT * CARDS_PER_STACK + " cards (" + json.length() / 1024 + " KiB): "
+                    + "tree " + treeMillis + "ms / " + treeBytes / 1024 + " KiB allocated, "
+                    + "streaming " + streamingMillis + "ms / " + streamingBytes / 1024 + " KiB allocated");
+        }
+    }
+
+    private List<FullStack> parseTree(String json) {
+        JsonElement tree = new JsonParser().parse(new StringReader(json));
+        return gson.fromJson(tree, STACKS);
+    }
+
+    private List<FullStack> parseStreaming(String json) {
+        return gson.fromJson(new StringReader(json), STACKS);
+    }
+
+    private static String createResponse() {
+        StringBuilder json = new StringBuilder("[");
+        for (int s = 1; s <= STACK_COUNT; s++) {
+            if (s > 1) {
+                json.append(',');
+            }
+            json.append("{\"id\":").append(s).append(",\"title\":\"Stack ").append(s)
+                    .append("\",\"boardId\":1,\"lastModified\":1546300800,\"deletedAt\":0,\"order\":").append(s).append(",\"cards\":[");
+            for (int c = 1; c <= CARDS_PER_STACK; c++) {
+                long id = (long) s * CARDS_PER_STACK + c;
+                if (c > 1) {
+                    json.append(',');
+                }
+                json.append("{\"id\":").append(id).append(",\"title\":\"Card ").append(id)
+                        .append("\",\"description\":\"Description of card ").append(id).append(" which is a little longer than the title\"")
+                        .append(",\"stackId\":").append(s).append(",\"type\":\"plain\",\"lastModified\":1546300800,\"createdAt\":1546300000,\"deletedAt\":0")
+                        .append(",\"labels\":[{\"id\":1,\"title\":\"Label\",\"color\":\"ff0000\"}]")
+                        .append(",\"assignedUsers\":[{\"id\":").append(id).append(",\"participant\":{\"primaryKey\":\"alice\",\"uid\":\"alice\",\"displayname\":\"Alice\"}}]")
+                        .append(",\"attachments\":[],\"attachmentCount\":0,\"order\":").append(c)
+                        .append(",\"overdue\":0,\"duedate\":null,\"commentsUnread\":0,\"owner\":{\"primaryKey\":\"alice\",\"uid\":\"alice\",\"displayname\":\"Alice\"}")
+                        .append(",\"archived\":false}");
+            }
+            json.append("]}");
+        }
+        return json.append(']').toString();
+    }
+}
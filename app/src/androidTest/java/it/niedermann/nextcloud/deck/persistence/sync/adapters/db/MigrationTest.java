@@ -0,0 +1,82 @@
+package it.niedermann.nextcloud.deck.persistence.sync.adapters.db;
+
+import android.database.Cursor;
+
+import androidx.room.testing.MigrationTestHelper;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.framework.FrameworkSQLiteOpenHelperFactory;
+import androidx.test.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Migrates databases of all exported schema versions to the latest one and lets Room check the result against the exported schema.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MigrationTest {
+
+    private static final String TEST_DB = "migration-test.db";
+    private static final int LATEST_VERSION = 6;
+
+    @Rule
+    public MigrationTestHelper helper = new MigrationTestHelper(InstrumentationRegistry.getInstrumentation(),
+            DeckDatabase.class.getCanonicalName(), new FrameworkSQLiteOpenHelperFactory());
+
+    @Test
+    public void migratesFirstVersionWithData() throws IOException {
+        SupportSQLiteDatabase db = helper.createDatabase(TEST_DB, 1);
+        db.execSQL("INSERT INTO `Account` (`id`, `name`, `userName`, `url`) VALUES (1, 'alice@example.com', 'alice', 'https://example.com')");
+        db.execSQL("INSERT INTO `User` (`localId`, `accountId`, `id`, `status`, `uid`, `displayname`) VALUES (1, 1, 7, 1, 'alice', 'Alice Liddell')");
+        db.execSQL("INSERT INTO `Board` (`localId`, `accountId`, `id`, `status`, `title`, `ownerId`, `archived`, `shared`) VALUES (1, 1, 3, 1, 'Household', 1, 0, 0)");
+        db.execSQL("INSERT INTO `Stack` (`localId`, `accountId`, `id`, `status`, `title`, `boardId`, `order`) VALUES (1, 1, 4, 1, 'To do', 1, 0)");
+        db.execSQL("INSERT INTO `Label` (`localId`, `accountId`, `id`, `status`, `title`, `boardId`) VALUES (1, 1, 6, 1, 'Urgent', 1)");
+        insertCard(db, 1, 5, "Groceries", "buy milk");
+        // created locally, before status 2 marked that
+        insertCard(db, 2, null, "Draft", null);
+        db.execSQL("INSERT INTO `JoinCardWithLabel` (`status`, `labelId`, `cardId`) VALUES (1, 1, 1)");
+        db.close();
+
+        db = helper.runMigrationsAndValidate(TEST_DB, LATEST_VERSION, true, DeckDatabase.MIGRATIONS);
+
+        assertEquals(1, queryLong(db, "SELECT status FROM `Card` WHERE localId = 1"));
+        assertEquals(2, queryLong(db, "SELECT status FROM `Card` WHERE localId = 2"));
+        // the search index has been filled with what was there before
+        assertEquals(1, queryLong(db, "SELECT docid FROM `CardFts` WHERE `CardFts` MATCH 'milk'"));
+        assertEquals(1, queryLong(db, "SELECT docid FROM `LabelFts` WHERE `LabelFts` MATCH 'urg*'"));
+        assertEquals(1, queryLong(db, "SELECT docid FROM `UserFts` WHERE `UserFts` MATCH 'lidd*'"));
+        assertEquals(1, queryLong(db, "SELECT count(*) FROM `JoinCardWithLabel`"));
+    }
+
+    @Test
+    public void migratesEveryVersion() throws IOException {
+        for (int version = 1; version < LATEST_VERSION; version++) {
+            helper.createDatabase(TEST_DB, version).close();
+            helper.runMigrationsAndValidate(TEST_DB, LATEST_VERSION, true, DeckDatabase.MIGRATIONS).close();
+            InstrumentationRegistry.getTargetContext().deleteDatabase(TEST_DB);
+        }
+    }
+
+    private static void insertCard(SupportSQLiteDatabase db, long localId, Integer id, String title, String description) {
+        db.execSQL("INSERT INTO `Card` (`localId`, `accountId`, `id`, `status`, `title`, `description`, `stackId`, `attachmentCount`, `order`, `archived`, `notified`, `overdue`, `commentsUnread`) " +
+                "VALUES (?, 1, ?, 1, ?, ?, 1, 0, 0, 0, 0, 0, 0)", new Object[]{localId, id, title, description});
+    }
+
+    private static long queryLong(SupportSQLiteDatabase db, String sql) {
+        Cursor cursor = db.query(sql);
+        try {
+            if (!cursor.moveToFirst()) {
+                throw new AssertionError("No result for " + sql);
+            }
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package it.niedermann.nextcloud.deck.persistence.sync.adapters.db;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.room.Room;
+import androidx.test.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import it.niedermann.nextcloud.deck.DeckConsts;
+import it.niedermann.nextcloud.deck.model.Account;
+import it.niedermann.nextcloud.deck.model.Card;
+import it.niedermann.nextcloud.deck.model.full.FullCard;
+
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Measures the card search of {@link SearchIndex} with 50k cards spread over three accounts.
+ * Results are written to logcat with the tag {@value DeckConsts#DEBUG_TAG}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SearchBenchmark {
+
+    private static final int CARD_COUNT = 50_000;
+    private static final int ACCOUNT_COUNT = 3;
+    private static final int VOCABULARY_SIZE = 5_000;
+    private static final int RUNS = 20;
+
+    private DeckDatabase db;
+    private String[] vocabulary;
+    private long[] accountIds;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getTargetContext();
+        db = Room.databaseBuilder(context, DeckDatabase.class, "search-benchmark.db").addCallback(DeckDatabase.CREATE_SEARCH_INDEX).build();
+        db.clearAllTables();
+        Random random = new Random(42);
+        vocabulary = new String[VOCABULARY_SIZE];
+        for (int i = 0; i < vocabulary.length; i++) {
+            vocabulary[i] = randomWord(random);
+        }
+        accountIds = new long[ACCOUNT_COUNT];
+        for (int i = 0; i < accountIds.length; i++) {
+            accountIds[i] = db.getAccountDao().insert(new Account(null, "benchmark" + i, "benchmark" + i, "https://example.com"));
+        }
+        db.runInTransaction(() -> {
+            for (int i = 0; i < CARD_COUNT; i++) {
+                Card card = new Card();
+                card.setAccountId(accountIds[i % ACCOUNT_COUNT]);
+                card.setStackId(1);
+                card.setTitle(words(random, 4));
+                card.setDescription(words(random, 30));
+                card.setOrder(i);
+                card.setCreatedAt(new Date());
+                db.getCardDao().insert(card);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        db.clearAllTables();
+        db.close();
+    }
+
+    @Test
+    public void searchCards() {
+        String[] terms = {vocabulary[0].substring(0, 2), vocabulary[1].substring(0, 3), vocabulary[2], vocabulary[3].substring(0, 3) + " " + vocabulary[4].substring(0, 3)};
+        for (String term : terms) {
+            long slowest = 0;
+            List<FullCard> firstPage = null;
+            for (int run = 0; run < RUNS; run++) {
+                long start = System.nanoTime();
+                firstPage = db.getSearchDao().searchCardsDirectly(SearchIndex.cards(accountIds[0], term, 0, 50));
+                slowest = Math.max(slowest, System.nanoTime() - start);
+            }
+            assertFalse("no cards found for \"" + term + "\"", firstPage.isEmpty());
+            Log.i(DeckConsts.DEBUG_TAG, "search \"" + term + "\" in " + CARD_COUNT + " cards: " + firstPage.size() + " results, slowest of " + RUNS + " runs " + (slowest / 1_000_000) + "ms");
+        }
+    }
+
+    private String words(Random random, int count) {
+        StringBuilder words = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            words.append(vocabulary[random.nextInt(vocabulary.length)]).append(' ');
+        }
+        return words.toString().trim();
+    }
+
+    private static String randomWord(Random random) {
+        char[] word = new char[3 + random.nextInt(7)];
+        for (int i = 0; i < word.length; i++) {
+            word[i] = (char) ('a' + random.nextInt(16));
+        }
+        return new String(word);
+    }
+}
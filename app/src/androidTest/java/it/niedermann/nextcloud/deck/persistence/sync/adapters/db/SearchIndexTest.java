@@ -0,0 +1,166 @@
+package it.niedermann.nextcloud.deck.persistence.sync.adapters.db;
+
+import androidx.room.Room;
+import androidx.test.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import it.niedermann.nextcloud.deck.model.Account;
+import it.niedermann.nextcloud.deck.model.Card;
+import it.niedermann.nextcloud.deck.model.Label;
+import it.niedermann.nextcloud.deck.model.User;
+import it.niedermann.nextcloud.deck.model.enums.DBStatus;
+import it.niedermann.nextcloud.deck.model.full.FullCard;
+import it.niedermann.nextcloud.deck.model.interfaces.AbstractRemoteEntity;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that the triggers of {@link SearchIndex} keep the FTS tables in line with inserts, replaces, updates and deletes,
+ * and that matches in titles and display names come first.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SearchIndexTest {
+
+    private static final long BOARD_ID = 1;
+
+    private DeckDatabase db;
+    private long accountId;
+
+    @Before
+    public void setUp() {
+        db = Room.inMemoryDatabaseBuilder(InstrumentationRegistry.getTargetContext(), DeckDatabase.class)
+                .addCallback(DeckDatabase.CREATE_SEARCH_INDEX)
+                .allowMainThreadQueries()
+                .build();
+        accountId = db.getAccountDao().insert(new Account(null, "alice@example.com", "alice", "https://example.com"));
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    @Test
+    public void cardsFollowEveryChange() {
+        Card groceries = insertCard("Groceries", "buy milk");
+        Card milkRun = insertCard("Milk run", null);
+        // the match in the title weighs more than the one in the description
+        assertEquals(ids(milkRun, groceries), searchCards("milk"));
+
+        // replacing deletes the old row without firing the delete trigger
+        db.getOpenHelper().getWritableDatabase().execSQL("REPLACE INTO `Card` (`localId`, `accountId`, `status`, `title`, `description`, `stackId`, " +
+                "`attachmentCount`, `order`, `archived`, `notified`, `overdue`, `commentsUnread`) VALUES (?, ?, 1, 'Bakery', 'bread', 1, 0, 0, 0, 0, 0, 0)",
+                new Object[]{groceries.getLocalId(), accountId});
+        assertEquals(ids(milkRun), searchCards("milk"));
+        assertEquals(ids(groceries), searchCards("bread"));
+
+        milkRun.setTitle("Cheese run");
+        db.getCardDao().update(milkRun);
+        assertEquals(ids(), searchCards("milk"));
+        assertEquals(ids(milkRun), searchCards("chee"));
+
+        db.getCardDao().delete(groceries);
+        assertEquals(ids(), searchCards("bread"));
+
+        milkRun.setStatusEnum(DBStatus.LOCAL_DELETED);
+        db.getCardDao().update(milkRun);
+        assertEquals(ids(), searchCards("cheese"));
+    }
+
+    @Test
+    public void labelsFollowEveryChange() {
+        Label urgent = insertLabel("Urgent");
+        Label urgentLater = insertLabel("Urgent, but later");
+        // the shortest title first
+        assertEquals(ids(urgent, urgentLater), ids(db.getSearchDao().searchLabelsDirectly(SearchIndex.labels(accountId, BOARD_ID, "urg"))));
+
+        urgent.setTitle("Blocked");
+        db.getLabelDao().update(urgent);
+        assertEquals(ids(urgentLater), ids(db.getSearchDao().searchLabelsDirectly(SearchIndex.labels(accountId, BOARD_ID, "urg"))));
+
+        urgentLater.setStatusEnum(DBStatus.LOCAL_DELETED);
+        db.getLabelDao().update(urgentLater);
+        assertEquals(ids(), ids(db.getSearchDao().searchLabelsDirectly(SearchIndex.labels(accountId, BOARD_ID, "urg"))));
+
+        db.getLabelDao().delete(urgent);
+        assertEquals(ids(), ids(db.getSearchDao().searchLabelsDirectly(SearchIndex.labels(accountId, BOARD_ID, "blocked"))));
+    }
+
+    @Test
+    public void usersFollowEveryChange() {
+        User bob = insertUser("alice.b", "Bob");
+        User alice = insertUser("liddell", "Alice Liddell");
+        // the match in the display name weighs more than the one in the uid
+        assertEquals(ids(alice, bob), ids(db.getSearchDao().searchUsersDirectly(SearchIndex.users(accountId, "alice"))));
+
+        alice.setStatusEnum(DBStatus.LOCAL_DELETED);
+        db.getUserDao().update(alice);
+        assertEquals(ids(bob), ids(db.getSearchDao().searchUsersDirectly(SearchIndex.users(accountId, "alice"))));
+
+        bob.setUid("bob");
+        bob.setPrimaryKey("bob");
+        db.getUserDao().update(bob);
+        assertEquals(ids(), ids(db.getSearchDao().searchUsersDirectly(SearchIndex.users(accountId, "alice"))));
+
+        db.getUserDao().delete(bob);
+        assertEquals(ids(), ids(db.getSearchDao().searchUsersDirectly(SearchIndex.users(accountId, "bob"))));
+    }
+
+    private Card insertCard(String title, String description) {
+        Card card = new Card();
+        card.setAccountId(accountId);
+        card.setStackId(1);
+        card.setTitle(title);
+        card.setDescription(description);
+        card.setLocalId(db.getCardDao().insert(card));
+        return card;
+    }
+
+    private Label insertLabel(String title) {
+        Label label = new Label();
+        label.setAccountId(accountId);
+        label.setBoardId(BOARD_ID);
+        label.setTitle(title);
+        label.setLocalId(db.getLabelDao().insert(label));
+        return label;
+    }
+
+    private User insertUser(String uid, String displayname) {
+        User user = new User();
+        user.setAccountId(accountId);
+        user.setUid(uid);
+        user.setPrimaryKey(uid);
+        user.setDisplayname(displayname);
+        user.setLocalId(db.getUserDao().insert(user));
+        return user;
+    }
+
+    private List<Long> searchCards(String term) {
+        List<Long> ids = new ArrayList<>();
+        for (FullCard card : db.getSearchDao().searchCardsDirectly(SearchIndex.cards(accountId, term, 0, 50))) {
+            ids.add(card.getLocalId());
+        }
+        return ids;
+    }
+
+    private static List<Long> ids(AbstractRemoteEntity... entities) {
+        return ids(Arrays.asList(entities));
+    }
+
+    private static List<Long> ids(List<? extends AbstractRemoteEntity> entities) {
+        List<Long> ids = new ArrayList<>(entities.size());
+        for (AbstractRemoteEntity entity : entities) {
+            ids.add(entity.getLocalId());
+        }
+        return ids;
+    }
+}
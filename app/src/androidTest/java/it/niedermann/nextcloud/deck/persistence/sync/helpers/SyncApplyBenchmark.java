@@ -0,0 +1,148 @@
+package it.niedermann.nextcloud.deck.persistence.sync.helpers;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.room.Room;
+import androidx.test.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import it.niedermann.nextcloud.deck.DeckConsts;
+import it.niedermann.nextcloud.deck.api.IResponseCallback;
+import it.niedermann.nextcloud.deck.model.Account;
+import it.niedermann.nextcloud.deck.model.Board;
+import it.niedermann.nextcloud.deck.model.Card;
+import it.niedermann.nextcloud.deck.model.Stack;
+import it.niedermann.nextcloud.deck.model.full.FullCard;
+import it.niedermann.nextcloud.deck.model.full.FullStack;
+import it.niedermann.nextcloud.deck.persistence.sync.adapters.db.DataBaseAdapter;
+import it.niedermann.nextcloud.deck.persistence.sync.adapters.db.DeckDatabase;
+import it.niedermann.nextcloud.deck.persistence.sync.helpers.providers.CardDataProvider;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares applying a server response one statement at a time (as before) with
+ * {@link SyncHelper#applyFromServer(it.niedermann.nextcloud.deck.persistence.sync.helpers.providers.AbstractSyncDataProvider, List)}.
+ * Results are written to logcat with the tag {@value DeckConsts#DEBUG_TAG}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SyncApplyBenchmark {
+
+    private static final int[] CARD_COUNTS = {1_000, 10_000, 50_000};
+
+    private DeckDatabase db;
+    private DataBaseAdapter dataBaseAdapter;
+    private SyncHelper syncHelper;
+    private long accountId;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getTargetContext();
+        db = Room.databaseBuilder(context, DeckDatabase.class, "sync-apply-benchmark.db").addCallback(DeckDatabase.CREATE_SEARCH_INDEX).build();
+        db.clearAllTables();
+        dataBaseAdapter = new DataBaseAdapter(db);
+        accountId = db.getAccountDao().insert(new Account(null, "benchmark", "benchmark", "https://example.com"));
+        syncHelper = new SyncHelper(null, dataBaseAdapter, new Date(0));
+        syncHelper.setResponseCallback(new IResponseCallback<Boolean>(new Account(accountId)) {
+            @Override
+            public void onResponse(Boolean response) {
+                // not used
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        db.clearAllTables();
+        db.close();
+    }
+
+    @Test
+    public void compareApplyModes() {
+        for (int count : CARD_COUNTS) {
+            long legacy = measure(count, false);
+            long batched = measure(count, true);
+            Log.i(DeckConsts.DEBUG_TAG, "apply " + count + " cards (insert + update): one-by-one " + legacy + "ms, batched " + batched + "ms");
+        }
+    }
+
+    private long measure(int count, boolean batched) {
+        db.clearAllTables();
+        accountId = db.getAccountDao().insert(new Account(accountId, "benchmark", "benchmark", "https://example.com"));
+        CardDataProvider provider = new CardDataProvider(null, createBoard(), createStack());
+
+        long start = System.currentTimeMillis();
+        // first sync inserts, second sync updates
+        for (int run = 0; run < 2; run++) {
+            List<FullCard> response = createResponse(count);
+            if (batched) {
+                syncHelper.applyFromServer(provider, response);
+            } else {
+                applyOneByOne(provider, response);
+            }
+        }
+        long duration = System.currentTimeMillis() - start;
+        assertEquals(count, db.getCardDao().getFullCardsForStackDirectly(accountId, 1L).size());
+        return duration;
+    }
+
+    /**
+     * The former behaviour of {@link SyncHelper#doSyncFor}: lookup, write and lookup again per entity, each auto-committed.
+     */
+    private void applyOneByOne(CardDataProvider provider, List<FullCard> response) {
+        for (FullCard entityFromServer : response) {
+            entityFromServer.setAccountId(accountId);
+            FullCard existingEntity = provider.getSingleFromDB(dataBaseAdapter, accountId, entityFromServer);
+            if (existingEntity == null) {
+                provider.createInDB(dataBaseAdapter, accountId, entityFromServer);
+            } else {
+                entityFromServer.setLocalId(existingEntity.getLocalId());
+                provider.updateInDB(dataBaseAdapter, accountId, entityFromServer);
+            }
+            provider.getSingleFromDB(dataBaseAdapter, accountId, entityFromServer);
+        }
+    }
+
+    private Board createBoard() {
+        Board board = new Board();
+        board.setLocalId(1L);
+        board.setId(1L);
+        return board;
+    }
+
+    private FullStack createStack() {
+        Stack stack = new Stack();
+        stack.setLocalId(1L);
+        stack.setId(1L);
+        FullStack fullStack = new FullStack();
+        fullStack.setStack(stack);
+        return fullStack;
+    }
+
+    private List<FullCard> createResponse(int count) {
+        List<FullCard> cards = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            Card card = new Card();
+            card.setId((long) i);
+            card.setTitle("Card " + i);
+            card.setDescription("Description of card " + i);
+            card.setOrder(i);
+            card.setCreatedAt(new Date());
+            card.setLastModified(new Date());
+            FullCard fullCard = new FullCard();
+            fullCard.setCard(card);
+            cards.add(fullCard);
+        }
+        return cards;
+    }
+}
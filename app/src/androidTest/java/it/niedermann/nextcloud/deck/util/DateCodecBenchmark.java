@@ -0,0 +1,68 @@
+package it.niedermann.nextcloud.deck.util;
+
+import android.util.Log;
+
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import it.niedermann.nextcloud.deck.DeckConsts;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares {@link DateCodec} with the {@link SimpleDateFormat}s used before, for parsing due dates and formatting <code>If-Modified-Since</code> headers.
+ * Results are written to logcat with the tag {@value DeckConsts#DEBUG_TAG}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DateCodecBenchmark {
+
+    private static final int ITERATIONS = 100_000;
+    private static final String DUE_DATE = "2019-03-31T02:30:00+02:00";
+
+    @Test
+    public void compareWithSimpleDateFormat() throws ParseException {
+        SimpleDateFormat iso8601 = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ", Locale.US);
+        iso8601.setTimeZone(TimeZone.getTimeZone("UTC"));
+        SimpleDateFormat rfc1123 = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US);
+        rfc1123.setTimeZone(TimeZone.getTimeZone("GMT"));
+        Date date = DateCodec.parseIso8601(DUE_DATE);
+        assertEquals(rfc1123.format(date), DateCodec.formatRfc1123(date));
+
+        for (int run = 0; run < 3; run++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                iso8601.parse(DUE_DATE);
+            }
+            long parseReference = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                DateCodec.parseIso8601(DUE_DATE);
+            }
+            long parseCodec = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                rfc1123.format(date);
+            }
+            long formatReference = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                DateCodec.formatRfc1123(date);
+            }
+            long formatCodec = System.nanoTime() - start;
+
+            Log.i(DeckConsts.DEBUG_TAG, ITERATIONS + " iterations: parse ISO 8601 SimpleDateFormat " + parseReference / ITERATIONS + "ns, DateCodec " + parseCodec / ITERATIONS + "ns; "
+                    + "format RFC 1123 SimpleDateFormat " + formatReference / ITERATIONS + "ns, DateCodec " + formatCodec / ITERATIONS + "ns (per call)");
+        }
+    }
+}
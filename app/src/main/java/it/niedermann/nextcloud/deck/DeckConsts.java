@@ -2,5 +2,4 @@ package it.niedermann.nextcloud.deck;
 
 public class DeckConsts {
     public static final String DEBUG_TAG = "deck";
-    public static final String LAST_SYNC_KEY = "lastSync";
 }
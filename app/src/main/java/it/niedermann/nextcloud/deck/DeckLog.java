@@ -5,31 +5,156 @@ import android.util.Log;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 
+/**
+ * Leveled logging to logcat and to an in-memory {@link LogBuffer}, whose recent entries can be attached to bug reports.
+ * <p>
+ * Messages below {@link #getMinLevel()} cost a single comparison: pass a {@link MessageSupplier} instead of a concatenated
+ * string where building the message is expensive. The caller location is only resolved (by walking the stack)
+ * while {@link Level#DEBUG} or lower is enabled, which is not the case in release builds by default.
+ */
 public class DeckLog {
 
-    public static void log(String message) {
-        StackTraceElement caller = Thread.currentThread().getStackTrace()[3];
-        String source = caller.getMethodName() + "() (" + caller.getFileName() + ":" + caller.getLineNumber() + ") -> ";
-        Log.d(DeckConsts.DEBUG_TAG, source + message);
+    public enum Level {
+        VERBOSE(Log.VERBOSE),
+        DEBUG(Log.DEBUG),
+        INFO(Log.INFO),
+        WARN(Log.WARN),
+        ERROR(Log.ERROR);
+
+        private final int priority;
+
+        Level(int priority) {
+            this.priority = priority;
+        }
     }
-    public static void logError(Throwable e) {
-        StringWriter sw = new StringWriter();
-        PrintWriter pw = new PrintWriter(sw);
-        e.printStackTrace(pw);
-        String stacktrace = sw.toString(); // stack trace as a string
-        StackTraceElement caller = Thread.currentThread().getStackTrace()[3];
-        String source = caller.getMethodName() + "() (" + caller.getFileName() + ":" + caller.getLineNumber() + ") -> ";
-        Log.d(DeckConsts.DEBUG_TAG, source + stacktrace);
+
+    public interface MessageSupplier {
+        String get();
+    }
+
+    private static final int BUFFER_CAPACITY = 500;
+    // log(Level, ...) <- debug(...) etc. <- caller
+    private static final int CALLER_DEPTH = 2;
+
+    private static final LogBuffer buffer = new LogBuffer(BUFFER_CAPACITY);
+    private static volatile Level minLevel = BuildConfig.DEBUG ? Level.DEBUG : Level.INFO;
+
+    private DeckLog() {
+    }
+
+    public static void setMinLevel(Level level) {
+        if (level == null) {
+            throw new IllegalArgumentException("level must not be null");
+        }
+        minLevel = level;
+    }
+
+    public static Level getMinLevel() {
+        return minLevel;
+    }
+
+    public static boolean isLoggable(Level level) {
+        return level.ordinal() >= minLevel.ordinal();
+    }
+
+    public static void verbose(MessageSupplier message) {
+        if (isLoggable(Level.VERBOSE)) {
+            log(Level.VERBOSE, message.get(), null);
+        }
+    }
+
+    public static void debug(String message) {
+        if (isLoggable(Level.DEBUG)) {
+            log(Level.DEBUG, message, null);
+        }
+    }
+
+    public static void debug(MessageSupplier message) {
+        if (isLoggable(Level.DEBUG)) {
+            log(Level.DEBUG, message.get(), null);
+        }
+    }
+
+    public static void info(String message) {
+        if (isLoggable(Level.INFO)) {
+            log(Level.INFO, message, null);
+        }
+    }
+
+    public static void info(MessageSupplier message) {
+        if (isLoggable(Level.INFO)) {
+            log(Level.INFO, message.get(), null);
+        }
+    }
+
+    public static void warn(String message) {
+        if (isLoggable(Level.WARN)) {
+            log(Level.WARN, message, null);
+        }
+    }
+
+    public static void warn(String message, Throwable throwable) {
+        if (isLoggable(Level.WARN)) {
+            log(Level.WARN, message, throwable);
+        }
+    }
+
+    public static void error(Throwable throwable) {
+        if (isLoggable(Level.ERROR)) {
+            log(Level.ERROR, null, throwable);
+        }
+    }
+
+    public static void error(String message, Throwable throwable) {
+        if (isLoggable(Level.ERROR)) {
+            log(Level.ERROR, message, throwable);
+        }
+    }
+
+    private static void log(Level level, String message, Throwable throwable) {
+        StringBuilder entry = new StringBuilder();
+        if (isLoggable(Level.DEBUG)) {
+            StackTraceElement[] stackTrace = new Throwable().getStackTrace();
+            if (stackTrace.length > CALLER_DEPTH) {
+                StackTraceElement caller = stackTrace[CALLER_DEPTH];
+                entry.append(caller.getMethodName()).append("() (").append(caller.getFileName()).append(':').append(caller.getLineNumber()).append(") -> ");
+            }
+        }
+        if (message != null) {
+            entry.append(message);
+        }
+        if (throwable != null) {
+            if (message != null) {
+                entry.append('\n');
+            }
+            entry.append(getStackTraceString(throwable));
+        }
+        String text = entry.toString();
+        Log.println(level.priority, DeckConsts.DEBUG_TAG, text);
+        buffer.add(level, text);
+    }
+
+    /**
+     * @return the most recent log entries, oldest first, one per line prefixed with time and level
+     */
+    public static String getRecentLogs() {
+        return buffer.dump();
     }
 
     public static void printCurrentStacktrace(){
-        log(getCurrentStacktrace(4));
+        debug(getCurrentStacktrace(4));
     }
 
     public static String getCurrentStacktrace(){
         return getCurrentStacktrace(4);
     }
 
+    private static String getStackTraceString(Throwable throwable) {
+        StringWriter sw = new StringWriter();
+        throwable.printStackTrace(new PrintWriter(sw));
+        return sw.toString();
+    }
+
     private static String getCurrentStacktrace(int offset){
         StackTraceElement[] elements = Thread.currentThread().getStackTrace();
         StringBuffer buff = new StringBuffer();
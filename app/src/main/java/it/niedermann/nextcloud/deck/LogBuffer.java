@@ -0,0 +1,57 @@
+package it.niedermann.nextcloud.deck;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Keeps the last entries written by {@link DeckLog}, overwriting the oldest one when full.
+ */
+class LogBuffer {
+
+    private final long[] times;
+    private final DeckLog.Level[] levels;
+    private final String[] messages;
+    private int next = 0;
+    private int size = 0;
+
+    LogBuffer(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1, got " + capacity);
+        }
+        times = new long[capacity];
+        levels = new DeckLog.Level[capacity];
+        messages = new String[capacity];
+    }
+
+    synchronized void add(DeckLog.Level level, String message) {
+        times[next] = System.currentTimeMillis();
+        levels[next] = level;
+        messages[next] = message;
+        next = (next + 1) % messages.length;
+        if (size < messages.length) {
+            size++;
+        }
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return all entries, oldest first
+     */
+    synchronized String dump() {
+        // only formatted when a report is requested
+        SimpleDateFormat format = new SimpleDateFormat("MM-dd HH:mm:ss.SSS", Locale.US);
+        StringBuilder dump = new StringBuilder();
+        int start = (next - size + messages.length) % messages.length;
+        for (int i = 0; i < size; i++) {
+            int position = (start + i) % messages.length;
+            dump.append(format.format(new Date(times[position])))
+                    .append(' ').append(levels[position].name().charAt(0))
+                    .append(' ').append(messages[position]).append('\n');
+        }
+        return dump.toString();
+    }
+}
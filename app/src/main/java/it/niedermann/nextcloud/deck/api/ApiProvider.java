@@ -1,7 +1,9 @@
 package it.niedermann.nextcloud.deck.api;
 
 import android.content.Context;
+import android.content.SharedPreferences;
 
+import com.nextcloud.android.sso.AccountImporter;
 import com.nextcloud.android.sso.api.NextcloudAPI;
 import com.nextcloud.android.sso.exceptions.NextcloudFilesAppAccountNotFoundException;
 import com.nextcloud.android.sso.exceptions.NoCurrentAccountSelectedException;
@@ -9,6 +11,7 @@ import com.nextcloud.android.sso.exceptions.SSOException;
 import com.nextcloud.android.sso.helper.SingleAccountHelper;
 import com.nextcloud.android.sso.model.SingleSignOnAccount;
 
+import androidx.annotation.Nullable;
 import it.niedermann.nextcloud.deck.DeckLog;
 import retrofit2.NextcloudRetrofitApiBuilder;
 
@@ -19,13 +22,63 @@ import retrofit2.NextcloudRetrofitApiBuilder;
 public class ApiProvider {
 
     private static final String API_ENDPOINT = "/index.php/apps/deck/api/v1.0/";
+    private static final String PREFERENCES_NAME = "api_provider";
+    private static final String KEY_CURRENT_ACCOUNT = "currentAccount";
 
     private DeckAPI mApi;
     private Context context;
+    private String accountName;
     private SingleSignOnAccount ssoAccount;
 
     public ApiProvider(Context context) {
+        this(context, null);
+    }
+
+    /**
+     * @param accountName the account all requests are sent for, <code>null</code> to follow the account selected with {@link #setCurrentAccount(Context, String)}
+     */
+    public ApiProvider(Context context, String accountName) {
         this.context = context;
+        this.accountName = accountName;
+    }
+
+    /**
+     * Selects the account of providers without an explicit one, for single sign on as well.
+     * It is remembered here, too, because an account which talks to its server directly may not exist in the Files app.
+     */
+    public static void setCurrentAccount(Context context, String accountName) {
+        getPreferences(context).edit().putString(KEY_CURRENT_ACCOUNT, accountName).apply();
+        SingleAccountHelper.setCurrentAccount(context, accountName);
+    }
+
+    /**
+     * Connects via the transport of the account: directly if {@link DirectCredentials} are stored for it, via single sign on otherwise.
+     */
+    public void initApi(final NextcloudAPI.ApiConnectedListener callback) {
+        DirectCredentials credentials = loadDirectCredentials();
+        if (credentials == null) {
+            initSsoApi(callback);
+        } else {
+            mApi = DirectApiFactory.create(credentials.getServerUrl() + API_ENDPOINT, credentials);
+            callback.onConnected();
+        }
+    }
+
+    /**
+     * Doesn't ask single sign on for the account, so it works without the Files app.
+     */
+    @Nullable
+    private DirectCredentials loadDirectCredentials() {
+        // null if the account has been selected before it was remembered here, then single sign on is asked
+        String name = accountName == null ? getPreferences(context).getString(KEY_CURRENT_ACCOUNT, null) : accountName;
+        return name == null ? null : DirectCredentials.load(context, name);
+    }
+
+    /**
+     * Drops the current connection, the next request connects again, e.g. after the transport of the account has been changed.
+     */
+    public void reset() {
+        mApi = null;
     }
 
     public void initSsoApi(final NextcloudAPI.ApiConnectedListener callback) {
@@ -35,13 +88,15 @@ public class ApiProvider {
             //mApi = new DeckAPI_SSO(nextcloudAPI);
             mApi = new NextcloudRetrofitApiBuilder(nextcloudAPI, API_ENDPOINT).create(DeckAPI.class);
         } catch (SSOException e) {
-            DeckLog.logError(e);
+            DeckLog.error(e);
             callback.onError(e);
         }
     }
 
     private void setAccount() throws NextcloudFilesAppAccountNotFoundException, NoCurrentAccountSelectedException {
-        ssoAccount = SingleAccountHelper.getCurrentSingleSignOnAccount(context);
+        ssoAccount = accountName == null
+                ? SingleAccountHelper.getCurrentSingleSignOnAccount(context)
+                : AccountImporter.getSingleSignOnAccount(context, accountName);
     }
 
     public DeckAPI getAPI() {
@@ -49,6 +104,10 @@ public class ApiProvider {
     }
 
     public String getServerUrl() throws NextcloudFilesAppAccountNotFoundException, NoCurrentAccountSelectedException {
+        DirectCredentials credentials = loadDirectCredentials();
+        if (credentials != null) {
+            return credentials.getServerUrl();
+        }
         if (ssoAccount==null){
             setAccount();
         }
@@ -62,4 +121,8 @@ public class ApiProvider {
     public String getApiUrl() throws NextcloudFilesAppAccountNotFoundException, NoCurrentAccountSelectedException {
         return getServerUrl()+getApiPath();
     }
+
+    private static SharedPreferences getPreferences(Context context) {
+        return context.getApplicationContext().getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
 }
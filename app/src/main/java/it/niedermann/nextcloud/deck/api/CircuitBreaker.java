@@ -0,0 +1,140 @@
+package it.niedermann.nextcloud.deck.api;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+import it.niedermann.nextcloud.deck.DeckLog;
+
+/**
+ * Stops sending requests to a server which failed {@link #FAILURE_THRESHOLD} times in a row for a transient reason,
+ * so an overloaded instance gets time to recover.
+ * <ul>
+ * <li>{@link State#CLOSED}: requests pass</li>
+ * <li>{@link State#OPEN}: requests fail immediately, until {@link #OPEN_MILLIS} have passed</li>
+ * <li>{@link State#HALF_OPEN}: one trial request passes, its result closes or opens the circuit again</li>
+ * </ul>
+ * There is one instance per server, shared by all accounts on it.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    static final int FAILURE_THRESHOLD = 5;
+    static final long OPEN_MILLIS = 30_000;
+
+    private static final Map<String, CircuitBreaker> breakers = new HashMap<>();
+
+    private final String serverUrl;
+    private final int failureThreshold;
+    private final long openNanos;
+    private final Clock clock;
+    private final MutableLiveData<State> liveState = new MutableLiveData<>();
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures = 0;
+    private long openedAtNanos;
+    private boolean trialRunning = false;
+
+    CircuitBreaker(String serverUrl, int failureThreshold, long openMillis) {
+        this(serverUrl, failureThreshold, openMillis, Clock.SYSTEM);
+    }
+
+    CircuitBreaker(String serverUrl, int failureThreshold, long openMillis, Clock clock) {
+        if (failureThreshold < 1) {
+            throw new IllegalArgumentException("failureThreshold must be at least 1, got " + failureThreshold);
+        }
+        this.serverUrl = serverUrl;
+        this.failureThreshold = failureThreshold;
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+        this.clock = clock;
+        liveState.postValue(state);
+    }
+
+    public static CircuitBreaker forServer(String serverUrl) {
+        if (serverUrl == null) {
+            throw new IllegalArgumentException("serverUrl must not be null");
+        }
+        synchronized (breakers) {
+            CircuitBreaker breaker = breakers.get(serverUrl);
+            if (breaker == null) {
+                breaker = new CircuitBreaker(serverUrl, FAILURE_THRESHOLD, OPEN_MILLIS);
+                breakers.put(serverUrl, breaker);
+            }
+            return breaker;
+        }
+    }
+
+    /**
+     * Must be followed by {@link #onSuccess()} or {@link #onFailure()} if it returned <code>true</code>.
+     *
+     * @return <code>false</code> if the request must not be sent
+     */
+    public synchronized boolean tryAcquire() {
+        switch (getState()) {
+            case CLOSED:
+                return true;
+            case HALF_OPEN:
+                if (trialRunning) {
+                    return false;
+                }
+                trialRunning = true;
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * The server answered, even if it was an error like <code>404</code>.
+     */
+    public synchronized void onSuccess() {
+        trialRunning = false;
+        consecutiveFailures = 0;
+        setState(State.CLOSED);
+    }
+
+    /**
+     * The request failed in a way which indicates that the server is overloaded or unreachable.
+     */
+    public synchronized void onFailure() {
+        trialRunning = false;
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            openedAtNanos = clock.nanoTime();
+            setState(State.OPEN);
+        }
+    }
+
+    public synchronized State getState() {
+        if (state == State.OPEN && clock.nanoTime() - openedAtNanos >= openNanos) {
+            setState(State.HALF_OPEN);
+        }
+        return state;
+    }
+
+    /**
+     * Changes from {@link State#OPEN} to {@link State#HALF_OPEN} are published lazily, when the breaker is asked the next time.
+     */
+    public LiveData<State> getLiveState() {
+        return liveState;
+    }
+
+    private void setState(State newState) {
+        if (state != newState) {
+            DeckLog.info("Circuit of " + serverUrl + " changed from " + state + " to " + newState);
+            state = newState;
+            liveState.postValue(newState);
+        }
+    }
+
+    public String getServerUrl() {
+        return serverUrl;
+    }
+}
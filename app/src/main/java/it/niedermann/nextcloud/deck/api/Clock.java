@@ -0,0 +1,14 @@
+package it.niedermann.nextcloud.deck.api;
+
+/**
+ * Source of time for measuring durations, replaced in tests so they don't depend on how fast the machine is.
+ */
+interface Clock {
+
+    Clock SYSTEM = System::nanoTime;
+
+    /**
+     * @return like {@link System#nanoTime()}, only meaningful as difference to another reading
+     */
+    long nanoTime();
+}
@@ -0,0 +1,225 @@
+package it.niedermann.nextcloud.deck.api;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkInfo;
+import android.net.NetworkRequest;
+import android.os.Build;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import androidx.annotation.NonNull;
+import androidx.core.net.ConnectivityManagerCompat;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+import it.niedermann.nextcloud.deck.DeckLog;
+
+/**
+ * Keeps track of the network state of the device, driven by network callbacks (a broadcast receiver below Lollipop),
+ * so asking whether the device is online is a plain field access.
+ * There is one instance per application.
+ */
+public class ConnectivityMonitor {
+
+    private static volatile ConnectivityMonitor instance;
+
+    private final ConnectivityManager connectivityManager;
+    private final MutableLiveData<NetworkState> liveState = new MutableLiveData<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private volatile NetworkState state = NetworkState.OFFLINE;
+
+    private ConnectivityMonitor(Context applicationContext) {
+        connectivityManager = (ConnectivityManager) applicationContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (connectivityManager == null) {
+            DeckLog.warn("No ConnectivityManager available, assuming to be online");
+            state = new NetworkState(true, true, true);
+        } else {
+            state = readState();
+            register(applicationContext);
+        }
+        liveState.postValue(state);
+    }
+
+    public static ConnectivityMonitor getInstance(Context context) {
+        if (instance == null) {
+            synchronized (ConnectivityMonitor.class) {
+                if (instance == null) {
+                    instance = new ConnectivityMonitor(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    private void register(Context applicationContext) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            final boolean tracksDefaultNetwork = Build.VERSION.SDK_INT >= Build.VERSION_CODES.N;
+            ConnectivityManager.NetworkCallback callback = new ConnectivityManager.NetworkCallback() {
+                @Override
+                public void onAvailable(Network network) {
+                    refresh();
+                }
+
+                @Override
+                public void onCapabilitiesChanged(Network network, NetworkCapabilities networkCapabilities) {
+                    refresh();
+                }
+
+                @Override
+                public void onLost(Network network) {
+                    if (tracksDefaultNetwork) {
+                        // the lost network may still be reported as active for a moment, onAvailable follows for its successor
+                        update(NetworkState.OFFLINE);
+                    } else {
+                        refresh();
+                    }
+                }
+            };
+            if (tracksDefaultNetwork) {
+                connectivityManager.registerDefaultNetworkCallback(callback);
+            } else {
+                connectivityManager.registerNetworkCallback(new NetworkRequest.Builder()
+                        .addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                        .build(), callback);
+            }
+        } else {
+            applicationContext.registerReceiver(new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    refresh();
+                }
+            }, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+        }
+    }
+
+    private void refresh() {
+        update(readState());
+    }
+
+    private void update(NetworkState current) {
+        final NetworkState previous;
+        synchronized (this) {
+            previous = state;
+            if (previous.equals(current)) {
+                return;
+            }
+            state = current;
+        }
+        DeckLog.info("Network state changed from " + previous + " to " + current);
+        liveState.postValue(current);
+        for (Listener listener : listeners) {
+            listener.onStateChanged(previous, current);
+        }
+    }
+
+    private NetworkState readState() {
+        try {
+            NetworkInfo activeNetworkInfo = connectivityManager.getActiveNetworkInfo();
+            if (activeNetworkInfo == null || !activeNetworkInfo.isConnected()) {
+                return NetworkState.OFFLINE;
+            }
+            boolean metered = ConnectivityManagerCompat.isActiveNetworkMetered(connectivityManager);
+            boolean validated = true;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                NetworkCapabilities capabilities = connectivityManager.getNetworkCapabilities(connectivityManager.getActiveNetwork());
+                validated = capabilities != null && capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED);
+            }
+            return new NetworkState(true, validated, metered);
+        } catch (SecurityException e) {
+            // ACCESS_NETWORK_STATE is declared in the manifest, but some vendors restrict it nevertheless
+            DeckLog.error(e);
+            return new NetworkState(true, true, true);
+        }
+    }
+
+    /**
+     * @return the cached state, no system service is asked
+     */
+    @NonNull
+    public NetworkState getState() {
+        return state;
+    }
+
+    public boolean isConnected() {
+        return state.isConnected();
+    }
+
+    /**
+     * Only publishes actual changes.
+     */
+    public LiveData<NetworkState> getLiveState() {
+        return liveState;
+    }
+
+    /**
+     * Unlike {@link #getLiveState()}, listeners are called without any lifecycle, on the thread which noticed the change.
+     * They are kept as long as the application lives.
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public interface Listener {
+        /**
+         * Must return quickly, it is called on a system callback thread or the main thread.
+         */
+        void onStateChanged(NetworkState previous, NetworkState current);
+    }
+
+    public static class NetworkState {
+        public static final NetworkState OFFLINE = new NetworkState(false, false, false);
+
+        private final boolean connected;
+        private final boolean validated;
+        private final boolean metered;
+
+        NetworkState(boolean connected, boolean validated, boolean metered) {
+            this.connected = connected;
+            this.validated = validated;
+            this.metered = metered;
+        }
+
+        public boolean isConnected() {
+            return connected;
+        }
+
+        /**
+         * @return whether the system verified that the network actually reaches the internet (e.g. no captive portal).
+         * Always <code>true</code> for connected networks below Marshmallow, where this can't be told.
+         */
+        public boolean isValidated() {
+            return validated;
+        }
+
+        /**
+         * @return whether the user may pay for the traffic, e.g. on mobile data
+         */
+        public boolean isMetered() {
+            return metered;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            NetworkState that = (NetworkState) o;
+            return connected == that.connected && validated == that.validated && metered == that.metered;
+        }
+
+        @Override
+        public int hashCode() {
+            return (connected ? 4 : 0) + (validated ? 2 : 0) + (metered ? 1 : 0);
+        }
+
+        @Override
+        public String toString() {
+            return connected ? (validated ? "validated" : "unvalidated") + (metered ? " metered" : " unmetered") : "offline";
+        }
+    }
+}
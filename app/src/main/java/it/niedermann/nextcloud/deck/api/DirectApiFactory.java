@@ -0,0 +1,135 @@
+package it.niedermann.nextcloud.deck.api;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import it.niedermann.nextcloud.deck.persistence.sync.helpers.SyncTrace;
+import it.niedermann.nextcloud.deck.persistence.sync.helpers.SyncTracer;
+import okhttp3.ConnectionPool;
+import okhttp3.Credentials;
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+import retrofit2.Retrofit;
+import retrofit2.adapter.rxjava2.RxJava2CallAdapterFactory;
+import retrofit2.converter.gson.GsonConverterFactory;
+
+/**
+ * Creates a {@link DeckAPI} which talks to the server directly with OkHttp instead of via the single sign on bridge of the Files app.
+ * All instances share one connection pool, so connections are kept alive and reused across requests and accounts.
+ * OkHttp negotiates HTTP/2 via ALPN where the platform supports it and transparently requests and unpacks gzip compressed responses.
+ */
+public class DirectApiFactory {
+
+    private static final OkHttpClient SHARED_CLIENT = new OkHttpClient.Builder()
+            .connectionPool(new ConnectionPool(5, 5, TimeUnit.MINUTES))
+            .connectTimeout(15, TimeUnit.SECONDS)
+            .readTimeout(60, TimeUnit.SECONDS)
+            .build();
+
+    /**
+     * @param baseUrl URL of the Deck API, ending with a slash
+     */
+    public static DeckAPI create(String baseUrl, DirectCredentials credentials) {
+        return create(baseUrl, credentials, SHARED_CLIENT);
+    }
+
+    static DeckAPI create(String baseUrl, DirectCredentials credentials, OkHttpClient sharedClient) {
+        final String authorization = Credentials.basic(credentials.getLoginName(), credentials.getAppPassword());
+        // newBuilder() shares connection pool and dispatcher with the shared client
+        OkHttpClient client = sharedClient.newBuilder()
+                .addInterceptor(chain -> chain.proceed(chain.request().newBuilder()
+                        .header("Authorization", authorization)
+                        .header("OCS-APIRequest", "true")
+                        .header("Accept", "application/json")
+                        .build()))
+                // a network interceptor sees the body before gzip is unpacked, so the bytes are counted as transferred
+                .addNetworkInterceptor(chain -> {
+                    Response response = chain.proceed(chain.request());
+                    if (response.body() == null) {
+                        return response;
+                    }
+                    return response.newBuilder()
+                            .body(new CountingResponseBody(response.body(), getTraceLevel(chain.request().url())))
+                            .build();
+                })
+                .build();
+        return new Retrofit.Builder()
+                .baseUrl(baseUrl)
+                .client(client)
+                .addCallAdapterFactory(new EmptyBodyCallAdapterFactory())
+                .addCallAdapterFactory(RxJava2CallAdapterFactory.create())
+                .addConverterFactory(GsonConverterFactory.create(GsonConfig.getGson()))
+                .build()
+                .create(DeckAPI.class);
+    }
+
+    /**
+     * @return the level of the innermost entity the URL refers to, e.g. {@link SyncTrace#LEVEL_CARD} for <code>boards/1/stacks/2/cards/3/assignLabel</code>
+     */
+    static String getTraceLevel(HttpUrl url) {
+        List<String> segments = url.pathSegments();
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            switch (segments.get(i)) {
+                case "attachments":
+                    return SyncTrace.LEVEL_ATTACHMENT;
+                case "acl":
+                    return SyncTrace.LEVEL_ACL;
+                case "labels":
+                    return SyncTrace.LEVEL_LABEL;
+                case "cards":
+                    return SyncTrace.LEVEL_CARD;
+                case "stacks":
+                    return SyncTrace.LEVEL_STACK;
+                case "boards":
+                case "board":
+                    return SyncTrace.LEVEL_BOARD;
+            }
+        }
+        return SyncTrace.LEVEL_BOARD;
+    }
+
+    /**
+     * Reports every chunk read from the wrapped body to the {@link SyncTracer}.
+     */
+    private static class CountingResponseBody extends ResponseBody {
+        private final ResponseBody body;
+        private final BufferedSource source;
+
+        CountingResponseBody(ResponseBody body, String traceLevel) {
+            this.body = body;
+            this.source = Okio.buffer(new ForwardingSource(body.source()) {
+                @Override
+                public long read(Buffer sink, long byteCount) throws IOException {
+                    long bytesRead = super.read(sink, byteCount);
+                    if (bytesRead > 0) {
+                        SyncTracer.getInstance().received(traceLevel, bytesRead);
+                    }
+                    return bytesRead;
+                }
+            });
+        }
+
+        @Override
+        public MediaType contentType() {
+            return body.contentType();
+        }
+
+        @Override
+        public long contentLength() {
+            return body.contentLength();
+        }
+
+        @Override
+        public BufferedSource source() {
+            return source;
+        }
+    }
+}
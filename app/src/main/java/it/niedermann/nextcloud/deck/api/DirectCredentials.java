@@ -0,0 +1,113 @@
+package it.niedermann.nextcloud.deck.api;
+
+import android.accounts.Account;
+import android.accounts.AccountManager;
+import android.content.Context;
+import android.os.Build;
+import android.os.Bundle;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Server, login name and app password (e.g. from the login flow) of an account which talks to its server directly instead of via single sign on.
+ * Accounts without stored credentials use single sign on.
+ * The credentials are kept by the {@link AccountManager} in an account of their own type, so the app password is not readable by other apps and not part of backups.
+ */
+public class DirectCredentials {
+
+    /**
+     * Has to match <code>res/xml/authenticator.xml</code>.
+     */
+    static final String ACCOUNT_TYPE = "it.niedermann.nextcloud.deck.direct";
+    private static final String KEY_SERVER_URL = "serverUrl";
+    private static final String KEY_LOGIN_NAME = "loginName";
+
+    @NonNull
+    private final String serverUrl;
+    @NonNull
+    private final String loginName;
+    @NonNull
+    private final String appPassword;
+
+    /**
+     * @param serverUrl URL of the Nextcloud server, without a trailing slash
+     */
+    public DirectCredentials(@NonNull String serverUrl, @NonNull String loginName, @NonNull String appPassword) {
+        this.serverUrl = serverUrl;
+        this.loginName = loginName;
+        this.appPassword = appPassword;
+    }
+
+    @NonNull
+    public String getServerUrl() {
+        return serverUrl;
+    }
+
+    @NonNull
+    public String getLoginName() {
+        return loginName;
+    }
+
+    @NonNull
+    public String getAppPassword() {
+        return appPassword;
+    }
+
+    /**
+     * @return the credentials stored for the account, <code>null</code> if it uses single sign on
+     */
+    @Nullable
+    public static DirectCredentials load(Context context, String accountName) {
+        AccountManager accountManager = AccountManager.get(context);
+        Account account = find(accountManager, accountName);
+        if (account == null) {
+            return null;
+        }
+        String serverUrl = accountManager.getUserData(account, KEY_SERVER_URL);
+        String loginName = accountManager.getUserData(account, KEY_LOGIN_NAME);
+        String appPassword = accountManager.getPassword(account);
+        if (serverUrl == null || loginName == null || appPassword == null) {
+            return null;
+        }
+        return new DirectCredentials(serverUrl, loginName, appPassword);
+    }
+
+    public static void save(Context context, String accountName, DirectCredentials credentials) {
+        AccountManager accountManager = AccountManager.get(context);
+        Account account = new Account(accountName, ACCOUNT_TYPE);
+        Bundle userData = new Bundle();
+        userData.putString(KEY_SERVER_URL, credentials.getServerUrl());
+        userData.putString(KEY_LOGIN_NAME, credentials.getLoginName());
+        if (!accountManager.addAccountExplicitly(account, credentials.getAppPassword(), userData)) {
+            // already stored, e.g. with an app password which has been revoked meanwhile
+            accountManager.setPassword(account, credentials.getAppPassword());
+            accountManager.setUserData(account, KEY_SERVER_URL, credentials.getServerUrl());
+            accountManager.setUserData(account, KEY_LOGIN_NAME, credentials.getLoginName());
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    public static void remove(Context context, String accountName) {
+        AccountManager accountManager = AccountManager.get(context);
+        Account account = find(accountManager, accountName);
+        if (account == null) {
+            return;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP_MR1) {
+            accountManager.removeAccountExplicitly(account);
+        } else {
+            accountManager.removeAccount(account, null, null);
+        }
+    }
+
+    @Nullable
+    private static Account find(AccountManager accountManager, String accountName) {
+        for (Account account : accountManager.getAccountsByType(ACCOUNT_TYPE)) {
+            if (account.name.equals(accountName)) {
+                return account;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,48 @@
+package it.niedermann.nextcloud.deck.api;
+
+import com.google.gson.reflect.TypeToken;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+
+import io.reactivex.Observable;
+import retrofit2.Call;
+import retrofit2.CallAdapter;
+import retrofit2.HttpException;
+import retrofit2.Response;
+import retrofit2.Retrofit;
+
+/**
+ * RxJava does not allow <code>null</code> values, so an <code>Observable&lt;Void&gt;</code> completes without emitting anything on success.
+ * {@link RequestHelper} reports such a completion as <code>null</code> response.
+ */
+class EmptyBodyCallAdapterFactory extends CallAdapter.Factory {
+
+    private static final Type RESPONSE_OBSERVABLE_TYPE = TypeToken.getParameterized(Observable.class,
+            TypeToken.getParameterized(Response.class, Void.class).getType()).getType();
+
+    @Override
+    public CallAdapter<?, ?> get(Type returnType, Annotation[] annotations, Retrofit retrofit) {
+        if (getRawType(returnType) != Observable.class || !(returnType instanceof ParameterizedType)
+                || getParameterUpperBound(0, (ParameterizedType) returnType) != Void.class) {
+            return null;
+        }
+        @SuppressWarnings("unchecked")
+        final CallAdapter<Void, Observable<Response<Void>>> delegate =
+                (CallAdapter<Void, Observable<Response<Void>>>) retrofit.nextCallAdapter(this, RESPONSE_OBSERVABLE_TYPE, annotations);
+        return new CallAdapter<Void, Observable<Void>>() {
+            @Override
+            public Type responseType() {
+                return delegate.responseType();
+            }
+
+            @Override
+            public Observable<Void> adapt(Call<Void> call) {
+                return delegate.adapt(call).flatMap(response -> response.isSuccessful()
+                        ? Observable.<Void>empty()
+                        : Observable.<Void>error(new HttpException(response)));
+            }
+        };
+    }
+}
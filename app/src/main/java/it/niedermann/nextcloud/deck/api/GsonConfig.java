@@ -2,15 +2,15 @@ package it.niedermann.nextcloud.deck.api;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.google.gson.reflect.TypeToken;
-
-import java.lang.reflect.Type;
-import java.util.List;
 
+import it.niedermann.nextcloud.deck.model.AccessControl;
+import it.niedermann.nextcloud.deck.model.Attachment;
 import it.niedermann.nextcloud.deck.model.Label;
+import it.niedermann.nextcloud.deck.model.User;
 import it.niedermann.nextcloud.deck.model.full.FullBoard;
 import it.niedermann.nextcloud.deck.model.full.FullCard;
 import it.niedermann.nextcloud.deck.model.full.FullStack;
+import it.niedermann.nextcloud.deck.persistence.sync.helpers.SyncTrace;
 
 /**
  * Created by david on 27.06.17.
@@ -19,25 +19,16 @@ import it.niedermann.nextcloud.deck.model.full.FullStack;
 public class GsonConfig {
 
     public static Gson getGson() {
-        Type boardList = new TypeToken<List<FullBoard>>() {}.getType();
-        Type board = new TypeToken<FullBoard>() {}.getType();
-        Type cardList = new TypeToken<FullCard>() {}.getType();
-        Type card = new TypeToken<FullCard>() {}.getType();
-        Type labelList = new TypeToken<Label>() {}.getType();
-        Type label = new TypeToken<Label>() {}.getType();
-        Type stackList = new TypeToken<List<FullStack>>() {}.getType();
-        Type stack = new TypeToken<FullStack>() {}.getType();
-
         return new GsonBuilder()
                 .setLenient()
-                .registerTypeAdapter(boardList,     new NextcloudArrayDeserializer<>("boards", FullBoard.class))
-                .registerTypeAdapter(board,         new NextcloudDeserializer<>("board", FullBoard.class))
-                .registerTypeAdapter(cardList,      new NextcloudArrayDeserializer<>("cards", FullCard.class))
-                .registerTypeAdapter(card,          new NextcloudDeserializer<>("card", FullCard.class))
-                .registerTypeAdapter(labelList,     new NextcloudArrayDeserializer<>("labels", Label.class))
-                .registerTypeAdapter(label,         new NextcloudDeserializer<>("label", Label.class))
-                .registerTypeAdapter(stackList,     new NextcloudArrayDeserializer<>("stacks", FullStack.class))
-                .registerTypeAdapter(stack,         new NextcloudDeserializer<>("stack", FullStack.class))
+                .registerTypeAdapterFactory(new StreamingTypeAdapterFactory()
+                        .register(FullBoard.class,      SyncTrace.LEVEL_BOARD,      StreamingEntityParser::readBoard)
+                        .register(FullStack.class,      SyncTrace.LEVEL_STACK,      StreamingEntityParser::readStack)
+                        .register(FullCard.class,       SyncTrace.LEVEL_CARD,       StreamingEntityParser::readCard)
+                        .register(Label.class,          SyncTrace.LEVEL_LABEL,      StreamingEntityParser::readLabel)
+                        .register(User.class,           SyncTrace.LEVEL_USER,       StreamingEntityParser::readUser)
+                        .register(AccessControl.class,  SyncTrace.LEVEL_ACL,        StreamingEntityParser::readAcl)
+                        .register(Attachment.class,     SyncTrace.LEVEL_ATTACHMENT, StreamingEntityParser::readAttachment))
                 .create();
     }
 
@@ -0,0 +1,27 @@
+package it.niedermann.nextcloud.deck.api;
+
+/**
+ * HTTP methods used by the {@link DeckAPI}. Only idempotent requests may be sent again after an error,
+ * because the first attempt could have reached the server even though the answer got lost.
+ */
+public enum HttpMethod {
+    GET(true),
+    POST(false),
+    PUT(true),
+    /**
+     * A <code>PUT</code> which switches something on or off, like assigning a label or a user to a card.
+     * Sending it twice may switch it back, so it is never repeated automatically.
+     */
+    PUT_TOGGLE(false),
+    DELETE(true);
+
+    private final boolean idempotent;
+
+    HttpMethod(boolean idempotent) {
+        this.idempotent = idempotent;
+    }
+
+    public boolean isIdempotent() {
+        return idempotent;
+    }
+}
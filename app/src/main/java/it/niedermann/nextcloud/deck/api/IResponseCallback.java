@@ -18,7 +18,15 @@ public abstract class IResponseCallback<T> {
     public abstract void onResponse(T response);
 
     public void onError(Throwable throwable) {
-        DeckLog.logError(throwable);
+        DeckLog.error(throwable);
+    }
+
+    /**
+     * The server answered a conditional request with <code>304 Not Modified</code>, so nothing has been downloaded or parsed.
+     * Delivered as <code>null</code> response unless overridden.
+     */
+    public void onNotModified() {
+        onResponse(null);
     }
 
     public void fillAccountIDs(T response) {
@@ -0,0 +1,240 @@
+package it.niedermann.nextcloud.deck.api;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import it.niedermann.nextcloud.deck.model.Account;
+import it.niedermann.nextcloud.deck.util.concurrent.DeckExecutors;
+
+/**
+ * Lets identical <code>GET</code> requests share one round trip.
+ * Requests are identified by account, endpoint and parameters. Callers of a request which is still running get attached to it,
+ * and for {@link #getResultTtlMillis()} after it succeeded, further callers get its response without any request at all.
+ * <p>
+ * Every caller gets its own copy of the response, see {@link ResponseCopier}, and all outcomes are delivered on the delivery executor,
+ * no matter whether they come from a running request or a kept response.
+ * A running request is moved to a more urgent lane of the {@link RequestScheduler} when a more urgent caller gets attached to it.
+ * Errors and <code>304 Not Modified</code> are passed to all attached callers, but not kept.
+ */
+public class RequestDeduplicator {
+
+    public static final long DEFAULT_RESULT_TTL_MILLIS = 2_000;
+
+    private static volatile RequestDeduplicator instance;
+
+    private final Map<String, Running> inFlight = new HashMap<>();
+    private final Map<String, Result> results = new HashMap<>();
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+    private final Executor delivery;
+    private volatile long resultTtlMillis = DEFAULT_RESULT_TTL_MILLIS;
+
+    private RequestDeduplicator() {
+        this(DeckExecutors.getInstance().network());
+    }
+
+    /**
+     * @param delivery runs the callbacks of the callers
+     */
+    RequestDeduplicator(Executor delivery) {
+        this.delivery = delivery;
+    }
+
+    public static RequestDeduplicator getInstance() {
+        if (instance == null) {
+            synchronized (RequestDeduplicator.class) {
+                if (instance == null) {
+                    instance = new RequestDeduplicator();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Runs <code>performer</code>, unless an identical request is running or has succeeded recently.
+     * Requests of callbacks without account are never shared.
+     *
+     * @param priority raises the priority of the running request if it is more urgent
+     * @param params   everything which makes a difference for the response, e.g. ids and the <code>If-Modified-Since</code> header
+     */
+    @SuppressWarnings("unchecked")
+    public <T> void request(IResponseCallback<T> callback, RequestPriority priority, Performer<T> performer, String endpoint, Object... params) {
+        final Account account = callback.getAccount();
+        if (account == null || account.getId() == null) {
+            performer.perform(callback, new RequestScheduler.Ticket(priority));
+            return;
+        }
+        final String key = key(account.getId(), endpoint, params);
+        final Result cached;
+        final Running running;
+        synchronized (this) {
+            cached = getValidResult(key);
+            if (cached == null) {
+                Running attachTo = inFlight.get(key);
+                if (attachTo != null) {
+                    hits.incrementAndGet();
+                    attachTo.waiting.add(callback);
+                    attachTo.ticket.raise(priority);
+                    return;
+                }
+                running = new Running(priority);
+                running.waiting.add(callback);
+                inFlight.put(key, running);
+            } else {
+                running = null;
+            }
+        }
+        if (cached != null) {
+            hits.incrementAndGet();
+            delivery.execute(() -> callback.onResponse((T) ResponseCopier.copy(cached.response)));
+            return;
+        }
+        misses.incrementAndGet();
+        final IResponseCallback<T> fanOut = new IResponseCallback<T>(account) {
+            @Override
+            public void onResponse(T response) {
+                final List<IResponseCallback<?>> waiting = finish(key, response, true);
+                for (int i = 0; i < waiting.size(); i++) {
+                    final IResponseCallback<T> target = (IResponseCallback<T>) waiting.get(i);
+                    // the first one may keep the original, nobody else sees it
+                    final T own = i == 0 ? response : ResponseCopier.copy(response);
+                    delivery.execute(() -> target.onResponse(own));
+                }
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                for (IResponseCallback<?> waiting : finish(key, null, false)) {
+                    delivery.execute(() -> waiting.onError(throwable));
+                }
+            }
+
+            @Override
+            public void onNotModified() {
+                for (IResponseCallback<?> waiting : finish(key, null, false)) {
+                    delivery.execute(waiting::onNotModified);
+                }
+            }
+        };
+        try {
+            performer.perform(fanOut, running.ticket);
+        } catch (RuntimeException e) {
+            // the attached callers would wait forever otherwise
+            fanOut.onError(e);
+        }
+    }
+
+    private List<IResponseCallback<?>> finish(String key, Object response, boolean keepResult) {
+        // copied before the first caller can change it
+        final Object kept = keepResult && resultTtlMillis > 0 ? ResponseCopier.copy(response) : null;
+        synchronized (this) {
+            Running running = inFlight.remove(key);
+            if (kept != null) {
+                removeExpiredResults();
+                results.put(key, new Result(kept, System.currentTimeMillis() + resultTtlMillis));
+            }
+            return running == null ? new ArrayList<>() : running.waiting;
+        }
+    }
+
+    private Result getValidResult(String key) {
+        Result result = results.get(key);
+        if (result != null && result.expiresAt <= System.currentTimeMillis()) {
+            results.remove(key);
+            return null;
+        }
+        return result;
+    }
+
+    private void removeExpiredResults() {
+        long now = System.currentTimeMillis();
+        Iterator<Result> iterator = results.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().expiresAt <= now) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Drops the kept responses of this account, so they can't hide a change which has just been sent to the server.
+     * Running requests are not affected.
+     */
+    public synchronized void invalidateResults(long accountId) {
+        String prefix = accountId + "|";
+        Iterator<String> iterator = results.keySet().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().startsWith(prefix)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    static String key(long accountId, String endpoint, Object... params) {
+        StringBuilder key = new StringBuilder().append(accountId).append('|').append(endpoint);
+        for (Object param : params) {
+            key.append('|').append(param);
+        }
+        return key.toString();
+    }
+
+    /**
+     * @param resultTtlMillis how long a successful response is handed out to further callers, 0 to only share running requests
+     */
+    public void setResultTtlMillis(long resultTtlMillis) {
+        if (resultTtlMillis < 0) {
+            throw new IllegalArgumentException("resultTtlMillis must not be negative, got " + resultTtlMillis);
+        }
+        this.resultTtlMillis = resultTtlMillis;
+    }
+
+    public long getResultTtlMillis() {
+        return resultTtlMillis;
+    }
+
+    /**
+     * @return count of callers which have been served by a running request or a kept response
+     */
+    public int getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return count of callers for which a request has actually been sent
+     */
+    public int getMisses() {
+        return misses.get();
+    }
+
+    public interface Performer<T> {
+        /**
+         * Sends the request with <code>ticket</code> and reports its outcome to <code>callback</code>.
+         */
+        void perform(IResponseCallback<T> callback, RequestScheduler.Ticket ticket);
+    }
+
+    private static class Running {
+        private final List<IResponseCallback<?>> waiting = new ArrayList<>(2);
+        private final RequestScheduler.Ticket ticket;
+
+        private Running(RequestPriority priority) {
+            this.ticket = new RequestScheduler.Ticket(priority);
+        }
+    }
+
+    private static class Result {
+        private final Object response;
+        private final long expiresAt;
+
+        private Result(Object response, long expiresAt) {
+            this.response = response;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
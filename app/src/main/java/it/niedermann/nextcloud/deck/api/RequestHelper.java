@@ -3,17 +3,45 @@ package it.niedermann.nextcloud.deck.api;
 import android.app.Activity;
 
 import com.nextcloud.android.sso.api.NextcloudAPI;
+import com.nextcloud.android.sso.exceptions.NextcloudHttpRequestFailedException;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import io.reactivex.Observable;
+import io.reactivex.functions.Action;
 import io.reactivex.functions.Consumer;
-import io.reactivex.schedulers.Schedulers;
+import it.niedermann.nextcloud.deck.DeckLog;
+import it.niedermann.nextcloud.deck.exceptions.CircuitOpenException;
+import it.niedermann.nextcloud.deck.model.Account;
+import retrofit2.HttpException;
 
 public class RequestHelper {
 
-    public static <T> void request(final Activity sourceActivity, final ApiProvider provider, final ObservableProvider<T> call, final IResponseCallback<T> callback){
+    private static final int HTTP_NOT_MODIFIED = 304;
+
+    public static <T> void request(final Activity sourceActivity, final ApiProvider provider, final RequestPriority priority, final HttpMethod method, final ObservableProvider<T> call, final IResponseCallback<T> callback){
+        request(sourceActivity, provider, priority, method, call, callback, 0);
+    }
+
+    /**
+     * @param priority      decides which budget of the {@link RequestScheduler} the request waits for
+     * @param method        only idempotent requests are retried after transient errors, see {@link RetryPolicy}
+     * @param timeoutMillis the request fails with a {@link java.util.concurrent.TimeoutException} if there is no response in time, 0 for no timeout.
+     *                      Time waited for a free slot doesn't count, every attempt has its own timeout.
+     */
+    public static <T> void request(final Activity sourceActivity, final ApiProvider provider, final RequestPriority priority, final HttpMethod method, final ObservableProvider<T> call, final IResponseCallback<T> callback, final long timeoutMillis){
+        request(sourceActivity, provider, new RequestScheduler.Ticket(priority), method, call, callback, timeoutMillis);
+    }
+
+    /**
+     * Like {@link #request(Activity, ApiProvider, RequestPriority, HttpMethod, ObservableProvider, IResponseCallback, long)},
+     * but the priority can still be raised through <code>ticket</code> while the request waits for a free slot.
+     */
+    public static <T> void request(final Activity sourceActivity, final ApiProvider provider, final RequestScheduler.Ticket ticket, final HttpMethod method, final ObservableProvider<T> call, final IResponseCallback<T> callback, final long timeoutMillis){
 
         if (provider.getAPI() == null){
-            provider.initSsoApi(new NextcloudAPI.ApiConnectedListener() {
+            provider.initApi(new NextcloudAPI.ApiConnectedListener() {
                 @Override public void onConnected() { /* great, nothing to do. */}
                 @Override
                 public void onError(Exception e) {
@@ -22,16 +50,80 @@ public class RequestHelper {
             });
         }
 
-        runRequest(sourceActivity, call.getObservableFromCall(), callback);
+        // deferred, so every attempt gets a fresh call
+        Observable<T> request = Observable.defer(call::getObservableFromCall);
+        if (timeoutMillis > 0) {
+            request = request.timeout(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        request = RequestScheduler.getInstance().schedule(ticket, request);
+        Account account = callback.getAccount();
+        if (method != HttpMethod.GET && account != null && account.getId() != null) {
+            RequestDeduplicator.getInstance().invalidateResults(account.getId());
+        }
+        if (account != null && account.getUrl() != null) {
+            request = guard(CircuitBreaker.forServer(account.getUrl()), request);
+        }
+        runRequest(sourceActivity, withRetries(RetryPolicy.DEFAULT, method, request), callback);
+    }
+
+    /**
+     * Fails immediately with a {@link CircuitOpenException} while <code>breaker</code> doesn't let requests pass, and reports the outcome to it otherwise.
+     */
+    static <T> Observable<T> guard(final CircuitBreaker breaker, final Observable<T> request) {
+        return Observable.defer(() -> {
+            if (!breaker.tryAcquire()) {
+                return Observable.error(new CircuitOpenException(breaker.getServerUrl()));
+            }
+            return request
+                    .doOnError(throwable -> {
+                        if (RetryPolicy.isTransient(throwable)) {
+                            breaker.onFailure();
+                        } else {
+                            // the server answered, e.g. with 304 or 404
+                            breaker.onSuccess();
+                        }
+                    })
+                    .doOnComplete(breaker::onSuccess);
+        });
+    }
+
+    static <T> Observable<T> withRetries(final RetryPolicy policy, final HttpMethod method, final Observable<T> request) {
+        return request.retryWhen(errors -> {
+            // the handler is called once per subscription
+            final AtomicInteger failedAttempts = new AtomicInteger();
+            return errors.flatMap(throwable -> {
+                int failed = failedAttempts.incrementAndGet();
+                if (!policy.shouldRetry(method, throwable, failed)) {
+                    return Observable.<Long>error(throwable);
+                }
+                long delayMillis = policy.getDelayMillis(failed);
+                DeckLog.info(() -> "Retrying " + method + " request in " + delayMillis + " ms after attempt " + failed + " failed: " + throwable);
+                return Observable.timer(delayMillis, TimeUnit.MILLISECONDS);
+            });
+        });
     }
 
     private static <T> void runRequest(final Activity sourceActivity, final Observable<T> request, final IResponseCallback<T> callback){
         ResponseConsumer<T> cb = new ResponseConsumer<>(sourceActivity, callback);
-        request.subscribeOn(Schedulers.newThread())
-                .subscribe(cb, cb.getExceptionConsumer());
+        request.subscribe(cb, cb.getExceptionConsumer(), cb.getCompletionAction());
     }
 
 
+    /**
+     * Both transports report a <code>304 Not Modified</code> as error, because it is not a <code>2xx</code> status.
+     */
+    static boolean isNotModified(Throwable throwable) {
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if (cause instanceof HttpException && ((HttpException) cause).code() == HTTP_NOT_MODIFIED) {
+                return true;
+            }
+            if (cause instanceof NextcloudHttpRequestFailedException && ((NextcloudHttpRequestFailedException) cause).getStatusCode() == HTTP_NOT_MODIFIED) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public interface ObservableProvider <T> {
         Observable<T> getObservableFromCall();
     }
@@ -43,7 +135,27 @@ public class RequestHelper {
         private Consumer<Throwable> exceptionConsumer = new Consumer<Throwable>() {
             @Override
             public void accept(final Throwable throwable) {
-                sourceActivity.runOnUiThread(() -> callback.onError(throwable) );
+                if (isNotModified(throwable)) {
+                    // not an error, continues like a response
+                    delivered = true;
+                    callback.onNotModified();
+                } else if (sourceActivity == null) {
+                    // not started by any screen, e.g. when sending the outbox after reconnecting
+                    callback.onError(throwable);
+                } else {
+                    sourceActivity.runOnUiThread(() -> callback.onError(throwable) );
+                }
+            }
+        };
+
+        private volatile boolean delivered = false;
+        private Action completionAction = new Action() {
+            @Override
+            public void run() {
+                // requests without response body (Observable<Void>) complete without any value
+                if (!delivered) {
+                    accept(null);
+                }
             }
         };
 
@@ -54,6 +166,7 @@ public class RequestHelper {
 
         @Override
         public void accept(final T t) {
+            delivered = true;
             callback.fillAccountIDs(t);
             callback.onResponse(t);
 //            sourceActivity.runOnUiThread(() -> callback.onResponse(t) );
@@ -62,5 +175,9 @@ public class RequestHelper {
         public Consumer<Throwable> getExceptionConsumer() {
             return exceptionConsumer;
         }
+
+        public Action getCompletionAction() {
+            return completionAction;
+        }
     }
 }
@@ -0,0 +1,40 @@
+package it.niedermann.nextcloud.deck.api;
+
+/**
+ * Classes of requests, in the order they are favoured. Each class has its own concurrency budget,
+ * so a running synchronization can't keep what the user just did from reaching the server.
+ */
+public enum RequestPriority {
+    /**
+     * Changes the user just made, e.g. assigning a label.
+     */
+    INTERACTIVE_MUTATION(2, 64),
+    /**
+     * Data the user is waiting for on screen.
+     */
+    INTERACTIVE_READ(2, 64),
+    /**
+     * Requests of a synchronization.
+     */
+    BACKGROUND_SYNC(4, 512),
+    /**
+     * Data which might be needed later.
+     */
+    PREFETCH(1, 128);
+
+    private final int maxParallelRequests;
+    private final int queueDepth;
+
+    RequestPriority(int maxParallelRequests, int queueDepth) {
+        this.maxParallelRequests = maxParallelRequests;
+        this.queueDepth = queueDepth;
+    }
+
+    public int getMaxParallelRequests() {
+        return maxParallelRequests;
+    }
+
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+}
@@ -0,0 +1,263 @@
+package it.niedermann.nextcloud.deck.api;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.reactivex.Observable;
+import io.reactivex.Observer;
+import io.reactivex.disposables.Disposable;
+import it.niedermann.nextcloud.deck.util.concurrent.LatencyHistogram;
+import it.niedermann.nextcloud.deck.util.concurrent.MeteredExecutor;
+
+/**
+ * Runs requests in one lane per {@link RequestPriority}. Each lane has its own threads, as many as its budget allows,
+ * so interactive requests never queue up behind hundreds of background requests.
+ * How long requests waited for a free slot is recorded per lane.
+ * A request which is still waiting moves to a more urgent lane when the priority of its {@link Ticket} is raised.
+ */
+public class RequestScheduler {
+
+    private static volatile RequestScheduler instance;
+
+    private final Map<RequestPriority, Lane> lanes = new EnumMap<>(RequestPriority.class);
+    private final Clock clock;
+
+    RequestScheduler() {
+        this(Clock.SYSTEM);
+    }
+
+    /**
+     * @param clock measures how long requests wait for a slot
+     */
+    RequestScheduler(Clock clock) {
+        this.clock = clock;
+        for (RequestPriority priority : RequestPriority.values()) {
+            lanes.put(priority, new Lane(priority));
+        }
+    }
+
+    public static RequestScheduler getInstance() {
+        if (instance == null) {
+            synchronized (RequestScheduler.class) {
+                if (instance == null) {
+                    instance = new RequestScheduler();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * @return <code>request</code>, subscribed to as soon as the lane of <code>priority</code> has a free slot
+     */
+    public <T> Observable<T> schedule(RequestPriority priority, Observable<T> request) {
+        return schedule(new Ticket(priority), request);
+    }
+
+    /**
+     * @return <code>request</code>, subscribed to as soon as the lane of the current priority of <code>ticket</code> has a free slot
+     */
+    public <T> Observable<T> schedule(Ticket ticket, Observable<T> request) {
+        return Observable.create(emitter -> {
+            final long enqueuedAt = clock.nanoTime();
+            final AtomicBoolean started = new AtomicBoolean();
+            final Ticket.Waiter waiter = new Ticket.Waiter() {
+                @Override
+                public void enqueue(RequestPriority priority) {
+                    final Lane lane = lanes.get(priority);
+                    lane.executor.execute(() -> {
+                        if (emitter.isDisposed() || !started.compareAndSet(false, true)) {
+                            // cancelled, or already started in the lane it has been moved to or from
+                            return;
+                        }
+                        ticket.leave(this);
+                        lane.recordWait(clock.nanoTime() - enqueuedAt);
+                        request.subscribe(new Observer<T>() {
+                            @Override
+                            public void onSubscribe(Disposable d) {
+                                emitter.setDisposable(d);
+                            }
+
+                            @Override
+                            public void onNext(T t) {
+                                emitter.onNext(t);
+                            }
+
+                            @Override
+                            public void onError(Throwable e) {
+                                emitter.tryOnError(e);
+                            }
+
+                            @Override
+                            public void onComplete() {
+                                emitter.onComplete();
+                            }
+                        });
+                    });
+                }
+            };
+            waiter.enqueue(ticket.enter(waiter));
+        });
+    }
+
+    public List<LaneStats> getStats() {
+        List<LaneStats> stats = new ArrayList<>(lanes.size());
+        for (Lane lane : lanes.values()) {
+            stats.add(lane.getStats());
+        }
+        return stats;
+    }
+
+    private static class Lane {
+        private final RequestPriority priority;
+        private final MeteredExecutor executor;
+        private final AtomicLong started = new AtomicLong();
+        private final AtomicLong totalWaitNanos = new AtomicLong();
+        private final AtomicLong maxWaitNanos = new AtomicLong();
+        private final LatencyHistogram waitHistogram = new LatencyHistogram();
+
+        Lane(RequestPriority priority) {
+            this.priority = priority;
+            // running a request on the thread which scheduled it would bypass the budget of the lane
+            executor = new MeteredExecutor("request-" + priority.name().toLowerCase(Locale.ROOT).replace('_', '-'),
+                    priority.getMaxParallelRequests(), priority.getQueueDepth(), MeteredExecutor.QueueMode.UNBOUNDED);
+        }
+
+        void recordWait(long nanos) {
+            started.incrementAndGet();
+            totalWaitNanos.addAndGet(nanos);
+            long max;
+            do {
+                max = maxWaitNanos.get();
+            } while (nanos > max && !maxWaitNanos.compareAndSet(max, nanos));
+            waitHistogram.record(nanos);
+        }
+
+        LaneStats getStats() {
+            MeteredExecutor.Stats executorStats = executor.getStats();
+            return new LaneStats(priority, executorStats.getQueued(), executorStats.getActive(), started.get(),
+                    TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get()), TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get()), waitHistogram.snapshot());
+        }
+    }
+
+    /**
+     * Priority of one request, which may be raised as long as the request waits for a slot.
+     */
+    public static class Ticket {
+        private RequestPriority priority;
+        private final List<Waiter> waiters = new ArrayList<>(1);
+
+        public Ticket(RequestPriority priority) {
+            this.priority = priority;
+        }
+
+        public synchronized RequestPriority getPriority() {
+            return priority;
+        }
+
+        /**
+         * Moves the request to the lane of <code>priority</code> if that one is more urgent. A request which already started keeps running where it is.
+         */
+        public void raise(RequestPriority priority) {
+            final List<Waiter> moved;
+            synchronized (this) {
+                if (priority.compareTo(this.priority) >= 0) {
+                    return;
+                }
+                this.priority = priority;
+                moved = new ArrayList<>(waiters);
+            }
+            for (Waiter waiter : moved) {
+                waiter.enqueue(priority);
+            }
+        }
+
+        private synchronized RequestPriority enter(Waiter waiter) {
+            waiters.add(waiter);
+            return priority;
+        }
+
+        private synchronized void leave(Waiter waiter) {
+            waiters.remove(waiter);
+        }
+
+        private interface Waiter {
+            void enqueue(RequestPriority priority);
+        }
+    }
+
+    /**
+     * Immutable snapshot of the counters of one lane.
+     */
+    public static class LaneStats {
+        private final RequestPriority priority;
+        private final int waiting;
+        private final int running;
+        private final long started;
+        private final long totalWaitMillis;
+        private final long maxWaitMillis;
+        private final long[] waitHistogram;
+
+        LaneStats(RequestPriority priority, int waiting, int running, long started, long totalWaitMillis, long maxWaitMillis, long[] waitHistogram) {
+            this.priority = priority;
+            this.waiting = waiting;
+            this.running = running;
+            this.started = started;
+            this.totalWaitMillis = totalWaitMillis;
+            this.maxWaitMillis = maxWaitMillis;
+            this.waitHistogram = waitHistogram;
+        }
+
+        public RequestPriority getPriority() {
+            return priority;
+        }
+
+        public int getWaiting() {
+            return waiting;
+        }
+
+        public int getRunning() {
+            return running;
+        }
+
+        /**
+         * @return count of requests which got a slot so far
+         */
+        public long getStarted() {
+            return started;
+        }
+
+        public long getTotalWaitMillis() {
+            return totalWaitMillis;
+        }
+
+        public long getMaxWaitMillis() {
+            return maxWaitMillis;
+        }
+
+        /**
+         * @return count of started requests per bucket of {@link LatencyHistogram#BUCKETS_MS} (time waited for a slot)
+         */
+        public long[] getWaitHistogram() {
+            return waitHistogram.clone();
+        }
+
+        @Override
+        public String toString() {
+            return "LaneStats{" +
+                    "priority=" + priority +
+                    ", waiting=" + waiting +
+                    ", running=" + running +
+                    ", started=" + started +
+                    ", averageWaitMillis=" + (started == 0 ? 0 : totalWaitMillis / started) +
+                    ", maxWaitMillis=" + maxWaitMillis +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package it.niedermann.nextcloud.deck.api;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Deep copies of parsed responses, so callers sharing one request can't see each others changes.
+ * <p>
+ * Entities are copied field by field with their no-argument constructor, lists, sets, maps, arrays and dates are copied as well.
+ * Strings, boxed primitives, enums and other classes of the JDK are taken as they are, responses don't contain mutable ones.
+ */
+class ResponseCopier {
+
+    private static final Map<Class<?>, List<Field>> fieldCache = new HashMap<>();
+
+    private ResponseCopier() {
+        // only static helpers
+    }
+
+    static <T> T copy(T original) {
+        return copy(original, new IdentityHashMap<>());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T copy(T original, Map<Object, Object> copies) {
+        if (original == null || isImmutable(original)) {
+            return original;
+        }
+        Object known = copies.get(original);
+        if (known != null) {
+            return (T) known;
+        }
+        final Object copy;
+        if (original instanceof Date) {
+            copy = new Date(((Date) original).getTime());
+            copies.put(original, copy);
+        } else if (original instanceof Collection) {
+            Collection<Object> collection = original instanceof List
+                    ? new ArrayList<>(((Collection<?>) original).size())
+                    : new LinkedHashSet<>();
+            copies.put(original, collection);
+            for (Object element : (Collection<?>) original) {
+                collection.add(copy(element, copies));
+            }
+            copy = collection;
+        } else if (original instanceof Map) {
+            Map<Object, Object> map = new LinkedHashMap<>();
+            copies.put(original, map);
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) original).entrySet()) {
+                map.put(copy(entry.getKey(), copies), copy(entry.getValue(), copies));
+            }
+            copy = map;
+        } else if (original.getClass().isArray()) {
+            int length = Array.getLength(original);
+            copy = Array.newInstance(original.getClass().getComponentType(), length);
+            copies.put(original, copy);
+            for (int i = 0; i < length; i++) {
+                Array.set(copy, i, copy(Array.get(original, i), copies));
+            }
+        } else if (original.getClass().getName().startsWith("java.")) {
+            return original;
+        } else {
+            copy = instantiate(original.getClass());
+            copies.put(original, copy);
+            try {
+                for (Field field : fieldsOf(original.getClass())) {
+                    field.set(copy, copy(field.get(original), copies));
+                }
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("Could not copy " + original.getClass().getName(), e);
+            }
+        }
+        return (T) copy;
+    }
+
+    private static boolean isImmutable(Object value) {
+        return value instanceof String || value instanceof Number || value instanceof Boolean || value instanceof Character || value instanceof Enum;
+    }
+
+    private static Object instantiate(Class<?> type) {
+        try {
+            Constructor<?> constructor = type.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return constructor.newInstance();
+        } catch (NoSuchMethodException | InstantiationException | IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalArgumentException("Responses must have a constructor without arguments to be shared, " + type.getName() + " has none", e);
+        }
+    }
+
+    private static List<Field> fieldsOf(Class<?> type) {
+        synchronized (fieldCache) {
+            List<Field> fields = fieldCache.get(type);
+            if (fields == null) {
+                fields = new ArrayList<>();
+                for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                    for (Field field : c.getDeclaredFields()) {
+                        if (!Modifier.isStatic(field.getModifiers())) {
+                            field.setAccessible(true);
+                            fields.add(field);
+                        }
+                    }
+                }
+                fieldCache.put(type, fields);
+            }
+            return fields;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package it.niedermann.nextcloud.deck.api;
+
+import com.nextcloud.android.sso.exceptions.NextcloudHttpRequestFailedException;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeoutException;
+
+import it.niedermann.nextcloud.deck.exceptions.OfflineException;
+import retrofit2.HttpException;
+
+/**
+ * Decides whether a failed request is sent again, and when.
+ * Only idempotent requests which failed for a transient reason (timeouts, I/O errors, 408, 429, 502, 503, 504) are retried.
+ * The delay grows exponentially and is jittered, so clients which failed together don't retry together.
+ */
+public class RetryPolicy {
+
+    public static final RetryPolicy DEFAULT = new RetryPolicy(3, 500, 8000);
+    public static final RetryPolicy NEVER = new RetryPolicy(1, 0, 0);
+
+    private static final Random random = new Random();
+
+    private final int maxAttempts;
+    private final long initialDelayMillis;
+    private final long maxDelayMillis;
+
+    /**
+     * @param maxAttempts        including the first one, 1 means no retries
+     * @param initialDelayMillis delay before the first retry, doubled for every further one
+     * @param maxDelayMillis     upper bound of the delay
+     */
+    public RetryPolicy(int maxAttempts, long initialDelayMillis, long maxDelayMillis) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be at least 1, got " + maxAttempts);
+        }
+        if (initialDelayMillis < 0 || maxDelayMillis < initialDelayMillis) {
+            throw new IllegalArgumentException("Delays must satisfy 0 <= initialDelayMillis <= maxDelayMillis, got " + initialDelayMillis + " and " + maxDelayMillis);
+        }
+        this.maxAttempts = maxAttempts;
+        this.initialDelayMillis = initialDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+    }
+
+    /**
+     * @param failedAttempts count of attempts which failed so far, including the one which failed with <code>throwable</code>
+     */
+    public boolean shouldRetry(HttpMethod method, Throwable throwable, int failedAttempts) {
+        return failedAttempts < maxAttempts && method.isIdempotent() && isTransient(throwable);
+    }
+
+    /**
+     * @return a random delay between half and all of the exponential backoff for the given attempt
+     */
+    public long getDelayMillis(int failedAttempts) {
+        long backoff = initialDelayMillis;
+        for (int i = 1; i < failedAttempts && backoff < maxDelayMillis; i++) {
+            backoff *= 2;
+        }
+        backoff = Math.min(backoff, maxDelayMillis);
+        long half = backoff / 2;
+        synchronized (random) {
+            return half + (long) (random.nextDouble() * (backoff - half));
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the server or the connection is likely to recover, as opposed to errors a retry won't fix (e.g. 404)
+     */
+    public static boolean isTransient(Throwable throwable) {
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if (cause instanceof OfflineException) {
+                // waiting for connectivity is up to the caller
+                return false;
+            }
+            if (cause instanceof HttpException) {
+                return isTransientStatus(((HttpException) cause).code());
+            }
+            if (cause instanceof NextcloudHttpRequestFailedException) {
+                return isTransientStatus(((NextcloudHttpRequestFailedException) cause).getStatusCode());
+            }
+            if (cause instanceof TimeoutException || cause instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return <code>true</code> if the server refused the request for good (4xx except 408 and 429), so it must not be sent again
+     */
+    public static boolean isRejected(Throwable throwable) {
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if (cause instanceof HttpException) {
+                return isRejectedStatus(((HttpException) cause).code());
+            }
+            if (cause instanceof NextcloudHttpRequestFailedException) {
+                return isRejectedStatus(((NextcloudHttpRequestFailedException) cause).getStatusCode());
+            }
+        }
+        return false;
+    }
+
+    private static boolean isRejectedStatus(int statusCode) {
+        return statusCode >= 400 && statusCode < 500 && !isTransientStatus(statusCode);
+    }
+
+    private static boolean isTransientStatus(int statusCode) {
+        switch (statusCode) {
+            case 408:
+            case 429:
+            case 502:
+            case 503:
+            case 504:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+}
@@ -0,0 +1,506 @@
+package it.niedermann.nextcloud.deck.api;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import it.niedermann.nextcloud.deck.model.AccessControl;
+import it.niedermann.nextcloud.deck.model.Attachment;
+import it.niedermann.nextcloud.deck.model.Board;
+import it.niedermann.nextcloud.deck.model.Card;
+import it.niedermann.nextcloud.deck.model.Label;
+import it.niedermann.nextcloud.deck.model.Stack;
+import it.niedermann.nextcloud.deck.model.User;
+import it.niedermann.nextcloud.deck.model.full.FullBoard;
+import it.niedermann.nextcloud.deck.model.full.FullCard;
+import it.niedermann.nextcloud.deck.model.full.FullStack;
+import it.niedermann.nextcloud.deck.util.DateCodec;
+
+/**
+ * Reads the entities of the Deck API directly from a {@link JsonReader}, without building a {@link com.google.gson.JsonElement} tree first.
+ * Unknown fields are skipped, missing ones keep their defaults.
+ */
+public class StreamingEntityParser {
+
+    private StreamingEntityParser() {
+    }
+
+    public interface EntityReader<T> {
+        T read(JsonReader in) throws IOException;
+    }
+
+    public static <T> List<T> readList(JsonReader in, EntityReader<T> reader) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        List<T> items = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext()) {
+            items.add(reader.read(in));
+        }
+        in.endArray();
+        return items;
+    }
+
+    public static FullBoard readBoard(JsonReader in) throws IOException {
+        FullBoard fullBoard = new FullBoard();
+        Board board = new Board();
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "title":
+                    board.setTitle(nextNullAsEmptyString(in));
+                    break;
+                case "color":
+                    board.setColor(nextNullAsEmptyString(in));
+                    break;
+                case "archived":
+                    board.setArchived(in.nextBoolean());
+                    break;
+                case "lastModified":
+                    board.setLastModified(nextTimestampFromLong(in));
+                    break;
+                case "deletedAt":
+                    board.setDeletedAt(nextTimestampFromLong(in));
+                    break;
+                case "id":
+                    board.setId(in.nextLong());
+                    break;
+                case "labels":
+                    List<Label> labels = readList(in, StreamingEntityParser::readLabel);
+                    if (labels != null) {
+                        fullBoard.setLabels(labels);
+                    }
+                    break;
+                case "stacks":
+                    List<FullStack> fullStacks = readList(in, StreamingEntityParser::readStack);
+                    if (fullStacks != null) {
+                        List<Stack> stacks = new ArrayList<>(fullStacks.size());
+                        for (FullStack fullStack : fullStacks) {
+                            stacks.add(fullStack.getStack());
+                        }
+                        fullBoard.setStacks(stacks);
+                    }
+                    break;
+                case "acl":
+                    List<AccessControl> acl = readAclMap(in);
+                    if (acl != null) {
+                        fullBoard.setParticipants(acl);
+                    }
+                    break;
+                case "owner":
+                    User owner = nextUserOrSkip(in);
+                    if (owner != null) {
+                        fullBoard.setOwner(owner);
+                    }
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        fullBoard.setBoard(board);
+        return fullBoard;
+    }
+
+    /**
+     * The server sends the access control list as object keyed by participant, or as empty array if there is none.
+     *
+     * @return <code>null</code> if the list is empty
+     */
+    private static List<AccessControl> readAclMap(JsonReader in) throws IOException {
+        switch (in.peek()) {
+            case NULL:
+                in.nextNull();
+                return null;
+            case BEGIN_ARRAY:
+                List<AccessControl> fromArray = readList(in, StreamingEntityParser::readAcl);
+                return fromArray == null || fromArray.isEmpty() ? null : fromArray;
+            default:
+                List<AccessControl> acl = new ArrayList<>();
+                in.beginObject();
+                while (in.hasNext()) {
+                    in.nextName();
+                    acl.add(readAcl(in));
+                }
+                in.endObject();
+                return acl;
+        }
+    }
+
+    public static AccessControl readAcl(JsonReader in) throws IOException {
+        AccessControl acl = new AccessControl();
+        User participant = null;
+        Long type = null;
+        Long boardId = null;
+        Long id = null;
+        boolean owner = false;
+        boolean permissionEdit = false;
+        boolean permissionManage = false;
+        boolean permissionShare = false;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "participant":
+                    participant = nextUserOrSkip(in);
+                    break;
+                case "type":
+                    type = in.nextLong();
+                    break;
+                case "boardId":
+                    boardId = in.nextLong();
+                    break;
+                case "id":
+                    id = in.nextLong();
+                    break;
+                case "owner":
+                    owner = in.nextBoolean();
+                    break;
+                case "permissionEdit":
+                    permissionEdit = in.nextBoolean();
+                    break;
+                case "permissionManage":
+                    permissionManage = in.nextBoolean();
+                    break;
+                case "permissionShare":
+                    permissionShare = in.nextBoolean();
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        // entries without participant are kept empty, like the tree based parser does
+        if (participant != null) {
+            acl.setUser(participant);
+            acl.setType(type);
+            acl.setBoardId(boardId);
+            acl.setId(id);
+            acl.setOwner(owner);
+            acl.setPermissionEdit(permissionEdit);
+            acl.setPermissionManage(permissionManage);
+            acl.setPermissionShare(permissionShare);
+        }
+        return acl;
+    }
+
+    public static FullCard readCard(JsonReader in) throws IOException {
+        FullCard fullCard = new FullCard();
+        Card card = new Card();
+        fullCard.setCard(card);
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "id":
+                    card.setId(in.nextLong());
+                    break;
+                case "title":
+                    card.setTitle(nextNullAsEmptyString(in));
+                    break;
+                case "description":
+                    card.setDescription(nextNullAsEmptyString(in));
+                    break;
+                case "stackId":
+                    card.setStackId(in.nextLong());
+                    break;
+                case "type":
+                    card.setType(nextNullAsEmptyString(in));
+                    break;
+                case "lastModified":
+                    card.setLastModified(nextTimestampFromLong(in));
+                    break;
+                case "createdAt":
+                    card.setCreatedAt(nextTimestampFromLong(in));
+                    break;
+                case "deletedAt":
+                    card.setDeletedAt(nextTimestampFromLong(in));
+                    break;
+                case "labels":
+                    List<Label> labels = readList(in, StreamingEntityParser::readLabel);
+                    if (labels != null) {
+                        fullCard.setLabels(labels);
+                    }
+                    break;
+                case "assignedUsers":
+                    if (in.peek() == JsonToken.NULL) {
+                        in.nextNull();
+                        break;
+                    }
+                    List<User> users = new ArrayList<>();
+                    in.beginArray();
+                    while (in.hasNext()) {
+                        User participant = readAssignment(in);
+                        if (participant != null) {
+                            users.add(participant);
+                        }
+                    }
+                    in.endArray();
+                    fullCard.setAssignedUsers(users);
+                    break;
+                case "attachments":
+                    List<Attachment> attachments = readList(in, StreamingEntityParser::readAttachment);
+                    if (attachments != null) {
+                        fullCard.setAttachments(attachments);
+                    }
+                    break;
+                case "attachmentCount":
+                    card.setAttachmentCount(in.nextInt());
+                    break;
+                case "order":
+                    card.setOrder(in.nextInt());
+                    break;
+                case "overdue":
+                    card.setOverdue(in.nextInt());
+                    break;
+                case "duedate":
+                    card.setDueDate(in.peek() == JsonToken.NULL ? nextNull(in) : DateCodec.parseIso8601(in.nextString()));
+                    break;
+                case "commentsUnread":
+                    card.setCommentsUnread(in.nextInt());
+                    break;
+                case "owner":
+                    User owner = nextUserOrSkip(in);
+                    if (owner != null) {
+                        fullCard.setOwner(owner);
+                    }
+                    break;
+                case "archived":
+                    card.setArchived(in.nextBoolean());
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return fullCard;
+    }
+
+    /**
+     * @return the participant of an assignment, <code>null</code> if there is none
+     */
+    private static User readAssignment(JsonReader in) throws IOException {
+        User participant = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            if ("participant".equals(in.nextName())) {
+                participant = nextUserOrSkip(in);
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return participant;
+    }
+
+    public static Attachment readAttachment(JsonReader in) throws IOException {
+        Attachment a = new Attachment();
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "id":
+                    a.setId(in.nextLong());
+                    break;
+                case "cardId":
+                    a.setCardId(in.nextLong());
+                    break;
+                case "type":
+                    a.setType(nextString(in));
+                    break;
+                case "data":
+                    a.setData(nextString(in));
+                    break;
+                case "lastModified":
+                    a.setLastModified(nextTimestampFromLong(in));
+                    break;
+                case "createdAt":
+                    a.setCreatedAt(nextTimestampFromLong(in));
+                    break;
+                case "createdBy":
+                    a.setCreatedBy(nextString(in));
+                    break;
+                case "deletedAt":
+                    a.setDeletedAt(nextTimestampFromLong(in));
+                    break;
+                case "extendedData":
+                    readExtendedData(in, a);
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return a;
+    }
+
+    private static void readExtendedData(JsonReader in, Attachment a) throws IOException {
+        if (in.peek() != JsonToken.BEGIN_OBJECT) {
+            in.skipValue();
+            return;
+        }
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "filesize":
+                    a.setFilesize(in.nextLong());
+                    break;
+                case "mimetype":
+                    a.setMimetype(nextString(in));
+                    break;
+                case "info":
+                    if (in.peek() != JsonToken.BEGIN_OBJECT) {
+                        in.skipValue();
+                        break;
+                    }
+                    in.beginObject();
+                    while (in.hasNext()) {
+                        switch (in.nextName()) {
+                            case "dirname":
+                                a.setDirname(nextString(in));
+                                break;
+                            case "basename":
+                                a.setBasename(nextString(in));
+                                break;
+                            case "extension":
+                                a.setExtension(nextString(in));
+                                break;
+                            case "filename":
+                                a.setFilename(nextString(in));
+                                break;
+                            default:
+                                in.skipValue();
+                        }
+                    }
+                    in.endObject();
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+    }
+
+    public static User readUser(JsonReader in) throws IOException {
+        User user = new User();
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "displayname":
+                    user.setDisplayname(nextNullAsEmptyString(in));
+                    break;
+                case "primaryKey":
+                    user.setPrimaryKey(nextNullAsEmptyString(in));
+                    break;
+                case "uid":
+                    user.setUid(nextNullAsEmptyString(in));
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return user;
+    }
+
+    public static FullStack readStack(JsonReader in) throws IOException {
+        FullStack fullStack = new FullStack();
+        Stack stack = new Stack();
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "title":
+                    stack.setTitle(nextNullAsEmptyString(in));
+                    break;
+                case "boardId":
+                    stack.setBoardId(in.nextLong());
+                    break;
+                case "id":
+                    stack.setId(in.nextLong());
+                    break;
+                case "lastModified":
+                    stack.setLastModified(nextTimestampFromLong(in));
+                    break;
+                case "deletedAt":
+                    stack.setDeletedAt(nextTimestampFromLong(in));
+                    break;
+                case "order":
+                    stack.setOrder(in.nextInt());
+                    break;
+                case "cards":
+                    List<FullCard> embeddedCards = readList(in, StreamingEntityParser::readCard);
+                    if (embeddedCards != null) {
+                        List<Card> cards = new ArrayList<>(embeddedCards.size());
+                        for (FullCard fullCard : embeddedCards) {
+                            cards.add(fullCard.getCard());
+                        }
+                        fullStack.setCards(cards);
+                        fullStack.setEmbeddedCards(embeddedCards);
+                    }
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        fullStack.setStack(stack);
+        return fullStack;
+    }
+
+    public static Label readLabel(JsonReader in) throws IOException {
+        Label label = new Label();
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "id":
+                    label.setId(in.nextLong());
+                    break;
+                case "title":
+                    label.setTitle(nextNullAsEmptyString(in));
+                    break;
+                case "color":
+                    label.setColor(nextNullAsEmptyString(in));
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return label;
+    }
+
+    /**
+     * Owners and participants are sometimes sent as plain user id instead of an object, those are skipped.
+     */
+    private static User nextUserOrSkip(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.BEGIN_OBJECT) {
+            return readUser(in);
+        }
+        in.skipValue();
+        return null;
+    }
+
+    private static String nextNullAsEmptyString(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return "";
+        }
+        return in.nextString();
+    }
+
+    private static String nextString(JsonReader in) throws IOException {
+        return in.peek() == JsonToken.NULL ? nextNull(in) : in.nextString();
+    }
+
+    private static Date nextTimestampFromLong(JsonReader in) throws IOException {
+        return in.peek() == JsonToken.NULL ? nextNull(in) : DateCodec.fromEpochSeconds(in.nextLong());
+    }
+
+    private static <T> T nextNull(JsonReader in) throws IOException {
+        in.nextNull();
+        return null;
+    }
+}
@@ -0,0 +1,111 @@
+package it.niedermann.nextcloud.deck.api;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import it.niedermann.nextcloud.deck.persistence.sync.helpers.SyncTracer;
+
+/**
+ * Reads registered entities and lists of them with a {@link StreamingEntityParser.EntityReader}.
+ * Writing is left to the adapter Gson would have used otherwise.
+ */
+public class StreamingTypeAdapterFactory implements TypeAdapterFactory {
+
+    private final Map<Class<?>, Registration<?>> registrations = new HashMap<>();
+
+    /**
+     * Registers <code>reader</code> for <code>type</code> and for <code>List&lt;type&gt;</code>.
+     *
+     * @param traceLevel parsing time is reported to the {@link SyncTracer} with this level
+     */
+    public <T> StreamingTypeAdapterFactory register(Class<T> type, String traceLevel, StreamingEntityParser.EntityReader<T> reader) {
+        registrations.put(type, new Registration<>(traceLevel, reader));
+        return this;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> typeToken) {
+        Registration<?> registration = registrations.get(typeToken.getRawType());
+        if (registration != null) {
+            return new StreamingTypeAdapter<>(gson, this, typeToken, registration.traceLevel, (StreamingEntityParser.EntityReader<T>) registration.reader);
+        }
+        if (typeToken.getRawType() == List.class && typeToken.getType() instanceof ParameterizedType) {
+            Type elementType = ((ParameterizedType) typeToken.getType()).getActualTypeArguments()[0];
+            Registration<?> elementRegistration = elementType instanceof Class ? registrations.get(elementType) : null;
+            if (elementRegistration != null) {
+                return (TypeAdapter<T>) createListAdapter(gson, (TypeToken<List<Object>>) typeToken, (Registration<Object>) elementRegistration);
+            }
+        }
+        return null;
+    }
+
+    private <E> TypeAdapter<List<E>> createListAdapter(Gson gson, TypeToken<List<E>> typeToken, Registration<E> elementRegistration) {
+        return new StreamingTypeAdapter<>(gson, this, typeToken, elementRegistration.traceLevel,
+                in -> StreamingEntityParser.readList(in, elementRegistration.reader));
+    }
+
+    private static class Registration<T> {
+        private final String traceLevel;
+        private final StreamingEntityParser.EntityReader<T> reader;
+
+        Registration(String traceLevel, StreamingEntityParser.EntityReader<T> reader) {
+            this.traceLevel = traceLevel;
+            this.reader = reader;
+        }
+    }
+
+    private static class StreamingTypeAdapter<T> extends TypeAdapter<T> {
+        private final Gson gson;
+        private final TypeAdapterFactory skipPast;
+        private final TypeToken<T> typeToken;
+        private final String traceLevel;
+        private final StreamingEntityParser.EntityReader<T> reader;
+        private volatile TypeAdapter<T> delegate;
+
+        StreamingTypeAdapter(Gson gson, TypeAdapterFactory skipPast, TypeToken<T> typeToken, String traceLevel, StreamingEntityParser.EntityReader<T> reader) {
+            this.gson = gson;
+            this.skipPast = skipPast;
+            this.typeToken = typeToken;
+            this.traceLevel = traceLevel;
+            this.reader = reader;
+        }
+
+        /**
+         * Most registered types are never written, so the delegate is only looked up on demand.
+         */
+        @Override
+        public void write(JsonWriter out, T value) throws IOException {
+            TypeAdapter<T> writer = delegate;
+            if (writer == null) {
+                writer = gson.getDelegateAdapter(skipPast, typeToken);
+                delegate = writer;
+            }
+            writer.write(out, value);
+        }
+
+        @Override
+        public T read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            long start = System.nanoTime();
+            T entity = reader.read(in);
+            SyncTracer.getInstance().parsed(traceLevel, System.nanoTime() - start);
+            return entity;
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package it.niedermann.nextcloud.deck.exceptions;
+
+public class CircuitOpenException extends IllegalStateException {
+    public CircuitOpenException(String serverUrl) {
+        super("Server " + serverUrl + " failed repeatedly, requests are paused for a while.");
+    }
+}
@@ -0,0 +1,24 @@
+package it.niedermann.nextcloud.deck.exceptions;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Collects all errors which occurred during one synchronization.
+ * The first error is used as cause.
+ */
+public class SyncException extends RuntimeException {
+
+    private final List<Throwable> errors;
+
+    public SyncException(Collection<Throwable> errors) {
+        super(errors.size() + " error(s) occurred during synchronization", errors.isEmpty() ? null : errors.iterator().next());
+        this.errors = Collections.unmodifiableList(new ArrayList<>(errors));
+    }
+
+    public List<Throwable> getErrors() {
+        return errors;
+    }
+}
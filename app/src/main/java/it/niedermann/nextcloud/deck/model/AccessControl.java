@@ -2,11 +2,10 @@ package it.niedermann.nextcloud.deck.model;
 
 import androidx.room.Entity;
 import androidx.room.Ignore;
-import androidx.room.Index;
 
 import it.niedermann.nextcloud.deck.model.interfaces.AbstractRemoteEntity;
 
-@Entity(inheritSuperIndices = true, indices = {@Index(value = "accountId", name = "acl_acc")})
+@Entity(inheritSuperIndices = true)
 public class AccessControl extends AbstractRemoteEntity {
 
     private Long type;
@@ -1,12 +1,13 @@
 package it.niedermann.nextcloud.deck.model;
 
 import androidx.room.Entity;
+import androidx.room.Index;
 
 import java.util.Date;
 
 import it.niedermann.nextcloud.deck.model.interfaces.AbstractRemoteEntity;
 
-@Entity(inheritSuperIndices = true)
+@Entity(inheritSuperIndices = true, indices = {@Index("cardId")})
 public class Attachment extends AbstractRemoteEntity {
 
     private long cardId;
@@ -10,7 +10,11 @@ import it.niedermann.nextcloud.deck.model.interfaces.AbstractRemoteEntity;
 
 @Entity(
         inheritSuperIndices = true,
-        indices = {@Index("ownerId")},
+        indices = {
+                @Index("ownerId"),
+                // boards of an account by title, without sorting
+                @Index(value = {"accountId", "deletedAt", "title"})
+        },
         foreignKeys = {@ForeignKey(entity = User.class, parentColumns = "localId", childColumns = "ownerId")}
 )
 public class Board extends AbstractRemoteEntity {
@@ -9,7 +9,10 @@ import java.util.Date;
 import it.niedermann.nextcloud.deck.model.enums.DBStatus;
 import it.niedermann.nextcloud.deck.model.interfaces.AbstractRemoteEntity;
 
-@Entity(inheritSuperIndices = true, indices = {@Index(value = "accountId", name = "card_acc")})
+@Entity(inheritSuperIndices = true, indices = {
+        // cards of a stack in display order, without sorting
+        @Index(value = {"accountId", "stackId", "order", "createdAt"})
+})
 public class Card extends AbstractRemoteEntity {
 
     private String title;
@@ -8,7 +8,12 @@ import it.niedermann.nextcloud.deck.model.interfaces.AbstractJoinEntity;
 
 @Entity(
         primaryKeys = {"labelId", "cardId"},
-        indices = {@Index("cardId"), @Index("labelId")},
+        indices = {
+                // covers reading the joins of many cards ordered by card, the table is never touched
+                @Index(value = {"cardId", "labelId", "status"}),
+                @Index("labelId"),
+                @Index("status")
+        },
         foreignKeys = {
                 @ForeignKey(entity = Label.class,
                         parentColumns = "localId",
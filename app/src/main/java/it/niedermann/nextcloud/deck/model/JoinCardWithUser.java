@@ -8,7 +8,12 @@ import it.niedermann.nextcloud.deck.model.interfaces.AbstractJoinEntity;
 
 @Entity(
         primaryKeys = {"userId", "cardId"},
-        indices = {@Index("cardId"), @Index("userId")},
+        indices = {
+                // covers reading the joins of many cards ordered by card, the table is never touched
+                @Index(value = {"cardId", "userId", "status"}),
+                @Index("userId"),
+                @Index("status")
+        },
         foreignKeys = {
                 @ForeignKey(entity = User.class,
                         parentColumns = "localId",
@@ -1,10 +1,14 @@
 package it.niedermann.nextcloud.deck.model;
 
 import androidx.room.Entity;
+import androidx.room.Index;
 
 import it.niedermann.nextcloud.deck.model.interfaces.AbstractRemoteEntity;
 
-@Entity(inheritSuperIndices = true)
+@Entity(inheritSuperIndices = true, indices = {
+        // labels of a board, e.g. while searching them by title
+        @Index(value = {"accountId", "boardId", "title"})
+})
 public class Label extends AbstractRemoteEntity {
     private String title;
     private String color;
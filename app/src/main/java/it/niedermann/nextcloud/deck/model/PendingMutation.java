@@ -0,0 +1,123 @@
+package it.niedermann.nextcloud.deck.model;
+
+import java.util.Date;
+
+import androidx.room.Entity;
+import androidx.room.Ignore;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+import it.niedermann.nextcloud.deck.model.enums.MutationType;
+
+/**
+ * A local change which still has to be sent to the server. Entries are sent in the order of their localId.
+ * Only references are stored, the payload (e.g. the card itself) is read from the database when sending.
+ */
+@Entity(indices = {@Index("accountId"), @Index("localCardId")})
+public class PendingMutation {
+
+    @PrimaryKey(autoGenerate = true)
+    private Long localId;
+    private long accountId;
+    private int type;
+    private long localCardId;
+    private Long localLabelId;
+    private Long localUserId;
+    private Date createdAt;
+
+    public PendingMutation() {
+    }
+
+    @Ignore
+    public PendingMutation(long accountId, MutationType type, long localCardId, Long localLabelId, Long localUserId) {
+        this.accountId = accountId;
+        this.type = type.getId();
+        this.localCardId = localCardId;
+        this.localLabelId = localLabelId;
+        this.localUserId = localUserId;
+        this.createdAt = new Date();
+    }
+
+    public static PendingMutation updateCard(long accountId, long localCardId) {
+        return new PendingMutation(accountId, MutationType.UPDATE_CARD, localCardId, null, null);
+    }
+
+    public static PendingMutation label(long accountId, MutationType type, long localCardId, long localLabelId) {
+        return new PendingMutation(accountId, type, localCardId, localLabelId, null);
+    }
+
+    public static PendingMutation user(long accountId, MutationType type, long localCardId, long localUserId) {
+        return new PendingMutation(accountId, type, localCardId, null, localUserId);
+    }
+
+    public Long getLocalId() {
+        return localId;
+    }
+
+    public void setLocalId(Long localId) {
+        this.localId = localId;
+    }
+
+    public long getAccountId() {
+        return accountId;
+    }
+
+    public void setAccountId(long accountId) {
+        this.accountId = accountId;
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    public void setType(int type) {
+        this.type = type;
+    }
+
+    public MutationType getTypeEnum() {
+        return MutationType.findById(type);
+    }
+
+    public long getLocalCardId() {
+        return localCardId;
+    }
+
+    public void setLocalCardId(long localCardId) {
+        this.localCardId = localCardId;
+    }
+
+    public Long getLocalLabelId() {
+        return localLabelId;
+    }
+
+    public void setLocalLabelId(Long localLabelId) {
+        this.localLabelId = localLabelId;
+    }
+
+    public Long getLocalUserId() {
+        return localUserId;
+    }
+
+    public void setLocalUserId(Long localUserId) {
+        this.localUserId = localUserId;
+    }
+
+    public Date getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Date createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    @Override
+    public String toString() {
+        return "PendingMutation{" +
+                "localId=" + localId +
+                ", accountId=" + accountId +
+                ", type=" + getTypeEnum() +
+                ", localCardId=" + localCardId +
+                ", localLabelId=" + localLabelId +
+                ", localUserId=" + localUserId +
+                '}';
+    }
+}
@@ -0,0 +1,74 @@
+package it.niedermann.nextcloud.deck.model;
+
+import java.util.Date;
+
+import androidx.room.Entity;
+import androidx.room.Ignore;
+
+/**
+ * Point in time up to which a scope has been synchronized completely.
+ * The scope is either the whole account, one board (stackId = {@link #ALL}) or one stack.
+ * Board and stack IDs are the remote ones.
+ */
+@Entity(primaryKeys = {"accountId", "boardId", "stackId"})
+public class SyncCursor {
+
+    public static final long ALL = 0L;
+
+    private long accountId;
+    private long boardId;
+    private long stackId;
+    private Date lastSync;
+
+    public SyncCursor() {
+    }
+
+    @Ignore
+    public SyncCursor(long accountId, long boardId, long stackId) {
+        this.accountId = accountId;
+        this.boardId = boardId;
+        this.stackId = stackId;
+    }
+
+    public long getAccountId() {
+        return accountId;
+    }
+
+    public void setAccountId(long accountId) {
+        this.accountId = accountId;
+    }
+
+    public long getBoardId() {
+        return boardId;
+    }
+
+    public void setBoardId(long boardId) {
+        this.boardId = boardId;
+    }
+
+    public long getStackId() {
+        return stackId;
+    }
+
+    public void setStackId(long stackId) {
+        this.stackId = stackId;
+    }
+
+    public Date getLastSync() {
+        return lastSync;
+    }
+
+    public void setLastSync(Date lastSync) {
+        this.lastSync = lastSync;
+    }
+
+    @Override
+    public String toString() {
+        return "SyncCursor{" +
+                "accountId=" + accountId +
+                ", boardId=" + boardId +
+                ", stackId=" + stackId +
+                ", lastSync=" + lastSync +
+                '}';
+    }
+}
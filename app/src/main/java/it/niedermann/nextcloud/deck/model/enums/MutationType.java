@@ -0,0 +1,50 @@
+package it.niedermann.nextcloud.deck.model.enums;
+
+/**
+ * Kinds of local changes which are waiting in the outbox to be sent to the server.
+ */
+public enum MutationType {
+
+    UPDATE_CARD(1),
+    ASSIGN_LABEL(2),
+    UNASSIGN_LABEL(3),
+    ASSIGN_USER(4),
+    UNASSIGN_USER(5);
+
+    private final int id;
+
+    public int getId() {
+        return id;
+    }
+
+    MutationType(int id) {
+        this.id = id;
+    }
+
+    /**
+     * @return the mutation which cancels this one out, <code>null</code> if there is none
+     */
+    public MutationType getOpposite() {
+        switch (this) {
+            case ASSIGN_LABEL:
+                return UNASSIGN_LABEL;
+            case UNASSIGN_LABEL:
+                return ASSIGN_LABEL;
+            case ASSIGN_USER:
+                return UNASSIGN_USER;
+            case UNASSIGN_USER:
+                return ASSIGN_USER;
+            default:
+                return null;
+        }
+    }
+
+    public static MutationType findById(int id) {
+        for (MutationType s : MutationType.values()) {
+            if (s.getId() == id) {
+                return s;
+            }
+        }
+        throw new IllegalArgumentException("unknown MutationType key");
+    }
+}
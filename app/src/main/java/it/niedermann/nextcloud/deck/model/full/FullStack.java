@@ -17,6 +17,12 @@ public class FullStack implements IRemoteEntity {
     @Relation(entity =  Card.class, parentColumn = "localId", entityColumn = "stackId")
     public List<Card> cards;
 
+    /**
+     * The cards as delivered by the server along with the stack, including their labels and assigned users.
+     * Not persisted, only used while synchronizing.
+     */
+    @Ignore
+    public List<FullCard> embeddedCards;
 
     public Stack getStack() {
         return stack;
@@ -34,6 +40,14 @@ public class FullStack implements IRemoteEntity {
         this.cards = cards;
     }
 
+    public List<FullCard> getEmbeddedCards() {
+        return embeddedCards;
+    }
+
+    public void setEmbeddedCards(List<FullCard> embeddedCards) {
+        this.embeddedCards = embeddedCards;
+    }
+
     @Ignore
     @Override
     public IRemoteEntity getEntity() {
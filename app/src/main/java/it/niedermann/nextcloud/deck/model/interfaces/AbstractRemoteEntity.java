@@ -15,6 +15,8 @@ import it.niedermann.nextcloud.deck.model.enums.DBStatus;
                 @Index("accountId"),
                 @Index("id"),
                 @Index("lastModifiedLocal"),
+                // dirty flag: finding local changes is a lookup of status IN (LOCAL_EDITED, LOCAL_DELETED)
+                @Index(value = {"accountId", "status"}),
                 @Index(value = {"accountId", "id"}, unique = true)
         })
 public abstract class AbstractRemoteEntity implements IRemoteEntity {
@@ -0,0 +1,141 @@
+package it.niedermann.nextcloud.deck.persistence.sync;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+import it.niedermann.nextcloud.deck.DeckLog;
+import it.niedermann.nextcloud.deck.api.IResponseCallback;
+import it.niedermann.nextcloud.deck.model.Account;
+
+/**
+ * Makes sure there is at most one synchronization per account at a time.
+ * Everyone who asks for a synchronization while one is running joins it and gets its result.
+ */
+public class SyncCoordinator {
+
+    public enum SyncState {
+        IDLE,
+        SYNCHRONIZING,
+        FAILED
+    }
+
+    public interface SyncRunner {
+        /**
+         * Performs one synchronization and reports its result exactly once to the given callback.
+         */
+        void run(IResponseCallback<Boolean> callback);
+    }
+
+    private static volatile SyncCoordinator instance;
+
+    private final Map<Long, List<IResponseCallback<Boolean>>> runningSyncs = new HashMap<>();
+    private final Map<Long, Long> lastSuccessfulSync = new HashMap<>();
+    private final Map<Long, MutableLiveData<SyncState>> syncStates = new HashMap<>();
+    private long minIntervalMillis = 0;
+
+    private SyncCoordinator() {
+    }
+
+    public static SyncCoordinator getInstance() {
+        if (instance == null) {
+            synchronized (SyncCoordinator.class) {
+                if (instance == null) {
+                    instance = new SyncCoordinator();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * @param minIntervalMillis requests within this time after a successful synchronization of the same account
+     *                          are answered with <code>false</code> (nothing changed) without synchronizing again. 0 to disable.
+     */
+    public synchronized void setMinIntervalMillis(long minIntervalMillis) {
+        if (minIntervalMillis < 0) {
+            throw new IllegalArgumentException("minIntervalMillis must not be negative, got " + minIntervalMillis);
+        }
+        this.minIntervalMillis = minIntervalMillis;
+    }
+
+    public synchronized LiveData<SyncState> getSyncState(long accountId) {
+        return getOrCreateSyncState(accountId);
+    }
+
+    private MutableLiveData<SyncState> getOrCreateSyncState(long accountId) {
+        MutableLiveData<SyncState> state = syncStates.get(accountId);
+        if (state == null) {
+            state = new MutableLiveData<>();
+            state.postValue(SyncState.IDLE);
+            syncStates.put(accountId, state);
+        }
+        return state;
+    }
+
+    /**
+     * Starts a synchronization with <code>runner</code>, or joins the one which is already running for the account of <code>callback</code>.
+     */
+    public void synchronize(IResponseCallback<Boolean> callback, SyncRunner runner) {
+        final Account account = callback.getAccount();
+        if (account == null || account.getId() == null) {
+            throw new IllegalArgumentException("Bro. Please just give me a damn Account!");
+        }
+        final long accountId = account.getId();
+        final boolean skip;
+        synchronized (this) {
+            List<IResponseCallback<Boolean>> waiting = runningSyncs.get(accountId);
+            if (waiting != null) {
+                DeckLog.debug(() -> "Synchronization for account " + accountId + " is already running, joining it");
+                waiting.add(callback);
+                return;
+            }
+            Long lastSuccess = lastSuccessfulSync.get(accountId);
+            skip = lastSuccess != null && System.currentTimeMillis() - lastSuccess < minIntervalMillis;
+            if (!skip) {
+                waiting = new ArrayList<>();
+                waiting.add(callback);
+                runningSyncs.put(accountId, waiting);
+                getOrCreateSyncState(accountId).postValue(SyncState.SYNCHRONIZING);
+            }
+        }
+        if (skip) {
+            DeckLog.debug(() -> "Account " + accountId + " has just been synchronized, skipping");
+            callback.onResponse(false);
+            return;
+        }
+
+        IResponseCallback<Boolean> runCallback = new IResponseCallback<Boolean>(account) {
+            @Override
+            public void onResponse(Boolean response) {
+                for (IResponseCallback<Boolean> waitingCallback : finish(accountId, true)) {
+                    waitingCallback.onResponse(response);
+                }
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                for (IResponseCallback<Boolean> waitingCallback : finish(accountId, false)) {
+                    waitingCallback.onError(throwable);
+                }
+            }
+        };
+        try {
+            runner.run(runCallback);
+        } catch (RuntimeException e) {
+            runCallback.onError(e);
+        }
+    }
+
+    private synchronized List<IResponseCallback<Boolean>> finish(long accountId, boolean success) {
+        List<IResponseCallback<Boolean>> waiting = runningSyncs.remove(accountId);
+        if (success) {
+            lastSuccessfulSync.put(accountId, System.currentTimeMillis());
+        }
+        getOrCreateSyncState(accountId).postValue(success ? SyncState.IDLE : SyncState.FAILED);
+        return waiting == null ? new ArrayList<>() : waiting;
+    }
+}
@@ -2,27 +2,36 @@ package it.niedermann.nextcloud.deck.persistence.sync;
 
 import android.app.Activity;
 import android.content.Context;
-import android.content.SharedPreferences;
 
 import com.nextcloud.android.sso.exceptions.NextcloudFilesAppAccountNotFoundException;
 import com.nextcloud.android.sso.exceptions.NoCurrentAccountSelectedException;
 
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
-import it.niedermann.nextcloud.deck.DeckConsts;
-import it.niedermann.nextcloud.deck.R;
+import androidx.paging.PagedList;
+import it.niedermann.nextcloud.deck.DeckLog;
+import it.niedermann.nextcloud.deck.api.CircuitBreaker;
+import it.niedermann.nextcloud.deck.api.ConnectivityMonitor;
+import it.niedermann.nextcloud.deck.api.DirectCredentials;
 import it.niedermann.nextcloud.deck.api.IResponseCallback;
+import it.niedermann.nextcloud.deck.exceptions.CircuitOpenException;
+import it.niedermann.nextcloud.deck.exceptions.OfflineException;
 import it.niedermann.nextcloud.deck.model.AccessControl;
 import it.niedermann.nextcloud.deck.model.Account;
 import it.niedermann.nextcloud.deck.model.Board;
 import it.niedermann.nextcloud.deck.model.Card;
 import it.niedermann.nextcloud.deck.model.Label;
+import it.niedermann.nextcloud.deck.model.PendingMutation;
 import it.niedermann.nextcloud.deck.model.Stack;
+import it.niedermann.nextcloud.deck.model.SyncCursor;
 import it.niedermann.nextcloud.deck.model.User;
 import it.niedermann.nextcloud.deck.model.enums.DBStatus;
+import it.niedermann.nextcloud.deck.model.enums.MutationType;
 import it.niedermann.nextcloud.deck.model.full.FullBoard;
 import it.niedermann.nextcloud.deck.model.full.FullCard;
 import it.niedermann.nextcloud.deck.model.full.FullStack;
@@ -30,16 +39,24 @@ import it.niedermann.nextcloud.deck.persistence.sync.adapters.ServerAdapter;
 import it.niedermann.nextcloud.deck.persistence.sync.adapters.db.DataBaseAdapter;
 import it.niedermann.nextcloud.deck.persistence.sync.adapters.db.util.WrappedLiveData;
 import it.niedermann.nextcloud.deck.persistence.sync.helpers.DataPropagationHelper;
+import it.niedermann.nextcloud.deck.persistence.sync.helpers.OpenBoards;
+import it.niedermann.nextcloud.deck.persistence.sync.helpers.OutboxHelper;
 import it.niedermann.nextcloud.deck.persistence.sync.helpers.SyncHelper;
+import it.niedermann.nextcloud.deck.persistence.sync.helpers.SyncTrace;
+import it.niedermann.nextcloud.deck.persistence.sync.helpers.SyncTracer;
 import it.niedermann.nextcloud.deck.persistence.sync.helpers.providers.BoardDataProvider;
 import it.niedermann.nextcloud.deck.persistence.sync.helpers.providers.StackDataProvider;
-import it.niedermann.nextcloud.deck.util.DateUtil;
+import it.niedermann.nextcloud.deck.util.concurrent.DeckExecutors;
 
 public class SyncManager {
 
+    public static final int SEARCH_PAGE_SIZE = 50;
+
+    private static volatile boolean flushingOnReconnect = false;
 
     private DataBaseAdapter dataBaseAdapter;
     private ServerAdapter serverAdapter;
+    private OutboxHelper outboxHelper;
     private Context applicationContext;
     private Activity sourceActivity;
 
@@ -48,19 +65,131 @@ public class SyncManager {
         this.sourceActivity = sourceActivity;
         dataBaseAdapter = new DataBaseAdapter(this.applicationContext);
         this.serverAdapter = new ServerAdapter(this.applicationContext, sourceActivity);
+        this.outboxHelper = new OutboxHelper(serverAdapter, dataBaseAdapter);
+        flushOutboxesOnReconnect(this.applicationContext);
+    }
+
+    /**
+     * Sends what has been changed while offline as soon as the device is connected again, for all accounts and no matter which screen is open.
+     * Registered once per application. Each account is flushed through a server adapter bound to it,
+     * so its changes don't go to the server of whichever account is currently selected.
+     */
+    private static void flushOutboxesOnReconnect(Context applicationContext) {
+        if (flushingOnReconnect) {
+            return;
+        }
+        synchronized (SyncManager.class) {
+            if (flushingOnReconnect) {
+                return;
+            }
+            flushingOnReconnect = true;
+        }
+        final DataBaseAdapter dataBaseAdapter = new DataBaseAdapter(applicationContext);
+        final Map<Long, OutboxHelper> outboxHelpers = new HashMap<>();
+        ConnectivityMonitor.getInstance(applicationContext).addListener((previous, current) -> {
+            if (previous.isConnected() || !current.isConnected()) {
+                return;
+            }
+            DeckExecutors.getInstance().disk().execute(() -> {
+                for (Account account : dataBaseAdapter.getAllAccountsDirectly()) {
+                    OutboxHelper outboxHelper;
+                    synchronized (outboxHelpers) {
+                        outboxHelper = outboxHelpers.get(account.getId());
+                        if (outboxHelper == null) {
+                            outboxHelper = new OutboxHelper(new ServerAdapter(applicationContext, null, account.getName()), dataBaseAdapter);
+                            outboxHelpers.put(account.getId(), outboxHelper);
+                        }
+                    }
+                    outboxHelper.flush(account, new IResponseCallback<Boolean>(account) {
+                        @Override
+                        public void onResponse(Boolean response) {
+                            DeckLog.info(() -> "Flushed the outbox of account " + account.getId() + " after reconnecting, sent anything: " + response);
+                        }
+                    });
+                }
+            });
+        });
     }
 
     private void doAsync(Runnable r) {
-        new Thread(r).start();
+        DeckExecutors.getInstance().disk().execute(r);
     }
 
+    /**
+     * Synchronizes the account of <code>responseCallback</code>. If it is already being synchronized, the caller joins that run.
+     */
     public void synchronize(IResponseCallback<Boolean> responseCallback) {
+        if (!serverAdapter.hasInternetConnection()) {
+            responseCallback.onError(new OfflineException());
+            return;
+        }
+        Account account = responseCallback.getAccount();
+        if (account != null && account.getUrl() != null
+                && CircuitBreaker.forServer(account.getUrl()).getState() == CircuitBreaker.State.OPEN) {
+            // no need to start a synchronization which would fail on its first request
+            responseCallback.onError(new CircuitOpenException(account.getUrl()));
+            return;
+        }
+        SyncCoordinator.getInstance().synchronize(responseCallback, this::doSynchronize);
+    }
+
+    public LiveData<SyncCoordinator.SyncState> getSyncState(long accountId) {
+        return SyncCoordinator.getInstance().getSyncState(accountId);
+    }
+
+    /**
+     * Pending local changes are sent as soon as this changes to connected, changes on the server only with the next synchronization.
+     */
+    public LiveData<ConnectivityMonitor.NetworkState> getNetworkState() {
+        return ConnectivityMonitor.getInstance(applicationContext).getLiveState();
+    }
+
+    /**
+     * @return whether requests are currently sent to the server of the account, see {@link CircuitBreaker}
+     */
+    public LiveData<CircuitBreaker.State> getServerState(Account account) {
+        return CircuitBreaker.forServer(account.getUrl()).getLiveState();
+    }
+
+    /**
+     * Lets the account talk to its server directly, authenticated with an app password, instead of via the single sign on bridge.
+     */
+    public void useDirectTransport(Account account, DirectCredentials credentials) {
+        DirectCredentials.save(applicationContext, account.getName(), credentials);
+        serverAdapter.resetApi();
+    }
+
+    public void useSingleSignOn(Account account) {
+        DirectCredentials.remove(applicationContext, account.getName());
+        serverAdapter.resetApi();
+    }
+
+    /**
+     * @return the trace of the last finished synchronization of this account, to tell where a slow one spent its time
+     */
+    public LiveData<SyncTrace> getSyncReport(long accountId) {
+        return SyncTracer.getInstance().getLastReport(accountId);
+    }
+
+    private void doSynchronize(IResponseCallback<Boolean> syncCallback) {
+        final SyncTrace trace = SyncTracer.getInstance().begin(syncCallback.getAccount().getId());
+        final IResponseCallback<Boolean> responseCallback = new IResponseCallback<Boolean>(syncCallback.getAccount()) {
+            @Override
+            public void onResponse(Boolean response) {
+                SyncTracer.getInstance().finish(trace, true);
+                DeckLog.debug(() -> "Synchronization trace: " + trace.toJson());
+                syncCallback.onResponse(response);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                SyncTracer.getInstance().finish(trace, false);
+                DeckLog.debug(() -> "Synchronization trace: " + trace.toJson());
+                syncCallback.onError(throwable);
+            }
+        };
         doAsync(() -> {
-            SharedPreferences lastSyncPref = applicationContext.getSharedPreferences(
-                    applicationContext.getString(R.string.shared_preference_last_sync), Context.MODE_PRIVATE);
-            long lastSync = lastSyncPref.getLong(DeckConsts.LAST_SYNC_KEY, 0L);
-            Date lastSyncDate = new Date(lastSync);
-            Date now = DateUtil.nowInGMT();
+            Date lastSyncDate = dataBaseAdapter.getLastSyncDirectly(responseCallback.getAccount().getId(), SyncCursor.ALL, SyncCursor.ALL);
 
             final SyncHelper syncHelper = new SyncHelper(serverAdapter, dataBaseAdapter, lastSyncDate);
 
@@ -70,8 +199,8 @@ public class SyncManager {
                     syncHelper.setResponseCallback(new IResponseCallback<Boolean>(account) {
                         @Override
                         public void onResponse(Boolean response) {
-                            // TODO deactivate for dev
-                            lastSyncPref.edit().putLong(DeckConsts.LAST_SYNC_KEY, now.getTime()).apply();
+                            DeckLog.info(() -> "Synchronization finished: " + syncHelper.getStatistics());
+                            DeckLog.debug(() -> "Database writes so far: " + dataBaseAdapter.getWriteStats());
                             responseCallback.onResponse(response);
                         }
                         @Override
@@ -90,9 +219,25 @@ public class SyncManager {
                 }
             };
 
-            syncHelper.setResponseCallback(callback);
+            // local changes go out first, otherwise they would conflict with what comes from the server
+            outboxHelper.adoptLocallyChangedJoins(responseCallback.getAccount().getId());
+            outboxHelper.flush(responseCallback.getAccount(), new IResponseCallback<Boolean>(responseCallback.getAccount()) {
+                @Override
+                public void onResponse(Boolean response) {
+                    // errors are delivered on the UI thread
+                    doAsync(() -> {
+                        syncHelper.setResponseCallback(callback);
+                        syncHelper.doSyncFor(new BoardDataProvider(BoardDataProvider.SyncMode.INDEX_FIRST, dataBaseAdapter));
+                    });
+                }
 
-            syncHelper.doSyncFor(new BoardDataProvider());
+                @Override
+                public void onError(Throwable throwable) {
+                    super.onError(throwable);
+                    // pending changes stay in the outbox, fetching can still work
+                    onResponse(false);
+                }
+            });
         });
     }
 
@@ -188,6 +333,13 @@ public class SyncManager {
         dataBaseAdapter.updateBoard(board, true);
     }
 
+    /**
+     * The stacks of the opened board get synchronized even if the board itself did not change.
+     */
+    public void setOpenBoard(long accountId, long localBoardId) {
+        OpenBoards.getInstance().open(accountId, localBoardId);
+    }
+
     public LiveData<List<FullStack>> getStacksForBoard(long accountId, long localBoardId) {
         return dataBaseAdapter.getStacks(accountId, localBoardId);
     }
@@ -248,13 +400,13 @@ public class SyncManager {
         return dataBaseAdapter.getCardByLocalId(accountId, cardLocalId);
     }
 
-    public LiveData<List<FullCard>> getFullCardsForStack(long accountId, long localStackId) {
-
+    public LiveData<PagedList<FullCard>> getFullCardsForStack(long accountId, long localStackId) {
         return dataBaseAdapter.getFullCardsForStack(accountId, localStackId);
     }
 
     public long createCard(long accountId, Card card) {
-        //TODO: Tell the server
+        // gets uploaded with the next synchronization
+        card.setStatusEnum(DBStatus.LOCAL_EDITED);
         return dataBaseAdapter.createCard(accountId, card);
     }
 
@@ -264,17 +416,19 @@ public class SyncManager {
     }
 
     public void updateCard(Card card) {
-        //TODO: Tell the server
         doAsync(()->{
             Card existingCard = dataBaseAdapter.getCardByRemoteIdDirectly(card.getAccountId(), card.getId());
             if (!existingCard.equals(card)){
-                dataBaseAdapter.updateCard(card, true);
+                outboxHelper.enqueue(PendingMutation.updateCard(card.getAccountId(), card.getLocalId()),
+                        cancelledOut -> dataBaseAdapter.updateCard(card, true));
+                flushOutbox(card.getAccountId());
             }
         });
     }
 
     public long createLabel(long accountId, Label label) {
-        //TODO: Tell the server
+        // gets uploaded with the next synchronization
+        label.setStatusEnum(DBStatus.LOCAL_EDITED);
         return dataBaseAdapter.createLabel(accountId, label);
     }
 
@@ -297,17 +451,9 @@ public class SyncManager {
         doAsync(() -> {
             final long localUserId = user.getLocalId();
             final long localCardId = card.getLocalId();
-            dataBaseAdapter.createJoinCardWithUser(localUserId, localCardId, DBStatus.LOCAL_EDITED);
-            Stack stack = dataBaseAdapter.getStackByLocalIdDirectly(card.getStackId());
-            Board board = dataBaseAdapter.getBoardByLocalIdDirectly(stack.getBoardId());
-            Account account = dataBaseAdapter.getAccountByIdDirectly(card.getAccountId());
-            serverAdapter.assignUserToCard(board.getId(), stack.getId(), card.getId(), user.getUid(), new IResponseCallback<Void>(account){
-
-                @Override
-                public void onResponse(Void response) {
-                    dataBaseAdapter.setStatusForJoinCardWithUser(localCardId, localUserId, DBStatus.UP_TO_DATE.getId());
-                }
-            });
+            outboxHelper.enqueue(PendingMutation.user(card.getAccountId(), MutationType.ASSIGN_USER, localCardId, localUserId),
+                    cancelledOut -> dataBaseAdapter.createJoinCardWithUser(localUserId, localCardId, cancelledOut ? DBStatus.UP_TO_DATE : DBStatus.LOCAL_EDITED));
+            flushOutbox(card.getAccountId());
         });
     }
 
@@ -315,49 +461,56 @@ public class SyncManager {
         doAsync(() -> {
             final long localLabelId = label.getLocalId();
             final long localCardId = card.getLocalId();
-            dataBaseAdapter.createJoinCardWithLabel(localLabelId, localCardId, DBStatus.LOCAL_EDITED);
-            Stack stack = dataBaseAdapter.getStackByLocalIdDirectly(card.getStackId());
-            Board board = dataBaseAdapter.getBoardByLocalIdDirectly(stack.getBoardId());
-            Account account = dataBaseAdapter.getAccountByIdDirectly(card.getAccountId());
-            serverAdapter.assignLabelToCard(board.getId(), stack.getId(), card.getId(), label.getId(), new IResponseCallback<Void>(account){
-
-                @Override
-                public void onResponse(Void response) {
-                    dataBaseAdapter.setStatusForJoinCardWithLabel(localCardId, localLabelId, DBStatus.UP_TO_DATE.getId());
-                }
-            });
+            outboxHelper.enqueue(PendingMutation.label(card.getAccountId(), MutationType.ASSIGN_LABEL, localCardId, localLabelId),
+                    cancelledOut -> dataBaseAdapter.createJoinCardWithLabel(localLabelId, localCardId, cancelledOut ? DBStatus.UP_TO_DATE : DBStatus.LOCAL_EDITED));
+            flushOutbox(card.getAccountId());
         });
     }
 
     public void unassignLabelFromCard(Label label, Card card) {
         doAsync(() -> {
-            dataBaseAdapter.deleteJoinedLabelForCard(card.getLocalId(), label.getLocalId());
-            Stack stack = dataBaseAdapter.getStackByLocalIdDirectly(card.getStackId());
-            Board board = dataBaseAdapter.getBoardByLocalIdDirectly(stack.getBoardId());
-            Account account = dataBaseAdapter.getAccountByIdDirectly(card.getAccountId());
-            serverAdapter.unassignLabelFromCard(board.getId(), stack.getId(), card.getId(), label.getId(), new IResponseCallback<Void>(account){
-
-                @Override
-                public void onResponse(Void response) {
-                    dataBaseAdapter.deleteJoinedLabelForCardPhysically(card.getLocalId(), label.getLocalId());
+            final long localLabelId = label.getLocalId();
+            final long localCardId = card.getLocalId();
+            outboxHelper.enqueue(PendingMutation.label(card.getAccountId(), MutationType.UNASSIGN_LABEL, localCardId, localLabelId), cancelledOut -> {
+                if (cancelledOut) {
+                    // the assignment never reached the server
+                    dataBaseAdapter.deleteJoinedLabelForCardPhysically(localCardId, localLabelId);
+                } else {
+                    dataBaseAdapter.deleteJoinedLabelForCard(localCardId, localLabelId);
                 }
             });
+            flushOutbox(card.getAccountId());
         });
     }
 
     public void unassignUserFromCard(User user, Card card) {
         doAsync(() -> {
-            dataBaseAdapter.deleteJoinedUserForCard(card.getLocalId(), user.getLocalId());
-            Stack stack = dataBaseAdapter.getStackByLocalIdDirectly(card.getStackId());
-            Board board = dataBaseAdapter.getBoardByLocalIdDirectly(stack.getBoardId());
-            Account account = dataBaseAdapter.getAccountByIdDirectly(card.getAccountId());
-            serverAdapter.unassignUserFromCard(board.getId(), stack.getId(), card.getId(), user.getUid(), new IResponseCallback<Void>(account){
-
-                @Override
-                public void onResponse(Void response) {
-                    dataBaseAdapter.deleteJoinedUserForCardPhysically(card.getLocalId(), user.getLocalId());
+            final long localUserId = user.getLocalId();
+            final long localCardId = card.getLocalId();
+            outboxHelper.enqueue(PendingMutation.user(card.getAccountId(), MutationType.UNASSIGN_USER, localCardId, localUserId), cancelledOut -> {
+                if (cancelledOut) {
+                    // the assignment never reached the server
+                    dataBaseAdapter.deleteJoinedUserForCardPhysically(localCardId, localUserId);
+                } else {
+                    dataBaseAdapter.deleteJoinedUserForCard(localCardId, localUserId);
                 }
             });
+            flushOutbox(card.getAccountId());
+        });
+    }
+
+    private void flushOutbox(long accountId) {
+        // the server url is needed for the offline check and the circuit breaker
+        Account account = dataBaseAdapter.getAccountByIdDirectly(accountId);
+        if (account == null) {
+            DeckLog.warn("Not flushing the outbox of account " + accountId + ", it has been deleted");
+            return;
+        }
+        outboxHelper.flush(account, new IResponseCallback<Boolean>(account) {
+            @Override
+            public void onResponse(Boolean response) {
+                // nothing to do, the local state has already been updated
+            }
         });
     }
 
@@ -414,6 +567,18 @@ public class SyncManager {
         return dataBaseAdapter.searchLabelByTitle(accountId, boardId, searchTerm);
     }
 
+    /**
+     * Full-text search over the titles and descriptions of the cards of an account, every word of <code>searchTerm</code> matches as a prefix.
+     *
+     * @param page 0 for the {@link #SEARCH_PAGE_SIZE} most relevant cards, 1 for the next ones and so on
+     */
+    public LiveData<List<FullCard>> searchCards(final long accountId, String searchTerm, int page){
+        if (page < 0) {
+            throw new IllegalArgumentException("page must not be negative, got " + page);
+        }
+        return dataBaseAdapter.searchCards(accountId, searchTerm, page * SEARCH_PAGE_SIZE, SEARCH_PAGE_SIZE);
+    }
+
     public String getServerUrl() throws NextcloudFilesAppAccountNotFoundException, NoCurrentAccountSelectedException {
         return serverAdapter.getServerUrl();
     }
@@ -2,25 +2,19 @@ package it.niedermann.nextcloud.deck.persistence.sync.adapters;
 
 import android.app.Activity;
 import android.content.Context;
-import android.content.SharedPreferences;
-import android.net.ConnectivityManager;
-import android.util.Log;
 
 import com.nextcloud.android.sso.exceptions.NextcloudFilesAppAccountNotFoundException;
 import com.nextcloud.android.sso.exceptions.NoCurrentAccountSelectedException;
 
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
-import java.util.Date;
 import java.util.List;
-import java.util.Locale;
-import java.util.TimeZone;
 
-import it.niedermann.nextcloud.deck.DeckConsts;
-import it.niedermann.nextcloud.deck.R;
 import it.niedermann.nextcloud.deck.api.ApiProvider;
+import it.niedermann.nextcloud.deck.api.ConnectivityMonitor;
+import it.niedermann.nextcloud.deck.api.HttpMethod;
 import it.niedermann.nextcloud.deck.api.IResponseCallback;
+import it.niedermann.nextcloud.deck.api.RequestDeduplicator;
 import it.niedermann.nextcloud.deck.api.RequestHelper;
+import it.niedermann.nextcloud.deck.api.RequestPriority;
 import it.niedermann.nextcloud.deck.exceptions.OfflineException;
 import it.niedermann.nextcloud.deck.model.Board;
 import it.niedermann.nextcloud.deck.model.Card;
@@ -29,28 +23,26 @@ import it.niedermann.nextcloud.deck.model.Stack;
 import it.niedermann.nextcloud.deck.model.full.FullBoard;
 import it.niedermann.nextcloud.deck.model.full.FullCard;
 import it.niedermann.nextcloud.deck.model.full.FullStack;
-import it.niedermann.nextcloud.deck.util.DateUtil;
+import it.niedermann.nextcloud.deck.persistence.sync.helpers.SyncTrace;
+import it.niedermann.nextcloud.deck.persistence.sync.helpers.SyncTracer;
 
 public class ServerAdapter {
 
-    private static final DateFormat API_FORMAT = new SimpleDateFormat("E, dd MMM yyyy hh:mm:ss z", 
-                                                                      Locale.US);
-
-    static {
-        API_FORMAT.setTimeZone(TimeZone.getTimeZone("GMT"));
-    }
-
     private Context applicationContext;
     private ApiProvider provider;
     private Activity sourceActivity;
-    private SharedPreferences lastSyncPref;
 
     public ServerAdapter(Context applicationContext, Activity sourceActivity) {
+        this(applicationContext, sourceActivity, null);
+    }
+
+    /**
+     * @param accountName the account all requests are sent for, <code>null</code> to follow the account currently selected for single sign on
+     */
+    public ServerAdapter(Context applicationContext, Activity sourceActivity, String accountName) {
         this.applicationContext = applicationContext;
         this.sourceActivity = sourceActivity;
-        provider = new ApiProvider(applicationContext);
-        lastSyncPref = applicationContext.getSharedPreferences(
-                applicationContext.getString(R.string.shared_preference_last_sync), Context.MODE_PRIVATE);
+        provider = new ApiProvider(applicationContext, accountName);
     }
 
     public String getServerUrl() throws NextcloudFilesAppAccountNotFoundException, NoCurrentAccountSelectedException {
@@ -65,6 +57,13 @@ public class ServerAdapter {
         return provider.getApiUrl();
     }
 
+    /**
+     * The next request connects again with the transport which is currently configured for the account.
+     */
+    public void resetApi() {
+        provider.reset();
+    }
+
     public void ensureInternetConnection() {
         boolean isConnected = hasInternetConnection();
         if (!isConnected){
@@ -72,127 +71,150 @@ public class ServerAdapter {
         }
     }
 
+    /**
+     * @return the cached state of the {@link ConnectivityMonitor}
+     */
     public boolean hasInternetConnection(){
-        ConnectivityManager cm = (ConnectivityManager) applicationContext.getSystemService(Context.CONNECTIVITY_SERVICE);
-        return cm.getActiveNetworkInfo().isConnected();
+        return ConnectivityMonitor.getInstance(applicationContext).isConnected();
     }
 
-    private String getLastSyncDateFormatted() {
-//        return null;
-        String lastSyncHeader = API_FORMAT.format(getLastSync());
-        // omit Offset of timezone (e.g.: +01:00)
-        if (lastSyncHeader.matches("^.*\\+[0-9]{2}:[0-9]{2}$")) {
-            lastSyncHeader = lastSyncHeader.substring(0, lastSyncHeader.length()-6);
-        }
-        Log.d("deck lastSync", lastSyncHeader);
-        return lastSyncHeader;
+    private static <T> IResponseCallback<T> traced(String level, IResponseCallback<T> responseCallback) {
+        return SyncTracer.getInstance().trace(level, responseCallback);
     }
 
-    private Date getLastSync() {
-        Date lastSync = DateUtil.nowInGMT();
-        lastSync.setTime(lastSyncPref.getLong(DeckConsts.LAST_SYNC_KEY, 0L));
+    /**
+     * Identical <code>GET</code>s share one round trip, e.g. when the sync and a screen ask for the same card at once.
+     * Attached callers are not traced, as they didn't cause a request.
+     */
+    private static <T> void deduplicated(IResponseCallback<T> responseCallback, RequestPriority priority, RequestDeduplicator.Performer<T> performer, String endpoint, Object... params) {
+        RequestDeduplicator.getInstance().request(responseCallback, priority, performer, endpoint, params);
+    }
 
-        return lastSync;
+    /**
+     * @param details         <code>false</code> for the compact index, which lacks labels, ACL, users and stacks
+     * @param ifModifiedSince header value from {@link it.niedermann.nextcloud.deck.util.DateCodec#formatRfc1123(java.util.Date)}, <code>null</code> to fetch everything.
+     *                        If nothing changed since then, the callback gets {@link IResponseCallback#onNotModified()}.
+     */
+    public void getBoards(boolean details, String ifModifiedSince, IResponseCallback<List<FullBoard>> responseCallback) {
+        deduplicated(responseCallback, RequestPriority.BACKGROUND_SYNC, (callback, ticket) -> RequestHelper.request(sourceActivity, provider, ticket, HttpMethod.GET, () -> provider.getAPI().getBoards(details, ifModifiedSince), traced(SyncTrace.LEVEL_BOARD, callback), 0),
+                "getBoards", details, ifModifiedSince);
     }
 
-    public void getBoards(IResponseCallback<List<FullBoard>> responseCallback) {
-        RequestHelper.request(sourceActivity, provider, () -> provider.getAPI().getBoards(true, getLastSyncDateFormatted()), responseCallback);
+    public void getBoard(long remoteBoardId, IResponseCallback<FullBoard> responseCallback) {
+        ensureInternetConnection();
+        deduplicated(responseCallback, RequestPriority.BACKGROUND_SYNC, (callback, ticket) -> RequestHelper.request(sourceActivity, provider, ticket, HttpMethod.GET, () -> provider.getAPI().getBoard(remoteBoardId, null), traced(SyncTrace.LEVEL_BOARD, callback), 0),
+                "getBoard", remoteBoardId);
     }
 
     public void createBoard(Board board, IResponseCallback<FullBoard> responseCallback) {
         ensureInternetConnection();
-        RequestHelper.request(sourceActivity, provider, () -> provider.getAPI().createBoard(board), responseCallback);
+        RequestHelper.request(sourceActivity, provider, RequestPriority.INTERACTIVE_MUTATION, HttpMethod.POST, () -> provider.getAPI().createBoard(board), traced(SyncTrace.LEVEL_BOARD, responseCallback));
     }
 
     public void deleteBoard(Board board, IResponseCallback<Void> responseCallback) {
         ensureInternetConnection();
-        RequestHelper.request(sourceActivity, provider, () -> provider.getAPI().deleteBoard(board.getId()), responseCallback);
+        RequestHelper.request(sourceActivity, provider, RequestPriority.INTERACTIVE_MUTATION, HttpMethod.DELETE, () -> provider.getAPI().deleteBoard(board.getId()), traced(SyncTrace.LEVEL_BOARD, responseCallback));
     }
 
     public void updateBoard(Board board, IResponseCallback<FullBoard> responseCallback) {
         ensureInternetConnection();
-        RequestHelper.request(sourceActivity, provider, () -> provider.getAPI().updateBoard(board.getId(), board), responseCallback);
+        RequestHelper.request(sourceActivity, provider, RequestPriority.INTERACTIVE_MUTATION, HttpMethod.PUT, () -> provider.getAPI().updateBoard(board.getId(), board), traced(SyncTrace.LEVEL_BOARD, responseCallback));
 
     }
 
-    public void getStacks(long boardId, IResponseCallback<List<FullStack>> responseCallback) {
+    public void getStacks(long boardId, String ifModifiedSince, IResponseCallback<List<FullStack>> responseCallback) {
         ensureInternetConnection();
-        RequestHelper.request(sourceActivity, provider, () -> provider.getAPI().getStacks(boardId, getLastSyncDateFormatted()), responseCallback);
+        deduplicated(responseCallback, RequestPriority.BACKGROUND_SYNC, (callback, ticket) -> RequestHelper.request(sourceActivity, provider, ticket, HttpMethod.GET, () -> provider.getAPI().getStacks(boardId, ifModifiedSince), traced(SyncTrace.LEVEL_STACK, callback), 0),
+                "getStacks", boardId, ifModifiedSince);
     }
 
-    public void getStack(long boardId, long stackId, IResponseCallback<FullStack> responseCallback) {
-        RequestHelper.request(sourceActivity, provider, () -> provider.getAPI().getStack(boardId, stackId, getLastSyncDateFormatted()), responseCallback);
+    /**
+     * @param priority {@link RequestPriority#INTERACTIVE_READ} if somebody waits for the stack, {@link RequestPriority#BACKGROUND_SYNC} while synchronizing
+     */
+    public void getStack(long boardId, long stackId, String ifModifiedSince, RequestPriority priority, IResponseCallback<FullStack> responseCallback) {
+        deduplicated(responseCallback, priority, (callback, ticket) -> RequestHelper.request(sourceActivity, provider, ticket, HttpMethod.GET, () -> provider.getAPI().getStack(boardId, stackId, ifModifiedSince), traced(SyncTrace.LEVEL_STACK, callback), 0),
+                "getStack", boardId, stackId, ifModifiedSince);
     }
 
     public void createStack(Stack stack, IResponseCallback<FullStack> responseCallback) {
         ensureInternetConnection();
-        RequestHelper.request(sourceActivity, provider, () -> provider.getAPI().createStack(stack.getBoardId(), stack), responseCallback);
+        RequestHelper.request(sourceActivity, provider, RequestPriority.INTERACTIVE_MUTATION, HttpMethod.POST, () -> provider.getAPI().createStack(stack.getBoardId(), stack), traced(SyncTrace.LEVEL_STACK, responseCallback));
     }
 
     public void deleteStack(Stack stack, IResponseCallback<Void> responseCallback) {
         ensureInternetConnection();
-        RequestHelper.request(sourceActivity, provider, () -> provider.getAPI().deleteStack(stack.getBoardId(), stack.getId()), responseCallback);
+        RequestHelper.request(sourceActivity, provider, RequestPriority.INTERACTIVE_MUTATION, HttpMethod.DELETE, () -> provider.getAPI().deleteStack(stack.getBoardId(), stack.getId()), traced(SyncTrace.LEVEL_STACK, responseCallback));
 
     }
 
     public void updateStack(Stack stack, IResponseCallback<FullStack> responseCallback) {
         ensureInternetConnection();
-        RequestHelper.request(sourceActivity, provider, () -> provider.getAPI().updateStack(stack.getBoardId(), stack.getId(), stack), responseCallback);
+        RequestHelper.request(sourceActivity, provider, RequestPriority.INTERACTIVE_MUTATION, HttpMethod.PUT, () -> provider.getAPI().updateStack(stack.getBoardId(), stack.getId(), stack), traced(SyncTrace.LEVEL_STACK, responseCallback));
 
     }
 
-    public void getCard(long boardId, long stackId, long cardId, IResponseCallback<FullCard> responseCallback) {
+    /**
+     * @param priority {@link RequestPriority#INTERACTIVE_READ} if somebody waits for the card, {@link RequestPriority#BACKGROUND_SYNC} while synchronizing
+     */
+    public void getCard(long boardId, long stackId, long cardId, String ifModifiedSince, RequestPriority priority, IResponseCallback<FullCard> responseCallback) {
+        ensureInternetConnection();
+        deduplicated(responseCallback, priority, (callback, ticket) -> RequestHelper.request(sourceActivity, provider, ticket, HttpMethod.GET, () -> provider.getAPI().getCard(boardId, stackId, cardId, ifModifiedSince), traced(SyncTrace.LEVEL_CARD, callback), 0),
+                "getCard", boardId, stackId, cardId, ifModifiedSince);
+    }
+
+    public void getCard(long boardId, long stackId, long cardId, String ifModifiedSince, RequestPriority priority, long timeoutMillis, IResponseCallback<FullCard> responseCallback) {
         ensureInternetConnection();
-        RequestHelper.request(sourceActivity, provider, () -> provider.getAPI().getCard(boardId, stackId, cardId, getLastSyncDateFormatted()), responseCallback);
+        deduplicated(responseCallback, priority, (callback, ticket) -> RequestHelper.request(sourceActivity, provider, ticket, HttpMethod.GET, () -> provider.getAPI().getCard(boardId, stackId, cardId, ifModifiedSince), traced(SyncTrace.LEVEL_CARD, callback), timeoutMillis),
+                "getCard", boardId, stackId, cardId, ifModifiedSince);
     }
 
     public void createCard(long boardId, long stackId, Card card, IResponseCallback<FullCard> responseCallback) {
         ensureInternetConnection();
-        RequestHelper.request(sourceActivity, provider, () -> provider.getAPI().createCard(boardId, stackId, card), responseCallback);
+        RequestHelper.request(sourceActivity, provider, RequestPriority.INTERACTIVE_MUTATION, HttpMethod.POST, () -> provider.getAPI().createCard(boardId, stackId, card), traced(SyncTrace.LEVEL_CARD, responseCallback));
     }
 
     public void deleteCard(long boardId, long stackId, Card card, IResponseCallback<Void> responseCallback) {
         ensureInternetConnection();
-        RequestHelper.request(sourceActivity, provider, () -> provider.getAPI().deleteCard(boardId, stackId, card.getId()), responseCallback);
+        RequestHelper.request(sourceActivity, provider, RequestPriority.INTERACTIVE_MUTATION, HttpMethod.DELETE, () -> provider.getAPI().deleteCard(boardId, stackId, card.getId()), traced(SyncTrace.LEVEL_CARD, responseCallback));
     }
 
     public void updateCard(long boardId, long stackId, Card card, IResponseCallback<FullCard> responseCallback) {
         ensureInternetConnection();
-        RequestHelper.request(sourceActivity, provider, () -> provider.getAPI().updateCard(boardId, stackId, card.getId(), card), responseCallback);
+        RequestHelper.request(sourceActivity, provider, RequestPriority.INTERACTIVE_MUTATION, HttpMethod.PUT, () -> provider.getAPI().updateCard(boardId, stackId, card.getId(), card), traced(SyncTrace.LEVEL_CARD, responseCallback));
     }
 
     public void assignUserToCard(long boardId, long stackId, long cardId, String userUID, IResponseCallback<Void> responseCallback){
         ensureInternetConnection();
-        RequestHelper.request(sourceActivity, provider, () -> provider.getAPI().assignUserToCard(boardId, stackId, cardId, userUID), responseCallback);
+        RequestHelper.request(sourceActivity, provider, RequestPriority.INTERACTIVE_MUTATION, HttpMethod.PUT_TOGGLE, () -> provider.getAPI().assignUserToCard(boardId, stackId, cardId, userUID), traced(SyncTrace.LEVEL_USER, responseCallback));
     }
 
     public void unassignUserFromCard(long boardId, long stackId, long cardId, String userUID, IResponseCallback<Void> responseCallback){
         ensureInternetConnection();
-        RequestHelper.request(sourceActivity, provider, () -> provider.getAPI().unassignUserFromCard(boardId, stackId, cardId, userUID), responseCallback);
+        RequestHelper.request(sourceActivity, provider, RequestPriority.INTERACTIVE_MUTATION, HttpMethod.PUT_TOGGLE, () -> provider.getAPI().unassignUserFromCard(boardId, stackId, cardId, userUID), traced(SyncTrace.LEVEL_USER, responseCallback));
     }
 
     public void assignLabelToCard(long boardId, long stackId, long cardId, long labelId, IResponseCallback<Void> responseCallback){
         ensureInternetConnection();
-        RequestHelper.request(sourceActivity, provider, () -> provider.getAPI().assignLabelToCard(boardId, stackId, cardId, labelId), responseCallback);
+        RequestHelper.request(sourceActivity, provider, RequestPriority.INTERACTIVE_MUTATION, HttpMethod.PUT_TOGGLE, () -> provider.getAPI().assignLabelToCard(boardId, stackId, cardId, labelId), traced(SyncTrace.LEVEL_LABEL, responseCallback));
     }
 
     public void unassignLabelFromCard(long boardId, long stackId, long cardId, long labelId, IResponseCallback<Void> responseCallback){
         ensureInternetConnection();
-        RequestHelper.request(sourceActivity, provider, () -> provider.getAPI().unassignLabelFromCard(boardId, stackId, cardId, labelId), responseCallback);
+        RequestHelper.request(sourceActivity, provider, RequestPriority.INTERACTIVE_MUTATION, HttpMethod.PUT_TOGGLE, () -> provider.getAPI().unassignLabelFromCard(boardId, stackId, cardId, labelId), traced(SyncTrace.LEVEL_LABEL, responseCallback));
     }
 
 
     // ## LABELS
     public void createLabel(long boardId, Label label, IResponseCallback<Label> responseCallback){
         ensureInternetConnection();
-        RequestHelper.request(sourceActivity, provider, () -> provider.getAPI().createLabel(boardId, label), responseCallback);
+        RequestHelper.request(sourceActivity, provider, RequestPriority.INTERACTIVE_MUTATION, HttpMethod.POST, () -> provider.getAPI().createLabel(boardId, label), traced(SyncTrace.LEVEL_LABEL, responseCallback));
     }
     public void deleteLabel(long boardId, Label label, IResponseCallback<Void> responseCallback){
         ensureInternetConnection();
-        RequestHelper.request(sourceActivity, provider, () -> provider.getAPI().deleteLabel(boardId, label.getId()), responseCallback);
+        RequestHelper.request(sourceActivity, provider, RequestPriority.INTERACTIVE_MUTATION, HttpMethod.DELETE, () -> provider.getAPI().deleteLabel(boardId, label.getId()), traced(SyncTrace.LEVEL_LABEL, responseCallback));
     }
     public void updateLabel(long boardId, Label label, IResponseCallback<Label> responseCallback){
         ensureInternetConnection();
-        RequestHelper.request(sourceActivity, provider, () -> provider.getAPI().updateLabel(boardId, label.getId(), label), responseCallback);
+        RequestHelper.request(sourceActivity, provider, RequestPriority.INTERACTIVE_MUTATION, HttpMethod.PUT, () -> provider.getAPI().updateLabel(boardId, label.getId(), label), traced(SyncTrace.LEVEL_LABEL, responseCallback));
     }
 }
@@ -0,0 +1,121 @@
+package it.niedermann.nextcloud.deck.persistence.sync.adapters.db;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import it.niedermann.nextcloud.deck.model.JoinCardWithLabel;
+import it.niedermann.nextcloud.deck.model.JoinCardWithUser;
+import it.niedermann.nextcloud.deck.model.Label;
+import it.niedermann.nextcloud.deck.model.User;
+import it.niedermann.nextcloud.deck.model.enums.DBStatus;
+import it.niedermann.nextcloud.deck.model.full.FullCard;
+import it.niedermann.nextcloud.deck.persistence.sync.adapters.db.dao.JoinCardWithLabelDao;
+import it.niedermann.nextcloud.deck.persistence.sync.adapters.db.dao.JoinCardWithUserDao;
+import it.niedermann.nextcloud.deck.persistence.sync.adapters.db.dao.LabelDao;
+import it.niedermann.nextcloud.deck.persistence.sync.adapters.db.dao.UserDao;
+
+/**
+ * Fills {@link FullCard#getLabels()} and {@link FullCard#getAssignedUsers()} of many cards at once:
+ * joins, labels and users are read with one query each (per {@link DataBaseAdapter#MAX_IN_CLAUSE_SIZE} cards), no matter how many cards there are.
+ * Labels and users whose join is marked as deleted locally and deleted labels or users are left out.
+ */
+class CardRelationLoader {
+
+    private final JoinCardWithLabelDao joinCardWithLabelDao;
+    private final JoinCardWithUserDao joinCardWithUserDao;
+    private final LabelDao labelDao;
+    private final UserDao userDao;
+
+    CardRelationLoader(JoinCardWithLabelDao joinCardWithLabelDao, JoinCardWithUserDao joinCardWithUserDao, LabelDao labelDao, UserDao userDao) {
+        this.joinCardWithLabelDao = joinCardWithLabelDao;
+        this.joinCardWithUserDao = joinCardWithUserDao;
+        this.labelDao = labelDao;
+        this.userDao = userDao;
+    }
+
+    void readRelations(List<FullCard> cards) {
+        if (cards == null || cards.isEmpty()) {
+            return;
+        }
+        List<Long> cardsWithLabels = new ArrayList<>();
+        List<Long> cardsWithUsers = new ArrayList<>();
+        for (FullCard card : cards) {
+            if (card == null) {
+                continue;
+            }
+            if (card.getLabelIDs() != null && !card.getLabelIDs().isEmpty()) {
+                cardsWithLabels.add(card.getLocalId());
+            }
+            if (card.getAssignedUserIDs() != null && !card.getAssignedUserIDs().isEmpty()) {
+                cardsWithUsers.add(card.getLocalId());
+            }
+        }
+
+        Map<Long, List<Label>> labelsByCard = new HashMap<>();
+        if (!cardsWithLabels.isEmpty()) {
+            List<JoinCardWithLabel> joins = DataBaseAdapter.queryInChunks(cardsWithLabels, joinCardWithLabelDao::getJoinsForCardsDirectly);
+            List<Long> labelIds = new ArrayList<>(joins.size());
+            for (JoinCardWithLabel join : joins) {
+                labelIds.add(join.getLabelId());
+            }
+            Map<Long, Label> labels = new HashMap<>();
+            for (Label label : DataBaseAdapter.queryInChunks(distinct(labelIds), labelDao::getLabelsByIdsDirectly)) {
+                labels.put(label.getLocalId(), label);
+            }
+            for (JoinCardWithLabel join : joins) {
+                Label label = labels.get(join.getLabelId());
+                if (label != null && join.getStatusEnum() != DBStatus.LOCAL_DELETED) {
+                    getOrCreate(labelsByCard, join.getCardId()).add(label);
+                }
+            }
+        }
+
+        Map<Long, List<User>> usersByCard = new HashMap<>();
+        if (!cardsWithUsers.isEmpty()) {
+            List<JoinCardWithUser> joins = DataBaseAdapter.queryInChunks(cardsWithUsers, joinCardWithUserDao::getJoinsForCardsDirectly);
+            List<Long> userIds = new ArrayList<>(joins.size());
+            for (JoinCardWithUser join : joins) {
+                userIds.add(join.getUserId());
+            }
+            Map<Long, User> users = new HashMap<>();
+            for (User user : DataBaseAdapter.queryInChunks(distinct(userIds), userDao::getUsersByIdDirectly)) {
+                users.put(user.getLocalId(), user);
+            }
+            for (JoinCardWithUser join : joins) {
+                User user = users.get(join.getUserId());
+                if (user != null && join.getStatusEnum() != DBStatus.LOCAL_DELETED) {
+                    getOrCreate(usersByCard, join.getCardId()).add(user);
+                }
+            }
+        }
+
+        for (FullCard card : cards) {
+            if (card == null) {
+                continue;
+            }
+            // as before, cards without any join keep null
+            if (card.getLabelIDs() != null && !card.getLabelIDs().isEmpty()) {
+                card.setLabels(getOrCreate(labelsByCard, card.getLocalId()));
+            }
+            if (card.getAssignedUserIDs() != null && !card.getAssignedUserIDs().isEmpty()) {
+                card.setAssignedUsers(getOrCreate(usersByCard, card.getLocalId()));
+            }
+        }
+    }
+
+    private static List<Long> distinct(List<Long> ids) {
+        return new ArrayList<>(new LinkedHashSet<>(ids));
+    }
+
+    private static <T> List<T> getOrCreate(Map<Long, List<T>> map, Long key) {
+        List<T> list = map.get(key);
+        if (list == null) {
+            list = new ArrayList<>();
+            map.put(key, list);
+        }
+        return list;
+    }
+}
@@ -2,10 +2,16 @@ package it.niedermann.nextcloud.deck.persistence.sync.adapters.db;
 
 import android.content.Context;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 
 import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+import androidx.paging.LivePagedListBuilder;
+import androidx.paging.PagedList;
+import androidx.sqlite.db.SupportSQLiteQuery;
 import it.niedermann.nextcloud.deck.model.AccessControl;
 import it.niedermann.nextcloud.deck.model.Account;
 import it.niedermann.nextcloud.deck.model.Attachment;
@@ -15,22 +21,67 @@ import it.niedermann.nextcloud.deck.model.JoinBoardWithLabel;
 import it.niedermann.nextcloud.deck.model.JoinCardWithLabel;
 import it.niedermann.nextcloud.deck.model.JoinCardWithUser;
 import it.niedermann.nextcloud.deck.model.Label;
+import it.niedermann.nextcloud.deck.model.PendingMutation;
 import it.niedermann.nextcloud.deck.model.Stack;
+import it.niedermann.nextcloud.deck.model.SyncCursor;
 import it.niedermann.nextcloud.deck.model.User;
 import it.niedermann.nextcloud.deck.model.enums.DBStatus;
+import it.niedermann.nextcloud.deck.model.enums.MutationType;
 import it.niedermann.nextcloud.deck.model.full.FullBoard;
 import it.niedermann.nextcloud.deck.model.full.FullCard;
 import it.niedermann.nextcloud.deck.model.full.FullStack;
 import it.niedermann.nextcloud.deck.model.interfaces.AbstractRemoteEntity;
 import it.niedermann.nextcloud.deck.persistence.sync.adapters.db.util.LiveDataHelper;
 import it.niedermann.nextcloud.deck.persistence.sync.adapters.db.util.WrappedLiveData;
+import it.niedermann.nextcloud.deck.util.concurrent.DeckExecutors;
 
 public class DataBaseAdapter {
 
+    /**
+     * SQLite allows at most 999 bound variables per statement, so IN (...) lookups are split up.
+     */
+    static final int MAX_IN_CLAUSE_SIZE = 900;
+
+    interface ChunkedQuery<K, V> {
+        List<V> query(List<K> chunk);
+    }
+
     private DeckDatabase db;
+    private CardRelationLoader cardRelationLoader;
 
     public DataBaseAdapter(Context applicationContext) {
-        this.db = DeckDatabase.getInstance(applicationContext);
+        this(DeckDatabase.getInstance(applicationContext));
+    }
+
+    public DataBaseAdapter(DeckDatabase db) {
+        this.db = db;
+        this.cardRelationLoader = new CardRelationLoader(db.getJoinCardWithLabelDao(), db.getJoinCardWithUserDao(), db.getLabelDao(), db.getUserDao());
+    }
+
+    /**
+     * Runs <code>r</code> through the {@link WriteQueue}, read its contract before passing anything but database changes.
+     */
+    public void runInTransaction(Runnable r) {
+        db.getWriteQueue().runInTransaction(r);
+    }
+
+    /**
+     * Runs <code>r</code> through the {@link WriteQueue} exactly once, for writes which also change the objects they write.
+     */
+    public void runInOwnTransaction(Runnable r) {
+        db.getWriteQueue().runInOwnTransaction(r);
+    }
+
+    public WriteQueue.Stats getWriteStats() {
+        return db.getWriteQueue().getStats();
+    }
+
+    static <K, V> List<V> queryInChunks(List<K> keys, ChunkedQuery<K, V> query) {
+        List<V> result = new ArrayList<>(keys.size());
+        for (int from = 0; from < keys.size(); from += MAX_IN_CLAUSE_SIZE) {
+            result.addAll(query.query(keys.subList(from, Math.min(keys.size(), from + MAX_IN_CLAUSE_SIZE))));
+        }
+        return result;
     }
 
     private <T extends AbstractRemoteEntity> void markAsEditedIfNeeded(T entity, boolean setStatus) {
@@ -83,32 +134,26 @@ public class DataBaseAdapter {
     }
 
     private void readRelationsForCard(FullCard card) {
-        if (card != null){
-            if (card.getLabelIDs() != null && !card.getLabelIDs().isEmpty()){
-                List<Long> filteredIDs = db.getJoinCardWithLabelDao().filterDeleted(card.getLocalId(), card.getLabelIDs());
-                card.setLabels(db.getLabelDao().getLabelsByIdsDirectly(filteredIDs));
-            }
-            if (card.getAssignedUserIDs() != null && !card.getAssignedUserIDs().isEmpty()){
-                card.setAssignedUsers(db.getUserDao().getUsersByIdDirectly(card.getAssignedUserIDs()));
-            }
+        if (card != null) {
+            cardRelationLoader.readRelations(Collections.singletonList(card));
         }
     }
 
-    private void readRelationsForCard(List<FullCard> card) {
-        if (card == null){
-            return;
-        }
-        for (FullCard c : card) {
-            readRelationsForCard(c);
-        }
+    private void readRelationsForCard(List<FullCard> cards) {
+        cardRelationLoader.readRelations(cards);
     }
 
     public Card getCardByRemoteIdDirectly(long accountId, long remoteId) {
         return db.getCardDao().getCardByRemoteIdDirectly(accountId, remoteId);
     }
 
-    public LiveData<List<FullCard>> getFullCardsForStack(long accountId, long localStackId) {
-        return LiveDataHelper.interceptLiveData(db.getCardDao().getFullCardsForStack(accountId, localStackId), this::readRelationsForCard);
+    /**
+     * Pages of the cards of a stack with placeholders, see {@link StackCardDataSource}.
+     */
+    public LiveData<PagedList<FullCard>> getFullCardsForStack(long accountId, long localStackId) {
+        return new LivePagedListBuilder<>(new StackCardDataSource.Factory(db, cardRelationLoader, accountId, localStackId), StackCardDataSource.CONFIG)
+                .setFetchExecutor(DeckExecutors.getInstance().databaseReads())
+                .build();
     }
 
     public User getUserByUidDirectly(long accountId, String uid) {
@@ -148,7 +193,7 @@ public class DataBaseAdapter {
         join.setCardId(localCardId);
         join.setLabelId(localLabelId);
         join.setStatus(status.getId());
-        db.getJoinCardWithLabelDao().insert(join);
+        db.getJoinCardWithLabelDao().upsert(join);
     }
 
     public void deleteJoinedLabelsForCard(long localCardId) {
@@ -178,7 +223,7 @@ public class DataBaseAdapter {
         join.setCardId(localCardId);
         join.setUserId(localUserId);
         join.setStatus(status.getId());
-        db.getJoinCardWithUserDao().insert(join);
+        db.getJoinCardWithUserDao().upsert(join);
     }
 
     public void deleteJoinedUsersForCard(long localCardId) {
@@ -215,7 +260,10 @@ public class DataBaseAdapter {
     }
 
     public void deleteAccount(long id) {
-        db.getAccountDao().deleteById(id);
+        runInTransaction(() -> {
+            db.getSyncCursorDao().deleteByAccountId(id);
+            db.getAccountDao().deleteById(id);
+        });
     }
 
     public void updateAccount(Account account) {
@@ -307,6 +355,22 @@ public class DataBaseAdapter {
         db.getCardDao().delete(card);
     }
 
+    /**
+     * Removes the card together with everything that references it.
+     */
+    public void deleteCardWithJoinsPhysically(Card card) {
+        runInTransaction(() -> {
+            db.getJoinCardWithLabelDao().deleteByCardId(card.getLocalId());
+            db.getJoinCardWithUserDao().deleteAllByCardIdPhysically(card.getLocalId());
+            db.getPendingMutationDao().deleteByLocalCardId(card.getLocalId());
+            db.getCardDao().delete(card);
+        });
+    }
+
+    public Card getCardByLocalIdDirectly(long accountId, long localCardId) {
+        return db.getCardDao().getCardByLocalIdDirectly(accountId, localCardId);
+    }
+
     public void updateCard(Card card, boolean setStatus) {
         markAsEditedIfNeeded(card, setStatus);
         db.getCardDao().update(card);
@@ -346,12 +410,32 @@ public class DataBaseAdapter {
     }
     public LiveData<List<User>> searchUserByUidOrDisplayName(final long accountId, final String searchTerm){
         validateSearchTerm(searchTerm);
-        return db.getUserDao().searchUserByUidOrDisplayName(accountId, "%"+searchTerm.trim()+"%");
+        SupportSQLiteQuery query = SearchIndex.users(accountId, searchTerm);
+        return query == null ? emptyList() : db.getSearchDao().searchUsers(query);
     }
 
     public LiveData<List<Label>> searchLabelByTitle(final long accountId, final long boardId, String searchTerm){
         validateSearchTerm(searchTerm);
-        return db.getLabelDao().searchLabelByTitle(accountId, boardId,"%"+searchTerm.trim()+"%");
+        SupportSQLiteQuery query = SearchIndex.labels(accountId, boardId, searchTerm);
+        return query == null ? emptyList() : db.getSearchDao().searchLabels(query);
+    }
+
+    /**
+     * @param offset count of matching cards to skip, the matches are ordered by relevance
+     */
+    public LiveData<List<FullCard>> searchCards(final long accountId, final String searchTerm, int offset, int limit){
+        validateSearchTerm(searchTerm);
+        SupportSQLiteQuery query = SearchIndex.cards(accountId, searchTerm, offset, limit);
+        return query == null ? emptyList() : LiveDataHelper.interceptLiveData(db.getSearchDao().searchCards(query), this::readRelationsForCard);
+    }
+
+    /**
+     * For search terms without any word, e.g. only punctuation. The callers add to the list, so it is mutable.
+     */
+    private static <T> LiveData<List<T>> emptyList() {
+        MutableLiveData<List<T>> empty = new MutableLiveData<>();
+        empty.postValue(new ArrayList<>());
+        return empty;
     }
 
 
@@ -380,6 +464,10 @@ public class DataBaseAdapter {
         return db.getAccountDao().getAccountByIdDirectly(accountId);
     }
 
+    public List<Account> getAllAccountsDirectly() {
+        return db.getAccountDao().getAllAccountsDirectly();
+    }
+
     public User getUserByLocalIdDirectly(long localUserId) {
         return db.getUserDao().getUserByLocalIdDirectly(localUserId);
     }
@@ -400,10 +488,89 @@ public class DataBaseAdapter {
         return db.getBoardDao().getLocallyChangedBoardsDirectly(accountId);
     }
 
-    public List<FullStack> getLocallyChangedStacks(long accountId) {
-        return db.getStackDao().getLocallyChangedStacksDirectly(accountId);
+    public List<FullStack> getLocallyChangedStacks(long accountId, long localBoardId) {
+        return db.getStackDao().getLocallyChangedStacksDirectly(accountId, localBoardId);
+    }
+
+    public List<FullCard> getLocallyChangedCards(long accountId, long localStackId) {
+        return db.getCardDao().getLocallyChangedCardsDirectly(accountId, localStackId);
+    }
+
+    public List<JoinCardWithLabel> getLocallyChangedJoinCardWithLabels(long accountId) {
+        return db.getJoinCardWithLabelDao().getLocallyChangedJoinsDirectly(accountId);
+    }
+
+    public List<JoinCardWithUser> getLocallyChangedJoinCardWithUsers(long accountId) {
+        return db.getJoinCardWithUserDao().getLocallyChangedJoinsDirectly(accountId);
     }
     public List<Label> getLocallyChangedLabels(long accountId, long boardId) {
         return db.getLabelDao().getLocallyChangedLabelsDirectly(accountId, boardId);
     }
+
+    public List<FullBoard> getFullBoardsByRemoteIdsDirectly(long accountId, List<Long> remoteIds) {
+        return queryInChunks(remoteIds, chunk -> db.getBoardDao().getFullBoardsByRemoteIdsDirectly(accountId, chunk));
+    }
+
+    public List<FullStack> getFullStacksByRemoteIdsDirectly(long accountId, long localBoardId, List<Long> remoteIds) {
+        return queryInChunks(remoteIds, chunk -> db.getStackDao().getFullStacksByRemoteIdsDirectly(accountId, localBoardId, chunk));
+    }
+
+    /**
+     * Other than {@link #getFullCardByRemoteIdDirectly(long, long)} this does not resolve labels and assigned users.
+     */
+    public List<FullCard> getFullCardsByRemoteIdsDirectly(long accountId, List<Long> remoteIds) {
+        return queryInChunks(remoteIds, chunk -> db.getCardDao().getFullCardsByRemoteIdsDirectly(accountId, chunk));
+    }
+
+    public List<Label> getLabelsByRemoteIdsDirectly(long accountId, List<Long> remoteIds) {
+        return queryInChunks(remoteIds, chunk -> db.getLabelDao().getLabelsByRemoteIdsDirectly(accountId, chunk));
+    }
+
+    public List<User> getUsersByUidsDirectly(long accountId, List<String> uids) {
+        return queryInChunks(uids, chunk -> db.getUserDao().getUsersByUidsDirectly(accountId, chunk));
+    }
+
+    public List<AccessControl> getAccessControlsByRemoteIdsDirectly(long accountId, List<Long> remoteIds) {
+        return queryInChunks(remoteIds, chunk -> db.getAccessControlDao().getAccessControlsByRemoteIdsDirectly(accountId, chunk));
+    }
+
+    public List<Attachment> getAttachmentsByRemoteIdsDirectly(long accountId, List<Long> remoteIds) {
+        return queryInChunks(remoteIds, chunk -> db.getAttachmentDao().getAttachmentsByRemoteIdsDirectly(accountId, chunk));
+    }
+
+    /**
+     * @return the newest point in time up to which the given scope or one of its enclosing scopes has been synchronized,
+     * <code>null</code> if it has never been synchronized
+     */
+    public Date getLastSyncDirectly(long accountId, long boardId, long stackId) {
+        return DateTypeConverter.toDate(db.getSyncCursorDao().getNarrowestLastSyncDirectly(accountId, boardId, stackId));
+    }
+
+    public void updateSyncCursor(SyncCursor cursor) {
+        db.getSyncCursorDao().upsert(cursor);
+    }
+
+    public long createPendingMutation(PendingMutation mutation) {
+        return db.getPendingMutationDao().insert(mutation);
+    }
+
+    public void deletePendingMutation(long localId) {
+        db.getPendingMutationDao().deleteById(localId);
+    }
+
+    public PendingMutation getPendingMutationDirectly(long localId) {
+        return db.getPendingMutationDao().getPendingMutationDirectly(localId);
+    }
+
+    public List<PendingMutation> getPendingMutationsDirectly(long accountId, long afterLocalId, int limit) {
+        return db.getPendingMutationDao().getPendingMutationsDirectly(accountId, afterLocalId, limit);
+    }
+
+    public List<PendingMutation> getPendingMutationsDirectly(PendingMutation like, MutationType type) {
+        return db.getPendingMutationDao().getPendingMutationsDirectly(like.getLocalCardId(), type.getId(), like.getLocalLabelId(), like.getLocalUserId());
+    }
+
+    public boolean hasPendingMutation(long localCardId, MutationType type) {
+        return db.getPendingMutationDao().countPendingMutationsDirectly(localCardId, type.getId()) > 0;
+    }
 }
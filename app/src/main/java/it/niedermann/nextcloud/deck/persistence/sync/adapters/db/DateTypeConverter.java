@@ -4,15 +4,17 @@ import androidx.room.TypeConverter;
 
 import java.util.Date;
 
+import it.niedermann.nextcloud.deck.util.DateCodec;
+
 public class DateTypeConverter {
 
     @TypeConverter
     public static Date toDate(Long value) {
-        return value == null ? null : new Date(value);
+        return DateCodec.fromEpochMillis(value);
     }
 
     @TypeConverter
     public static Long toLong(Date value) {
-        return value == null ? null : value.getTime();
+        return DateCodec.toEpochMillis(value);
     }
 }
\ No newline at end of file
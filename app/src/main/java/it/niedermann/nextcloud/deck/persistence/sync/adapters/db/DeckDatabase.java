@@ -1,11 +1,14 @@
 package it.niedermann.nextcloud.deck.persistence.sync.adapters.db;
 
 import android.content.Context;
+import android.os.Build;
 
 import androidx.room.Database;
 import androidx.room.Room;
 import androidx.room.RoomDatabase;
 import androidx.room.TypeConverters;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
 import it.niedermann.nextcloud.deck.model.AccessControl;
 import it.niedermann.nextcloud.deck.model.Account;
 import it.niedermann.nextcloud.deck.model.Attachment;
@@ -17,8 +20,10 @@ import it.niedermann.nextcloud.deck.model.JoinBoardWithUser;
 import it.niedermann.nextcloud.deck.model.JoinCardWithLabel;
 import it.niedermann.nextcloud.deck.model.JoinCardWithUser;
 import it.niedermann.nextcloud.deck.model.Label;
+import it.niedermann.nextcloud.deck.model.PendingMutation;
 import it.niedermann.nextcloud.deck.model.Permission;
 import it.niedermann.nextcloud.deck.model.Stack;
+import it.niedermann.nextcloud.deck.model.SyncCursor;
 import it.niedermann.nextcloud.deck.model.User;
 import it.niedermann.nextcloud.deck.persistence.sync.adapters.db.dao.AccessControlDao;
 import it.niedermann.nextcloud.deck.persistence.sync.adapters.db.dao.AccountDao;
@@ -31,9 +36,13 @@ import it.niedermann.nextcloud.deck.persistence.sync.adapters.db.dao.JoinBoardWi
 import it.niedermann.nextcloud.deck.persistence.sync.adapters.db.dao.JoinCardWithLabelDao;
 import it.niedermann.nextcloud.deck.persistence.sync.adapters.db.dao.JoinCardWithUserDao;
 import it.niedermann.nextcloud.deck.persistence.sync.adapters.db.dao.LabelDao;
+import it.niedermann.nextcloud.deck.persistence.sync.adapters.db.dao.PendingMutationDao;
 import it.niedermann.nextcloud.deck.persistence.sync.adapters.db.dao.PermissionDao;
+import it.niedermann.nextcloud.deck.persistence.sync.adapters.db.dao.SearchDao;
 import it.niedermann.nextcloud.deck.persistence.sync.adapters.db.dao.StackDao;
+import it.niedermann.nextcloud.deck.persistence.sync.adapters.db.dao.SyncCursorDao;
 import it.niedermann.nextcloud.deck.persistence.sync.adapters.db.dao.UserDao;
+import it.niedermann.nextcloud.deck.util.concurrent.DeckExecutors;
 
 @Database(
         entities = {
@@ -48,12 +57,13 @@ import it.niedermann.nextcloud.deck.persistence.sync.adapters.db.dao.UserDao;
                 JoinCardWithLabel.class,
                 JoinCardWithUser.class,
                 Label.class,
+                PendingMutation.class,
                 Permission.class,
                 Stack.class,
+                SyncCursor.class,
                 User.class,
         },
-        exportSchema = false,
-        version = 1
+        version = 6
 )
 @TypeConverters({DateTypeConverter.class})
 public abstract class DeckDatabase extends RoomDatabase {
@@ -62,6 +72,90 @@ public abstract class DeckDatabase extends RoomDatabase {
     private static final String DECK_DB_NAME = "NC_DECK_DB.db";
     private static volatile DeckDatabase instance;
 
+    private static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            // replaces the single lastSync timestamp in the shared preferences
+            database.execSQL("CREATE TABLE IF NOT EXISTS `SyncCursor` (`accountId` INTEGER NOT NULL, `boardId` INTEGER NOT NULL, `stackId` INTEGER NOT NULL, `lastSync` INTEGER, PRIMARY KEY(`accountId`, `boardId`, `stackId`))");
+        }
+    };
+
+    private static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `PendingMutation` (`localId` INTEGER PRIMARY KEY AUTOINCREMENT, `accountId` INTEGER NOT NULL, `type` INTEGER NOT NULL, `localCardId` INTEGER NOT NULL, `localLabelId` INTEGER, `localUserId` INTEGER, `createdAt` INTEGER)");
+            database.execSQL("CREATE INDEX `index_PendingMutation_accountId` ON `PendingMutation` (`accountId`)");
+            database.execSQL("CREATE INDEX `index_PendingMutation_localCardId` ON `PendingMutation` (`localCardId`)");
+        }
+    };
+
+    private static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            for (String table : new String[]{"AccessControl", "Attachment", "Board", "Card", "Label", "Stack", "User"}) {
+                database.execSQL("CREATE INDEX `index_" + table + "_accountId_status` ON `" + table + "` (`accountId`, `status`)");
+            }
+            database.execSQL("CREATE INDEX `index_JoinCardWithLabel_status` ON `JoinCardWithLabel` (`status`)");
+            database.execSQL("CREATE INDEX `index_JoinCardWithUser_status` ON `JoinCardWithUser` (`status`)");
+            // creating something locally now marks it as edited, so "id is null" is covered by the status
+            for (String table : new String[]{"Board", "Card", "Label", "Stack"}) {
+                database.execSQL("UPDATE `" + table + "` SET status = 2 WHERE status = 1 AND id IS NULL");
+            }
+        }
+    };
+
+    private static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            // duplicates of the inherited index_*_accountId
+            database.execSQL("DROP INDEX IF EXISTS `card_acc`");
+            database.execSQL("DROP INDEX IF EXISTS `acl_acc`");
+            // replaced by the covering indices below
+            database.execSQL("DROP INDEX IF EXISTS `index_JoinCardWithLabel_cardId`");
+            database.execSQL("DROP INDEX IF EXISTS `index_JoinCardWithUser_cardId`");
+            database.execSQL("CREATE INDEX `index_Card_accountId_stackId_order_createdAt` ON `Card` (`accountId`, `stackId`, `order`, `createdAt`)");
+            database.execSQL("CREATE INDEX `index_JoinCardWithLabel_cardId_labelId_status` ON `JoinCardWithLabel` (`cardId`, `labelId`, `status`)");
+            database.execSQL("CREATE INDEX `index_JoinCardWithUser_cardId_userId_status` ON `JoinCardWithUser` (`cardId`, `userId`, `status`)");
+            database.execSQL("CREATE INDEX `index_Label_accountId_boardId_title` ON `Label` (`accountId`, `boardId`, `title`)");
+            database.execSQL("CREATE INDEX `index_Board_accountId_deletedAt_title` ON `Board` (`accountId`, `deletedAt`, `title`)");
+            database.execSQL("CREATE INDEX `index_Attachment_cardId` ON `Attachment` (`cardId`)");
+        }
+    };
+
+    private static final Migration MIGRATION_5_6 = new Migration(5, 6) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            SearchIndex.createAndFill(database);
+        }
+    };
+
+    /**
+     * All steps from version 1 on. The schemas of all versions are kept in <code>app/schemas</code>, Room exports the latest one when compiling.
+     */
+    static final Migration[] MIGRATIONS = {MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4, MIGRATION_4_5, MIGRATION_5_6};
+
+    /**
+     * The FTS tables of {@link SearchIndex} are not part of the exported schema, every database built needs this callback.
+     */
+    public static final Callback CREATE_SEARCH_INDEX = new Callback() {
+        @Override
+        public void onCreate(SupportSQLiteDatabase database) {
+            SearchIndex.create(database);
+        }
+    };
+
+    private final WriteQueue writeQueue = new WriteQueue(new WriteQueue.Transactor() {
+        @Override
+        public void runInTransaction(Runnable body) {
+            DeckDatabase.this.runInTransaction(body);
+        }
+
+        @Override
+        public boolean inTransaction() {
+            return DeckDatabase.this.inTransaction();
+        }
+    });
+
     public static synchronized DeckDatabase getInstance(Context context) {
         if (instance == null) {
             instance = create(context);
@@ -73,7 +167,30 @@ public abstract class DeckDatabase extends RoomDatabase {
         return Room.databaseBuilder(
                 context,
                 DeckDatabase.class,
-                DECK_DB_NAME).build();
+                DECK_DB_NAME)
+                .addMigrations(MIGRATIONS)
+                .addCallback(CREATE_SEARCH_INDEX)
+                // readers and the writer don't block each other; left alone, Room would pick TRUNCATE on low RAM devices
+                .setJournalMode(Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN ? JournalMode.WRITE_AHEAD_LOGGING : JournalMode.TRUNCATE)
+                // LiveData queries, bounded to the read connections SQLite keeps besides the one for writing
+                .setQueryExecutor(DeckExecutors.getInstance().databaseReads())
+                .build();
+    }
+
+    /**
+     * Write transactions of the sync and the outbox go through here, see {@link WriteQueue}.
+     */
+    public WriteQueue getWriteQueue() {
+        return writeQueue;
+    }
+
+    /**
+     * Lets queued writes finish and stops the writer thread before the connections are closed.
+     */
+    @Override
+    public void close() {
+        writeQueue.close();
+        super.close();
     }
 
     public abstract AccountDao getAccountDao();
@@ -95,11 +212,17 @@ public abstract class DeckDatabase extends RoomDatabase {
 
     public abstract LabelDao getLabelDao();
 
+    public abstract PendingMutationDao getPendingMutationDao();
+
     public abstract PermissionDao getPermissionDao();
 
     public abstract StackDao getStackDao();
 
+    public abstract SyncCursorDao getSyncCursorDao();
+
     public abstract UserDao getUserDao();
 
     public abstract AttachmentDao getAttachmentDao();
+
+    public abstract SearchDao getSearchDao();
 }
\ No newline at end of file
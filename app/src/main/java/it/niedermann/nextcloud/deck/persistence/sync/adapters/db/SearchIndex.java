@@ -0,0 +1,175 @@
+package it.niedermann.nextcloud.deck.persistence.sync.adapters.db;
+
+import androidx.sqlite.db.SimpleSQLiteQuery;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.SupportSQLiteQuery;
+
+/**
+ * Full-text index over the titles and descriptions of cards, the titles of labels and the names of users.
+ * <p>
+ * Room doesn't know FTS tables yet, so they are created here and kept up to date by triggers on the indexed tables.
+ * The docid of an FTS row is the localId of the indexed row, inserting clears it first in case a row has been replaced.
+ * The FTS tables keep their own copy of the text, external content tables and prefix indices need a newer SQLite than the one of API 14 and 15.
+ */
+public class SearchIndex {
+
+    /**
+     * Shorter prefixes match a good part of all words of all cards, so they only match whole words.
+     */
+    static final int MIN_CARD_PREFIX_LENGTH = 2;
+
+    private static final String[] CREATE_STATEMENTS = {
+            "CREATE VIRTUAL TABLE IF NOT EXISTS `CardFts` USING fts4(`title`, `description`)",
+            "CREATE TRIGGER IF NOT EXISTS `CardFts_insert` AFTER INSERT ON `Card` BEGIN " +
+                    "DELETE FROM `CardFts` WHERE docid = new.localId; " +
+                    "INSERT INTO `CardFts` (docid, `title`, `description`) VALUES (new.localId, new.title, new.description); END",
+            "CREATE TRIGGER IF NOT EXISTS `CardFts_update` AFTER UPDATE OF `title`, `description` ON `Card` BEGIN " +
+                    "UPDATE `CardFts` SET `title` = new.title, `description` = new.description WHERE docid = new.localId; END",
+            "CREATE TRIGGER IF NOT EXISTS `CardFts_delete` AFTER DELETE ON `Card` BEGIN " +
+                    "DELETE FROM `CardFts` WHERE docid = old.localId; END",
+
+            "CREATE VIRTUAL TABLE IF NOT EXISTS `LabelFts` USING fts4(`title`)",
+            "CREATE TRIGGER IF NOT EXISTS `LabelFts_insert` AFTER INSERT ON `Label` BEGIN " +
+                    "DELETE FROM `LabelFts` WHERE docid = new.localId; " +
+                    "INSERT INTO `LabelFts` (docid, `title`) VALUES (new.localId, new.title); END",
+            "CREATE TRIGGER IF NOT EXISTS `LabelFts_update` AFTER UPDATE OF `title` ON `Label` BEGIN " +
+                    "UPDATE `LabelFts` SET `title` = new.title WHERE docid = new.localId; END",
+            "CREATE TRIGGER IF NOT EXISTS `LabelFts_delete` AFTER DELETE ON `Label` BEGIN " +
+                    "DELETE FROM `LabelFts` WHERE docid = old.localId; END",
+
+            "CREATE VIRTUAL TABLE IF NOT EXISTS `UserFts` USING fts4(`displayname`, `uid`, `primaryKey`)",
+            "CREATE TRIGGER IF NOT EXISTS `UserFts_insert` AFTER INSERT ON `User` BEGIN " +
+                    "DELETE FROM `UserFts` WHERE docid = new.localId; " +
+                    "INSERT INTO `UserFts` (docid, `displayname`, `uid`, `primaryKey`) VALUES (new.localId, new.displayname, new.uid, new.primaryKey); END",
+            "CREATE TRIGGER IF NOT EXISTS `UserFts_update` AFTER UPDATE OF `displayname`, `uid`, `primaryKey` ON `User` BEGIN " +
+                    "UPDATE `UserFts` SET `displayname` = new.displayname, `uid` = new.uid, `primaryKey` = new.primaryKey WHERE docid = new.localId; END",
+            "CREATE TRIGGER IF NOT EXISTS `UserFts_delete` AFTER DELETE ON `User` BEGIN " +
+                    "DELETE FROM `UserFts` WHERE docid = old.localId; END",
+    };
+
+    private static final String[] FILL_STATEMENTS = {
+            "INSERT INTO `CardFts` (docid, `title`, `description`) SELECT localId, title, description FROM `Card`",
+            "INSERT INTO `LabelFts` (docid, `title`) SELECT localId, title FROM `Label`",
+            "INSERT INTO `UserFts` (docid, `displayname`, `uid`, `primaryKey`) SELECT localId, displayname, uid, primaryKey FROM `User`",
+    };
+
+    private SearchIndex() {
+        // only static helpers
+    }
+
+    /**
+     * Creates the FTS tables and their triggers, for a new database.
+     */
+    static void create(SupportSQLiteDatabase database) {
+        for (String statement : CREATE_STATEMENTS) {
+            database.execSQL(statement);
+        }
+    }
+
+    /**
+     * Creates the FTS tables and their triggers and indexes the rows which are already there.
+     */
+    static void createAndFill(SupportSQLiteDatabase database) {
+        create(database);
+        for (String statement : FILL_STATEMENTS) {
+            database.execSQL(statement);
+        }
+    }
+
+    /**
+     * Cards of the account matching all words of <code>term</code>, the ones matching in their title first.
+     *
+     * @return <code>null</code> if <code>term</code> has no word to search for
+     */
+    public static SupportSQLiteQuery cards(long accountId, String term, int offset, int limit) {
+        String anywhere = toMatchQuery(term, null, MIN_CARD_PREFIX_LENGTH);
+        if (anywhere == null) {
+            return null;
+        }
+        if (offset < 0 || limit < 1) {
+            throw new IllegalArgumentException("offset must not be negative and limit must be positive, got " + offset + " and " + limit);
+        }
+        return new SimpleSQLiteQuery("SELECT card.* FROM card JOIN (" + weightedMatches("CardFts") + ") AS hits ON card.localId = hits.docid " +
+                "WHERE card.accountId = ? AND card.status <> 3 " + // LOCAL_DELETED
+                "ORDER BY hits.weight DESC, card.title COLLATE NOCASE, card.localId LIMIT ? OFFSET ?",
+                new Object[]{toMatchQuery(term, "title", MIN_CARD_PREFIX_LENGTH), anywhere, accountId, limit, offset});
+    }
+
+    /**
+     * @return <code>null</code> if <code>term</code> has no word to search for
+     */
+    public static SupportSQLiteQuery labels(long accountId, long boardId, String term) {
+        String match = toMatchQuery(term, null, 1);
+        if (match == null) {
+            return null;
+        }
+        // the shortest title is the closest to what has been typed so far
+        return new SimpleSQLiteQuery("SELECT label.* FROM label JOIN LabelFts ON label.localId = LabelFts.docid " +
+                "WHERE LabelFts MATCH ? AND label.accountId = ? AND label.boardId = ? AND label.status <> 3 " + // LOCAL_DELETED
+                "ORDER BY length(label.title), label.title COLLATE NOCASE",
+                new Object[]{match, accountId, boardId});
+    }
+
+    /**
+     * Users of the account matching all words of <code>term</code>, the ones matching in their display name first.
+     *
+     * @return <code>null</code> if <code>term</code> has no word to search for
+     */
+    public static SupportSQLiteQuery users(long accountId, String term) {
+        String anywhere = toMatchQuery(term, null, 1);
+        if (anywhere == null) {
+            return null;
+        }
+        return new SimpleSQLiteQuery("SELECT user.* FROM user JOIN (" + weightedMatches("UserFts") + ") AS hits ON user.localId = hits.docid " +
+                "WHERE user.accountId = ? AND user.status <> 3 " + // LOCAL_DELETED
+                "ORDER BY hits.weight DESC, user.displayname COLLATE NOCASE",
+                new Object[]{toMatchQuery(term, "displayname", 1), anywhere, accountId});
+    }
+
+    /**
+     * FTS4 of API 14 has no ranking function, so rows matching in the first column weigh 2 and all others 1.
+     * Takes the match of the first column and the match of all columns as parameters.
+     */
+    private static String weightedMatches(String ftsTable) {
+        return "SELECT docid, sum(weight) AS weight FROM (" +
+                "SELECT docid, 2 AS weight FROM " + ftsTable + " WHERE " + ftsTable + " MATCH ? " +
+                "UNION ALL SELECT docid, 1 AS weight FROM " + ftsTable + " WHERE " + ftsTable + " MATCH ?" +
+                ") GROUP BY docid";
+    }
+
+    /**
+     * Turns what a user typed into an FTS query which matches rows containing all of its words, each of them as a prefix.
+     * Splits like the simple tokenizer of SQLite does, so operators and quotes are never passed on.
+     *
+     * @param column          the column to match in, or <code>null</code> for all columns
+     * @param minPrefixLength words shorter than this only match whole words
+     * @return <code>null</code> if <code>term</code> has no word to search for
+     */
+    static String toMatchQuery(String term, String column, int minPrefixLength) {
+        if (term == null) {
+            return null;
+        }
+        StringBuilder query = new StringBuilder();
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i <= term.length(); i++) {
+            char c = i < term.length() ? term.charAt(i) : ' ';
+            if (c >= 0x80 || Character.isLetterOrDigit(c)) {
+                // the simple tokenizer only folds ASCII, so lower case AND, OR, NOT and NEAR are just words
+                word.append(c < 0x80 ? Character.toLowerCase(c) : c);
+            } else if (word.length() > 0) {
+                if (query.length() > 0) {
+                    query.append(' ');
+                }
+                if (column != null) {
+                    query.append(column).append(':');
+                }
+                query.append(word);
+                if (word.length() >= minPrefixLength) {
+                    query.append('*');
+                }
+                word.setLength(0);
+            }
+        }
+        return query.length() == 0 ? null : query.toString();
+    }
+}
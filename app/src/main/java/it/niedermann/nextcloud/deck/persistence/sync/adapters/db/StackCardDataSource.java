@@ -0,0 +1,148 @@
+package it.niedermann.nextcloud.deck.persistence.sync.adapters.db;
+
+import androidx.annotation.NonNull;
+import androidx.paging.DataSource;
+import androidx.paging.ItemKeyedDataSource;
+import androidx.paging.PagedList;
+import androidx.room.InvalidationTracker;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import it.niedermann.nextcloud.deck.model.Card;
+import it.niedermann.nextcloud.deck.model.full.FullCard;
+import it.niedermann.nextcloud.deck.persistence.sync.adapters.db.dao.CardDao;
+
+/**
+ * Cards of a stack for a {@link PagedList}, sorted by <code>order</code>, <code>createdAt</code> and <code>localId</code>.
+ * <p>
+ * Scrolling loads the next page after the sort key of the last loaded card (keyset paging), so a page costs the same
+ * no matter how far down the stack it is. Labels, users and attachments are only read for the cards of a loaded page.
+ * The cards are counted up front, so the list has its full length from the start and shows placeholders until a page is loaded.
+ * <p>
+ * Any change of the cards or their relations invalidates the data source, the next one starts around the last loaded key.
+ */
+class StackCardDataSource extends ItemKeyedDataSource<Card, FullCard> {
+
+    static final int PAGE_SIZE = 30;
+
+    static final PagedList.Config CONFIG = new PagedList.Config.Builder()
+            .setPageSize(PAGE_SIZE)
+            .setInitialLoadSizeHint(2 * PAGE_SIZE)
+            .setPrefetchDistance(PAGE_SIZE)
+            .setEnablePlaceholders(true)
+            .build();
+
+    /**
+     * Sorts like a <code>createdAt</code> of null, see {@link CardDao#getFullCardsForStackAfterDirectly}.
+     */
+    private static final long NO_CREATED_AT = -1;
+
+    private final CardDao cardDao;
+    private final CardRelationLoader relationLoader;
+    private final long accountId;
+    private final long localStackId;
+    /**
+     * The tracker only keeps a weak reference, so the observer lives as long as this data source.
+     */
+    private final InvalidationTracker.Observer observer;
+
+    private StackCardDataSource(DeckDatabase db, CardRelationLoader relationLoader, long accountId, long localStackId) {
+        this.cardDao = db.getCardDao();
+        this.relationLoader = relationLoader;
+        this.accountId = accountId;
+        this.localStackId = localStackId;
+
+        observer = new InvalidationTracker.Observer("Card", "JoinCardWithLabel", "JoinCardWithUser", "Label", "User", "Attachment") {
+            @Override
+            public void onInvalidated(@NonNull Set<String> tables) {
+                invalidate();
+            }
+        };
+        // like Room's LimitOffsetDataSource, data sources may be dropped without being invalidated
+        db.getInvalidationTracker().addWeakObserver(observer);
+    }
+
+    @Override
+    public void loadInitial(@NonNull LoadInitialParams<Card> params, @NonNull LoadInitialCallback<FullCard> callback) {
+        int count = cardDao.countCardsInStackDirectly(accountId, localStackId);
+        int position = 0;
+        Card key = params.requestedInitialKey;
+        if (key != null) {
+            // the card which has been looked at last goes into the middle of the first page
+            position = cardDao.countCardsInStackBeforeDirectly(accountId, localStackId, key.getOrder(), createdAt(key), key.getLocalId()) - params.requestedLoadSize / 2;
+            position = Math.max(0, Math.min(position, count - params.requestedLoadSize));
+        }
+        List<FullCard> page = readPage(position, params.requestedLoadSize);
+        if (page.isEmpty() && position > 0) {
+            // cards have been deleted since counting
+            position = 0;
+            page = readPage(0, params.requestedLoadSize);
+        }
+        if (params.placeholdersEnabled) {
+            int total;
+            if (page.size() < Math.min(params.requestedLoadSize, count - position)) {
+                // cards have been deleted since counting, there are none after this page
+                total = position + page.size();
+            } else {
+                total = Math.max(count, position + page.size());
+            }
+            callback.onResult(page, position, total);
+        } else {
+            callback.onResult(page);
+        }
+    }
+
+    @Override
+    public void loadAfter(@NonNull LoadParams<Card> params, @NonNull LoadCallback<FullCard> callback) {
+        Card key = params.key;
+        List<FullCard> page = cardDao.getFullCardsForStackAfterDirectly(accountId, localStackId, key.getOrder(), createdAt(key), key.getLocalId(), params.requestedLoadSize);
+        relationLoader.readRelations(page);
+        callback.onResult(page);
+    }
+
+    @Override
+    public void loadBefore(@NonNull LoadParams<Card> params, @NonNull LoadCallback<FullCard> callback) {
+        Card key = params.key;
+        List<FullCard> page = cardDao.getFullCardsForStackBeforeDirectly(accountId, localStackId, key.getOrder(), createdAt(key), key.getLocalId(), params.requestedLoadSize);
+        Collections.reverse(page);
+        relationLoader.readRelations(page);
+        callback.onResult(page);
+    }
+
+    @NonNull
+    @Override
+    public Card getKey(@NonNull FullCard item) {
+        return item.getCard();
+    }
+
+    private List<FullCard> readPage(int offset, int limit) {
+        List<FullCard> page = cardDao.getFullCardsPageForStackDirectly(accountId, localStackId, offset, limit);
+        relationLoader.readRelations(page);
+        return page;
+    }
+
+    private static long createdAt(Card key) {
+        return key.getCreatedAt() == null ? NO_CREATED_AT : key.getCreatedAt().getTime();
+    }
+
+    static class Factory extends DataSource.Factory<Card, FullCard> {
+        private final DeckDatabase db;
+        private final CardRelationLoader relationLoader;
+        private final long accountId;
+        private final long localStackId;
+
+        Factory(DeckDatabase db, CardRelationLoader relationLoader, long accountId, long localStackId) {
+            this.db = db;
+            this.relationLoader = relationLoader;
+            this.accountId = accountId;
+            this.localStackId = localStackId;
+        }
+
+        @Override
+        public DataSource<Card, FullCard> create() {
+            return new StackCardDataSource(db, relationLoader, accountId, localStackId);
+        }
+    }
+}
@@ -0,0 +1,367 @@
+package it.niedermann.nextcloud.deck.persistence.sync.adapters.db;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import it.niedermann.nextcloud.deck.DeckLog;
+import it.niedermann.nextcloud.deck.util.concurrent.LatencyHistogram;
+
+/**
+ * Runs write transactions one after another on a single thread, so writers queue up here instead of contending for the database lock.
+ * Writes which are queued at the same time are grouped into one transaction, as long as it stays short.
+ * <p>
+ * Callers block until their write has been committed and get its exceptions like from a plain transaction.
+ * A write may be run more than once: if another write of its group fails, the group is rolled back and the others are run again,
+ * each in a transaction of its own. So writes passed to {@link #runInTransaction(Runnable)} must only change the database.
+ * Writes which change objects outside of it, e.g. set the ids of inserted entities, go to {@link #runInOwnTransaction(Runnable)}.
+ * <p>
+ * Writes from a thread which is already inside a transaction are run right away, waiting for the writer thread would dead lock.
+ * <p>
+ * The writer thread is started with the first write and stopped by {@link #close()}.
+ */
+public class WriteQueue {
+
+    public static final int DEFAULT_MAX_BATCH_SIZE = 32;
+    public static final long DEFAULT_MAX_BATCH_MILLIS = 50;
+
+    public interface Transactor {
+        void runInTransaction(Runnable body);
+
+        /**
+         * @return whether the calling thread is inside a transaction
+         */
+        boolean inTransaction();
+    }
+
+    private final Transactor transactor;
+    private final int maxBatchSize;
+    private final long maxBatchNanos;
+    private final BlockingQueue<Write> queue = new LinkedBlockingQueue<>();
+    /**
+     * Queued by {@link #close()}, the writer thread stops when it gets there.
+     */
+    private final Write stop = new Write(() -> {
+    }, false);
+    private final Object lifecycleLock = new Object();
+    private volatile Thread writer;
+    private boolean closed = false;
+
+    private final AtomicInteger maxQueued = new AtomicInteger();
+    private final AtomicLong transactions = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong failedWrites = new AtomicLong();
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+    private final LatencyHistogram lockWait = new LatencyHistogram();
+    private final LatencyHistogram transactionLength = new LatencyHistogram();
+
+    public WriteQueue(Transactor transactor) {
+        this(transactor, DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_BATCH_MILLIS);
+    }
+
+    WriteQueue(Transactor transactor, int maxBatchSize, long maxBatchMillis) {
+        if (maxBatchSize < 1 || maxBatchMillis < 0) {
+            throw new IllegalArgumentException("maxBatchSize must be positive and maxBatchMillis must not be negative, got " + maxBatchSize + " and " + maxBatchMillis);
+        }
+        this.transactor = transactor;
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchNanos = TimeUnit.MILLISECONDS.toNanos(maxBatchMillis);
+    }
+
+    /**
+     * Runs <code>body</code> in a transaction on the writer thread and waits until it has been committed.
+     */
+    public void runInTransaction(Runnable body) {
+        enqueue(body, true);
+    }
+
+    /**
+     * Like {@link #runInTransaction(Runnable)}, but <code>body</code> is never grouped with other writes, so it runs exactly once.
+     */
+    public void runInOwnTransaction(Runnable body) {
+        enqueue(body, false);
+    }
+
+    private void enqueue(Runnable body, boolean groupable) {
+        if (Thread.currentThread() == writer || transactor.inTransaction()) {
+            transactor.runInTransaction(body);
+            return;
+        }
+        Write write = new Write(body, groupable);
+        synchronized (lifecycleLock) {
+            if (closed) {
+                throw new IllegalStateException("The database has been closed, writes can't be run anymore");
+            }
+            if (writer == null) {
+                writer = new Thread(this::processQueue, "deck-db-writer");
+                writer.setDaemon(true);
+                writer.start();
+            }
+            queue.add(write);
+        }
+        updateMaxQueued(queue.size());
+        write.await();
+    }
+
+    /**
+     * Runs the writes which are already queued and stops the writer thread. Writes queued afterwards fail.
+     * Waits for the writer thread, unless called from a write.
+     */
+    public void close() {
+        Thread stoppedWriter;
+        synchronized (lifecycleLock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            stoppedWriter = writer;
+            if (stoppedWriter == null) {
+                return;
+            }
+            queue.add(stop);
+        }
+        if (Thread.currentThread() == stoppedWriter) {
+            return;
+        }
+        boolean interrupted = false;
+        while (stoppedWriter.isAlive()) {
+            try {
+                stoppedWriter.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void updateMaxQueued(int queued) {
+        int max;
+        do {
+            max = maxQueued.get();
+        } while (queued > max && !maxQueued.compareAndSet(max, queued));
+    }
+
+    private void processQueue() {
+        while (true) {
+            Write first;
+            try {
+                first = queue.take();
+            } catch (InterruptedException e) {
+                DeckLog.warn("Database writer has been interrupted, " + queue.size() + " writes are left behind");
+                return;
+            }
+            if (first == stop) {
+                return;
+            }
+            run(first, first.groupable);
+        }
+    }
+
+    /**
+     * @param group whether further queued writes may join the transaction of <code>first</code>
+     */
+    private void run(final Write first, final boolean group) {
+        final List<Write> batch = new ArrayList<>();
+        final long[] bodyStartedAt = {0};
+        final long calledAt = System.nanoTime();
+        try {
+            transactor.runInTransaction(() -> {
+                bodyStartedAt[0] = System.nanoTime();
+                lockWait.record(bodyStartedAt[0] - calledAt);
+                Write next = first;
+                while (next != null) {
+                    batch.add(next);
+                    if (group) {
+                        queueWait.record(bodyStartedAt[0] - next.enqueuedAt);
+                    }
+                    try {
+                        next.body.run();
+                    } catch (RuntimeException | Error e) {
+                        throw new WriteFailure(next, e);
+                    }
+                    Write candidate = queue.peek();
+                    // this is the only thread taking from the queue, so the peeked write is the one polled
+                    next = group && candidate != null && candidate.groupable
+                            && batch.size() < maxBatchSize && System.nanoTime() - bodyStartedAt[0] < maxBatchNanos
+                            ? queue.poll()
+                            : null;
+                }
+            });
+        } catch (WriteFailure failure) {
+            failedWrites.incrementAndGet();
+            failure.write.fail(failure.getCause());
+            for (Write write : batch) {
+                if (write != failure.write) {
+                    run(write, false);
+                }
+            }
+            return;
+        } catch (RuntimeException | Error e) {
+            // the commit itself failed, e.g. because the disk is full
+            failedWrites.addAndGet(batch.size());
+            for (Write write : batch) {
+                write.fail(e);
+            }
+            return;
+        }
+        transactionLength.record(System.nanoTime() - bodyStartedAt[0]);
+        transactions.incrementAndGet();
+        writes.addAndGet(batch.size());
+        for (Write write : batch) {
+            write.complete();
+        }
+    }
+
+    public Stats getStats() {
+        return new Stats(queue.size(), maxQueued.get(), transactions.get(), writes.get(), failedWrites.get(),
+                queueWait.snapshot(), lockWait.snapshot(), transactionLength.snapshot());
+    }
+
+    private static class Write {
+        private final Runnable body;
+        private final boolean groupable;
+        private final long enqueuedAt = System.nanoTime();
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile Throwable failure;
+
+        private Write(Runnable body, boolean groupable) {
+            this.body = body;
+            this.groupable = groupable;
+        }
+
+        private void complete() {
+            done.countDown();
+        }
+
+        private void fail(Throwable cause) {
+            failure = cause;
+            done.countDown();
+        }
+
+        /**
+         * Keeps waiting when interrupted, the write can't be taken back once it is queued.
+         */
+        private void await() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    done.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            } else if (failure instanceof Error) {
+                throw (Error) failure;
+            }
+        }
+    }
+
+    private static class WriteFailure extends RuntimeException {
+        private final Write write;
+
+        private WriteFailure(Write write, Throwable cause) {
+            super(cause);
+            this.write = write;
+        }
+    }
+
+    /**
+     * Immutable snapshot of the counters of a {@link WriteQueue}.
+     * The histograms have the buckets of {@link LatencyHistogram#BUCKETS_MS}.
+     */
+    public static class Stats {
+        private final int queued;
+        private final int maxQueued;
+        private final long transactions;
+        private final long writes;
+        private final long failedWrites;
+        private final long[] queueWait;
+        private final long[] lockWait;
+        private final long[] transactionLength;
+
+        Stats(int queued, int maxQueued, long transactions, long writes, long failedWrites, long[] queueWait, long[] lockWait, long[] transactionLength) {
+            this.queued = queued;
+            this.maxQueued = maxQueued;
+            this.transactions = transactions;
+            this.writes = writes;
+            this.failedWrites = failedWrites;
+            this.queueWait = queueWait;
+            this.lockWait = lockWait;
+            this.transactionLength = transactionLength;
+        }
+
+        public int getQueued() {
+            return queued;
+        }
+
+        public int getMaxQueued() {
+            return maxQueued;
+        }
+
+        /**
+         * @return count of committed transactions, each of them carrying one or more writes
+         */
+        public long getTransactions() {
+            return transactions;
+        }
+
+        /**
+         * @return count of committed writes
+         */
+        public long getWrites() {
+            return writes;
+        }
+
+        public long getFailedWrites() {
+            return failedWrites;
+        }
+
+        /**
+         * @return time from queueing a write until its transaction started running it
+         */
+        public long[] getQueueWait() {
+            return queueWait.clone();
+        }
+
+        /**
+         * @return time it took to begin a transaction, which is waiting for the database lock
+         */
+        public long[] getLockWait() {
+            return lockWait.clone();
+        }
+
+        /**
+         * @return time from beginning until committing a transaction
+         */
+        public long[] getTransactionLength() {
+            return transactionLength.clone();
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{" +
+                    "queued=" + queued +
+                    ", maxQueued=" + maxQueued +
+                    ", transactions=" + transactions +
+                    ", writes=" + writes +
+                    ", failedWrites=" + failedWrites +
+                    ", queueWait=[" + LatencyHistogram.format(queueWait) + ']' +
+                    ", lockWait=[" + LatencyHistogram.format(lockWait) + ']' +
+                    ", transactionLength=[" + LatencyHistogram.format(transactionLength) + ']' +
+                    '}';
+        }
+    }
+}
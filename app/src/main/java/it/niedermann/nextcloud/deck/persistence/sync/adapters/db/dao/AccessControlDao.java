@@ -4,6 +4,8 @@ import androidx.lifecycle.LiveData;
 import androidx.room.Dao;
 import androidx.room.Query;
 
+import java.util.List;
+
 import it.niedermann.nextcloud.deck.model.AccessControl;
 
 @Dao
@@ -14,4 +16,7 @@ public interface AccessControlDao extends GenericDao<AccessControl> {
 
     @Query("SELECT * FROM AccessControl WHERE accountId = :accountId and id = :remoteId")
     AccessControl getAccessControlByRemoteIdDirectly(final long accountId, final long remoteId);
+
+    @Query("SELECT * FROM AccessControl WHERE accountId = :accountId and id IN (:remoteIds)")
+    List<AccessControl> getAccessControlsByRemoteIdsDirectly(long accountId, List<Long> remoteIds);
 }
\ No newline at end of file
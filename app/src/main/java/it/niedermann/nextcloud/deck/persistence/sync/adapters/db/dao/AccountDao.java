@@ -30,4 +30,7 @@ public interface AccountDao extends GenericDao<Account> {
 
     @Query("SELECT * from account")
     LiveData<List<Account>> selectAll();
+
+    @Query("SELECT * from account")
+    List<Account> getAllAccountsDirectly();
 }
\ No newline at end of file
@@ -29,12 +29,17 @@ public interface BoardDao extends GenericDao<Board> {
     FullBoard getFullBoardByRemoteIdDirectly(long accountId, long remoteId);
 
     @Transaction
-    @Query("SELECT * FROM board WHERE accountId = :accountId and (status<>1 or id is null or lastModified <> lastModifiedLocal)")
+    @Query("SELECT * FROM board WHERE accountId = :accountId and (status IN (2, 3) " + // LOCAL_EDITED, LOCAL_DELETED
+            "or localId IN (SELECT boardId FROM stack WHERE accountId = :accountId and status IN (2, 3)) " +
+            "or localId IN (SELECT s.boardId FROM card c JOIN stack s ON s.localId = c.stackId WHERE c.accountId = :accountId and c.status IN (2, 3)) " +
+            "or localId IN (SELECT boardId FROM label WHERE accountId = :accountId and status IN (2, 3)))")
     List<FullBoard> getLocallyChangedBoardsDirectly(long accountId);
 
     @Transaction
     @Query("SELECT * FROM board WHERE accountId = :accountId and localId = :localId")
     LiveData<FullBoard> getFullBoardById(final long accountId, final long localId);
 
-
+    @Transaction
+    @Query("SELECT * FROM board WHERE accountId = :accountId and id IN (:remoteIds)")
+    List<FullBoard> getFullBoardsByRemoteIdsDirectly(long accountId, List<Long> remoteIds);
 }
\ No newline at end of file
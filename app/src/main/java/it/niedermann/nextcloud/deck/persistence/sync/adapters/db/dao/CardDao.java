@@ -13,9 +13,6 @@ import it.niedermann.nextcloud.deck.model.full.FullCard;
 @Dao
 public interface CardDao extends GenericDao<Card> {
 
-    @Query("SELECT * FROM card WHERE stackId = :localStackId order by `order`, createdAt asc")
-    LiveData<List<Card>> getCardsForStack(final long localStackId);
-
     @Query("SELECT * FROM card WHERE accountId = :accountId and id = :remoteId")
     LiveData<Card> getCardByRemoteId(final long accountId, final long remoteId);
 
@@ -23,9 +20,33 @@ public interface CardDao extends GenericDao<Card> {
     @Query("SELECT * FROM card WHERE accountId = :accountId and id = :remoteId")
     FullCard getFullCardByRemoteIdDirectly(final long accountId, final long remoteId);
 
+    @Query("SELECT count(*) FROM card WHERE accountId = :accountId AND stackId = :localStackId")
+    int countCardsInStackDirectly(final long accountId, final long localStackId);
+
+    // The pages below are sorted by `order`, createdAt and localId, a createdAt of null sorts like -1.
+
+    @Query("SELECT count(*) FROM card WHERE accountId = :accountId AND stackId = :localStackId AND `order` <= :order " +
+            "AND (`order` < :order OR ifnull(createdAt, -1) < :createdAt OR (ifnull(createdAt, -1) = :createdAt AND localId < :localId))")
+    int countCardsInStackBeforeDirectly(final long accountId, final long localStackId, final int order, final long createdAt, final long localId);
+
     @Transaction
-    @Query("SELECT * FROM card WHERE accountId = :accountId AND stackId = :localStackId order by `order`, createdAt asc")
-    LiveData<List<FullCard>> getFullCardsForStack(final long accountId, final long localStackId);
+    @Query("SELECT * FROM card WHERE accountId = :accountId AND stackId = :localStackId order by `order`, createdAt, localId LIMIT :limit OFFSET :offset")
+    List<FullCard> getFullCardsPageForStackDirectly(final long accountId, final long localStackId, final int offset, final int limit);
+
+    @Transaction
+    @Query("SELECT * FROM card WHERE accountId = :accountId AND stackId = :localStackId AND `order` >= :order " +
+            "AND (`order` > :order OR ifnull(createdAt, -1) > :createdAt OR (ifnull(createdAt, -1) = :createdAt AND localId > :localId)) " +
+            "order by `order`, createdAt, localId LIMIT :limit")
+    List<FullCard> getFullCardsForStackAfterDirectly(final long accountId, final long localStackId, final int order, final long createdAt, final long localId, final int limit);
+
+    /**
+     * @return the cards right before the given one, the closest first
+     */
+    @Transaction
+    @Query("SELECT * FROM card WHERE accountId = :accountId AND stackId = :localStackId AND `order` <= :order " +
+            "AND (`order` < :order OR ifnull(createdAt, -1) < :createdAt OR (ifnull(createdAt, -1) = :createdAt AND localId < :localId)) " +
+            "order by `order` DESC, createdAt DESC, localId DESC LIMIT :limit")
+    List<FullCard> getFullCardsForStackBeforeDirectly(final long accountId, final long localStackId, final int order, final long createdAt, final long localId, final int limit);
 
     @Transaction
     @Query("SELECT * FROM card WHERE accountId = :accountId AND stackId = :localStackId order by `order`, createdAt asc")
@@ -35,10 +56,25 @@ public interface CardDao extends GenericDao<Card> {
     @Query("SELECT * FROM card WHERE accountId = :accountId and localId = :localCardId")
     LiveData<FullCard> getFullCardByLocalId(final long accountId, final long localCardId);
 
+    @Query("SELECT * FROM card WHERE accountId = :accountId and localId = :localCardId")
+    Card getCardByLocalIdDirectly(final long accountId, final long localCardId);
+
     @Transaction
     @Query("SELECT * FROM card WHERE accountId = :accountId and id = :remoteId")
     LiveData<FullCard> getFullCardByRemoteId(final long accountId, final long remoteId);
 
     @Query("SELECT * FROM card WHERE accountId = :accountId and id = :remoteId")
     Card getCardByRemoteIdDirectly(long accountId, long remoteId);
+
+    /**
+     * Changes which are waiting in the outbox are sent from there.
+     */
+    @Transaction
+    @Query("SELECT * FROM card WHERE accountId = :accountId and stackId = :localStackId and status IN (2, 3) " + // LOCAL_EDITED, LOCAL_DELETED
+            "and localId NOT IN (SELECT localCardId FROM pendingmutation)")
+    List<FullCard> getLocallyChangedCardsDirectly(long accountId, long localStackId);
+
+    @Transaction
+    @Query("SELECT * FROM card WHERE accountId = :accountId and id IN (:remoteIds)")
+    List<FullCard> getFullCardsByRemoteIdsDirectly(long accountId, List<Long> remoteIds);
 }
\ No newline at end of file
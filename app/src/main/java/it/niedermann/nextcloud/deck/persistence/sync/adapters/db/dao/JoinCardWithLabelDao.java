@@ -3,11 +3,20 @@ package it.niedermann.nextcloud.deck.persistence.sync.adapters.db.dao;
 import java.util.List;
 
 import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
 import androidx.room.Query;
 import it.niedermann.nextcloud.deck.model.JoinCardWithLabel;
 
 @Dao
 public interface JoinCardWithLabelDao extends GenericDao<JoinCardWithLabel> {
+
+    /**
+     * Also replaces a join which is still marked as deleted locally.
+     */
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void upsert(JoinCardWithLabel join);
+
     //TODO: handle status
     @Query("DELETE FROM joincardwithlabel WHERE  cardId = :localCardId")
     void deleteByCardId(long localCardId);
@@ -18,6 +27,9 @@ public interface JoinCardWithLabelDao extends GenericDao<JoinCardWithLabel> {
     @Query("Update joincardwithlabel set status = :status WHERE cardId = :localCardId and labelId = :localLabelId")
     void setDbStatus(long localCardId, long localLabelId, int status);
 
-    @Query("select labelId from joincardwithlabel WHERE cardId = :localCardId and labelId IN (:localLabelIds) and status <> 3") // not LOCAL_DELETED
-    List<Long> filterDeleted(long localCardId, List<Long> localLabelIds);
+    @Query("SELECT j.* FROM joincardwithlabel j JOIN card c ON c.localId = j.cardId WHERE c.accountId = :accountId and j.status IN (2, 3)") // LOCAL_EDITED, LOCAL_DELETED
+    List<JoinCardWithLabel> getLocallyChangedJoinsDirectly(long accountId);
+
+    @Query("SELECT * FROM joincardwithlabel WHERE cardId IN (:localCardIds) and status <> 3 order by cardId, labelId") // not LOCAL_DELETED
+    List<JoinCardWithLabel> getJoinsForCardsDirectly(List<Long> localCardIds);
 }
\ No newline at end of file
@@ -1,17 +1,37 @@
 package it.niedermann.nextcloud.deck.persistence.sync.adapters.db.dao;
 
+import java.util.List;
+
 import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
 import androidx.room.Query;
 import it.niedermann.nextcloud.deck.model.JoinCardWithUser;
 
 @Dao
 public interface JoinCardWithUserDao extends GenericDao<JoinCardWithUser> {
+
+    /**
+     * Also replaces a join which is still marked as deleted locally.
+     */
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void upsert(JoinCardWithUser join);
+
     @Query("DELETE FROM joincardwithuser WHERE cardId = :localId and status=1") // 1 = up_to_date
     void deleteByCardId(long localId);
 
     @Query("Update joincardwithuser set status = :status WHERE cardId = :localCardId and userId = :localUserId")
     void setDbStatus(long localCardId, long localUserId, int status);
 
+    @Query("DELETE FROM joincardwithuser WHERE cardId = :localCardId")
+    void deleteAllByCardIdPhysically(long localCardId);
+
+    @Query("SELECT j.* FROM joincardwithuser j JOIN card c ON c.localId = j.cardId WHERE c.accountId = :accountId and j.status IN (2, 3)") // LOCAL_EDITED, LOCAL_DELETED
+    List<JoinCardWithUser> getLocallyChangedJoinsDirectly(long accountId);
+
     @Query("DELETE FROM joincardwithuser WHERE cardId = :localCardId and userId = :localUserId")
     void deleteByCardIdAndUserIdPhysically(long localCardId, long localUserId);
+
+    @Query("SELECT * FROM joincardwithuser WHERE cardId IN (:localCardIds) and status <> 3 order by cardId, userId") // not LOCAL_DELETED
+    List<JoinCardWithUser> getJoinsForCardsDirectly(List<Long> localCardIds);
 }
\ No newline at end of file
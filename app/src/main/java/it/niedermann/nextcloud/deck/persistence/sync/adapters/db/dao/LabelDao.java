@@ -25,9 +25,9 @@ public interface LabelDao extends GenericDao<Label> {
     @Query("SELECT * FROM label WHERE localId = :localLabelID")
     Label getLabelsByIdDirectly(final long localLabelID);
 
-    @Query("SELECT * FROM label WHERE accountId = :accountId and boardId = :boardId and title LIKE :searchTerm")
-    LiveData<List<Label>> searchLabelByTitle(final long accountId, final long boardId, String searchTerm);
-
-    @Query("SELECT * FROM label WHERE accountId = :accountId and boardId = :boardId and (status<>1 or id is null or lastModified <> lastModifiedLocal)")
+    @Query("SELECT * FROM label WHERE accountId = :accountId and boardId = :boardId and status IN (2, 3)") // LOCAL_EDITED, LOCAL_DELETED
     List<Label> getLocallyChangedLabelsDirectly(long accountId, long boardId);
+
+    @Query("SELECT * FROM label WHERE accountId = :accountId and id IN (:remoteIds)")
+    List<Label> getLabelsByRemoteIdsDirectly(long accountId, List<Long> remoteIds);
 }
\ No newline at end of file
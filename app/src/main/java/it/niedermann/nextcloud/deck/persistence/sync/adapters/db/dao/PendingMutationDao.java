@@ -0,0 +1,30 @@
+package it.niedermann.nextcloud.deck.persistence.sync.adapters.db.dao;
+
+import java.util.List;
+
+import androidx.room.Dao;
+import androidx.room.Query;
+import it.niedermann.nextcloud.deck.model.PendingMutation;
+
+@Dao
+public interface PendingMutationDao extends GenericDao<PendingMutation> {
+
+    @Query("SELECT * FROM pendingmutation WHERE accountId = :accountId AND localId > :afterLocalId ORDER BY localId LIMIT :limit")
+    List<PendingMutation> getPendingMutationsDirectly(long accountId, long afterLocalId, int limit);
+
+    @Query("SELECT * FROM pendingmutation WHERE localCardId = :localCardId AND type = :type " +
+            "AND ifnull(localLabelId, -1) = ifnull(:localLabelId, -1) AND ifnull(localUserId, -1) = ifnull(:localUserId, -1) ORDER BY localId")
+    List<PendingMutation> getPendingMutationsDirectly(long localCardId, int type, Long localLabelId, Long localUserId);
+
+    @Query("SELECT * FROM pendingmutation WHERE localId = :localId")
+    PendingMutation getPendingMutationDirectly(long localId);
+
+    @Query("SELECT count(*) FROM pendingmutation WHERE localCardId = :localCardId AND type = :type")
+    int countPendingMutationsDirectly(long localCardId, int type);
+
+    @Query("DELETE FROM pendingmutation WHERE localId = :localId")
+    void deleteById(long localId);
+
+    @Query("DELETE FROM pendingmutation WHERE localCardId = :localCardId")
+    void deleteByLocalCardId(long localCardId);
+}
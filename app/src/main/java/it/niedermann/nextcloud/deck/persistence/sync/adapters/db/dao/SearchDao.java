@@ -0,0 +1,38 @@
+package it.niedermann.nextcloud.deck.persistence.sync.adapters.db.dao;
+
+import androidx.lifecycle.LiveData;
+import androidx.room.Dao;
+import androidx.room.RawQuery;
+import androidx.sqlite.db.SupportSQLiteQuery;
+
+import java.util.List;
+
+import it.niedermann.nextcloud.deck.model.Label;
+import it.niedermann.nextcloud.deck.model.User;
+import it.niedermann.nextcloud.deck.model.full.FullCard;
+
+/**
+ * Queries of the FTS tables, which Room doesn't know about. They are built by
+ * {@link it.niedermann.nextcloud.deck.persistence.sync.adapters.db.SearchIndex}.
+ */
+@Dao
+public interface SearchDao {
+
+    @RawQuery(observedEntities = FullCard.class)
+    LiveData<List<FullCard>> searchCards(SupportSQLiteQuery query);
+
+    @RawQuery
+    List<FullCard> searchCardsDirectly(SupportSQLiteQuery query);
+
+    @RawQuery(observedEntities = Label.class)
+    LiveData<List<Label>> searchLabels(SupportSQLiteQuery query);
+
+    @RawQuery
+    List<Label> searchLabelsDirectly(SupportSQLiteQuery query);
+
+    @RawQuery(observedEntities = User.class)
+    LiveData<List<User>> searchUsers(SupportSQLiteQuery query);
+
+    @RawQuery
+    List<User> searchUsersDirectly(SupportSQLiteQuery query);
+}
@@ -38,6 +38,11 @@ public interface StackDao extends GenericDao<Stack> {
     LiveData<FullStack> getFullStack(long accountId, long localId);
 
     @Transaction
-    @Query("SELECT * FROM stack WHERE accountId = :accountId and (status<>1 or id is null or lastModified <> lastModifiedLocal)")
-    List<FullStack> getLocallyChangedStacksDirectly(long accountId);
+    @Query("SELECT * FROM stack WHERE accountId = :accountId and boardId = :localBoardId and (status IN (2, 3) " + // LOCAL_EDITED, LOCAL_DELETED
+            "or localId IN (SELECT stackId FROM card WHERE accountId = :accountId and status IN (2, 3)))")
+    List<FullStack> getLocallyChangedStacksDirectly(long accountId, long localBoardId);
+
+    @Transaction
+    @Query("SELECT * FROM stack WHERE accountId = :accountId and boardId = :localBoardId and id IN (:remoteIds)")
+    List<FullStack> getFullStacksByRemoteIdsDirectly(long accountId, long localBoardId, List<Long> remoteIds);
 }
\ No newline at end of file
@@ -0,0 +1,24 @@
+package it.niedermann.nextcloud.deck.persistence.sync.adapters.db.dao;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+import it.niedermann.nextcloud.deck.model.SyncCursor;
+
+@Dao
+public interface SyncCursorDao {
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void upsert(SyncCursor cursor);
+
+    /**
+     * Each cursor of the enclosing scopes (account, board) is valid for the given scope as well, the newest one wins.
+     */
+    @Query("SELECT MAX(lastSync) FROM synccursor WHERE accountId = :accountId " +
+            "AND ((boardId = 0 AND stackId = 0) OR (boardId = :boardId AND (stackId = 0 OR stackId = :stackId)))")
+    Long getNarrowestLastSyncDirectly(long accountId, long boardId, long stackId);
+
+    @Query("DELETE FROM synccursor WHERE accountId = :accountId")
+    void deleteByAccountId(long accountId);
+}
@@ -19,9 +19,6 @@ public interface UserDao extends GenericDao<User> {
     @Query("SELECT * FROM user WHERE accountId = :accountId and uid = :uid")
     LiveData<User> getUserByUid(final long accountId, final String uid);
 
-    @Query("SELECT * FROM user WHERE accountId = :accountId and ( uid LIKE :searchTerm or displayname LIKE :searchTerm or primaryKey LIKE :searchTerm )")
-    LiveData<List<User>> searchUserByUidOrDisplayName(final long accountId, final String searchTerm);
-
     @Query("SELECT * FROM user WHERE accountId = :accountId and uid = :uid")
     User getUserByUidDirectly(final long accountId, final String uid);
 
@@ -30,4 +27,7 @@ public interface UserDao extends GenericDao<User> {
 
     @Query("SELECT * FROM user WHERE localId = :localUserId")
     User getUserByLocalIdDirectly(long localUserId);
+
+    @Query("SELECT * FROM user WHERE accountId = :accountId and uid IN (:uids)")
+    List<User> getUsersByUidsDirectly(long accountId, List<String> uids);
 }
\ No newline at end of file
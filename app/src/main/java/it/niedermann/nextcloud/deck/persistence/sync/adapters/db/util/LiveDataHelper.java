@@ -4,6 +4,7 @@ import androidx.annotation.Nullable;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MediatorLiveData;
 import androidx.lifecycle.Observer;
+import it.niedermann.nextcloud.deck.util.concurrent.DeckExecutors;
 
 public class LiveDataHelper {
 
@@ -34,7 +35,7 @@ public class LiveDataHelper {
         MediatorLiveData<T> ret = new MediatorLiveData<>();
 
         ret.addSource(data, changedData ->
-            doAsync(() -> {
+            readAsync(() -> {
                 onDataChange.onDataChanged(changedData);
                 ret.postValue(changedData);
             })
@@ -46,14 +47,14 @@ public class LiveDataHelper {
     public static <I, O> MediatorLiveData<O> postCustomValue(LiveData<I> data, DataTransformator<I, O> transformator) {
         MediatorLiveData<O> ret = new MediatorLiveData<>();
 
-        ret.addSource(data, changedData -> doAsync(() ->ret.postValue(transformator.transform(changedData))));
+        ret.addSource(data, changedData -> readAsync(() ->ret.postValue(transformator.transform(changedData))));
         return onlyIfChanged(ret);
     }
 
     public static <I, O> MediatorLiveData<O> postSingleValue(LiveData<I> data, DataTransformator<I, O> transformator) {
         MediatorLiveData<O> ret = new MediatorLiveData<>();
 
-        ret.addSource(data, changedData -> doAsync(() ->ret.postValue(transformator.transform(changedData))));
+        ret.addSource(data, changedData -> readAsync(() ->ret.postValue(transformator.transform(changedData))));
         return onlyIfChanged(ret);
     }
 
@@ -90,6 +91,13 @@ public class LiveDataHelper {
     }
 
     private static void doAsync(Runnable r) {
-        new Thread(r).start();
+        DeckExecutors.getInstance().disk().execute(r);
+    }
+
+    /**
+     * For work on query results, next to the queries themselves.
+     */
+    private static void readAsync(Runnable r) {
+        DeckExecutors.getInstance().databaseReads().execute(r);
     }
 }
\ No newline at end of file
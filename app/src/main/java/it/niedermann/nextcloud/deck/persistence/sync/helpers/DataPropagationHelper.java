@@ -2,6 +2,7 @@ package it.niedermann.nextcloud.deck.persistence.sync.helpers;
 
 import it.niedermann.nextcloud.deck.api.IResponseCallback;
 import it.niedermann.nextcloud.deck.model.Account;
+import it.niedermann.nextcloud.deck.model.enums.DBStatus;
 import it.niedermann.nextcloud.deck.model.interfaces.IRemoteEntity;
 import it.niedermann.nextcloud.deck.persistence.sync.adapters.ServerAdapter;
 import it.niedermann.nextcloud.deck.persistence.sync.adapters.db.DataBaseAdapter;
@@ -19,6 +20,8 @@ public class DataPropagationHelper {
 
     public <T extends IRemoteEntity> void createEntity(final AbstractSyncDataProvider<T> provider, T entity, IResponseCallback<T> callback){
         final long accountId = callback.getAccount().getId();
+        // stays marked until the server knows it, so the next synchronization picks it up when this request fails
+        entity.setStatusEnum(DBStatus.LOCAL_EDITED);
         long newID = provider.createInDB(dataBaseAdapter, accountId, entity);
         entity.setLocalId(newID);
         boolean connected = serverAdapter.hasInternetConnection();
@@ -28,6 +31,7 @@ public class DataPropagationHelper {
                 public void onResponse(T response) {
                     applyUpdatesFromRemote(entity, response, accountId);
                     entity.setId(response.getId());
+                    entity.setStatusEnum(DBStatus.UP_TO_DATE);
                     provider.updateInDB(dataBaseAdapter, accountId, entity);
                     callback.onResponse(entity);
                 }
@@ -0,0 +1,48 @@
+package it.niedermann.nextcloud.deck.persistence.sync.helpers;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Remembers which board is currently displayed for each account.
+ * The synchronization always walks through the stacks of these boards, even if the board itself did not change.
+ */
+public class OpenBoards {
+
+    private static volatile OpenBoards instance;
+
+    private final Map<Long, Long> openBoardByAccount = new HashMap<>();
+
+    private OpenBoards() {
+    }
+
+    public static OpenBoards getInstance() {
+        if (instance == null) {
+            synchronized (OpenBoards.class) {
+                if (instance == null) {
+                    instance = new OpenBoards();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Replaces the board which has been opened before for this account, if any.
+     */
+    public synchronized void open(long accountId, long localBoardId) {
+        openBoardByAccount.put(accountId, localBoardId);
+    }
+
+    public synchronized void close(long accountId) {
+        openBoardByAccount.remove(accountId);
+    }
+
+    public synchronized boolean isOpen(long accountId, Long localBoardId) {
+        return localBoardId != null && localBoardId.equals(openBoardByAccount.get(accountId));
+    }
+
+    public synchronized boolean hasOpenBoard(long accountId) {
+        return openBoardByAccount.containsKey(accountId);
+    }
+}
@@ -0,0 +1,375 @@
+package it.niedermann.nextcloud.deck.persistence.sync.helpers;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import it.niedermann.nextcloud.deck.DeckLog;
+import it.niedermann.nextcloud.deck.api.IResponseCallback;
+import it.niedermann.nextcloud.deck.api.RetryPolicy;
+import it.niedermann.nextcloud.deck.model.Account;
+import it.niedermann.nextcloud.deck.model.Board;
+import it.niedermann.nextcloud.deck.model.Card;
+import it.niedermann.nextcloud.deck.model.JoinCardWithLabel;
+import it.niedermann.nextcloud.deck.model.JoinCardWithUser;
+import it.niedermann.nextcloud.deck.model.Label;
+import it.niedermann.nextcloud.deck.model.PendingMutation;
+import it.niedermann.nextcloud.deck.model.Stack;
+import it.niedermann.nextcloud.deck.model.User;
+import it.niedermann.nextcloud.deck.model.enums.DBStatus;
+import it.niedermann.nextcloud.deck.model.enums.MutationType;
+import it.niedermann.nextcloud.deck.persistence.sync.adapters.ServerAdapter;
+import it.niedermann.nextcloud.deck.persistence.sync.adapters.db.DataBaseAdapter;
+import it.niedermann.nextcloud.deck.util.concurrent.DeckExecutors;
+
+/**
+ * Persistent queue of local changes which still have to be sent to the server.
+ * Redundant entries are compacted when enqueueing: repeated card updates are sent once with the latest state,
+ * an assignment followed by the opposite unassignment (or vice versa) cancels out.
+ * The queue is sent in order, in batches of {@link #BATCH_SIZE} entries, and stops at the first error so nothing gets reordered.
+ * Entries which can never succeed, because the server refused them for good or what they refer to is gone, are dropped
+ * and their local change is rolled back, so they don't block the entries behind them.
+ */
+public class OutboxHelper {
+
+    private static final int BATCH_SIZE = 50;
+
+    /**
+     * Guards compaction against entries which are being sent right now. Shared by all instances.
+     */
+    private static final Object LOCK = new Object();
+    private static final Set<Long> inFlight = new HashSet<>();
+    private static final Set<Long> flushingAccounts = new HashSet<>();
+
+    public interface LocalChange {
+        /**
+         * @param cancelledOut <code>true</code> if the change cancelled out a pending opposite one, so the server already has the resulting state
+         */
+        void apply(boolean cancelledOut);
+    }
+
+    private ServerAdapter serverAdapter;
+    private DataBaseAdapter dataBaseAdapter;
+
+    public OutboxHelper(ServerAdapter serverAdapter, DataBaseAdapter dataBaseAdapter) {
+        this.serverAdapter = serverAdapter;
+        this.dataBaseAdapter = dataBaseAdapter;
+    }
+
+    /**
+     * Applies <code>localChange</code> and records <code>mutation</code> for the server in one transaction.
+     */
+    public void enqueue(PendingMutation mutation, LocalChange localChange) {
+        synchronized (LOCK) {
+            dataBaseAdapter.runInTransaction(() -> localChange.apply(compactAndInsert(mutation)));
+        }
+    }
+
+    /**
+     * Enqueues changed labels and users of cards which are not in the outbox yet, e.g. from before it existed.
+     * Looking them up is served by the status index, so this is cheap when there is nothing to do.
+     */
+    public void adoptLocallyChangedJoins(long accountId) {
+        synchronized (LOCK) {
+            dataBaseAdapter.runInTransaction(() -> {
+                for (JoinCardWithLabel join : dataBaseAdapter.getLocallyChangedJoinCardWithLabels(accountId)) {
+                    adopt(PendingMutation.label(accountId,
+                            join.getStatusEnum() == DBStatus.LOCAL_DELETED ? MutationType.UNASSIGN_LABEL : MutationType.ASSIGN_LABEL,
+                            join.getCardId(), join.getLabelId()));
+                }
+                for (JoinCardWithUser join : dataBaseAdapter.getLocallyChangedJoinCardWithUsers(accountId)) {
+                    adopt(PendingMutation.user(accountId,
+                            join.getStatusEnum() == DBStatus.LOCAL_DELETED ? MutationType.UNASSIGN_USER : MutationType.ASSIGN_USER,
+                            join.getCardId(), join.getUserId()));
+                }
+            });
+        }
+    }
+
+    private void adopt(PendingMutation mutation) {
+        if (dataBaseAdapter.getPendingMutationsDirectly(mutation, mutation.getTypeEnum()).isEmpty()
+                && dataBaseAdapter.getPendingMutationsDirectly(mutation, mutation.getTypeEnum().getOpposite()).isEmpty()) {
+            dataBaseAdapter.createPendingMutation(mutation);
+        }
+    }
+
+    private boolean compactAndInsert(PendingMutation mutation) {
+        MutationType type = mutation.getTypeEnum();
+        MutationType opposite = type.getOpposite();
+        if (opposite != null) {
+            for (PendingMutation pending : dataBaseAdapter.getPendingMutationsDirectly(mutation, opposite)) {
+                if (!inFlight.contains(pending.getLocalId())) {
+                    dataBaseAdapter.deletePendingMutation(pending.getLocalId());
+                    return true;
+                }
+            }
+        }
+        for (PendingMutation pending : dataBaseAdapter.getPendingMutationsDirectly(mutation, type)) {
+            if (!inFlight.contains(pending.getLocalId())) {
+                // already waiting, card updates read the latest state when being sent
+                return false;
+            }
+        }
+        dataBaseAdapter.createPendingMutation(mutation);
+        return false;
+    }
+
+    /**
+     * Sends all pending mutations of the account. If the account is already being flushed, this returns immediately.
+     *
+     * @param callback gets <code>true</code> if anything has been sent
+     */
+    public void flush(Account account, IResponseCallback<Boolean> callback) {
+        synchronized (flushingAccounts) {
+            if (!flushingAccounts.add(account.getId())) {
+                callback.onResponse(false);
+                return;
+            }
+        }
+        DeckExecutors.getInstance().disk().execute(() -> flushBatch(account, 0, false, callback));
+    }
+
+    private void flushBatch(Account account, long afterLocalId, boolean sentSomething, IResponseCallback<Boolean> callback) {
+        List<PendingMutation> batch = dataBaseAdapter.getPendingMutationsDirectly(account.getId(), afterLocalId, BATCH_SIZE);
+        if (batch.isEmpty()) {
+            finishFlush(account);
+            callback.onResponse(sentSomething);
+        } else {
+            send(account, batch, 0, sentSomething, callback);
+        }
+    }
+
+    private void send(Account account, List<PendingMutation> batch, int index, boolean sentSomething, IResponseCallback<Boolean> callback) {
+        while (index < batch.size()) {
+            PendingMutation mutation = claim(batch.get(index));
+            index++;
+            if (mutation == null) {
+                // compacted in the meantime
+                continue;
+            }
+            Card card = dataBaseAdapter.getCardByLocalIdDirectly(account.getId(), mutation.getLocalCardId());
+            if (card == null) {
+                // the card is gone, and so is the change
+                dataBaseAdapter.deletePendingMutation(mutation.getLocalId());
+                release(mutation);
+                continue;
+            }
+            if (card.getId() == null) {
+                // the card itself has not reached the server yet
+                release(mutation);
+                continue;
+            }
+            final int nextIndex = index;
+            IResponseCallback<Object> next = new IResponseCallback<Object>(account) {
+                @Override
+                public void onResponse(Object response) {
+                    DeckExecutors.getInstance().disk().execute(() -> {
+                        dataBaseAdapter.runInTransaction(() -> {
+                            dataBaseAdapter.deletePendingMutation(mutation.getLocalId());
+                            applySent(account, mutation);
+                        });
+                        release(mutation);
+                        send(account, batch, nextIndex, true, callback);
+                    });
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    super.onError(throwable);
+                    if (isPermanentFailure(throwable)) {
+                        DeckExecutors.getInstance().disk().execute(() -> {
+                            discard(account, mutation, throwable);
+                            send(account, batch, nextIndex, sentSomething, callback);
+                        });
+                        return;
+                    }
+                    release(mutation);
+                    finishFlush(account);
+                    callback.onError(throwable);
+                }
+            };
+            boolean sending;
+            try {
+                sending = sendToServer(mutation, card, next);
+            } catch (RuntimeException e) {
+                // e.g. OfflineException
+                next.onError(e);
+                return;
+            }
+            if (!sending) {
+                discard(account, mutation, null);
+                continue;
+            }
+            return;
+        }
+        flushBatch(account, batch.get(batch.size() - 1).getLocalId(), sentSomething, callback);
+    }
+
+    /**
+     * @return the current state of the mutation, marked as in flight, or <code>null</code> if it has been compacted away
+     */
+    private PendingMutation claim(PendingMutation mutation) {
+        synchronized (LOCK) {
+            PendingMutation current = dataBaseAdapter.getPendingMutationDirectly(mutation.getLocalId());
+            if (current != null) {
+                inFlight.add(current.getLocalId());
+            }
+            return current;
+        }
+    }
+
+    private void release(PendingMutation mutation) {
+        synchronized (LOCK) {
+            inFlight.remove(mutation.getLocalId());
+        }
+    }
+
+    private void finishFlush(Account account) {
+        synchronized (flushingAccounts) {
+            flushingAccounts.remove(account.getId());
+        }
+    }
+
+    /**
+     * @return <code>false</code> if nothing has been sent because the stack, board, label or user of the mutation is gone
+     */
+    private boolean sendToServer(PendingMutation mutation, Card card, IResponseCallback<Object> next) {
+        Stack stack = dataBaseAdapter.getStackByLocalIdDirectly(card.getStackId());
+        Board board = stack == null ? null : dataBaseAdapter.getBoardByLocalIdDirectly(stack.getBoardId());
+        if (board == null) {
+            return false;
+        }
+        switch (mutation.getTypeEnum()) {
+            case UPDATE_CARD:
+                serverAdapter.updateCard(board.getId(), stack.getId(), card, forward(next));
+                return true;
+            case ASSIGN_LABEL: {
+                Label label = dataBaseAdapter.getLabelByLocalIdDirectly(mutation.getLocalLabelId());
+                if (label == null) {
+                    return false;
+                }
+                serverAdapter.assignLabelToCard(board.getId(), stack.getId(), card.getId(), label.getId(), forward(next));
+                return true;
+            }
+            case UNASSIGN_LABEL: {
+                Label label = dataBaseAdapter.getLabelByLocalIdDirectly(mutation.getLocalLabelId());
+                if (label == null) {
+                    return false;
+                }
+                serverAdapter.unassignLabelFromCard(board.getId(), stack.getId(), card.getId(), label.getId(), forward(next));
+                return true;
+            }
+            case ASSIGN_USER: {
+                User user = dataBaseAdapter.getUserByLocalIdDirectly(mutation.getLocalUserId());
+                if (user == null) {
+                    return false;
+                }
+                serverAdapter.assignUserToCard(board.getId(), stack.getId(), card.getId(), user.getUid(), forward(next));
+                return true;
+            }
+            case UNASSIGN_USER: {
+                User user = dataBaseAdapter.getUserByLocalIdDirectly(mutation.getLocalUserId());
+                if (user == null) {
+                    return false;
+                }
+                serverAdapter.unassignUserFromCard(board.getId(), stack.getId(), card.getId(), user.getUid(), forward(next));
+                return true;
+            }
+            default:
+                throw new IllegalArgumentException("unknown mutation: " + mutation);
+        }
+    }
+
+    /**
+     * @return <code>true</code> if sending the mutation again won't help, e.g. because the server answered 404
+     */
+    private static boolean isPermanentFailure(Throwable throwable) {
+        return throwable instanceof NullPointerException || RetryPolicy.isRejected(throwable);
+    }
+
+    /**
+     * Drops a mutation which can never succeed and rolls back its local change, the next synchronization brings the server state.
+     *
+     * @param reason why the server refused it, <code>null</code> if what it refers to is gone locally
+     */
+    private void discard(Account account, PendingMutation mutation, Throwable reason) {
+        DeckLog.warn("Dropping " + mutation + " from the outbox, " + (reason == null ? "what it refers to is gone" : "it failed with " + reason));
+        dataBaseAdapter.runInTransaction(() -> {
+            dataBaseAdapter.deletePendingMutation(mutation.getLocalId());
+            rollBack(account, mutation);
+        });
+        release(mutation);
+    }
+
+    private static <T> IResponseCallback<T> forward(IResponseCallback<Object> next) {
+        return new IResponseCallback<T>(next.getAccount()) {
+            @Override
+            public void onResponse(T response) {
+                next.onResponse(response);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                next.onError(throwable);
+            }
+        };
+    }
+
+    private void rollBack(Account account, PendingMutation mutation) {
+        long localCardId = mutation.getLocalCardId();
+        switch (mutation.getTypeEnum()) {
+            case UPDATE_CARD:
+                if (!dataBaseAdapter.hasPendingMutation(localCardId, MutationType.UPDATE_CARD)) {
+                    Card card = dataBaseAdapter.getCardByLocalIdDirectly(account.getId(), localCardId);
+                    if (card != null) {
+                        // without the date of the server version the next synchronization overwrites the local one
+                        card.setStatusEnum(DBStatus.UP_TO_DATE);
+                        card.setLastModified(null);
+                        dataBaseAdapter.updateCard(card, false);
+                    }
+                }
+                break;
+            case ASSIGN_LABEL:
+                dataBaseAdapter.deleteJoinedLabelForCardPhysically(localCardId, mutation.getLocalLabelId());
+                break;
+            case UNASSIGN_LABEL:
+                dataBaseAdapter.setStatusForJoinCardWithLabel(localCardId, mutation.getLocalLabelId(), DBStatus.UP_TO_DATE.getId());
+                break;
+            case ASSIGN_USER:
+                dataBaseAdapter.deleteJoinedUserForCardPhysically(localCardId, mutation.getLocalUserId());
+                break;
+            case UNASSIGN_USER:
+                dataBaseAdapter.setStatusForJoinCardWithUser(localCardId, mutation.getLocalUserId(), DBStatus.UP_TO_DATE.getId());
+                break;
+            default:
+                DeckLog.warn("rolling back unknown mutation: " + mutation);
+        }
+    }
+
+    private void applySent(Account account, PendingMutation mutation) {
+        long localCardId = mutation.getLocalCardId();
+        switch (mutation.getTypeEnum()) {
+            case UPDATE_CARD:
+                if (!dataBaseAdapter.hasPendingMutation(localCardId, MutationType.UPDATE_CARD)) {
+                    Card card = dataBaseAdapter.getCardByLocalIdDirectly(account.getId(), localCardId);
+                    card.setStatusEnum(DBStatus.UP_TO_DATE);
+                    dataBaseAdapter.updateCard(card, false);
+                }
+                break;
+            case ASSIGN_LABEL:
+                dataBaseAdapter.setStatusForJoinCardWithLabel(localCardId, mutation.getLocalLabelId(), DBStatus.UP_TO_DATE.getId());
+                break;
+            case UNASSIGN_LABEL:
+                dataBaseAdapter.deleteJoinedLabelForCardPhysically(localCardId, mutation.getLocalLabelId());
+                break;
+            case ASSIGN_USER:
+                dataBaseAdapter.setStatusForJoinCardWithUser(localCardId, mutation.getLocalUserId(), DBStatus.UP_TO_DATE.getId());
+                break;
+            case UNASSIGN_USER:
+                dataBaseAdapter.deleteJoinedUserForCardPhysically(localCardId, mutation.getLocalUserId());
+                break;
+            default:
+                DeckLog.warn("sent unknown mutation: " + mutation);
+        }
+    }
+}
@@ -1,26 +1,60 @@
 package it.niedermann.nextcloud.deck.persistence.sync.helpers;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import it.niedermann.nextcloud.deck.DeckLog;
 import it.niedermann.nextcloud.deck.api.IResponseCallback;
+import it.niedermann.nextcloud.deck.exceptions.SyncException;
 import it.niedermann.nextcloud.deck.model.Account;
+import it.niedermann.nextcloud.deck.model.SyncCursor;
 import it.niedermann.nextcloud.deck.model.enums.DBStatus;
 import it.niedermann.nextcloud.deck.model.interfaces.IRemoteEntity;
 import it.niedermann.nextcloud.deck.persistence.sync.adapters.ServerAdapter;
 import it.niedermann.nextcloud.deck.persistence.sync.adapters.db.DataBaseAdapter;
 import it.niedermann.nextcloud.deck.persistence.sync.helpers.providers.AbstractSyncDataProvider;
 import it.niedermann.nextcloud.deck.persistence.sync.helpers.providers.IRelationshipProvider;
+import it.niedermann.nextcloud.deck.util.concurrent.DeckExecutors;
 
 public class SyncHelper {
+
+    public static final int DEFAULT_MAX_PARALLEL_REQUESTS = 4;
+
+    public enum ErrorPolicy {
+        /**
+         * Report the first error as soon as it occurs, everything after it is ignored.
+         */
+        FAIL_FAST,
+        /**
+         * Wait until the whole tree has finished and report all errors at once as {@link SyncException}.
+         */
+        AGGREGATE
+    }
+
     private ServerAdapter serverAdapter;
     private DataBaseAdapter dataBaseAdapter;
     private Account account;
     private long accountId;
     private IResponseCallback<Boolean> responseCallback;
     private Date lastSync;
+    private final Date syncStart = new Date();
+    private final SyncStatistics statistics = new SyncStatistics();
+    private SyncTrace trace;
+    private ErrorPolicy errorPolicy = ErrorPolicy.FAIL_FAST;
+    private int maxParallelRequests = DEFAULT_MAX_PARALLEL_REQUESTS;
+    private int runningRequests = 0;
+    private final Queue<Runnable> waitingRequests = new LinkedList<>();
 
+    /**
+     * @param lastSync point in time up to which the whole account has been synchronized, <code>null</code> if never.
+     *                 Providers with an own {@link SyncCursor} scope use the narrowest cursor instead.
+     */
     public SyncHelper(ServerAdapter serverAdapter, DataBaseAdapter dataBaseAdapter, Date lastSync) {
         this.serverAdapter = serverAdapter;
         this.dataBaseAdapter = dataBaseAdapter;
@@ -30,95 +64,248 @@ public class SyncHelper {
     // Sync Server -> App
     public <T extends IRemoteEntity> void doSyncFor(final AbstractSyncDataProvider<T> provider){
         provider.registerChildInParent(provider);
-        provider.getAllFromServer(serverAdapter, accountId, new IResponseCallback<List<T>>(account) {
+        if (provider.fetchesFromServer()) {
+            runLimited(() -> fetchAndApply(provider, true));
+        } else {
+            fetchAndApply(provider, false);
+        }
+    }
+
+    private <T extends IRemoteEntity> void fetchAndApply(final AbstractSyncDataProvider<T> provider, final boolean holdsSlot) {
+        final SyncCursor cursor = provider.getSyncCursorScope(accountId);
+        final Date since;
+        if (cursor == null) {
+            since = lastSync;
+        } else {
+            since = dataBaseAdapter.getLastSyncDirectly(accountId, cursor.getBoardId(), cursor.getStackId());
+            // requests start after this point in time, so changes made while syncing are fetched again next time
+            cursor.setLastSync(syncStart);
+            provider.doOnSubtreeSynced(() -> dataBaseAdapter.updateSyncCursor(cursor));
+        }
+        IResponseCallback<List<T>> callback = new IResponseCallback<List<T>>(account) {
             @Override
             public void onResponse(List<T> response) {
-                if (response != null && !response.isEmpty()) {
-                    provider.goingDeeper();
-                    for (T entityFromServer : response) {
-                        entityFromServer.setAccountId(accountId);
-                        T existingEntity = provider.getSingleFromDB(dataBaseAdapter, accountId, entityFromServer);
-
-                        if (existingEntity == null) {
-                            provider.createInDB(dataBaseAdapter, accountId, entityFromServer);
-                        } else {
-                            //TODO: how to handle deletes? what about archived?
-                            if (existingEntity.getStatus() != DBStatus.UP_TO_DATE.getId()){
-                                DeckLog.log("Conflicting changes on entity: "+existingEntity);
-                                // TODO: what to do?
-                            } else {
-//                                if (existingEntity.getLastModified().getTime() == entityFromServer.getLastModified().getTime()) {
-//                                    continue; // TODO: is this is ok for sure? -> isn`t! NPE
-//                                }
-                                provider.updateInDB(dataBaseAdapter, accountId, applyUpdatesFromRemote(existingEntity, entityFromServer, accountId));
+                try {
+                    boolean changedSomething = false;
+                    if (response != null && !response.isEmpty()) {
+                        List<T> existingEntities = applyFromServer(provider, response);
+                        for (int i = 0; i < response.size(); i++) {
+                            T existingEntity = existingEntities.get(i);
+                            if (existingEntity != null) {
+                                changedSomething = true;
+                                statistics.descendedInto();
+                                provider.goDeeper(SyncHelper.this, existingEntity, response.get(i), responseCallback);
                             }
                         }
-                        existingEntity = provider.getSingleFromDB(dataBaseAdapter, accountId, entityFromServer);
-                        provider.goDeeper(SyncHelper.this, existingEntity, entityFromServer, responseCallback);
                     }
-                    provider.doneGoingDeeper(responseCallback, true);
-                } else {
-                    provider.childDone(provider, responseCallback, false);
+                    provider.workDone(responseCallback, changedSomething);
+                } catch (RuntimeException e) {
+                    onProviderError(provider, e);
+                } finally {
+                    releaseSlot(holdsSlot);
                 }
             }
 
             @Override
             public void onError(Throwable throwable) {
-                provider.onError(throwable, responseCallback);
-                DeckLog.logError(throwable);
-                responseCallback.onError(throwable);
+                try {
+                    onProviderError(provider, throwable);
+                } finally {
+                    releaseSlot(holdsSlot);
+                }
             }
-        }, lastSync);
+
+            @Override
+            public void onNotModified() {
+                // nothing to parse or apply, the cursor still advances
+                statistics.subtreeNotModified();
+                try {
+                    provider.workDone(responseCallback, false);
+                } finally {
+                    releaseSlot(holdsSlot);
+                }
+            }
+        };
+        try {
+            provider.getAllFromServer(serverAdapter, accountId, callback, since);
+        } catch (RuntimeException e) {
+            // e.g. OfflineException
+            callback.onError(e);
+        }
+    }
+
+    private void runLimited(Runnable request) {
+        synchronized (waitingRequests) {
+            if (runningRequests >= maxParallelRequests) {
+                waitingRequests.add(request);
+                return;
+            }
+            runningRequests++;
+        }
+        request.run();
+    }
+
+    private void releaseSlot(boolean holdsSlot) {
+        if (!holdsSlot) {
+            return;
+        }
+        Runnable next;
+        synchronized (waitingRequests) {
+            next = waitingRequests.poll();
+            if (next == null) {
+                runningRequests--;
+                return;
+            }
+        }
+        // the slot is handed over, run it detached to avoid deep recursion when requests fail immediately
+        DeckExecutors.getInstance().network().execute(next);
+    }
+
+    /**
+     * Writes all entities of one server response to the database.
+     * Existing rows and the users they reference are resolved with one lookup each, all inserts and updates are written in one transaction.
+     * Entities which have not changed on the server since they have been stored are skipped.
+     *
+     * @return the local state of each entity after applying, in the same order as <code>entitiesFromServer</code>.
+     * <code>null</code> for skipped entities, their subtree doesn't need to be synced,
+     * unless {@link AbstractSyncDataProvider#alwaysGoDeeper(long, IRemoteEntity)} asks for it.
+     */
+    public <T extends IRemoteEntity> List<T> applyFromServer(final AbstractSyncDataProvider<T> provider, List<T> entitiesFromServer) {
+        final List<T> result = new ArrayList<>(entitiesFromServer.size());
+        final SyncTrace.Span span = trace.span(provider.getTraceLevel());
+        final long dbStart = span.dbStarted();
+        final int[] written = {0};
+        final int[] skipped = {0};
+        final int[] dbOperations = {1};
+        // sets the local ids of the server entities, so it must not be run again after a rollback
+        dataBaseAdapter.runInOwnTransaction(() -> {
+            Map<Object, T> existingEntities = provider.getManyFromDB(dataBaseAdapter, accountId, entitiesFromServer);
+            provider.prepareApply(dataBaseAdapter, accountId, entitiesFromServer);
+            final List<T> updated = new ArrayList<>();
+            final List<Integer> updatedPositions = new ArrayList<>();
+            for (T entityFromServer : entitiesFromServer) {
+                entityFromServer.setAccountId(accountId);
+                Object remoteKey = provider.getRemoteKey(entityFromServer);
+                T existingEntity = existingEntities.get(remoteKey);
+
+                if (existingEntity == null) {
+                    entityFromServer.setLocalId(provider.createInDB(dataBaseAdapter, accountId, entityFromServer));
+                    written[0]++;
+                    dbOperations[0]++;
+                    existingEntity = entityFromServer;
+                } else if (existingEntity.getStatus() == DBStatus.UP_TO_DATE.getId() && provider.isUnchanged(existingEntity, entityFromServer)) {
+                    skipped[0]++;
+                    result.add(provider.alwaysGoDeeper(accountId, existingEntity) ? existingEntity : null);
+                    continue;
+                } else {
+                    //TODO: how to handle deletes? what about archived?
+                    if (existingEntity.getStatus() != DBStatus.UP_TO_DATE.getId()){
+                        final T conflictingEntity = existingEntity;
+                        DeckLog.info(() -> "Conflicting changes on entity: " + conflictingEntity);
+                        // TODO: what to do?
+                    } else {
+                        provider.updateInDB(dataBaseAdapter, accountId, applyUpdatesFromRemote(existingEntity, entityFromServer, accountId));
+                        written[0]++;
+                        dbOperations[0]++;
+                        existingEntity = entityFromServer;
+                        updated.add(entityFromServer);
+                        updatedPositions.add(result.size());
+                    }
+                }
+                // the same entity may occur more than once in a response (e.g. users)
+                existingEntities.put(remoteKey, existingEntity);
+                result.add(existingEntity);
+            }
+            if (!updated.isEmpty()) {
+                // the server entities lack the local relations and local-only fields, so the children are compared with what is stored now
+                Map<Object, T> stored = provider.getManyFromDB(dataBaseAdapter, accountId, updated);
+                dbOperations[0]++;
+                for (int i = 0; i < updated.size(); i++) {
+                    T storedEntity = stored.get(provider.getRemoteKey(updated.get(i)));
+                    if (storedEntity != null) {
+                        result.set(updatedPositions.get(i), storedEntity);
+                    }
+                }
+            }
+        });
+        statistics.entitiesWritten(written[0]);
+        statistics.entitiesSkipped(skipped[0]);
+        span.dbFinished(dbStart, dbOperations[0]);
+        return result;
     }
 
     // Sync App -> Server
     public <T extends IRemoteEntity> void doUpSyncFor(AbstractSyncDataProvider<T> provider){
+        provider.registerChildInParent(provider);
+        final SyncTrace.Span span = trace.span(provider.getTraceLevel());
+        final long lookupStart = span.dbStarted();
         List<T> allFromDB = provider.getAllFromDB(dataBaseAdapter, accountId, lastSync);
+        span.dbFinished(lookupStart, 1);
         if (allFromDB != null && !allFromDB.isEmpty()) {
-            provider.goingDeeper();
             for (T entity : allFromDB) {
+                provider.beginWork();
+                if (entity.getStatusEnum() == DBStatus.UP_TO_DATE && entity.getId() != null) {
+                    // only listed because of changed children
+                    provider.goDeeperForUpSync(this, dataBaseAdapter, entity, entity, responseCallback);
+                    provider.workDone(responseCallback, false);
+                    continue;
+                }
+                if (entity.getStatusEnum() == DBStatus.LOCAL_DELETED && entity.getId() == null) {
+                    // never reached the server
+                    provider.deleteInDB(dataBaseAdapter, accountId, entity);
+                    provider.workDone(responseCallback, true);
+                    continue;
+                }
                 IResponseCallback<T> updateCallback = new IResponseCallback<T>(account) {
                     @Override
                     public void onResponse(T response) {
+                        long dbStart = span.dbStarted();
                         provider.updateInDB(dataBaseAdapter, accountId, applyUpdatesFromRemote(entity, response, accountId));
-                        provider.goDeeperForUpSync(SyncHelper.this, dataBaseAdapter, entity, response, new IResponseCallback<Boolean>(account) {
-                            @Override
-                            public void onResponse(Boolean response) {
-                                provider.doneGoingDeeper(responseCallback, true);
-                            }
-
-                            @Override
-                            public void onError(Throwable throwable) {
-                                super.onError(throwable);
-                                responseCallback.onError(throwable);
-                            }
-                        });
+                        span.dbFinished(dbStart, 1);
+                        provider.goDeeperForUpSync(SyncHelper.this, dataBaseAdapter, entity, response, responseCallback);
+                        provider.workDone(responseCallback, true);
                     }
 
                     @Override
                     public void onError(Throwable throwable) {
-                        super.onError(throwable);
-                        responseCallback.onError(throwable);
+                        onProviderError(provider, throwable);
                     }
                 };
-                if (entity.getId()!=null) {
-                    if (entity.getStatusEnum() == DBStatus.LOCAL_DELETED) {
-                        provider.deleteOnServer(serverAdapter, accountId, new IResponseCallback<Void>(account) {
-                            @Override
-                            public void onResponse(Void response) {
-                                provider.deleteInDB(dataBaseAdapter, accountId, entity);
-                            }
-                        }, entity);
+                try {
+                    if (entity.getId()!=null) {
+                        if (entity.getStatusEnum() == DBStatus.LOCAL_DELETED) {
+                            provider.deleteOnServer(serverAdapter, accountId, new IResponseCallback<Void>(account) {
+                                @Override
+                                public void onResponse(Void response) {
+                                    long dbStart = span.dbStarted();
+                                    provider.deleteInDB(dataBaseAdapter, accountId, entity);
+                                    span.dbFinished(dbStart, 1);
+                                    provider.workDone(responseCallback, true);
+                                }
+
+                                @Override
+                                public void onError(Throwable throwable) {
+                                    onProviderError(provider, throwable);
+                                }
+                            }, entity);
+                        } else {
+                            provider.updateOnServer(serverAdapter, accountId, updateCallback, entity);
+                        }
                     } else {
-                        provider.updateOnServer(serverAdapter, accountId, updateCallback, entity);
+                        provider.createOnServer(serverAdapter, accountId, updateCallback, entity);
                     }
-                } else {
-                    provider.createOnServer(serverAdapter, accountId, updateCallback, entity);
+                } catch (RuntimeException e) {
+                    // e.g. OfflineException
+                    onProviderError(provider, e);
                 }
             }
-        } else {
-            provider.childDone(provider, responseCallback, false);
         }
+        provider.workDone(responseCallback, false);
+    }
+
+    private void onProviderError(AbstractSyncDataProvider<?> provider, Throwable throwable) {
+        trace.span(provider.getTraceLevel()).error();
+        provider.onError(throwable, responseCallback);
     }
 
     public void fixRelations(IRelationshipProvider relationshipProvider) {
@@ -135,9 +322,75 @@ public class SyncHelper {
         return remoteEntity;
     }
 
+    public SyncStatistics getStatistics() {
+        return statistics;
+    }
+
+    public SyncTrace getTrace() {
+        return trace;
+    }
+
+    public void setErrorPolicy(ErrorPolicy errorPolicy) {
+        this.errorPolicy = errorPolicy;
+    }
+
+    /**
+     * @param maxParallelRequests how many providers may fetch from the server at the same time, e.g. stacks of different boards
+     */
+    public void setMaxParallelRequests(int maxParallelRequests) {
+        if (maxParallelRequests < 1) {
+            throw new IllegalArgumentException("at least one request must be allowed, got " + maxParallelRequests);
+        }
+        this.maxParallelRequests = maxParallelRequests;
+    }
+
+    /**
+     * The callback gets called exactly once per sync run, either with the result of the whole provider tree or with the error(s)
+     * according to the {@link ErrorPolicy}.
+     */
     public void setResponseCallback(IResponseCallback<Boolean> callback) {
-        this.responseCallback = callback;
-        this.account = responseCallback.getAccount();
+        this.account = callback.getAccount();
         accountId = account.getId();
+        this.responseCallback = new CompletionCallback(callback);
+        trace = SyncTracer.getInstance().getActiveTrace(accountId);
+        if (trace == null) {
+            // not started by the SyncManager, counted anyway but not published
+            trace = new SyncTrace(accountId);
+        }
+    }
+
+    /**
+     * Guards the callback given by the caller against being called more than once by the provider tree.
+     */
+    private class CompletionCallback extends IResponseCallback<Boolean> {
+        private final IResponseCallback<Boolean> delegate;
+        private final AtomicBoolean completed = new AtomicBoolean(false);
+        private final Queue<Throwable> errors = new ConcurrentLinkedQueue<>();
+
+        CompletionCallback(IResponseCallback<Boolean> delegate) {
+            super(delegate.getAccount());
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void onResponse(Boolean response) {
+            if (!completed.compareAndSet(false, true)) {
+                return;
+            }
+            if (errors.isEmpty()) {
+                delegate.onResponse(response);
+            } else {
+                delegate.onError(new SyncException(errors));
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            super.onError(throwable);
+            errors.add(throwable);
+            if (errorPolicy == ErrorPolicy.FAIL_FAST && completed.compareAndSet(false, true)) {
+                delegate.onError(throwable);
+            }
+        }
     }
 }
@@ -0,0 +1,68 @@
+package it.niedermann.nextcloud.deck.persistence.sync.helpers;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts what a {@link SyncHelper} did with the entities it got from the server.
+ * Safe to be updated from any thread.
+ */
+public class SyncStatistics {
+    private final AtomicInteger skipped = new AtomicInteger();
+    private final AtomicInteger written = new AtomicInteger();
+    private final AtomicInteger descended = new AtomicInteger();
+    private final AtomicInteger notModified = new AtomicInteger();
+
+    void entitiesSkipped(int count) {
+        skipped.addAndGet(count);
+    }
+
+    void entitiesWritten(int count) {
+        written.addAndGet(count);
+    }
+
+    void descendedInto() {
+        descended.incrementAndGet();
+    }
+
+    void subtreeNotModified() {
+        notModified.incrementAndGet();
+    }
+
+    /**
+     * @return count of entities which have not been changed on the server and were therefore neither written nor descended into
+     */
+    public int getSkipped() {
+        return skipped.get();
+    }
+
+    /**
+     * @return count of entities which have been inserted or updated
+     */
+    public int getWritten() {
+        return written.get();
+    }
+
+    /**
+     * @return count of entities whose children have been synced
+     */
+    public int getDescended() {
+        return descended.get();
+    }
+
+    /**
+     * @return count of requests the server answered with <code>304 Not Modified</code>, whose subtrees have been skipped
+     */
+    public int getNotModified() {
+        return notModified.get();
+    }
+
+    @Override
+    public String toString() {
+        return "SyncStatistics{" +
+                "skipped=" + skipped +
+                ", written=" + written +
+                ", descended=" + descended +
+                ", notModified=" + notModified +
+                '}';
+    }
+}
@@ -0,0 +1,277 @@
+package it.niedermann.nextcloud.deck.persistence.sync.helpers;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * What one synchronization of an account spent its time on, split by provider level.
+ * Comparing network, parsing and database time of a level tells where the bottleneck is.
+ * Safe to be updated from any thread.
+ */
+public class SyncTrace {
+
+    public static final String LEVEL_BOARD = "board";
+    public static final String LEVEL_STACK = "stack";
+    public static final String LEVEL_CARD = "card";
+    public static final String LEVEL_LABEL = "label";
+    public static final String LEVEL_USER = "user";
+    public static final String LEVEL_ATTACHMENT = "attachment";
+    public static final String LEVEL_ACL = "acl";
+
+    private final long accountId;
+    private final long startedAt = System.currentTimeMillis();
+    private final long startNanos = System.nanoTime();
+    private volatile long durationNanos = -1;
+    private volatile boolean successful;
+    private final ConcurrentMap<String, Span> spans = new ConcurrentHashMap<>();
+
+    public SyncTrace(long accountId) {
+        this.accountId = accountId;
+    }
+
+    /**
+     * @return the counters of the given level, created on first use
+     */
+    public Span span(String level) {
+        Span span = spans.get(level);
+        if (span == null) {
+            Span created = new Span();
+            span = spans.putIfAbsent(level, created);
+            if (span == null) {
+                span = created;
+            }
+        }
+        return span;
+    }
+
+    void finish(boolean successful) {
+        this.successful = successful;
+        durationNanos = System.nanoTime() - startNanos;
+    }
+
+    public long getAccountId() {
+        return accountId;
+    }
+
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    /**
+     * @return wall time of the whole synchronization, -1 while it is still running
+     */
+    public long getDurationMillis() {
+        return durationNanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(durationNanos);
+    }
+
+    public boolean isSuccessful() {
+        return successful;
+    }
+
+    public Map<String, Span> getSpans() {
+        return new TreeMap<>(spans);
+    }
+
+    public String toJson() {
+        try {
+            JSONObject levels = new JSONObject();
+            for (Map.Entry<String, Span> entry : getSpans().entrySet()) {
+                levels.put(entry.getKey(), entry.getValue().toJson());
+            }
+            return new JSONObject()
+                    .put("accountId", accountId)
+                    .put("startedAt", startedAt)
+                    .put("durationMillis", getDurationMillis())
+                    .put("successful", successful)
+                    .put("levels", levels)
+                    .toString();
+        } catch (JSONException e) {
+            // only numbers and strings are put, this can't happen
+            throw new IllegalStateException("Could not export sync trace of account " + accountId, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SyncTrace{" +
+                "accountId=" + accountId +
+                ", durationMillis=" + getDurationMillis() +
+                ", successful=" + successful +
+                ", spans=" + getSpans() +
+                '}';
+    }
+
+    /**
+     * Counters of one provider level. Times of requests running in parallel add up,
+     * so they can be greater than the wall time of the level.
+     */
+    public static class Span {
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong notModified = new AtomicLong();
+        private final AtomicLong entitiesReceived = new AtomicLong();
+        private final AtomicLong bytesReceived = new AtomicLong();
+        private final AtomicLong networkNanos = new AtomicLong();
+        private final AtomicLong parseNanos = new AtomicLong();
+        private final AtomicLong dbOperations = new AtomicLong();
+        private final AtomicLong dbNanos = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong firstStartNanos = new AtomicLong(Long.MAX_VALUE);
+        private final AtomicLong lastEndNanos = new AtomicLong(Long.MIN_VALUE);
+
+        /**
+         * @return the start time to pass to {@link #requestFinished(long, int)}
+         */
+        public long requestStarted() {
+            requests.incrementAndGet();
+            return started();
+        }
+
+        /**
+         * @param entities count of entities in the response
+         */
+        public void requestFinished(long startNanos, int entities) {
+            entitiesReceived.addAndGet(entities);
+            networkNanos.addAndGet(finished() - startNanos);
+        }
+
+        public void notModified() {
+            notModified.incrementAndGet();
+        }
+
+        public void bytesReceived(long bytes) {
+            bytesReceived.addAndGet(bytes);
+        }
+
+        public void parsed(long nanos) {
+            parseNanos.addAndGet(nanos);
+        }
+
+        /**
+         * @return the start time to pass to {@link #dbFinished(long, int)}
+         */
+        public long dbStarted() {
+            return started();
+        }
+
+        /**
+         * @param operations count of {@link it.niedermann.nextcloud.deck.persistence.sync.adapters.db.DataBaseAdapter} calls since {@link #dbStarted()}
+         */
+        public void dbFinished(long startNanos, int operations) {
+            dbOperations.addAndGet(operations);
+            dbNanos.addAndGet(finished() - startNanos);
+        }
+
+        public void error() {
+            errors.incrementAndGet();
+        }
+
+        private long started() {
+            long now = System.nanoTime();
+            long first;
+            do {
+                first = firstStartNanos.get();
+            } while (now < first && !firstStartNanos.compareAndSet(first, now));
+            return now;
+        }
+
+        private long finished() {
+            long now = System.nanoTime();
+            long last;
+            do {
+                last = lastEndNanos.get();
+            } while (now > last && !lastEndNanos.compareAndSet(last, now));
+            return now;
+        }
+
+        public long getRequests() {
+            return requests.get();
+        }
+
+        /**
+         * @return count of requests answered with <code>304 Not Modified</code>
+         */
+        public long getNotModified() {
+            return notModified.get();
+        }
+
+        public long getEntitiesReceived() {
+            return entitiesReceived.get();
+        }
+
+        /**
+         * @return 0 if the transport does not expose response sizes, like the single sign on bridge
+         */
+        public long getBytesReceived() {
+            return bytesReceived.get();
+        }
+
+        /**
+         * @return time from sending a request until its result has been delivered, including parsing
+         */
+        public long getNetworkMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(networkNanos.get());
+        }
+
+        public long getParseMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(parseNanos.get());
+        }
+
+        public long getDbOperations() {
+            return dbOperations.get();
+        }
+
+        public long getDbMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(dbNanos.get());
+        }
+
+        public long getErrors() {
+            return errors.get();
+        }
+
+        /**
+         * @return time from the first request or database access of this level until the last one finished
+         */
+        public long getWallMillis() {
+            long first = firstStartNanos.get();
+            long last = lastEndNanos.get();
+            return last < first ? 0 : TimeUnit.NANOSECONDS.toMillis(last - first);
+        }
+
+        JSONObject toJson() throws JSONException {
+            return new JSONObject()
+                    .put("requests", getRequests())
+                    .put("notModified", getNotModified())
+                    .put("entitiesReceived", getEntitiesReceived())
+                    .put("bytesReceived", getBytesReceived())
+                    .put("networkMillis", getNetworkMillis())
+                    .put("parseMillis", getParseMillis())
+                    .put("dbOperations", getDbOperations())
+                    .put("dbMillis", getDbMillis())
+                    .put("errors", getErrors())
+                    .put("wallMillis", getWallMillis());
+        }
+
+        @Override
+        public String toString() {
+            return "Span{" +
+                    "requests=" + requests +
+                    ", notModified=" + notModified +
+                    ", entitiesReceived=" + entitiesReceived +
+                    ", bytesReceived=" + bytesReceived +
+                    ", networkMillis=" + getNetworkMillis() +
+                    ", parseMillis=" + getParseMillis() +
+                    ", dbOperations=" + dbOperations +
+                    ", dbMillis=" + getDbMillis() +
+                    ", errors=" + errors +
+                    ", wallMillis=" + getWallMillis() +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package it.niedermann.nextcloud.deck.persistence.sync.helpers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+import it.niedermann.nextcloud.deck.api.IResponseCallback;
+import it.niedermann.nextcloud.deck.model.Account;
+
+/**
+ * Keeps the {@link SyncTrace} of each running synchronization and publishes it once the synchronization has finished.
+ * Requests of accounts which are not being synchronized are not traced at all.
+ */
+public class SyncTracer {
+
+    private static volatile SyncTracer instance;
+
+    private final Map<Long, SyncTrace> activeTraces = new HashMap<>();
+    private final Map<Long, MutableLiveData<SyncTrace>> reports = new HashMap<>();
+
+    private SyncTracer() {
+    }
+
+    public static SyncTracer getInstance() {
+        if (instance == null) {
+            synchronized (SyncTracer.class) {
+                if (instance == null) {
+                    instance = new SyncTracer();
+                }
+            }
+        }
+        return instance;
+    }
+
+    public synchronized SyncTrace begin(long accountId) {
+        SyncTrace trace = new SyncTrace(accountId);
+        activeTraces.put(accountId, trace);
+        return trace;
+    }
+
+    public void finish(SyncTrace trace, boolean successful) {
+        trace.finish(successful);
+        synchronized (this) {
+            if (activeTraces.get(trace.getAccountId()) == trace) {
+                activeTraces.remove(trace.getAccountId());
+            }
+            getOrCreateReport(trace.getAccountId()).postValue(trace);
+        }
+    }
+
+    /**
+     * @return the trace of the running synchronization of this account, <code>null</code> if there is none
+     */
+    public synchronized SyncTrace getActiveTrace(long accountId) {
+        return activeTraces.get(accountId);
+    }
+
+    /**
+     * @return the trace of the last finished synchronization of this account
+     */
+    public synchronized LiveData<SyncTrace> getLastReport(long accountId) {
+        return getOrCreateReport(accountId);
+    }
+
+    private MutableLiveData<SyncTrace> getOrCreateReport(long accountId) {
+        MutableLiveData<SyncTrace> report = reports.get(accountId);
+        if (report == null) {
+            report = new MutableLiveData<>();
+            reports.put(accountId, report);
+        }
+        return report;
+    }
+
+    /**
+     * Parsing happens inside the transport, which doesn't know the account.
+     * The time is therefore added to every running synchronization.
+     */
+    public void parsed(String level, long nanos) {
+        List<SyncTrace> traces;
+        synchronized (this) {
+            if (activeTraces.isEmpty()) {
+                return;
+            }
+            traces = new ArrayList<>(activeTraces.values());
+        }
+        for (SyncTrace trace : traces) {
+            trace.span(level).parsed(nanos);
+        }
+    }
+
+    /**
+     * Like {@link #parsed(String, long)}, the transport doesn't know the account, so the bytes are added to every running synchronization.
+     */
+    public void received(String level, long bytes) {
+        List<SyncTrace> traces;
+        synchronized (this) {
+            if (activeTraces.isEmpty()) {
+                return;
+            }
+            traces = new ArrayList<>(activeTraces.values());
+        }
+        for (SyncTrace trace : traces) {
+            trace.span(level).bytesReceived(bytes);
+        }
+    }
+
+    /**
+     * @return <code>callback</code> itself if its account is not being synchronized,
+     * otherwise a callback which records the request in the trace of the synchronization
+     */
+    public <T> IResponseCallback<T> trace(String level, IResponseCallback<T> callback) {
+        Account account = callback.getAccount();
+        SyncTrace trace = account == null || account.getId() == null ? null : getActiveTrace(account.getId());
+        if (trace == null) {
+            return callback;
+        }
+        final SyncTrace.Span span = trace.span(level);
+        final long start = span.requestStarted();
+        return new IResponseCallback<T>(account) {
+            @Override
+            public void fillAccountIDs(T response) {
+                callback.fillAccountIDs(response);
+            }
+
+            @Override
+            public void onResponse(T response) {
+                span.requestFinished(start, response instanceof List ? ((List<?>) response).size() : (response == null ? 0 : 1));
+                callback.onResponse(response);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                span.requestFinished(start, 0);
+                callback.onError(throwable);
+            }
+
+            @Override
+            public void onNotModified() {
+                span.notModified();
+                span.requestFinished(start, 0);
+                callback.onNotModified();
+            }
+        };
+    }
+}
@@ -2,9 +2,14 @@ package it.niedermann.nextcloud.deck.persistence.sync.helpers.providers;
 
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import it.niedermann.nextcloud.deck.api.IResponseCallback;
+import it.niedermann.nextcloud.deck.model.SyncCursor;
 import it.niedermann.nextcloud.deck.model.interfaces.IRemoteEntity;
 import it.niedermann.nextcloud.deck.persistence.sync.adapters.ServerAdapter;
 import it.niedermann.nextcloud.deck.persistence.sync.adapters.db.DataBaseAdapter;
@@ -13,35 +18,176 @@ import it.niedermann.nextcloud.deck.persistence.sync.helpers.SyncHelper;
 public abstract class AbstractSyncDataProvider<T extends IRemoteEntity> {
 
     protected AbstractSyncDataProvider<?> parent;
-    private List<AbstractSyncDataProvider<?>> children = new ArrayList<>();
-    private boolean stillGoingDeeper = false;
+    /**
+     * Open work of this subtree: one unit for the provider itself, one per running request and one per registered child.
+     * The subtree is finished as soon as this drops to zero.
+     */
+    private final AtomicInteger pendingWork = new AtomicInteger(1);
+    private final AtomicBoolean finished = new AtomicBoolean(false);
+    private final AtomicBoolean changedSomething = new AtomicBoolean(false);
+    private final AtomicBoolean failed = new AtomicBoolean(false);
+    private Runnable onSubtreeSynced;
 
     public AbstractSyncDataProvider(AbstractSyncDataProvider<?> parent){
         this.parent = parent;
     }
 
+    /**
+     * @return the level this provider is accounted to in the {@link it.niedermann.nextcloud.deck.persistence.sync.helpers.SyncTrace}
+     */
+    public abstract String getTraceLevel();
+
     public void registerChildInParent(AbstractSyncDataProvider<?> child){
         if (parent != null) {
-            parent.addChild(child);
+            parent.beginWork();
         }
     }
 
-    public void addChild(AbstractSyncDataProvider<?> child){
-        children.add(child);
+    /**
+     * Announces additional work (e.g. a request) for this subtree. Must be balanced by {@link #workDone(IResponseCallback, boolean)}.
+     */
+    public void beginWork() {
+        if (finished.get()) {
+            throw new IllegalStateException("Subtree of " + getClass().getSimpleName() + " is already finished");
+        }
+        pendingWork.incrementAndGet();
+    }
+
+    /**
+     * Marks one unit of work of this subtree as done. When nothing is left, the parent gets notified,
+     * or, for the root, the <code>responseCallback</code>. This happens exactly once, no matter from which thread.
+     */
+    public void workDone(IResponseCallback<Boolean> responseCallback, boolean syncChangedSomething) {
+        if (syncChangedSomething) {
+            changedSomething.set(true);
+        }
+        if (pendingWork.decrementAndGet() == 0 && finished.compareAndSet(false, true)) {
+            if (!failed.get() && onSubtreeSynced != null) {
+                onSubtreeSynced.run();
+            }
+            if (parent != null) {
+                parent.workDone(responseCallback, changedSomething.get());
+            } else {
+                responseCallback.onResponse(changedSomething.get());
+            }
+        }
+    }
+
+    /**
+     * @param onSubtreeSynced gets called when this subtree has finished without any error, before the parent gets notified
+     */
+    public void doOnSubtreeSynced(Runnable onSubtreeSynced) {
+        this.onSubtreeSynced = onSubtreeSynced;
+    }
+
+    private void markFailed() {
+        failed.set(true);
+        if (parent != null) {
+            parent.markFailed();
+        }
+    }
+
+    /**
+     * @return the scope of the sync cursor which gets passed to {@link #getAllFromServer(ServerAdapter, long, IResponseCallback, Date)}
+     * and which gets advanced once this subtree has been synchronized, <code>null</code> if this provider does not use its own cursor
+     */
+    public SyncCursor getSyncCursorScope(long accountId) {
+        return null;
+    }
+
+    /**
+     * Whether {@link #getAllFromServer(ServerAdapter, long, IResponseCallback, Date)} actually performs requests.
+     * Only those providers count against the parallelism limit of the {@link SyncHelper}, all others respond immediately.
+     */
+    public boolean fetchesFromServer() {
+        return false;
     }
 
     public abstract void getAllFromServer(ServerAdapter serverAdapter, long accountId, IResponseCallback<List<T>> responder, Date lastSync);
 
     public abstract T getSingleFromDB(DataBaseAdapter dataBaseAdapter, long accountId, T entity);
 
+    /**
+     * Resolves the local counterparts of all given server entities, keyed by {@link #getRemoteKey(IRemoteEntity)}.
+     * Providers should override this with a single <code>IN (...)</code> lookup,
+     * the default falls back to one {@link #getSingleFromDB(DataBaseAdapter, long, IRemoteEntity)} per entity.
+     */
+    public Map<Object, T> getManyFromDB(DataBaseAdapter dataBaseAdapter, long accountId, List<T> entitiesFromServer) {
+        Map<Object, T> existing = new HashMap<>();
+        for (T entity : entitiesFromServer) {
+            T existingEntity = getSingleFromDB(dataBaseAdapter, accountId, entity);
+            if (existingEntity != null) {
+                existing.put(getRemoteKey(existingEntity), existingEntity);
+            }
+        }
+        return existing;
+    }
+
+    /**
+     * Called in the transaction of {@link SyncHelper#applyFromServer(AbstractSyncDataProvider, List)} before any entity of the response is written.
+     * Providers whose entities reference others (e.g. their owner) look them up here at once instead of once per entity.
+     */
+    public void prepareApply(DataBaseAdapter dataBaseAdapter, long accountId, List<T> entitiesFromServer) {
+        // nothing referenced by default
+    }
+
+    /**
+     * @return the key which identifies this entity on the server, the remote id by default
+     */
+    public Object getRemoteKey(T entity) {
+        return entity.getId();
+    }
+
+    /**
+     * Null-safe check whether the server changed this entity since it has been stored locally.
+     * If so, neither the entity nor its subtree need to be synced.
+     * Without a timestamp to compare, the entity is considered as changed.
+     */
+    public boolean isUnchanged(T existingEntity, T entityFromServer) {
+        return existingEntity.getLastModified() != null
+                && isSameDate(existingEntity.getLastModified(), entityFromServer.getLastModified());
+    }
+
+    /**
+     * Whether the subtree of an entity which {@link #isUnchanged(IRemoteEntity, IRemoteEntity)} gets synced nevertheless,
+     * e.g. because the user is looking at it right now.
+     */
+    public boolean alwaysGoDeeper(long accountId, T existingEntity) {
+        return false;
+    }
+
+    protected static boolean isSameDate(Date a, Date b) {
+        return a == null ? b == null : b != null && a.getTime() == b.getTime();
+    }
+
+    protected static List<Long> collectRemoteIds(List<? extends IRemoteEntity> entities) {
+        List<Long> remoteIds = new ArrayList<>(entities.size());
+        for (IRemoteEntity entity : entities) {
+            remoteIds.add(entity.getId());
+        }
+        return remoteIds;
+    }
+
+    protected Map<Object, T> mapByRemoteKey(List<T> entities) {
+        Map<Object, T> map = new HashMap<>(entities.size() * 2);
+        for (T entity : entities) {
+            map.put(getRemoteKey(entity), entity);
+        }
+        return map;
+    }
+
     public abstract long createInDB(DataBaseAdapter dataBaseAdapter, long accountId, T b);
 
     public abstract void updateInDB(DataBaseAdapter dataBaseAdapter, long accountId, T t);
 
     public abstract void deleteInDB(DataBaseAdapter dataBaseAdapter, long accountId, T t);
 
+    /**
+     * Syncs the children of the given entity. Children started here with {@link SyncHelper#doSyncFor(AbstractSyncDataProvider)}
+     * are tracked automatically, so there is nothing to do for entities without children.
+     */
     public void goDeeper(SyncHelper syncHelper, T existingEntity, T entityFromServer, IResponseCallback<Boolean> callback) {
-        childDone(this, callback, true);
+        // no children by default
     }
 
     public abstract void createOnServer(ServerAdapter serverAdapter, long accountId, IResponseCallback<T> responder, T entity);
@@ -50,36 +196,18 @@ public abstract class AbstractSyncDataProvider<T extends IRemoteEntity> {
 
     public abstract void deleteOnServer(ServerAdapter serverAdapter, long accountId, IResponseCallback<Void> callback, T entity);
 
-    public void childDone(AbstractSyncDataProvider<?> child, IResponseCallback<Boolean> responseCallback, boolean syncChangedSomething) {
-        children.remove(child);
-        if (!stillGoingDeeper && children.isEmpty()) {
-            if (parent!=null){
-                parent.childDone(this, responseCallback, syncChangedSomething);
-            } else {
-                responseCallback.onResponse(syncChangedSomething);
-            }
-        }
-    }
-
-    public void doneGoingDeeper(IResponseCallback<Boolean> responseCallback, boolean syncChangedSomething){
-        stillGoingDeeper = false;
-        childDone(this, responseCallback, syncChangedSomething);
-    }
-
-    public void goingDeeper(){
-        stillGoingDeeper = true;
-    }
-
     public abstract List<T> getAllFromDB(DataBaseAdapter dataBaseAdapter, long accountId, Date lastSync);
 
     public void goDeeperForUpSync(SyncHelper syncHelper, DataBaseAdapter dataBaseAdapter, T entity, T response, IResponseCallback<Boolean> callback) {
-        childDone(this, callback, true);}
+        // no children by default
+    }
 
+    /**
+     * Reports the error and gives up the work unit it occurred in.
+     */
     public void onError(Throwable error, IResponseCallback<Boolean> responseCallback){
-        if (parent != null){
-            parent.childDone(this, responseCallback, false);
-        }
-        //TODO: what to do? what side effect would the following have:
-//        responseCallback.onError(error);
+        markFailed();
+        responseCallback.onError(error);
+        workDone(responseCallback, false);
     }
 }
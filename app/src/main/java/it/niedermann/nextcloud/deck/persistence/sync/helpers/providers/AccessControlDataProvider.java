@@ -1,23 +1,33 @@
 package it.niedermann.nextcloud.deck.persistence.sync.helpers.providers;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 import it.niedermann.nextcloud.deck.api.IResponseCallback;
 import it.niedermann.nextcloud.deck.model.AccessControl;
 import it.niedermann.nextcloud.deck.model.User;
 import it.niedermann.nextcloud.deck.persistence.sync.adapters.ServerAdapter;
 import it.niedermann.nextcloud.deck.persistence.sync.adapters.db.DataBaseAdapter;
+import it.niedermann.nextcloud.deck.persistence.sync.helpers.SyncTrace;
 
 public class AccessControlDataProvider extends AbstractSyncDataProvider<AccessControl> {
 
     private List<AccessControl> acl;
+    private ResponseUsers users;
 
     public AccessControlDataProvider(AbstractSyncDataProvider<?> parent, List<AccessControl> acl) {
         super(parent);
         this.acl = acl;
     }
 
+    @Override
+    public String getTraceLevel() {
+        return SyncTrace.LEVEL_ACL;
+    }
+
     @Override
     public void getAllFromServer(ServerAdapter serverAdapter, long accountId, IResponseCallback<List<AccessControl>> responder, Date lastSync) {
         responder.onResponse(acl);
@@ -28,22 +38,31 @@ public class AccessControlDataProvider extends AbstractSyncDataProvider<AccessCo
         return dataBaseAdapter.getAccessControlByRemoteIdDirectly(accountId, entity.getEntity().getId());
     }
 
+    @Override
+    public Map<Object, AccessControl> getManyFromDB(DataBaseAdapter dataBaseAdapter, long accountId, List<AccessControl> entitiesFromServer) {
+        return mapByRemoteKey(dataBaseAdapter.getAccessControlsByRemoteIdsDirectly(accountId, collectRemoteIds(entitiesFromServer)));
+    }
+
     @Override
     public long createInDB(DataBaseAdapter dataBaseAdapter, long accountId, AccessControl entity) {
         prepareUser(dataBaseAdapter, accountId, entity);
         return dataBaseAdapter.createAccessControl(accountId, entity);
     }
 
+    @Override
+    public void prepareApply(DataBaseAdapter dataBaseAdapter, long accountId, List<AccessControl> entitiesFromServer) {
+        List<User> remoteUsers = new ArrayList<>(entitiesFromServer.size());
+        for (AccessControl accessControl : entitiesFromServer) {
+            remoteUsers.add(accessControl.getUser());
+        }
+        users = new ResponseUsers(dataBaseAdapter, accountId, remoteUsers);
+    }
+
     private void prepareUser(DataBaseAdapter dataBaseAdapter, long accountId, AccessControl entity) {
-        User user = dataBaseAdapter.getUserByUidDirectly(accountId, entity.getUser().getUid());
-        if (user == null) {
-            long userId = dataBaseAdapter.createUser(accountId, entity.getUser());
-            entity.setUserId(userId);
-        } else {
-            entity.setUserId(user.getLocalId());
-            entity.getUser().setLocalId(user.getLocalId());
-            dataBaseAdapter.updateUser(accountId, entity.getUser(), false);
+        if (users == null) {
+            users = new ResponseUsers(dataBaseAdapter, accountId, Collections.singletonList(entity.getUser()));
         }
+        entity.setUserId(users.store(entity.getUser()));
     }
 
     @Override
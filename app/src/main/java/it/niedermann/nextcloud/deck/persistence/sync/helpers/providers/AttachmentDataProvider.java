@@ -2,12 +2,14 @@ package it.niedermann.nextcloud.deck.persistence.sync.helpers.providers;
 
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 import it.niedermann.nextcloud.deck.api.IResponseCallback;
 import it.niedermann.nextcloud.deck.model.Attachment;
 import it.niedermann.nextcloud.deck.model.full.FullCard;
 import it.niedermann.nextcloud.deck.persistence.sync.adapters.ServerAdapter;
 import it.niedermann.nextcloud.deck.persistence.sync.adapters.db.DataBaseAdapter;
+import it.niedermann.nextcloud.deck.persistence.sync.helpers.SyncTrace;
 
 public class AttachmentDataProvider extends AbstractSyncDataProvider<Attachment> {
 
@@ -20,6 +22,11 @@ public class AttachmentDataProvider extends AbstractSyncDataProvider<Attachment>
         this.attachments = attachments;
     }
 
+    @Override
+    public String getTraceLevel() {
+        return SyncTrace.LEVEL_ATTACHMENT;
+    }
+
     @Override
     public void getAllFromServer(ServerAdapter serverAdapter, long accountId, IResponseCallback<List<Attachment>> responder, Date lastSync) {
         responder.onResponse(attachments);
@@ -30,6 +37,11 @@ public class AttachmentDataProvider extends AbstractSyncDataProvider<Attachment>
         return dataBaseAdapter.getAttachmentByRemoteIdDirectly(accountId, entity.getId());
     }
 
+    @Override
+    public Map<Object, Attachment> getManyFromDB(DataBaseAdapter dataBaseAdapter, long accountId, List<Attachment> entitiesFromServer) {
+        return mapByRemoteKey(dataBaseAdapter.getAttachmentsByRemoteIdsDirectly(accountId, collectRemoteIds(entitiesFromServer)));
+    }
+
     @Override
     public long createInDB(DataBaseAdapter dataBaseAdapter, long accountId, Attachment attachment) {
         attachment.setCardId(card.getCard().getLocalId());
@@ -1,26 +1,162 @@
 package it.niedermann.nextcloud.deck.persistence.sync.helpers.providers;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import it.niedermann.nextcloud.deck.api.IResponseCallback;
 import it.niedermann.nextcloud.deck.model.AccessControl;
 import it.niedermann.nextcloud.deck.model.Label;
+import it.niedermann.nextcloud.deck.model.SyncCursor;
 import it.niedermann.nextcloud.deck.model.User;
+import it.niedermann.nextcloud.deck.model.enums.DBStatus;
 import it.niedermann.nextcloud.deck.model.full.FullBoard;
 import it.niedermann.nextcloud.deck.persistence.sync.adapters.ServerAdapter;
 import it.niedermann.nextcloud.deck.persistence.sync.adapters.db.DataBaseAdapter;
+import it.niedermann.nextcloud.deck.persistence.sync.helpers.OpenBoards;
 import it.niedermann.nextcloud.deck.persistence.sync.helpers.SyncHelper;
+import it.niedermann.nextcloud.deck.persistence.sync.helpers.SyncTrace;
+import it.niedermann.nextcloud.deck.util.DateCodec;
 
 public class BoardDataProvider extends AbstractSyncDataProvider<FullBoard> {
 
+    public enum SyncMode {
+        /**
+         * Fetch all boards with details at once and walk through the stacks of every board which has some
+         */
+        FULL,
+        /**
+         * Fetch the compact board index first and compare it with the local boards.
+         * Details and stacks are only fetched for boards which are new, changed or currently opened.
+         * The first synchronization of an account is always {@link #FULL}.
+         */
+        INDEX_FIRST
+    }
+
+    private final SyncMode syncMode;
+    private final DataBaseAdapter dataBaseAdapter;
+    private ResponseUsers owners;
+
     public BoardDataProvider(){
+        this(SyncMode.FULL, null);
+    }
+
+    /**
+     * @param dataBaseAdapter required for {@link SyncMode#INDEX_FIRST} to compare the index with the local boards
+     */
+    public BoardDataProvider(SyncMode syncMode, DataBaseAdapter dataBaseAdapter){
         super(null);
+        if (syncMode == SyncMode.INDEX_FIRST && dataBaseAdapter == null) {
+            throw new IllegalArgumentException("Sync mode " + syncMode + " needs a DataBaseAdapter to compare the board index with");
+        }
+        this.syncMode = syncMode;
+        this.dataBaseAdapter = dataBaseAdapter;
+    }
+
+    @Override
+    public String getTraceLevel() {
+        return SyncTrace.LEVEL_BOARD;
+    }
+
+    @Override
+    public SyncCursor getSyncCursorScope(long accountId) {
+        return new SyncCursor(accountId, SyncCursor.ALL, SyncCursor.ALL);
+    }
+
+    @Override
+    public boolean fetchesFromServer() {
+        return true;
     }
 
     @Override
     public void getAllFromServer(ServerAdapter serverAdapter, long accountId, IResponseCallback<List<FullBoard>> responder, Date lastSync) {
-        serverAdapter.getBoards(responder);
+        if (syncMode == SyncMode.FULL || lastSync == null) {
+            serverAdapter.getBoards(true, DateCodec.formatRfc1123(lastSync), responder);
+            return;
+        }
+        // the server only lists boards changed since lastSync, but an opened board must be listed in any case
+        String ifModifiedSince = OpenBoards.getInstance().hasOpenBoard(accountId) ? null : DateCodec.formatRfc1123(lastSync);
+        serverAdapter.getBoards(false, ifModifiedSince, new IResponseCallback<List<FullBoard>>(responder.getAccount()) {
+            @Override
+            public void onResponse(List<FullBoard> index) {
+                try {
+                    getDetailsFromServer(serverAdapter, responder, findBoardsToSync(accountId, index));
+                } catch (RuntimeException e) {
+                    responder.onError(e);
+                }
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                responder.onError(throwable);
+            }
+
+            @Override
+            public void onNotModified() {
+                responder.onNotModified();
+            }
+        });
+    }
+
+    private List<FullBoard> findBoardsToSync(long accountId, List<FullBoard> index) {
+        List<FullBoard> boardsToSync = new ArrayList<>();
+        if (index == null || index.isEmpty()) {
+            return boardsToSync;
+        }
+        Map<Object, FullBoard> existingBoards = getManyFromDB(dataBaseAdapter, accountId, index);
+        for (FullBoard board : index) {
+            FullBoard existingBoard = existingBoards.get(getRemoteKey(board));
+            if (existingBoard == null
+                    || existingBoard.getStatus() != DBStatus.UP_TO_DATE.getId()
+                    || !isUnchanged(existingBoard, board)
+                    || alwaysGoDeeper(accountId, existingBoard)) {
+                boardsToSync.add(board);
+            }
+        }
+        return boardsToSync;
+    }
+
+    /**
+     * Fetches the details of all given boards in parallel and responds with them in the same order, once all have arrived.
+     * Only the first error is reported.
+     */
+    private void getDetailsFromServer(ServerAdapter serverAdapter, IResponseCallback<List<FullBoard>> responder, List<FullBoard> boards) {
+        if (boards.isEmpty()) {
+            responder.onResponse(boards);
+            return;
+        }
+        final FullBoard[] details = new FullBoard[boards.size()];
+        final AtomicInteger pending = new AtomicInteger(boards.size());
+        final AtomicBoolean failed = new AtomicBoolean(false);
+        for (int i = 0; i < boards.size() && !failed.get(); i++) {
+            final int position = i;
+            IResponseCallback<FullBoard> detailCallback = new IResponseCallback<FullBoard>(responder.getAccount()) {
+                @Override
+                public void onResponse(FullBoard response) {
+                    details[position] = response;
+                    if (pending.decrementAndGet() == 0 && !failed.get()) {
+                        responder.onResponse(Arrays.asList(details));
+                    }
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    if (failed.compareAndSet(false, true)) {
+                        responder.onError(throwable);
+                    }
+                }
+            };
+            try {
+                serverAdapter.getBoard(boards.get(i).getId(), detailCallback);
+            } catch (RuntimeException e) {
+                // e.g. OfflineException
+                detailCallback.onError(e);
+            }
+        }
     }
 
     @Override
@@ -28,23 +164,46 @@ public class BoardDataProvider extends AbstractSyncDataProvider<FullBoard> {
         return dataBaseAdapter.getFullBoardByRemoteIdDirectly(accountId, entitiy.getEntity().getId());
     }
 
+    @Override
+    public Map<Object, FullBoard> getManyFromDB(DataBaseAdapter dataBaseAdapter, long accountId, List<FullBoard> entitiesFromServer) {
+        return mapByRemoteKey(dataBaseAdapter.getFullBoardsByRemoteIdsDirectly(accountId, collectRemoteIds(entitiesFromServer)));
+    }
+
+    @Override
+    public boolean isUnchanged(FullBoard existingEntity, FullBoard entityFromServer) {
+        return super.isUnchanged(existingEntity, entityFromServer)
+                && isSameDate(existingEntity.getBoard().getDeletedAt(), entityFromServer.getBoard().getDeletedAt());
+    }
+
+    @Override
+    public boolean alwaysGoDeeper(long accountId, FullBoard existingEntity) {
+        return syncMode == SyncMode.INDEX_FIRST && OpenBoards.getInstance().isOpen(accountId, existingEntity.getLocalId());
+    }
+
     @Override
     public long createInDB(DataBaseAdapter dataBaseAdapter, long accountId, FullBoard entity) {
         handleOwner(dataBaseAdapter, accountId, entity);
         return dataBaseAdapter.createBoardDirectly(accountId, entity.getBoard());
     }
 
+    @Override
+    public void prepareApply(DataBaseAdapter dataBaseAdapter, long accountId, List<FullBoard> entitiesFromServer) {
+        List<User> remoteOwners = new ArrayList<>();
+        for (FullBoard board : entitiesFromServer) {
+            if (board.getOwner() != null && board.getOwner().size() == 1) {
+                remoteOwners.add(board.getOwner().get(0));
+            }
+        }
+        owners = new ResponseUsers(dataBaseAdapter, accountId, remoteOwners);
+    }
+
     private void handleOwner(DataBaseAdapter dataBaseAdapter, long accountId, FullBoard entity) {
         if (entity.getOwner()!=null && entity.getOwner().size() == 1) {
-            User remoteOwner = entity.getOwner().get(0);
-            User owner = dataBaseAdapter.getUserByUidDirectly(accountId, remoteOwner.getUid());
-            if (owner == null){
-                dataBaseAdapter.createUser(accountId, remoteOwner);
-            } else {
-                dataBaseAdapter.updateUser(accountId, remoteOwner, false);
+            if (owners == null) {
+                // e.g. the response of an upstream sync
+                owners = new ResponseUsers(dataBaseAdapter, accountId, entity.getOwner());
             }
-            owner = dataBaseAdapter.getUserByUidDirectly(accountId, remoteOwner.getUid());
-            entity.getBoard().setOwnerId(owner.getLocalId());
+            entity.getBoard().setOwnerId(owners.store(entity.getOwner().get(0)));
         }
     }
 
@@ -62,7 +221,8 @@ public class BoardDataProvider extends AbstractSyncDataProvider<FullBoard> {
         }
         syncHelper.fixRelations(new BoardLabelRelationshipProvider(existingEntity.getBoard(), labels));
 
-        if (entityFromServer.getStacks() != null && !entityFromServer.getStacks().isEmpty()){
+        // in INDEX_FIRST mode, only new, changed and opened boards get here, their stacks have their own sync cursor
+        if (syncMode == SyncMode.INDEX_FIRST || (entityFromServer.getStacks() != null && !entityFromServer.getStacks().isEmpty())){
             syncHelper.doSyncFor(new StackDataProvider(this, existingEntity));
         }
 
@@ -82,20 +242,19 @@ public class BoardDataProvider extends AbstractSyncDataProvider<FullBoard> {
 
     @Override
     public List<FullBoard> getAllFromDB(DataBaseAdapter dataBaseAdapter, long accountId, Date lastSync) {
-        return null;
-        // TODO: reactivate for UpSync
-//        return dataBaseAdapter.getLocallyChangedBoards(accountId);
+        return dataBaseAdapter.getLocallyChangedBoards(accountId);
     }
 
     @Override
     public void goDeeperForUpSync(SyncHelper syncHelper, DataBaseAdapter dataBaseAdapter, FullBoard entity, FullBoard response, IResponseCallback<Boolean> callback) {
 
+        // the response carries the remote id, even if the board has just been created
         List<Label> locallyChangedLabels = dataBaseAdapter.getLocallyChangedLabels(entity.getAccountId(), entity.getLocalId());
         for (Label label : locallyChangedLabels) {
-            label.setBoardId(entity.getId());
+            label.setBoardId(response.getId());
         }
-        syncHelper.doUpSyncFor(new LabelDataProvider(this, entity.getBoard(), locallyChangedLabels));
-        syncHelper.doUpSyncFor(new StackDataProvider(this, entity));
+        syncHelper.doUpSyncFor(new LabelDataProvider(this, response.getBoard(), locallyChangedLabels));
+        syncHelper.doUpSyncFor(new StackDataProvider(this, response));
     }
 
     @Override
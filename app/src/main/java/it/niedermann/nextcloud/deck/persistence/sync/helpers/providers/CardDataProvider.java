@@ -3,23 +3,34 @@ package it.niedermann.nextcloud.deck.persistence.sync.helpers.providers;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import it.niedermann.nextcloud.deck.api.IResponseCallback;
+import it.niedermann.nextcloud.deck.api.RequestPriority;
 import it.niedermann.nextcloud.deck.model.Attachment;
 import it.niedermann.nextcloud.deck.model.Board;
 import it.niedermann.nextcloud.deck.model.Card;
 import it.niedermann.nextcloud.deck.model.Label;
+import it.niedermann.nextcloud.deck.model.SyncCursor;
 import it.niedermann.nextcloud.deck.model.User;
 import it.niedermann.nextcloud.deck.model.full.FullCard;
 import it.niedermann.nextcloud.deck.model.full.FullStack;
 import it.niedermann.nextcloud.deck.persistence.sync.adapters.ServerAdapter;
 import it.niedermann.nextcloud.deck.persistence.sync.adapters.db.DataBaseAdapter;
 import it.niedermann.nextcloud.deck.persistence.sync.helpers.SyncHelper;
+import it.niedermann.nextcloud.deck.persistence.sync.helpers.SyncTrace;
+import it.niedermann.nextcloud.deck.util.DateCodec;
 
 public class CardDataProvider extends AbstractSyncDataProvider<FullCard> {
 
+    private static final int MAX_PARALLEL_CARD_REQUESTS = 4;
+    private static final long CARD_REQUEST_TIMEOUT_MILLIS = 30_000;
+
     private Board board;
     private FullStack stack;
+    private ResponseUsers owners;
 
     public CardDataProvider(AbstractSyncDataProvider<?> parent, Board board, FullStack stack) {
         super(parent);
@@ -27,28 +38,136 @@ public class CardDataProvider extends AbstractSyncDataProvider<FullCard> {
         this.stack = stack;
     }
 
+    @Override
+    public String getTraceLevel() {
+        return SyncTrace.LEVEL_CARD;
+    }
+
+    @Override
+    public SyncCursor getSyncCursorScope(long accountId) {
+        return new SyncCursor(accountId, board.getId(), stack.getId());
+    }
+
+    @Override
+    public boolean fetchesFromServer() {
+        return true;
+    }
+
     @Override
     public void getAllFromServer(ServerAdapter serverAdapter, long accountId, IResponseCallback<List<FullCard>> responder, Date lastSync) {
+        List<Card> cards = stack.getCards();
+        if (cards == null || cards.isEmpty()) {
+            responder.onResponse(new ArrayList<>());
+            return;
+        }
+        new CardFetchPipeline(serverAdapter, cards, lastSync, responder).start();
+    }
 
-        List<FullCard> result = new ArrayList<>();
-        if (stack.getCards() == null || stack.getCards().isEmpty()){
-            responder.onResponse(result);
+    /**
+     * @return the card as delivered with its stack, if it already contains everything which gets persisted for a card
+     */
+    private FullCard getEmbeddedCardIfSufficient(int index, Card card) {
+        List<FullCard> embeddedCards = stack.getEmbeddedCards();
+        if (embeddedCards == null || embeddedCards.size() <= index) {
+            return null;
         }
-        for (Card card : stack.getCards()) {
-            serverAdapter.getCard(board.getId(), stack.getId(), card.getId(), new IResponseCallback<FullCard>(responder.getAccount()) {
-                @Override
-                public void onResponse(FullCard response) {
-                    result.add(response);
-                    if (result.size() == stack.getCards().size()) {
-                        responder.onResponse(result);
-                    }
+        FullCard embeddedCard = embeddedCards.get(index);
+        if (!card.getId().equals(embeddedCard.getCard().getId())
+                || embeddedCard.getLabels() == null
+                || embeddedCard.getAssignedUsers() == null
+                // attachments are only delivered with the card details
+                || embeddedCard.getCard().getAttachmentCount() > 0) {
+            return null;
+        }
+        return embeddedCard;
+    }
+
+    /**
+     * Fetches the details of all cards of the stack with at most {@link #MAX_PARALLEL_CARD_REQUESTS} requests at the same time.
+     * Responds exactly once: with all cards in the order of the stack, or with the first error.
+     */
+    private class CardFetchPipeline {
+        private final ServerAdapter serverAdapter;
+        private final List<Card> cards;
+        private final String ifModifiedSince;
+        private final IResponseCallback<List<FullCard>> responder;
+        private final FullCard[] results;
+        private final AtomicInteger nextIndex = new AtomicInteger(0);
+        private final AtomicInteger missing;
+        private final AtomicBoolean finished = new AtomicBoolean(false);
+
+        CardFetchPipeline(ServerAdapter serverAdapter, List<Card> cards, Date lastSync, IResponseCallback<List<FullCard>> responder) {
+            this.serverAdapter = serverAdapter;
+            this.cards = cards;
+            // the same for all cards of the stack
+            this.ifModifiedSince = DateCodec.formatRfc1123(lastSync);
+            this.responder = responder;
+            this.results = new FullCard[cards.size()];
+            this.missing = new AtomicInteger(cards.size());
+        }
+
+        void start() {
+            for (int i = 0; i < MAX_PARALLEL_CARD_REQUESTS; i++) {
+                fetchNext();
+            }
+        }
+
+        private void fetchNext() {
+            int index;
+            while (!finished.get() && (index = nextIndex.getAndIncrement()) < cards.size()) {
+                Card card = cards.get(index);
+                FullCard embeddedCard = getEmbeddedCardIfSufficient(index, card);
+                if (embeddedCard != null) {
+                    done(index, embeddedCard);
+                    continue;
                 }
+                final int requestedIndex = index;
+                try {
+                    serverAdapter.getCard(board.getId(), stack.getId(), card.getId(), ifModifiedSince, RequestPriority.BACKGROUND_SYNC, CARD_REQUEST_TIMEOUT_MILLIS, new IResponseCallback<FullCard>(responder.getAccount()) {
+                        @Override
+                        public void onResponse(FullCard response) {
+                            done(requestedIndex, response);
+                            fetchNext();
+                        }
 
-                @Override
-                public void onError(Throwable throwable) {
-                    responder.onError(throwable);
+                        @Override
+                        public void onNotModified() {
+                            // neither the card nor its children need to be synced
+                            done(requestedIndex, null);
+                            fetchNext();
+                        }
+
+                        @Override
+                        public void onError(Throwable throwable) {
+                            fail(throwable);
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    // e.g. OfflineException
+                    fail(e);
                 }
-            });
+                // the slot is taken by the request now, its response continues the pipeline
+                return;
+            }
+        }
+
+        private void done(int index, FullCard card) {
+            results[index] = card;
+            if (missing.decrementAndGet() == 0 && finished.compareAndSet(false, true)) {
+                List<FullCard> changedCards = new ArrayList<>(results.length);
+                for (FullCard result : results) {
+                    if (result != null) {
+                        changedCards.add(result);
+                    }
+                }
+                responder.onResponse(changedCards);
+            }
+        }
+
+        private void fail(Throwable throwable) {
+            if (finished.compareAndSet(false, true)) {
+                responder.onError(throwable);
+            }
         }
     }
 
@@ -57,6 +176,17 @@ public class CardDataProvider extends AbstractSyncDataProvider<FullCard> {
         return dataBaseAdapter.getFullCardByRemoteIdDirectly(accountId, entity.getEntity().getId());
     }
 
+    @Override
+    public Map<Object, FullCard> getManyFromDB(DataBaseAdapter dataBaseAdapter, long accountId, List<FullCard> entitiesFromServer) {
+        return mapByRemoteKey(dataBaseAdapter.getFullCardsByRemoteIdsDirectly(accountId, collectRemoteIds(entitiesFromServer)));
+    }
+
+    @Override
+    public boolean isUnchanged(FullCard existingEntity, FullCard entityFromServer) {
+        return super.isUnchanged(existingEntity, entityFromServer)
+                && isSameDate(existingEntity.getCard().getDeletedAt(), entityFromServer.getCard().getDeletedAt());
+    }
+
     @Override
     public long createInDB(DataBaseAdapter dataBaseAdapter, long accountId, FullCard entity) {
         fixRelations(dataBaseAdapter, accountId, entity);
@@ -66,23 +196,29 @@ public class CardDataProvider extends AbstractSyncDataProvider<FullCard> {
     private void fixRelations(DataBaseAdapter dataBaseAdapter, long accountId, FullCard entity) {
         entity.getCard().setStackId(stack.getLocalId());
         if (entity.getOwner() != null && !entity.getOwner().isEmpty()){
-            User user = entity.getOwner().get(0);
-            User u = dataBaseAdapter.getUserByUidDirectly(accountId, user.getUid());
-            if (u == null){
-                dataBaseAdapter.createUser(accountId, user);
-            } else {
-                user.setLocalId(u.getLocalId());
-                dataBaseAdapter.updateUser(accountId, user, false);
+            if (owners == null) {
+                // e.g. the response of an upstream sync
+                owners = new ResponseUsers(dataBaseAdapter, accountId, entity.getOwner().subList(0, 1));
             }
-            u = dataBaseAdapter.getUserByUidDirectly(accountId, user.getUid());
+            entity.getCard().setUserId(owners.store(entity.getOwner().get(0)));
+        }
+    }
 
-            user.setLocalId(u.getLocalId());
-            entity.getCard().setUserId(u.getLocalId());
+    @Override
+    public void prepareApply(DataBaseAdapter dataBaseAdapter, long accountId, List<FullCard> entitiesFromServer) {
+        List<User> remoteOwners = new ArrayList<>();
+        for (FullCard card : entitiesFromServer) {
+            if (card.getOwner() != null && !card.getOwner().isEmpty()) {
+                remoteOwners.add(card.getOwner().get(0));
+            }
         }
+        owners = new ResponseUsers(dataBaseAdapter, accountId, remoteOwners);
     }
 
     @Override
     public void updateInDB(DataBaseAdapter dataBaseAdapter, long accountId, FullCard entity) {
+        // responses of the server reference the remote stack
+        entity.getCard().setStackId(stack.getLocalId());
         fixRelations(dataBaseAdapter, accountId, entity);
         dataBaseAdapter.updateCard(entity.getCard(), false);
     }
@@ -104,7 +240,7 @@ public class CardDataProvider extends AbstractSyncDataProvider<FullCard> {
             syncHelper.doSyncFor(new UserDataProvider(this, board, stack, existingEntity, existingEntity.getAssignedUsers()));
         }
         syncHelper.fixRelations(new CardUserRelationshipProvider(existingEntity.getCard(), existingEntity.getAssignedUsers()));
-        if(assignedUsers!= null && !attachments.isEmpty()){
+        if(attachments != null && !attachments.isEmpty()){
             syncHelper.doSyncFor(new AttachmentDataProvider(this, existingEntity, attachments));
         }
 //        syncHelper.doSyncFor(new UserDataProvider(board, stack, existingEntity, existingEntity.getOwner()));
@@ -122,7 +258,7 @@ public class CardDataProvider extends AbstractSyncDataProvider<FullCard> {
 
     @Override
     public void deleteInDB(DataBaseAdapter dataBaseAdapter, long accountId, FullCard fullCard) {
-        dataBaseAdapter.deleteCard(fullCard.getCard(), false);
+        dataBaseAdapter.deleteCardWithJoinsPhysically(fullCard.getCard());
     }
 
     @Override
@@ -132,12 +268,11 @@ public class CardDataProvider extends AbstractSyncDataProvider<FullCard> {
 
     @Override
     public List<FullCard> getAllFromDB(DataBaseAdapter dataBaseAdapter, long accountId, Date lastSync) {
-        //TODO: implement
-        return null;
+        return dataBaseAdapter.getLocallyChangedCards(accountId, stack.getLocalId());
     }
 
     @Override
     public void goDeeperForUpSync(SyncHelper syncHelper, DataBaseAdapter dataBaseAdapter, FullCard entity, FullCard response, IResponseCallback<Boolean> callback) {
-        //TODO: implement
+        // labels and users of cards are sent by the OutboxHelper
     }
 }
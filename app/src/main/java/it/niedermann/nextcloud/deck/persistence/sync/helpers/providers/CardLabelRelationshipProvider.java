@@ -1,6 +1,9 @@
 package it.niedermann.nextcloud.deck.persistence.sync.helpers.providers;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import it.niedermann.nextcloud.deck.model.Card;
 import it.niedermann.nextcloud.deck.model.Label;
@@ -23,9 +26,16 @@ public class CardLabelRelationshipProvider implements IRelationshipProvider {
             return;
         }
         Card card = dataBaseAdapter.getCardByRemoteIdDirectly(accountId, this.card.getId());
+        List<Long> remoteIds = new ArrayList<>(labels.size());
         for (Label label : labels){
-            Label existingLabel = dataBaseAdapter.getLabelByRemoteIdDirectly(accountId, label.getId());
-            dataBaseAdapter.createJoinCardWithLabel(existingLabel.getLocalId(), card.getLocalId(), DBStatus.LOCAL_EDITED);
+            remoteIds.add(label.getId());
+        }
+        Map<Long, Long> localLabelIds = new HashMap<>();
+        for (Label existingLabel : dataBaseAdapter.getLabelsByRemoteIdsDirectly(accountId, remoteIds)) {
+            localLabelIds.put(existingLabel.getId(), existingLabel.getLocalId());
+        }
+        for (Label label : labels){
+            dataBaseAdapter.createJoinCardWithLabel(localLabelIds.get(label.getId()), card.getLocalId(), DBStatus.LOCAL_EDITED);
         }
     }
 
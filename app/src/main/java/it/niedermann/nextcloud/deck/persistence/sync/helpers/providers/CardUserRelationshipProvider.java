@@ -1,6 +1,9 @@
 package it.niedermann.nextcloud.deck.persistence.sync.helpers.providers;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import it.niedermann.nextcloud.deck.model.Card;
 import it.niedermann.nextcloud.deck.model.User;
@@ -22,9 +25,16 @@ public class CardUserRelationshipProvider implements IRelationshipProvider {
             return;
         }
         Card card = dataBaseAdapter.getCardByRemoteIdDirectly(accountId, this.card.getId());
+        List<String> uids = new ArrayList<>(labels.size());
         for (User user : labels){
-            User existingUser = dataBaseAdapter.getUserByUidDirectly(accountId, user.getUid());
-            dataBaseAdapter.createJoinCardWithUser(existingUser.getLocalId(), card.getLocalId());
+            uids.add(user.getUid());
+        }
+        Map<String, Long> localUserIds = new HashMap<>();
+        for (User existingUser : dataBaseAdapter.getUsersByUidsDirectly(accountId, uids)) {
+            localUserIds.put(existingUser.getUid(), existingUser.getLocalId());
+        }
+        for (User user : labels){
+            dataBaseAdapter.createJoinCardWithUser(localUserIds.get(user.getUid()), card.getLocalId());
         }
     }
 
@@ -2,12 +2,14 @@ package it.niedermann.nextcloud.deck.persistence.sync.helpers.providers;
 
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 import it.niedermann.nextcloud.deck.api.IResponseCallback;
 import it.niedermann.nextcloud.deck.model.Board;
 import it.niedermann.nextcloud.deck.model.Label;
 import it.niedermann.nextcloud.deck.persistence.sync.adapters.ServerAdapter;
 import it.niedermann.nextcloud.deck.persistence.sync.adapters.db.DataBaseAdapter;
+import it.niedermann.nextcloud.deck.persistence.sync.helpers.SyncTrace;
 
 public class LabelDataProvider extends AbstractSyncDataProvider<Label> {
 
@@ -25,6 +27,11 @@ public class LabelDataProvider extends AbstractSyncDataProvider<Label> {
         }
     }
 
+    @Override
+    public String getTraceLevel() {
+        return SyncTrace.LEVEL_LABEL;
+    }
+
     @Override
     public void getAllFromServer(ServerAdapter serverAdapter, long accountId, IResponseCallback<List<Label>> responder, Date lastSync) {
         responder.onResponse(labels);
@@ -35,6 +42,11 @@ public class LabelDataProvider extends AbstractSyncDataProvider<Label> {
         return dataBaseAdapter.getLabelByRemoteIdDirectly(accountId, entity.getEntity().getId());
     }
 
+    @Override
+    public Map<Object, Label> getManyFromDB(DataBaseAdapter dataBaseAdapter, long accountId, List<Label> entitiesFromServer) {
+        return mapByRemoteKey(dataBaseAdapter.getLabelsByRemoteIdsDirectly(accountId, collectRemoteIds(entitiesFromServer)));
+    }
+
     @Override
     public long createInDB(DataBaseAdapter dataBaseAdapter, long accountId, Label entity) {
         return dataBaseAdapter.createLabel(accountId, entity);
@@ -0,0 +1,69 @@
+package it.niedermann.nextcloud.deck.persistence.sync.helpers.providers;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import it.niedermann.nextcloud.deck.model.User;
+import it.niedermann.nextcloud.deck.persistence.sync.adapters.db.DataBaseAdapter;
+
+/**
+ * Users referenced by the entities of one server response, e.g. owners of boards and cards.
+ * They are looked up with one query up front, and each of them is created or updated at most once per response.
+ */
+class ResponseUsers {
+
+    private final DataBaseAdapter dataBaseAdapter;
+    private final long accountId;
+    private final Map<String, User> storedUsers = new HashMap<>();
+    private final Set<String> lookedUp = new HashSet<>();
+    private final Set<String> written = new HashSet<>();
+
+    ResponseUsers(DataBaseAdapter dataBaseAdapter, long accountId, Collection<User> usersFromServer) {
+        this.dataBaseAdapter = dataBaseAdapter;
+        this.accountId = accountId;
+        List<String> uids = new ArrayList<>(usersFromServer.size());
+        for (User user : usersFromServer) {
+            if (lookedUp.add(user.getUid())) {
+                uids.add(user.getUid());
+            }
+        }
+        if (!uids.isEmpty()) {
+            for (User user : dataBaseAdapter.getUsersByUidsDirectly(accountId, uids)) {
+                storedUsers.put(user.getUid(), user);
+            }
+        }
+    }
+
+    /**
+     * Creates or updates the user as delivered by the server and sets its local id.
+     *
+     * @return the local id of the user
+     */
+    long store(User userFromServer) {
+        String uid = userFromServer.getUid();
+        if (lookedUp.add(uid)) {
+            // not part of the response this has been prepared for
+            User user = dataBaseAdapter.getUserByUidDirectly(accountId, uid);
+            if (user != null) {
+                storedUsers.put(uid, user);
+            }
+        }
+        User storedUser = storedUsers.get(uid);
+        if (storedUser == null) {
+            userFromServer.setLocalId(dataBaseAdapter.createUser(accountId, userFromServer));
+        } else {
+            userFromServer.setLocalId(storedUser.getLocalId());
+            if (!written.contains(uid)) {
+                dataBaseAdapter.updateUser(accountId, userFromServer, false);
+            }
+        }
+        written.add(uid);
+        storedUsers.put(uid, userFromServer);
+        return userFromServer.getLocalId();
+    }
+}
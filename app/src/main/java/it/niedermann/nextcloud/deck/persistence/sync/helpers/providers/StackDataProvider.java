@@ -1,15 +1,20 @@
 package it.niedermann.nextcloud.deck.persistence.sync.helpers.providers;
 
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import it.niedermann.nextcloud.deck.api.IResponseCallback;
 import it.niedermann.nextcloud.deck.model.Card;
+import it.niedermann.nextcloud.deck.model.SyncCursor;
 import it.niedermann.nextcloud.deck.model.full.FullBoard;
 import it.niedermann.nextcloud.deck.model.full.FullStack;
 import it.niedermann.nextcloud.deck.persistence.sync.adapters.ServerAdapter;
 import it.niedermann.nextcloud.deck.persistence.sync.adapters.db.DataBaseAdapter;
 import it.niedermann.nextcloud.deck.persistence.sync.helpers.SyncHelper;
+import it.niedermann.nextcloud.deck.persistence.sync.helpers.SyncTrace;
+import it.niedermann.nextcloud.deck.util.DateCodec;
 
 public class StackDataProvider extends AbstractSyncDataProvider<FullStack> {
     private FullBoard board;
@@ -19,9 +24,24 @@ public class StackDataProvider extends AbstractSyncDataProvider<FullStack> {
         this.board = board;
     }
 
+    @Override
+    public String getTraceLevel() {
+        return SyncTrace.LEVEL_STACK;
+    }
+
+    @Override
+    public SyncCursor getSyncCursorScope(long accountId) {
+        return new SyncCursor(accountId, board.getId(), SyncCursor.ALL);
+    }
+
+    @Override
+    public boolean fetchesFromServer() {
+        return true;
+    }
+
     @Override
     public void getAllFromServer(ServerAdapter serverAdapter, long accountId, IResponseCallback<List<FullStack>> responder, Date lastSync) {
-        serverAdapter.getStacks(board.getId(), responder);
+        serverAdapter.getStacks(board.getId(), DateCodec.formatRfc1123(lastSync), responder);
     }
 
     @Override
@@ -29,6 +49,40 @@ public class StackDataProvider extends AbstractSyncDataProvider<FullStack> {
         return dataBaseAdapter.getFullStackByRemoteIdDirectly(accountId, board.getLocalId(), entity.getEntity().getId());
     }
 
+    @Override
+    public Map<Object, FullStack> getManyFromDB(DataBaseAdapter dataBaseAdapter, long accountId, List<FullStack> entitiesFromServer) {
+        return mapByRemoteKey(dataBaseAdapter.getFullStacksByRemoteIdsDirectly(accountId, board.getLocalId(), collectRemoteIds(entitiesFromServer)));
+    }
+
+    /**
+     * Changing a card does not touch <code>lastModified</code> of its stack, so the embedded cards are compared, too.
+     */
+    @Override
+    public boolean isUnchanged(FullStack existingEntity, FullStack entityFromServer) {
+        if (!super.isUnchanged(existingEntity, entityFromServer)
+                || !isSameDate(existingEntity.getStack().getDeletedAt(), entityFromServer.getStack().getDeletedAt())) {
+            return false;
+        }
+        List<Card> cardsFromServer = entityFromServer.getCards();
+        if (cardsFromServer == null || cardsFromServer.isEmpty()) {
+            return existingEntity.getCards() == null || existingEntity.getCards().isEmpty();
+        }
+        if (existingEntity.getCards() == null || existingEntity.getCards().size() != cardsFromServer.size()) {
+            return false;
+        }
+        Map<Long, Date> existingCards = new HashMap<>();
+        for (Card card : existingEntity.getCards()) {
+            existingCards.put(card.getId(), card.getLastModified());
+        }
+        for (Card card : cardsFromServer) {
+            Date existingLastModified = existingCards.get(card.getId());
+            if (existingLastModified == null || !isSameDate(existingLastModified, card.getLastModified())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public long createInDB(DataBaseAdapter dataBaseAdapter, long accountId, FullStack entity) {
         entity.getStack().setBoardId(board.getLocalId());
@@ -44,14 +98,14 @@ public class StackDataProvider extends AbstractSyncDataProvider<FullStack> {
     @Override
     public void goDeeper(SyncHelper syncHelper, FullStack existingEntity, FullStack entityFromServer, IResponseCallback<Boolean> callback) {
         existingEntity.setCards(entityFromServer.getCards());
+        // not stored, so the entity read from the database lacks them
+        existingEntity.setEmbeddedCards(entityFromServer.getEmbeddedCards());
         List<Card> cards = existingEntity.getCards();
         if (cards != null && !cards.isEmpty()){
             for (Card card : cards) {
                 card.setStackId(existingEntity.getLocalId());
             }
             syncHelper.doSyncFor(new CardDataProvider(this, board.getBoard(), existingEntity));
-        } else {
-            childDone(this, callback, true);
         }
     }
 
@@ -73,12 +127,12 @@ public class StackDataProvider extends AbstractSyncDataProvider<FullStack> {
 
     @Override
     public List<FullStack> getAllFromDB(DataBaseAdapter dataBaseAdapter, long accountId, Date lastSync) {
-        return dataBaseAdapter.getLocallyChangedStacks(accountId);
+        return dataBaseAdapter.getLocallyChangedStacks(accountId, board.getLocalId());
     }
 
     @Override
     public void goDeeperForUpSync(SyncHelper syncHelper, DataBaseAdapter dataBaseAdapter, FullStack entity, FullStack response, IResponseCallback<Boolean> callback) {
-        // TODO: implement
+        syncHelper.doUpSyncFor(new CardDataProvider(this, board.getBoard(), response));
     }
 
     @Override
@@ -1,7 +1,9 @@
 package it.niedermann.nextcloud.deck.persistence.sync.helpers.providers;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 import it.niedermann.nextcloud.deck.api.IResponseCallback;
 import it.niedermann.nextcloud.deck.model.Board;
@@ -10,6 +12,7 @@ import it.niedermann.nextcloud.deck.model.full.FullCard;
 import it.niedermann.nextcloud.deck.model.full.FullStack;
 import it.niedermann.nextcloud.deck.persistence.sync.adapters.ServerAdapter;
 import it.niedermann.nextcloud.deck.persistence.sync.adapters.db.DataBaseAdapter;
+import it.niedermann.nextcloud.deck.persistence.sync.helpers.SyncTrace;
 
 public class UserDataProvider extends AbstractSyncDataProvider<User> {
 
@@ -26,6 +29,11 @@ public class UserDataProvider extends AbstractSyncDataProvider<User> {
         this.users = users;
     }
 
+    @Override
+    public String getTraceLevel() {
+        return SyncTrace.LEVEL_USER;
+    }
+
     @Override
     public void getAllFromServer(ServerAdapter serverAdapter, long accountId, IResponseCallback<List<User>> responder, Date lastSync) {
         responder.onResponse(users);
@@ -36,6 +44,20 @@ public class UserDataProvider extends AbstractSyncDataProvider<User> {
         return dataBaseAdapter.getUserByUidDirectly(accountId, entity.getUid());
     }
 
+    @Override
+    public Map<Object, User> getManyFromDB(DataBaseAdapter dataBaseAdapter, long accountId, List<User> entitiesFromServer) {
+        List<String> uids = new ArrayList<>(entitiesFromServer.size());
+        for (User user : entitiesFromServer) {
+            uids.add(user.getUid());
+        }
+        return mapByRemoteKey(dataBaseAdapter.getUsersByUidsDirectly(accountId, uids));
+    }
+
+    @Override
+    public Object getRemoteKey(User entity) {
+        return entity.getUid();
+    }
+
     @Override
     public long createInDB(DataBaseAdapter dataBaseAdapter, long accountId, User entity) {
         return dataBaseAdapter.createUser(accountId, entity);
@@ -3,6 +3,7 @@ package it.niedermann.nextcloud.deck.ui;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.database.sqlite.SQLiteConstraintException;
+import android.net.Uri;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
 import android.view.Menu;
@@ -16,7 +17,6 @@ import com.google.android.material.floatingactionbutton.FloatingActionButton;
 import com.google.android.material.navigation.NavigationView;
 import com.google.android.material.snackbar.Snackbar;
 import com.google.android.material.tabs.TabLayout;
-import com.nextcloud.android.sso.helper.SingleAccountHelper;
 import com.nextcloud.android.sso.model.SingleSignOnAccount;
 
 import java.util.ArrayList;
@@ -36,6 +36,9 @@ import androidx.viewpager.widget.ViewPager;
 import butterknife.BindView;
 import butterknife.ButterKnife;
 import it.niedermann.nextcloud.deck.R;
+import it.niedermann.nextcloud.deck.api.ApiProvider;
+import it.niedermann.nextcloud.deck.api.ConnectivityMonitor;
+import it.niedermann.nextcloud.deck.api.DirectCredentials;
 import it.niedermann.nextcloud.deck.api.IResponseCallback;
 import it.niedermann.nextcloud.deck.model.Account;
 import it.niedermann.nextcloud.deck.model.Board;
@@ -45,6 +48,7 @@ import it.niedermann.nextcloud.deck.persistence.sync.SyncManager;
 import it.niedermann.nextcloud.deck.persistence.sync.adapters.db.util.WrappedLiveData;
 import it.niedermann.nextcloud.deck.ui.board.BoardCreateDialogFragment;
 import it.niedermann.nextcloud.deck.ui.helper.dnd.CrossTabDragAndDrop;
+import it.niedermann.nextcloud.deck.ui.login.DirectLoginDialogFragment;
 import it.niedermann.nextcloud.deck.ui.login.LoginDialogFragment;
 import it.niedermann.nextcloud.deck.ui.stack.StackAdapter;
 import it.niedermann.nextcloud.deck.ui.stack.StackCreateDialogFragment;
@@ -57,6 +61,7 @@ public class MainActivity extends AppCompatActivity
     private static final int MENU_ID_ABOUT = -1;
     private static final int MENU_ID_ADD_BOARD = -2;
     private static final int MENU_ID_ADD_ACCOUNT = -2;
+    private static final int MENU_ID_ADD_DIRECT_ACCOUNT = -3;
     private static final int ACTIVITY_ABOUT = 1;
     private static final long NO_BOARDS = -1;
 
@@ -88,6 +93,7 @@ public class MainActivity extends AppCompatActivity
     private LiveData<List<Board>> boardsLiveData;
     private Observer<List<Board>> boardsLiveDataObserver;
     private long currentBoardId = 0;
+    private boolean wasOffline = false;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -157,7 +163,7 @@ public class MainActivity extends AppCompatActivity
                         if (accounts.size() > lastAccount) {
                             this.account = accounts.get(lastAccount);
                             currentBoardId = sharedPreferences.getLong(getString(R.string.shared_preference_last_board_for_account_) + this.account.getId(), NO_BOARDS);
-                            SingleAccountHelper.setCurrentAccount(getApplicationContext(), this.account.getName());
+                            ApiProvider.setCurrentAccount(getApplicationContext(), this.account.getName());
                             setHeaderView();
                             syncManager = new SyncManager(getApplicationContext(), MainActivity.this);
                             ViewUtil.addAvatar(this, navigationView.getHeaderView(0).findViewById(R.id.drawer_current_account), this.account.getUrl(), this.account.getUserName());
@@ -183,6 +189,22 @@ public class MainActivity extends AppCompatActivity
             }
         });
 
+        syncManager.getNetworkState().observe(MainActivity.this, (ConnectivityMonitor.NetworkState networkState) -> {
+            if (networkState == null) {
+                return;
+            }
+            if (wasOffline && networkState.isConnected() && this.account != null) {
+                // fetches what has been changed on the server while offline, local changes have already been sent
+                syncManager.synchronize(new IResponseCallback<Boolean>(this.account) {
+                    @Override
+                    public void onResponse(Boolean response) {
+                        //nothing
+                    }
+                });
+            }
+            wasOffline = !networkState.isConnected();
+        });
+
         navigationView.getHeaderView(0).findViewById(R.id.drawer_header_view).setOnClickListener(v -> {
             this.accountChooserActive = !this.accountChooserActive;
             if (accountChooserActive) {
@@ -198,11 +220,30 @@ public class MainActivity extends AppCompatActivity
     }
 
     public void onAccountChoose(SingleSignOnAccount account) {
-        getSupportFragmentManager().beginTransaction().remove(loginDialogFragment).commit();
         Account acc = new Account();
         acc.setName(account.name);
         acc.setUserName(account.username);
         acc.setUrl(account.url);
+        addAccount(acc);
+    }
+
+    /**
+     * Adds an account which talks to its server directly instead of via single sign on.
+     */
+    public void onDirectLogin(DirectCredentials credentials) {
+        Account acc = new Account();
+        acc.setName(credentials.getLoginName() + "@" + Uri.parse(credentials.getServerUrl()).getHost());
+        acc.setUserName(credentials.getLoginName());
+        acc.setUrl(credentials.getServerUrl());
+        // stored first, so the first synchronization already talks to the server directly
+        syncManager.useDirectTransport(acc, credentials);
+        addAccount(acc);
+    }
+
+    private void addAccount(Account acc) {
+        if (loginDialogFragment != null) {
+            getSupportFragmentManager().beginTransaction().remove(loginDialogFragment).commit();
+        }
         final WrappedLiveData<Account> accountLiveData = this.syncManager.createAccount(acc);
         accountLiveData.observe(this, (Account ac) -> {
             if (accountLiveData.hasError()) {
@@ -216,7 +257,7 @@ public class MainActivity extends AppCompatActivity
             }
         });
 
-        SingleAccountHelper.setCurrentAccount(getApplicationContext(), account.name);
+        ApiProvider.setCurrentAccount(getApplicationContext(), acc.getName());
     }
 
     public void onCreateStack(String stackName) {
@@ -271,6 +312,7 @@ public class MainActivity extends AppCompatActivity
             menu.add(Menu.NONE, index++, Menu.NONE, account.getName()).setIcon(R.drawable.ic_person_grey600_24dp);
         }
         menu.add(Menu.NONE, MENU_ID_ADD_ACCOUNT, Menu.NONE, getString(R.string.add_account)).setIcon(R.drawable.ic_person_add_black_24dp);
+        menu.add(Menu.NONE, MENU_ID_ADD_DIRECT_ACCOUNT, Menu.NONE, getString(R.string.add_account_with_app_password)).setIcon(R.drawable.ic_person_add_black_24dp);
     }
 
     /**
@@ -282,6 +324,7 @@ public class MainActivity extends AppCompatActivity
         if (toolbar != null) {
             toolbar.setTitle(board.getTitle());
         }
+        syncManager.setOpenBoard(account.getId(), board.getLocalId());
         syncManager.getStacksForBoard(account.getId(), board.getLocalId()).observe(MainActivity.this, (List<FullStack> fullStacks) -> {
             if (fullStacks != null) {
                 stackAdapter.clear();
@@ -334,11 +377,16 @@ public class MainActivity extends AppCompatActivity
                     loginDialogFragment = new LoginDialogFragment();
                     loginDialogFragment.show(MainActivity.this.getSupportFragmentManager(), "NoticeDialogFragment");
                     break;
+                case MENU_ID_ADD_DIRECT_ACCOUNT:
+                    new DirectLoginDialogFragment().show(getSupportFragmentManager(), getString(R.string.add_account_with_app_password));
+                    break;
                 default:
                     boardsLiveData.removeObserver(boardsLiveDataObserver);
                     this.account = accountsList.get(item.getItemId());
-                    SingleAccountHelper.setCurrentAccount(getApplicationContext(), this.account.getName());
+                    ApiProvider.setCurrentAccount(getApplicationContext(), this.account.getName());
                     setHeaderView();
+                    // the connection of the previous account may use another transport
+                    syncManager = new SyncManager(getApplicationContext(), MainActivity.this);
 
                     boardsLiveData = syncManager.getBoards(this.account.getId());
                     boardsLiveDataObserver = (List<Board> boards) -> {
@@ -32,6 +32,12 @@ import java.util.List;
 
 import androidx.annotation.NonNull;
 import androidx.core.content.ContextCompat;
+import androidx.paging.AsyncPagedListDiffer;
+import androidx.paging.PagedList;
+import androidx.recyclerview.widget.AdapterListUpdateCallback;
+import androidx.recyclerview.widget.AsyncDifferConfig;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListUpdateCallback;
 import androidx.recyclerview.widget.RecyclerView;
 import butterknife.BindView;
 import butterknife.ButterKnife;
@@ -54,8 +60,24 @@ public class CardAdapter extends RecyclerView.Adapter<CardAdapter.CardViewHolder
     public static final String BUNDLE_KEY_BOARD_ID = "boardId";
     public static final int MAX_AVATAR_COUNT = 3;
 
+    private static final DiffUtil.ItemCallback<FullCard> DIFF_CALLBACK = new DiffUtil.ItemCallback<FullCard>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull FullCard oldItem, @NonNull FullCard newItem) {
+            return oldItem.getLocalId().equals(newItem.getLocalId());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull FullCard oldItem, @NonNull FullCard newItem) {
+            return oldItem.equals(newItem);
+        }
+    };
+
     private Context context;
-    private List<FullCard> cardList = new ArrayList<>();
+    private final AsyncPagedListDiffer<FullCard> differ = new AsyncPagedListDiffer<>(new MovedPositionsUpdateCallback(), new AsyncDifferConfig.Builder<>(DIFF_CALLBACK).build());
+    /**
+     * Positions in the paged list per shown position, <code>null</code> until a card has been moved.
+     */
+    private List<Integer> movedPositions;
     private SingleSignOnAccount account;
     private long boardId;
 
@@ -71,9 +93,9 @@ public class CardAdapter extends RecyclerView.Adapter<CardAdapter.CardViewHolder
         try {
             account = SingleAccountHelper.getCurrentSingleSignOnAccount(context);
         } catch (NextcloudFilesAppAccountNotFoundException e) {
-            DeckLog.logError(e);
+            DeckLog.error(e);
         } catch (NoCurrentAccountSelectedException e) {
-            DeckLog.logError(e);
+            DeckLog.error(e);
         }
         return new CardViewHolder(v);
     }
@@ -81,7 +103,11 @@ public class CardAdapter extends RecyclerView.Adapter<CardAdapter.CardViewHolder
     @SuppressLint("SetTextI18n")
     @Override
     public void onBindViewHolder(@NonNull CardViewHolder viewHolder, int position) {
-        FullCard card = cardList.get(position);
+        FullCard card = getCard(position);
+        if (card == null) {
+            bindPlaceholder(viewHolder);
+            return;
+        }
 
         viewHolder.card.setOnClickListener((View clickedView) -> {
             Intent intent = new Intent(clickedView.getContext(), EditActivity.class);
@@ -106,7 +132,7 @@ public class CardAdapter extends RecyclerView.Adapter<CardAdapter.CardViewHolder
                     0          // flags (not currently used, set to 0)
             );
             viewHolder.card.setVisibility(View.INVISIBLE);
-            DeckLog.log("onLongClickListener");
+            DeckLog.verbose(() -> "onLongClickListener");
             return true;
         });
 
@@ -167,6 +193,19 @@ public class CardAdapter extends RecyclerView.Adapter<CardAdapter.CardViewHolder
         viewHolder.cardMenu.setOnClickListener(v -> onOverflowIconClicked(v, card));
     }
 
+    /**
+     * An empty card for a position whose page is still being loaded.
+     */
+    private void bindPlaceholder(@NonNull CardViewHolder viewHolder) {
+        viewHolder.card.setOnClickListener(null);
+        viewHolder.card.setOnLongClickListener(null);
+        viewHolder.cardMenu.setOnClickListener(null);
+        viewHolder.cardTitle.setText(null);
+        viewHolder.cardDescription.setVisibility(View.GONE);
+        viewHolder.labels.removeAllViews();
+        viewHolder.detailsContainer.setVisibility(View.GONE);
+    }
+
     private void setupLabels(@NonNull ChipGroup labels, List<Label> labelList) {
         int maxLabelsShown = context.getResources().getInteger(R.integer.max_labels_shown);
         int maxLabelsChars = context.getResources().getInteger(R.integer.max_labels_chars);
@@ -248,19 +287,85 @@ public class CardAdapter extends RecyclerView.Adapter<CardAdapter.CardViewHolder
 
     @Override
     public int getItemCount() {
-        return cardList == null ? 0 : cardList.size();
+        return differ.getItemCount();
     }
 
-    public void setCardList(@NonNull List<FullCard> cardList) {
-        this.cardList = cardList;
-        notifyDataSetChanged();
+    /**
+     * @return <code>null</code> for a placeholder, getting it loads its page
+     */
+    private FullCard getCard(int position) {
+        return differ.getItem(movedPositions == null ? position : movedPositions.get(position));
     }
 
+    public void setCardList(@NonNull PagedList<FullCard> cardList) {
+        differ.submitList(cardList);
+    }
+
+    /**
+     * Moves are only shown, a paged list can't be changed. The next list from the database puts the cards back in place.
+     */
     public void moveItem(int fromPosition, int toPosition) {
-        cardList.add(toPosition, cardList.remove(fromPosition));
+        if (movedPositions == null) {
+            movedPositions = new ArrayList<>(getItemCount());
+            for (int i = 0; i < getItemCount(); i++) {
+                movedPositions.add(i);
+            }
+        }
+        movedPositions.add(toPosition, movedPositions.remove(fromPosition));
         notifyItemMoved(fromPosition, toPosition);
     }
 
+    /**
+     * Passes the updates of the paged list on to the adapter, translated to the shown positions when cards have been moved.
+     * Loading a page only changes placeholders into cards, anything else starts over with the order of the paged list.
+     */
+    private class MovedPositionsUpdateCallback implements ListUpdateCallback {
+        private final AdapterListUpdateCallback adapterCallback = new AdapterListUpdateCallback(CardAdapter.this);
+
+        @Override
+        public void onInserted(int position, int count) {
+            if (movedPositions == null) {
+                adapterCallback.onInserted(position, count);
+            } else {
+                startOver();
+            }
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            if (movedPositions == null) {
+                adapterCallback.onRemoved(position, count);
+            } else {
+                startOver();
+            }
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            if (movedPositions == null) {
+                adapterCallback.onMoved(fromPosition, toPosition);
+            } else {
+                startOver();
+            }
+        }
+
+        @Override
+        public void onChanged(int position, int count, Object payload) {
+            if (movedPositions == null) {
+                adapterCallback.onChanged(position, count, payload);
+                return;
+            }
+            for (int i = position; i < position + count; i++) {
+                notifyItemChanged(movedPositions.indexOf(i), payload);
+            }
+        }
+
+        private void startOver() {
+            movedPositions = null;
+            notifyDataSetChanged();
+        }
+    }
+
     private void onOverflowIconClicked(View view, FullCard card) {
         PopupMenu popup = new PopupMenu(context, view);
         popup.inflate(R.menu.card_menu);
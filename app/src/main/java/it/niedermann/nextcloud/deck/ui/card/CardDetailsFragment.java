@@ -137,7 +137,7 @@ public class CardDetailsFragment extends Fragment implements DatePickerDialog.On
         try {
             baseUrl = syncManager.getServerUrl();
         } catch (NextcloudFilesAppAccountNotFoundException | NoCurrentAccountSelectedException e) {
-            DeckLog.logError(e);
+            DeckLog.error(e);
         }
 
         return binding.getRoot();
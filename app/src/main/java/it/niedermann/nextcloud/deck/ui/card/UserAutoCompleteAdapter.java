@@ -82,9 +82,9 @@ public class UserAutoCompleteAdapter extends BaseAdapter implements Filterable {
                     getItem(position).getUid()
             );
         } catch (NextcloudFilesAppAccountNotFoundException e) {
-            DeckLog.logError(e);
+            DeckLog.error(e);
         } catch (NoCurrentAccountSelectedException e) {
-            DeckLog.logError(e);
+            DeckLog.error(e);
         }
 
         holder.label.setText(getItem(position).getDisplayname());
@@ -29,7 +29,7 @@ public class CrossTabDragAndDrop {
     public void register(final Activity source, final ViewPager pager, final IDragUpDown upDownDrag, final IDragLeftRight leftRightDrag){
         pager.setOnDragListener((View v, DragEvent dragEvent) -> {
             if(dragEvent.getAction() == 4) {
-                DeckLog.log(dragEvent.getAction() + "");
+                DeckLog.verbose(() -> String.valueOf(dragEvent.getAction()));
             }
 
             View view = (View) dragEvent.getLocalState();
@@ -43,11 +43,11 @@ public class CrossTabDragAndDrop {
                     long now = System.currentTimeMillis();
                     if (lastSwap + msToReact < now){ // don't change Tabs so fast!
                         if(dragEvent.getX() <= pxToReact) {
-                            DeckLog.log(dragEvent.getAction() + " moved left");
+                            DeckLog.verbose(() -> dragEvent.getAction() + " moved left");
                             pager.setCurrentItem(pager.getCurrentItem() - 1);
                             lastSwap = now;
                         } else if(dragEvent.getX() >= size.x - pxToReact) {
-                            DeckLog.log(dragEvent.getAction() + " moved right");
+                            DeckLog.verbose(() -> dragEvent.getAction() + " moved right");
                             pager.setCurrentItem(pager.getCurrentItem() + 1);
                             lastSwap = now;
                         }
@@ -55,7 +55,7 @@ public class CrossTabDragAndDrop {
 
                     int viewUnderPosition = owner.getChildAdapterPosition(owner.findChildViewUnder(dragEvent.getX(), dragEvent.getY()));
                     if(viewUnderPosition != -1) {
-                        DeckLog.log(dragEvent.getAction() + " moved something...");
+                        DeckLog.verbose(() -> dragEvent.getAction() + " moved something...");
                         cardAdapter.moveItem(owner.getChildLayoutPosition(view), viewUnderPosition);
                     }
                     break;
@@ -0,0 +1,59 @@
+package it.niedermann.nextcloud.deck.ui.login;
+
+import android.app.Dialog;
+import android.os.Bundle;
+import android.view.View;
+import android.widget.EditText;
+
+import androidx.annotation.NonNull;
+import androidx.appcompat.app.AlertDialog;
+import androidx.fragment.app.DialogFragment;
+import butterknife.BindView;
+import butterknife.ButterKnife;
+import it.niedermann.nextcloud.deck.R;
+import it.niedermann.nextcloud.deck.api.DirectCredentials;
+import it.niedermann.nextcloud.deck.ui.MainActivity;
+
+/**
+ * Adds an account which talks to its server directly, authenticated with an app password, e.g. if the Files app is not installed.
+ */
+public class DirectLoginDialogFragment extends DialogFragment {
+
+    @BindView(R.id.serverUrl)
+    EditText serverUrl;
+    @BindView(R.id.loginName)
+    EditText loginName;
+    @BindView(R.id.appPassword)
+    EditText appPassword;
+
+    @NonNull
+    @Override
+    public Dialog onCreateDialog(Bundle savedInstanceState) {
+        View view = getActivity().getLayoutInflater().inflate(R.layout.dialog_direct_login, null);
+        ButterKnife.bind(this, view);
+        return new AlertDialog.Builder(getActivity())
+                .setTitle(R.string.add_account_with_app_password)
+                .setView(view)
+                .setNegativeButton(R.string.simple_cancel, (dialog, which) -> {
+                    // Do something else
+                })
+                .setPositiveButton(R.string.simple_login, (dialog, which) -> {
+                    ((MainActivity) getActivity()).onDirectLogin(new DirectCredentials(
+                            normalizeServerUrl(serverUrl.getText().toString()),
+                            loginName.getText().toString().trim(),
+                            appPassword.getText().toString()));
+                })
+                .create();
+    }
+
+    /**
+     * @return the URL with a scheme and without a trailing slash, as single sign on delivers it
+     */
+    private static String normalizeServerUrl(String serverUrl) {
+        String url = serverUrl.trim();
+        while (url.endsWith("/")) {
+            url = url.substring(0, url.length() - 1);
+        }
+        return url.contains("://") ? url : "https://" + url;
+    }
+}
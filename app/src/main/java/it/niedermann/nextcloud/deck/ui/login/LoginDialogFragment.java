@@ -11,7 +11,6 @@ import android.util.Log;
 import com.nextcloud.android.sso.AccountImporter;
 import com.nextcloud.android.sso.exceptions.NextcloudFilesAppNotInstalledException;
 import com.nextcloud.android.sso.model.SingleSignOnAccount;
-import com.nextcloud.android.sso.ui.UiExceptionManager;
 
 import it.niedermann.nextcloud.deck.ui.MainActivity;
 
@@ -22,10 +21,10 @@ public class LoginDialogFragment extends DialogFragment {
         try {
             AccountImporter.pickNewAccount(this);
         } catch (NextcloudFilesAppNotInstalledException e) {
-            UiExceptionManager.showDialogForException(getContext(), e);
             Log.w("Deck", "=============================================================");
-            Log.w("Deck", "Nextcloud app is not installed. Cannot choose account");
+            Log.w("Deck", "Nextcloud app is not installed. Logging in with an app password instead");
             e.printStackTrace();
+            new DirectLoginDialogFragment().show(getFragmentManager(), DirectLoginDialogFragment.class.getSimpleName());
         }
         return super.onCreateDialog(savedInstanceState);
     }
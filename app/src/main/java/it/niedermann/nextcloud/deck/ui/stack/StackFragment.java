@@ -6,10 +6,9 @@ import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 
-import java.util.List;
-
 import androidx.annotation.NonNull;
 import androidx.fragment.app.Fragment;
+import androidx.paging.PagedList;
 import androidx.recyclerview.widget.ItemTouchHelper;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
@@ -93,7 +92,7 @@ public class StackFragment extends Fragment {
                         runOnUiThread(() -> {
                             swipeRefreshLayout.setRefreshing(false);
                         });
-                        DeckLog.log("exception! " + throwable.getMessage());
+                        DeckLog.warn("Refreshing failed", throwable);
                     }
                 });
             });
@@ -107,7 +106,7 @@ public class StackFragment extends Fragment {
         runOnUiThread(() ->
                 syncManager.getStack(account.getId(), stackId).observe(StackFragment.this, (FullStack stack) -> {
                     if (stack != null) {
-                        syncManager.getFullCardsForStack(account.getId(), stack.getLocalId()).observe(StackFragment.this, (List<FullCard> cards) -> {
+                        syncManager.getFullCardsForStack(account.getId(), stack.getLocalId()).observe(StackFragment.this, (PagedList<FullCard> cards) -> {
                             if (cards != null) {
                                 adapter.setCardList(cards);
                             }
@@ -130,7 +129,7 @@ public class StackFragment extends Fragment {
         if (a != null) {
             a.runOnUiThread(r);
         } else {
-            DeckLog.logError(new Exception("Activity is null"));
+            DeckLog.error(new Exception("Activity is null"));
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,302 @@
+package it.niedermann.nextcloud.deck.util;
+
+import java.util.Date;
+
+/**
+ * Converts dates from and to the formats used by Deck:
+ * <ul>
+ * <li>epoch seconds, used by the API for <code>lastModified</code>, <code>createdAt</code> and <code>deletedAt</code></li>
+ * <li>ISO 8601 with offset, e.g. <code>2019-01-01T13:30:00+00:00</code>, used by the API for <code>duedate</code></li>
+ * <li>RFC 1123 in GMT, e.g. <code>Sun, 06 Nov 1994 08:49:37 GMT</code>, used for HTTP headers like <code>If-Modified-Since</code></li>
+ * <li>epoch milliseconds, used for the database</li>
+ * </ul>
+ * Offsets are applied arithmetically, so neither the default time zone nor its daylight saving rules have any influence.
+ * Stateless, so safe on any thread, and no {@link java.util.Calendar} or {@link java.text.DateFormat} is created.
+ */
+public final class DateCodec {
+
+    private static final long MILLIS_PER_SECOND = 1000;
+    private static final long MILLIS_PER_MINUTE = 60 * MILLIS_PER_SECOND;
+    private static final long MILLIS_PER_HOUR = 60 * MILLIS_PER_MINUTE;
+    private static final long MILLIS_PER_DAY = 24 * MILLIS_PER_HOUR;
+
+    private static final String[] WEEKDAYS = {"Sun", "Mon", "Tue", "Wed", "Thu", "Fri", "Sat"};
+    private static final String[] MONTHS = {"Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec"};
+
+    private DateCodec() {
+    }
+
+    public static Date fromEpochSeconds(long seconds) {
+        return new Date(seconds * MILLIS_PER_SECOND);
+    }
+
+    public static Date fromEpochMillis(Long millis) {
+        return millis == null ? null : new Date(millis);
+    }
+
+    public static Long toEpochMillis(Date date) {
+        return date == null ? null : date.getTime();
+    }
+
+    /**
+     * Accepts <code>yyyy-MM-dd</code>, optionally followed by <code>T</code> (or a space) and <code>HH:mm</code>, seconds and fractions of seconds,
+     * and an offset (<code>Z</code>, <code>+HH</code>, <code>+HHmm</code> or <code>+HH:mm</code>, or the same with <code>-</code>). Without offset, UTC is assumed.
+     *
+     * @return <code>null</code> if <code>value</code> is <code>null</code> or malformed
+     */
+    public static Date parseIso8601(String value) {
+        if (value == null) {
+            return null;
+        }
+        final int length = value.length();
+        if (length < 10 || value.charAt(4) != '-' || value.charAt(7) != '-') {
+            return null;
+        }
+        int year = digits(value, 0, 4);
+        int month = digits(value, 5, 2);
+        int day = digits(value, 8, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)) {
+            return null;
+        }
+        int hour = 0;
+        int minute = 0;
+        int second = 0;
+        int millis = 0;
+        int pos = 10;
+        if (pos < length && (value.charAt(pos) == 'T' || value.charAt(pos) == ' ')) {
+            if (length < pos + 6 || value.charAt(pos + 3) != ':') {
+                return null;
+            }
+            hour = digits(value, pos + 1, 2);
+            minute = digits(value, pos + 4, 2);
+            pos += 6;
+            if (pos < length && value.charAt(pos) == ':') {
+                second = digits(value, pos + 1, 2);
+                pos += 3;
+                if (pos < length && (value.charAt(pos) == '.' || value.charAt(pos) == ',')) {
+                    pos++;
+                    int scale = 100;
+                    int start = pos;
+                    while (pos < length && Character.isDigit(value.charAt(pos))) {
+                        millis += (value.charAt(pos) - '0') * scale;
+                        scale /= 10;
+                        pos++;
+                    }
+                    if (pos == start) {
+                        return null;
+                    }
+                }
+            }
+            // 24:00 is not accepted, second 60 (leap second) is
+            if (hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 60) {
+                return null;
+            }
+        }
+        long offsetMillis = 0;
+        if (pos < length) {
+            char sign = value.charAt(pos);
+            if (sign == 'Z' && pos + 1 == length) {
+                pos++;
+            } else if (sign == '+' || sign == '-') {
+                int offsetHours = digits(value, pos + 1, 2);
+                int offsetMinutes = 0;
+                pos += 3;
+                if (pos < length && value.charAt(pos) == ':') {
+                    pos++;
+                }
+                if (pos < length) {
+                    offsetMinutes = digits(value, pos, 2);
+                    pos += 2;
+                }
+                if (offsetHours < 0 || offsetHours > 18 || offsetMinutes < 0 || offsetMinutes > 59) {
+                    return null;
+                }
+                offsetMillis = offsetHours * MILLIS_PER_HOUR + offsetMinutes * MILLIS_PER_MINUTE;
+                if (sign == '-') {
+                    offsetMillis = -offsetMillis;
+                }
+            }
+            if (pos != length) {
+                return null;
+            }
+        }
+        return new Date(daysFromCivil(year, month, day) * MILLIS_PER_DAY
+                + hour * MILLIS_PER_HOUR + minute * MILLIS_PER_MINUTE + second * MILLIS_PER_SECOND + millis
+                - offsetMillis);
+    }
+
+    /**
+     * @return e.g. <code>2019-01-01T13:30:00+00:00</code>, always in UTC. <code>null</code> for <code>null</code>.
+     */
+    public static String formatIso8601(Date date) {
+        if (date == null) {
+            return null;
+        }
+        long millis = date.getTime();
+        long days = floorDiv(millis, MILLIS_PER_DAY);
+        int millisOfDay = (int) (millis - days * MILLIS_PER_DAY);
+        int[] civil = civilFromDays(days);
+        char[] out = new char[25];
+        appendDigits(out, 0, civil[0], 4);
+        out[4] = '-';
+        appendDigits(out, 5, civil[1], 2);
+        out[7] = '-';
+        appendDigits(out, 8, civil[2], 2);
+        out[10] = 'T';
+        appendTime(out, 11, millisOfDay);
+        out[19] = '+';
+        out[20] = '0';
+        out[21] = '0';
+        out[22] = ':';
+        out[23] = '0';
+        out[24] = '0';
+        return new String(out);
+    }
+
+    /**
+     * @return e.g. <code>Sun, 06 Nov 1994 08:49:37 GMT</code> (RFC 7231 IMF-fixdate), <code>null</code> (no header at all) for <code>null</code>.
+     */
+    public static String formatRfc1123(Date date) {
+        if (date == null) {
+            return null;
+        }
+        long millis = date.getTime();
+        long days = floorDiv(millis, MILLIS_PER_DAY);
+        int millisOfDay = (int) (millis - days * MILLIS_PER_DAY);
+        int[] civil = civilFromDays(days);
+        char[] out = new char[29];
+        WEEKDAYS[(int) floorMod(days + 4, 7)].getChars(0, 3, out, 0);
+        out[3] = ',';
+        out[4] = ' ';
+        appendDigits(out, 5, civil[2], 2);
+        out[7] = ' ';
+        MONTHS[civil[1] - 1].getChars(0, 3, out, 8);
+        out[11] = ' ';
+        appendDigits(out, 12, civil[0], 4);
+        out[16] = ' ';
+        appendTime(out, 17, millisOfDay);
+        out[25] = ' ';
+        out[26] = 'G';
+        out[27] = 'M';
+        out[28] = 'T';
+        return new String(out);
+    }
+
+    /**
+     * @return <code>null</code> if <code>value</code> is <code>null</code> or not exactly in the format of {@link #formatRfc1123(Date)}
+     */
+    public static Date parseRfc1123(String value) {
+        if (value == null || value.length() != 29 || value.charAt(3) != ',' || !value.endsWith(" GMT")
+                || value.charAt(19) != ':' || value.charAt(22) != ':') {
+            return null;
+        }
+        int month = -1;
+        for (int i = 0; i < MONTHS.length; i++) {
+            if (value.regionMatches(8, MONTHS[i], 0, 3)) {
+                month = i + 1;
+                break;
+            }
+        }
+        int day = digits(value, 5, 2);
+        int year = digits(value, 12, 4);
+        int hour = digits(value, 17, 2);
+        int minute = digits(value, 20, 2);
+        int second = digits(value, 23, 2);
+        if (month < 0 || year < 0 || day < 1 || day > daysInMonth(year, month)
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 60) {
+            return null;
+        }
+        return new Date(daysFromCivil(year, month, day) * MILLIS_PER_DAY
+                + hour * MILLIS_PER_HOUR + minute * MILLIS_PER_MINUTE + second * MILLIS_PER_SECOND);
+    }
+
+    /**
+     * @return days since 1970-01-01 of the given proleptic gregorian date
+     */
+    static long daysFromCivil(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = (y >= 0 ? y : y - 399) / 400;
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    /**
+     * @return year, month (1-12) and day of month of the given days since 1970-01-01
+     */
+    static int[] civilFromDays(long days) {
+        long z = days + 719468;
+        long era = (z >= 0 ? z : z - 146096) / 146097;
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long mp = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        int year = (int) (yearOfEra + era * 400 + (month <= 2 ? 1 : 0));
+        return new int[]{year, month, day};
+    }
+
+    private static int daysInMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    /**
+     * @return the number, -1 if there are not enough characters or one of them is not a digit
+     */
+    private static int digits(String value, int start, int count) {
+        if (start + count > value.length()) {
+            return -1;
+        }
+        int result = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+
+    /**
+     * Writes <code>HH:mm:ss</code>
+     */
+    private static void appendTime(char[] out, int start, int millisOfDay) {
+        int seconds = millisOfDay / 1000;
+        appendDigits(out, start, seconds / 3600, 2);
+        out[start + 2] = ':';
+        appendDigits(out, start + 3, seconds / 60 % 60, 2);
+        out[start + 5] = ':';
+        appendDigits(out, start + 6, seconds % 60, 2);
+    }
+
+    private static void appendDigits(char[] out, int start, int value, int count) {
+        for (int i = start + count - 1; i >= start; i--) {
+            out[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    // Math.floorDiv and Math.floorMod need API level 24
+
+    private static long floorDiv(long x, long y) {
+        long q = x / y;
+        return (x % y != 0 && ((x ^ y) < 0)) ? q - 1 : q;
+    }
+
+    private static long floorMod(long x, long y) {
+        return x - floorDiv(x, y) * y;
+    }
+}
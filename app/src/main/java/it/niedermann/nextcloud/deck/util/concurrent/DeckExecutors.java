@@ -0,0 +1,125 @@
+package it.niedermann.nextcloud.deck.util.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.reactivex.Scheduler;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * Application wide execution pools. Use these instead of spawning new {@link Thread}s.
+ * <ul>
+ * <li>{@link #disk()} for database work</li>
+ * <li>{@link #databaseReads()} for the queries of LiveData, which Room runs there</li>
+ * <li>{@link #network()} for bookkeeping around server requests, the requests themselves are run by {@link it.niedermann.nextcloud.deck.api.RequestScheduler}</li>
+ * <li>{@link #computation()} for CPU bound work like parsing or diffing</li>
+ * </ul>
+ * All pools but {@link #databaseReads()} have a bounded queue, see {@link MeteredExecutor}.
+ * Sizes can be changed with {@link #configure(PoolConfig, PoolConfig, PoolConfig, PoolConfig)} as long as
+ * {@link #getInstance()} has not been called yet.
+ */
+public class DeckExecutors {
+
+    private static final int CPU_COUNT = Runtime.getRuntime().availableProcessors();
+
+    private static PoolConfig diskConfig = new PoolConfig("disk", 2, 256);
+    // Android keeps up to four connections for a WAL database, one of them is reserved for writing.
+    // Room submits from the main thread, which must not run the queries itself, so nothing is rejected here.
+    private static PoolConfig databaseReadsConfig = new PoolConfig("db-read", 3, 1024, MeteredExecutor.QueueMode.UNBOUNDED);
+    private static PoolConfig networkConfig = new PoolConfig("network", 4, 512);
+    private static PoolConfig computationConfig = new PoolConfig("computation", Math.max(1, CPU_COUNT - 1), 128);
+
+    private static volatile DeckExecutors instance;
+
+    private final MeteredExecutor disk;
+    private final MeteredExecutor databaseReads;
+    private final MeteredExecutor network;
+    private final MeteredExecutor computation;
+    private final Scheduler networkScheduler;
+
+    private DeckExecutors() {
+        disk = diskConfig.create();
+        databaseReads = databaseReadsConfig.create();
+        network = networkConfig.create();
+        computation = computationConfig.create();
+        networkScheduler = Schedulers.from(network);
+    }
+
+    public static DeckExecutors getInstance() {
+        if (instance == null) {
+            synchronized (DeckExecutors.class) {
+                if (instance == null) {
+                    instance = new DeckExecutors();
+                }
+            }
+        }
+        return instance;
+    }
+
+    public static synchronized void configure(PoolConfig disk, PoolConfig databaseReads, PoolConfig network, PoolConfig computation) {
+        if (instance != null) {
+            throw new IllegalStateException("DeckExecutors are already running, configure them before first usage.");
+        }
+        diskConfig = disk;
+        databaseReadsConfig = databaseReads;
+        networkConfig = network;
+        computationConfig = computation;
+    }
+
+    public MeteredExecutor disk() {
+        return disk;
+    }
+
+    public MeteredExecutor databaseReads() {
+        return databaseReads;
+    }
+
+    public MeteredExecutor network() {
+        return network;
+    }
+
+    public MeteredExecutor computation() {
+        return computation;
+    }
+
+    /**
+     * @return RxJava {@link Scheduler} backed by {@link #network()}
+     */
+    public Scheduler networkScheduler() {
+        return networkScheduler;
+    }
+
+    public List<MeteredExecutor.Stats> getStats() {
+        List<MeteredExecutor.Stats> stats = new ArrayList<>(4);
+        stats.add(disk.getStats());
+        stats.add(databaseReads.getStats());
+        stats.add(network.getStats());
+        stats.add(computation.getStats());
+        return stats;
+    }
+
+    public static class PoolConfig {
+        private final String name;
+        private final int parallelism;
+        private final int queueDepth;
+        private final MeteredExecutor.QueueMode queueMode;
+
+        public PoolConfig(String name, int parallelism, int queueDepth) {
+            this(name, parallelism, queueDepth, MeteredExecutor.QueueMode.BOUNDED);
+        }
+
+        public PoolConfig(String name, int parallelism, int queueDepth, MeteredExecutor.QueueMode queueMode) {
+            if (parallelism < 1 || queueDepth < 1) {
+                throw new IllegalArgumentException("parallelism and queueDepth of pool \"" + name + "\" must be positive");
+            }
+            this.name = name;
+            this.parallelism = parallelism;
+            this.queueDepth = queueDepth;
+            this.queueMode = queueMode;
+        }
+
+        MeteredExecutor create() {
+            return new MeteredExecutor(name, parallelism, queueDepth, queueMode);
+        }
+    }
+}
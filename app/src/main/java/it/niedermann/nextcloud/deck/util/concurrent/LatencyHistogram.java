@@ -0,0 +1,47 @@
+package it.niedermann.nextcloud.deck.util.concurrent;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe counts of durations in fixed buckets, cheap enough to be recorded for every task.
+ */
+public class LatencyHistogram {
+
+    /**
+     * Upper bounds (inclusive, in milliseconds) of the buckets.
+     * The last bucket collects everything above the last bound.
+     */
+    public static final long[] BUCKETS_MS = {1, 5, 10, 50, 100, 500, 1000, 5000};
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS_MS.length + 1);
+
+    public void record(long nanos) {
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        int bucket = 0;
+        while (bucket < BUCKETS_MS.length && millis > BUCKETS_MS[bucket]) {
+            bucket++;
+        }
+        counts.incrementAndGet(bucket);
+    }
+
+    /**
+     * @return count per bucket of {@link #BUCKETS_MS}
+     */
+    public long[] snapshot() {
+        long[] snapshot = new long[counts.length()];
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+        }
+        return snapshot;
+    }
+
+    public static String format(long[] snapshot) {
+        StringBuilder histogram = new StringBuilder();
+        for (int i = 0; i < snapshot.length; i++) {
+            histogram.append(i < BUCKETS_MS.length ? "<=" + BUCKETS_MS[i] : ">" + BUCKETS_MS[i - 1])
+                    .append("ms:").append(snapshot[i]).append(' ');
+        }
+        return histogram.toString().trim();
+    }
+}
@@ -0,0 +1,264 @@
+package it.niedermann.nextcloud.deck.util.concurrent;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link ThreadPoolExecutor} with a fixed count of threads which counts what is going on inside of it.
+ * <p>
+ * With {@link QueueMode#BOUNDED}, at most <code>queueDepth</code> tasks wait. If the queue is full, a task submitted by a thread
+ * of one of these pools is executed on that thread instead of being dropped, so a flood of sync work slows its producer down
+ * rather than spawning new threads or losing work. Every such task is counted as rejected.
+ * Other threads, above all the main thread, must neither run database or network work nor block, their tasks are queued anyway.
+ * <p>
+ * With {@link QueueMode#UNBOUNDED}, all tasks are queued, e.g. for Room, which submits its LiveData queries from the main thread.
+ * <p>
+ * Tasks queued while <code>queueDepth</code> or more tasks are already waiting are counted as overflowed,
+ * and the deepest the queue has been is kept, so a pool which is too small shows up in the stats.
+ */
+public class MeteredExecutor extends ThreadPoolExecutor {
+
+    public enum QueueMode {
+        BOUNDED,
+        UNBOUNDED
+    }
+
+    private final String name;
+    private final int queueDepth;
+    private final QueueMode queueMode;
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger maxQueued = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong overflowed = new AtomicLong();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    public MeteredExecutor(String name, int parallelism, int queueDepth) {
+        this(name, parallelism, queueDepth, QueueMode.BOUNDED);
+    }
+
+    /**
+     * @param queueDepth capacity of the queue for {@link QueueMode#BOUNDED}, count of waiting tasks which is considered normal for both modes
+     */
+    public MeteredExecutor(String name, int parallelism, int queueDepth, QueueMode queueMode) {
+        super(parallelism, parallelism, 30L, TimeUnit.SECONDS,
+                queueMode == QueueMode.BOUNDED ? new SoftBoundedQueue(queueDepth) : new LinkedBlockingQueue<>(),
+                new NamedThreadFactory(name));
+        this.name = name;
+        this.queueDepth = queueDepth;
+        this.queueMode = queueMode;
+        allowCoreThreadTimeOut(true);
+        setRejectedExecutionHandler(new CountingCallerRunsPolicy());
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        int waiting = getQueue().size();
+        super.execute(new TimedRunnable(command));
+        if (queueMode == QueueMode.UNBOUNDED && waiting >= queueDepth) {
+            overflowed.incrementAndGet();
+        }
+        int queued = getQueue().size();
+        int max;
+        do {
+            max = maxQueued.get();
+        } while (queued > max && !maxQueued.compareAndSet(max, queued));
+    }
+
+    @Override
+    protected void beforeExecute(Thread t, Runnable r) {
+        active.incrementAndGet();
+        super.beforeExecute(t, r);
+    }
+
+    @Override
+    protected void afterExecute(Runnable r, Throwable t) {
+        super.afterExecute(r, t);
+        active.decrementAndGet();
+        completed.incrementAndGet();
+        if (r instanceof TimedRunnable) {
+            latency.record(System.nanoTime() - ((TimedRunnable) r).enqueuedAt);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Stats getStats() {
+        return new Stats(name, getQueue().size(), maxQueued.get(), active.get(), completed.get(), rejected.get(), overflowed.get(), latency.snapshot());
+    }
+
+    /**
+     * Immutable snapshot of the counters of one {@link MeteredExecutor}.
+     */
+    public static class Stats {
+        private final String name;
+        private final int queued;
+        private final int maxQueued;
+        private final int active;
+        private final long completed;
+        private final long rejected;
+        private final long overflowed;
+        private final long[] latencyHistogram;
+
+        Stats(String name, int queued, int maxQueued, int active, long completed, long rejected, long overflowed, long[] latencyHistogram) {
+            this.name = name;
+            this.queued = queued;
+            this.maxQueued = maxQueued;
+            this.active = active;
+            this.completed = completed;
+            this.rejected = rejected;
+            this.overflowed = overflowed;
+            this.latencyHistogram = latencyHistogram;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getQueued() {
+            return queued;
+        }
+
+        public int getMaxQueued() {
+            return maxQueued;
+        }
+
+        public int getActive() {
+            return active;
+        }
+
+        public long getCompleted() {
+            return completed;
+        }
+
+        /**
+         * @return count of tasks which have been run on the submitting thread, because the queue was full
+         */
+        public long getRejected() {
+            return rejected;
+        }
+
+        /**
+         * @return count of tasks which have been queued while <code>queueDepth</code> or more tasks were waiting
+         */
+        public long getOverflowed() {
+            return overflowed;
+        }
+
+        /**
+         * @return count of finished tasks per bucket of {@link LatencyHistogram#BUCKETS_MS} (time from submission until completion)
+         */
+        public long[] getLatencyHistogram() {
+            return latencyHistogram.clone();
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{" +
+                    "name='" + name + '\'' +
+                    ", queued=" + queued +
+                    ", maxQueued=" + maxQueued +
+                    ", active=" + active +
+                    ", completed=" + completed +
+                    ", rejected=" + rejected +
+                    ", overflowed=" + overflowed +
+                    ", latency=[" + LatencyHistogram.format(latencyHistogram) + ']' +
+                    '}';
+        }
+    }
+
+    private static class TimedRunnable implements Runnable {
+        private final Runnable delegate;
+        private final long enqueuedAt = System.nanoTime();
+
+        TimedRunnable(Runnable delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void run() {
+            delegate.run();
+        }
+    }
+
+    /**
+     * Refuses tasks beyond its capacity when offered by the {@link ThreadPoolExecutor}, so they get to the {@link CountingCallerRunsPolicy}.
+     */
+    private static class SoftBoundedQueue extends LinkedBlockingQueue<Runnable> {
+        private final int capacity;
+
+        SoftBoundedQueue(int capacity) {
+            this.capacity = capacity;
+        }
+
+        @Override
+        public boolean offer(Runnable runnable) {
+            // checking and adding is not atomic, a few more tasks than the capacity may get in
+            return size() < capacity && super.offer(runnable);
+        }
+
+        private boolean offerBeyondCapacity(Runnable runnable) {
+            return super.offer(runnable);
+        }
+    }
+
+    private class CountingCallerRunsPolicy implements RejectedExecutionHandler {
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                return;
+            }
+            if (!(Thread.currentThread() instanceof PoolThread)) {
+                // e.g. the main thread
+                overflowed.incrementAndGet();
+                ((SoftBoundedQueue) getQueue()).offerBeyondCapacity(r);
+                if (getPoolSize() == 0) {
+                    // all threads have timed out in the meantime
+                    prestartCoreThread();
+                }
+                return;
+            }
+            rejected.incrementAndGet();
+            active.incrementAndGet();
+            try {
+                r.run();
+            } finally {
+                active.decrementAndGet();
+                completed.incrementAndGet();
+                latency.record(System.nanoTime() - ((TimedRunnable) r).enqueuedAt);
+            }
+        }
+    }
+
+    /**
+     * Marks the threads of all pools, which may run rejected tasks themselves.
+     */
+    private static class PoolThread extends Thread {
+        PoolThread(Runnable target, String name) {
+            super(target, name);
+        }
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger count = new AtomicInteger();
+
+        NamedThreadFactory(String name) {
+            this.prefix = "deck-" + name + "-";
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new PoolThread(r, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
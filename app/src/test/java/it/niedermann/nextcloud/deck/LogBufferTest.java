@@ -0,0 +1,42 @@
+package it.niedermann.nextcloud.deck;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Local unit tests for the ring buffer behind {@link DeckLog#getRecentLogs()}.
+ */
+public class LogBufferTest {
+
+    @Test
+    public void keepsOnlyTheMostRecentEntriesInOrder() {
+        LogBuffer buffer = new LogBuffer(3);
+        for (int i = 1; i <= 5; i++) {
+            buffer.add(DeckLog.Level.INFO, "entry " + i);
+        }
+        assertEquals(3, buffer.size());
+        String dump = buffer.dump();
+        assertFalse(dump.contains("entry 2"));
+        assertTrue(dump.indexOf("I entry 3") < dump.indexOf("I entry 4"));
+        assertTrue(dump.indexOf("I entry 4") < dump.indexOf("I entry 5"));
+        assertEquals(3, dump.split("\n").length);
+    }
+
+    @Test
+    public void skipsDisabledLevelsWithoutEvaluatingTheMessage() {
+        DeckLog.Level previous = DeckLog.getMinLevel();
+        try {
+            DeckLog.setMinLevel(DeckLog.Level.WARN);
+            DeckLog.debug(() -> {
+                throw new AssertionError("must not be evaluated");
+            });
+            assertFalse(DeckLog.isLoggable(DeckLog.Level.INFO));
+            assertTrue(DeckLog.isLoggable(DeckLog.Level.ERROR));
+        } finally {
+            DeckLog.setMinLevel(previous);
+        }
+    }
+}
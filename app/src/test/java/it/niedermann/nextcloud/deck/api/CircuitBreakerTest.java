@@ -0,0 +1,72 @@
+package it.niedermann.nextcloud.deck.api;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.Observable;
+import it.niedermann.nextcloud.deck.exceptions.CircuitOpenException;
+
+import static it.niedermann.nextcloud.deck.api.RetryPolicyTest.httpError;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Local unit tests for the state changes of {@link CircuitBreaker}.
+ */
+public class CircuitBreakerTest {
+
+    @Test
+    public void opensAfterConsecutiveTransientFailuresAndFailsFast() {
+        CircuitBreaker breaker = new CircuitBreaker("https://cloud.example.com", 3, 60_000);
+        AtomicInteger sent = new AtomicInteger();
+        Observable<String> failing = Observable.defer(() -> {
+            sent.incrementAndGet();
+            return Observable.<String>error(httpError(503));
+        });
+
+        for (int i = 0; i < 3; i++) {
+            RequestHelper.guard(breaker, failing).ignoreElements().blockingGet();
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        Throwable error = RequestHelper.guard(breaker, failing).ignoreElements().blockingGet();
+        assertTrue(String.valueOf(error), error instanceof CircuitOpenException);
+        assertEquals(3, sent.get());
+    }
+
+    @Test
+    public void clientErrorsDontCount() {
+        CircuitBreaker breaker = new CircuitBreaker("https://cloud.example.com", 2, 60_000);
+        for (int i = 0; i < 5; i++) {
+            RequestHelper.guard(breaker, Observable.error(httpError(404))).ignoreElements().blockingGet();
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void halfOpenLetsOneTrialPass() {
+        FakeClock clock = new FakeClock();
+        CircuitBreaker breaker = new CircuitBreaker("https://cloud.example.com", 1, 20, clock);
+        assertTrue(breaker.tryAcquire());
+        breaker.onFailure();
+        assertFalse(breaker.tryAcquire());
+        clock.advance(19);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        clock.advance(1);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire());
+
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        clock.advance(20);
+        assertTrue(breaker.tryAcquire());
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+    }
+}
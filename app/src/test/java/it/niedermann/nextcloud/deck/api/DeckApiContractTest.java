@@ -0,0 +1,110 @@
+package it.niedermann.nextcloud.deck.api;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.observers.TestObserver;
+import it.niedermann.nextcloud.deck.model.full.FullBoard;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import retrofit2.HttpException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * What every transport behind {@link DeckAPI} has to do, checked against a local stand-in for the server.
+ * Each transport gets a subclass which connects its {@link DeckAPI} to the {@link MockWebServer}.
+ */
+public abstract class DeckApiContractTest {
+
+    private static final String BOARDS_JSON = "[{\"id\":1,\"title\":\"Board\",\"color\":\"0082c9\",\"archived\":false," +
+            "\"lastModified\":1550000000,\"deletedAt\":0,\"labels\":[{\"id\":7,\"title\":\"Urgent\",\"color\":\"ff0000\"}]," +
+            "\"stacks\":[],\"acl\":[],\"owner\":{\"primaryKey\":\"alice\",\"uid\":\"alice\",\"displayname\":\"Alice\"}}]";
+
+    protected MockWebServer server;
+    protected DeckAPI api;
+
+    /**
+     * @param baseUrl URL of the Deck API on the mock server, ending with a slash
+     */
+    protected abstract DeckAPI createApi(String baseUrl);
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        api = createApi(server.url("/index.php/apps/deck/api/v1.0/").toString());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void getBoardsParsesResponseAndSendsModifiedSinceHeader() throws InterruptedException {
+        server.enqueue(new MockResponse().setBody(BOARDS_JSON));
+
+        List<FullBoard> boards = api.getBoards(true, "Sat, 16 Feb 2019 19:33:20 GMT").blockingFirst();
+
+        assertEquals(1, boards.size());
+        assertEquals(1L, (long) boards.get(0).getId());
+        assertEquals("Board", boards.get(0).getBoard().getTitle());
+        assertEquals(1, boards.get(0).getLabels().size());
+        RecordedRequest request = server.takeRequest(5, TimeUnit.SECONDS);
+        assertEquals("GET", request.getMethod());
+        assertEquals("/index.php/apps/deck/api/v1.0/boards?details=true", request.getPath());
+        assertEquals("Sat, 16 Feb 2019 19:33:20 GMT", request.getHeader(DeckAPI.MODIFIED_SINCE_HEADER));
+    }
+
+    @Test
+    public void omitsModifiedSinceHeaderWithoutCursor() throws InterruptedException {
+        server.enqueue(new MockResponse().setBody("[]"));
+
+        assertTrue(api.getBoards(true, null).blockingFirst().isEmpty());
+        assertNull(server.takeRequest(5, TimeUnit.SECONDS).getHeader(DeckAPI.MODIFIED_SINCE_HEADER));
+    }
+
+    @Test
+    public void requestWithoutResponseBodyCompletesWithoutValue() throws InterruptedException {
+        server.enqueue(new MockResponse());
+
+        TestObserver<Void> observer = api.deleteBoard(3).test();
+        observer.awaitTerminalEvent(5, TimeUnit.SECONDS);
+
+        observer.assertComplete().assertNoValues().assertNoErrors();
+        RecordedRequest request = server.takeRequest(5, TimeUnit.SECONDS);
+        assertEquals("DELETE", request.getMethod());
+        assertEquals("/index.php/apps/deck/api/v1.0/boards/3", request.getPath());
+    }
+
+    @Test
+    public void sendsFormEncodedFields() throws InterruptedException {
+        server.enqueue(new MockResponse());
+
+        api.assignUserToCard(1, 2, 3, "alice").test().awaitTerminalEvent(5, TimeUnit.SECONDS);
+
+        RecordedRequest request = server.takeRequest(5, TimeUnit.SECONDS);
+        assertEquals("PUT", request.getMethod());
+        assertEquals("/index.php/apps/deck/api/v1.0/boards/1/stacks/2/cards/3/assignUser", request.getPath());
+        assertEquals("userId=alice", request.getBody().readUtf8());
+    }
+
+    @Test
+    public void reportsErrorStatusAsHttpException() {
+        server.enqueue(new MockResponse().setResponseCode(403));
+
+        TestObserver<List<FullBoard>> observer = api.getBoards(true, null).test();
+        observer.awaitTerminalEvent(5, TimeUnit.SECONDS);
+
+        observer.assertError(HttpException.class);
+        assertEquals(403, ((HttpException) observer.errors().get(0)).code());
+    }
+}
@@ -0,0 +1,76 @@
+package it.niedermann.nextcloud.deck.api;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import it.niedermann.nextcloud.deck.persistence.sync.helpers.SyncTrace;
+import it.niedermann.nextcloud.deck.persistence.sync.helpers.SyncTracer;
+import okhttp3.Credentials;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Runs the {@link DeckApiContractTest} against the direct OkHttp transport.
+ * The single sign on transport needs the Files app to be installed, so it can't be pointed at a local server in a unit test.
+ */
+public class DirectTransportContractTest extends DeckApiContractTest {
+
+    private final OkHttpClient client = new OkHttpClient();
+
+    @Override
+    protected DeckAPI createApi(String baseUrl) {
+        return DirectApiFactory.create(baseUrl, new DirectCredentials(baseUrl, "alice", "app-password"), client);
+    }
+
+    @Test
+    public void authenticatesEveryRequest() throws InterruptedException {
+        server.enqueue(new MockResponse().setBody("[]"));
+
+        api.getBoards(true, null).blockingFirst();
+
+        RecordedRequest request = server.takeRequest(5, TimeUnit.SECONDS);
+        assertEquals(Credentials.basic("alice", "app-password"), request.getHeader("Authorization"));
+        assertEquals("true", request.getHeader("OCS-APIRequest"));
+    }
+
+    @Test
+    public void reusesConnections() throws InterruptedException {
+        server.enqueue(new MockResponse().setBody("[]"));
+        server.enqueue(new MockResponse().setBody("[]"));
+
+        api.getBoards(true, null).blockingFirst();
+        api.getBoards(true, null).blockingFirst();
+
+        assertEquals(0, server.takeRequest(5, TimeUnit.SECONDS).getSequenceNumber());
+        // the second request on the same connection
+        assertEquals(1, server.takeRequest(5, TimeUnit.SECONDS).getSequenceNumber());
+    }
+
+    @Test
+    public void requestsCompressedResponses() throws InterruptedException {
+        server.enqueue(new MockResponse().setBody("[]"));
+
+        api.getBoards(true, null).blockingFirst();
+
+        assertEquals("gzip", server.takeRequest(5, TimeUnit.SECONDS).getHeader("Accept-Encoding"));
+    }
+
+    @Test
+    public void reportsReceivedBytesToRunningSynchronizations() {
+        server.enqueue(new MockResponse().setBody("[]"));
+
+        SyncTrace trace = SyncTracer.getInstance().begin(Long.MAX_VALUE);
+        try {
+            api.getBoards(true, null).blockingFirst();
+        } finally {
+            SyncTracer.getInstance().finish(trace, true);
+        }
+
+        assertEquals(2, trace.span(SyncTrace.LEVEL_BOARD).getBytesReceived());
+        assertEquals(SyncTrace.LEVEL_CARD, DirectApiFactory.getTraceLevel(server.url("boards/1/stacks/2/cards/3/assignLabel")));
+    }
+}
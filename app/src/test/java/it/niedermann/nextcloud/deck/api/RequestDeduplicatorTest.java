@@ -0,0 +1,154 @@
+package it.niedermann.nextcloud.deck.api;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import it.niedermann.nextcloud.deck.model.Account;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+/**
+ * Local unit tests for {@link RequestDeduplicator}, with a delivery executor which only runs callbacks when told to.
+ */
+public class RequestDeduplicatorTest {
+
+    private final Account account = new Account(1L);
+    private final List<IResponseCallback<Stack>> sent = new ArrayList<>();
+    private final List<RequestScheduler.Ticket> tickets = new ArrayList<>();
+    private final List<Runnable> deliveries = new ArrayList<>();
+    private final RequestDeduplicator deduplicator = new RequestDeduplicator(deliveries::add);
+    private final RequestDeduplicator.Performer<Stack> performer = (callback, ticket) -> {
+        sent.add(callback);
+        tickets.add(ticket);
+    };
+
+    @Test
+    public void attachesIdenticalRequestsToTheRunningOne() {
+        RecordingCallback first = new RecordingCallback(account);
+        RecordingCallback second = new RecordingCallback(account);
+        RecordingCallback otherCard = new RecordingCallback(account);
+        deduplicator.request(first, RequestPriority.BACKGROUND_SYNC, performer, "getCard", 1, 2, 3);
+        deduplicator.request(second, RequestPriority.BACKGROUND_SYNC, performer, "getCard", 1, 2, 3);
+        deduplicator.request(otherCard, RequestPriority.BACKGROUND_SYNC, performer, "getCard", 1, 2, 4);
+        assertEquals(2, sent.size());
+
+        Stack response = new Stack("To do");
+        sent.get(0).onResponse(response);
+        assertEquals(0, first.responses.size());
+        deliverAll();
+        assertEquals(response, first.responses.get(0));
+        assertEquals(response, second.responses.get(0));
+        assertNotSame(first.responses.get(0), second.responses.get(0));
+        assertEquals(0, otherCard.responses.size());
+        assertEquals(1, deduplicator.getHits());
+        assertEquals(2, deduplicator.getMisses());
+    }
+
+    @Test
+    public void keepsResponsesUntilInvalidated() {
+        RecordingCallback first = new RecordingCallback(account);
+        deduplicator.request(first, RequestPriority.BACKGROUND_SYNC, performer, "getStacks", 1);
+        sent.get(0).onResponse(new Stack("To do"));
+        deliverAll();
+        // callers may change their response, e.g. when setting local ids
+        first.responses.get(0).title = "changed";
+
+        RecordingCallback late = new RecordingCallback(account);
+        deduplicator.request(late, RequestPriority.BACKGROUND_SYNC, performer, "getStacks", 1);
+        assertEquals(1, sent.size());
+        // kept responses are delivered the same way as running ones
+        assertEquals(0, late.responses.size());
+        deliverAll();
+        assertEquals(new Stack("To do"), late.responses.get(0));
+
+        deduplicator.request(new RecordingCallback(new Account(2L)), RequestPriority.BACKGROUND_SYNC, performer, "getStacks", 1);
+        assertEquals(2, sent.size());
+
+        deduplicator.invalidateResults(account.getId());
+        deduplicator.request(new RecordingCallback(account), RequestPriority.BACKGROUND_SYNC, performer, "getStacks", 1);
+        assertEquals(3, sent.size());
+    }
+
+    @Test
+    public void raisesThePriorityForMoreUrgentCallers() {
+        deduplicator.request(new RecordingCallback(account), RequestPriority.BACKGROUND_SYNC, performer, "getStack", 1, 2);
+        assertEquals(RequestPriority.BACKGROUND_SYNC, tickets.get(0).getPriority());
+        deduplicator.request(new RecordingCallback(account), RequestPriority.INTERACTIVE_READ, performer, "getStack", 1, 2);
+        assertEquals(RequestPriority.INTERACTIVE_READ, tickets.get(0).getPriority());
+        deduplicator.request(new RecordingCallback(account), RequestPriority.PREFETCH, performer, "getStack", 1, 2);
+        assertEquals(RequestPriority.INTERACTIVE_READ, tickets.get(0).getPriority());
+        assertEquals(1, tickets.size());
+    }
+
+    @Test
+    public void passesErrorsToAllCallersWithoutKeepingThem() {
+        deduplicator.setResultTtlMillis(0);
+        RecordingCallback first = new RecordingCallback(account);
+        RecordingCallback second = new RecordingCallback(account);
+        deduplicator.request(first, RequestPriority.BACKGROUND_SYNC, performer, "getBoards", true, null);
+        deduplicator.request(second, RequestPriority.BACKGROUND_SYNC, performer, "getBoards", true, null);
+        sent.get(0).onError(new IllegalStateException());
+        deliverAll();
+        assertEquals(1, first.errors.size());
+        assertEquals(1, second.errors.size());
+
+        deduplicator.request(new RecordingCallback(account), RequestPriority.BACKGROUND_SYNC, performer, "getBoards", true, null);
+        assertEquals(2, sent.size());
+    }
+
+    private void deliverAll() {
+        for (Runnable delivery : deliveries) {
+            delivery.run();
+        }
+        deliveries.clear();
+    }
+
+    private static class Stack {
+        private String title;
+        private final List<String> cards = new ArrayList<>();
+
+        private Stack() {
+        }
+
+        private Stack(String title) {
+            this.title = title;
+            cards.add("Groceries");
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Stack)) {
+                return false;
+            }
+            Stack other = (Stack) o;
+            return title.equals(other.title) && cards.equals(other.cards);
+        }
+
+        @Override
+        public int hashCode() {
+            return title.hashCode();
+        }
+    }
+
+    private static class RecordingCallback extends IResponseCallback<Stack> {
+        private final List<Stack> responses = new ArrayList<>();
+        private final List<Throwable> errors = new ArrayList<>();
+
+        private RecordingCallback(Account account) {
+            super(account);
+        }
+
+        @Override
+        public void onResponse(Stack response) {
+            responses.add(response);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            errors.add(throwable);
+        }
+    }
+}
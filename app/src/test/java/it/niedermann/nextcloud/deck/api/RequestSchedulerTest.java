@@ -0,0 +1,93 @@
+package it.niedermann.nextcloud.deck.api;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.Observable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Local unit tests for the lanes of {@link RequestScheduler}.
+ */
+public class RequestSchedulerTest {
+
+    @Test
+    public void interactiveRequestIsNotBlockedBySaturatedBackgroundLane() throws InterruptedException {
+        RequestScheduler scheduler = new RequestScheduler();
+        CountDownLatch blocker = new CountDownLatch(1);
+        int backgroundRequests = RequestPriority.BACKGROUND_SYNC.getMaxParallelRequests() * 3;
+        CountDownLatch backgroundDone = new CountDownLatch(backgroundRequests);
+        for (int i = 0; i < backgroundRequests; i++) {
+            scheduler.schedule(RequestPriority.BACKGROUND_SYNC, Observable.fromCallable(() -> blocker.await(10, TimeUnit.SECONDS)))
+                    .subscribe(ignored -> backgroundDone.countDown());
+        }
+
+        CountDownLatch interactiveDone = new CountDownLatch(1);
+        scheduler.schedule(RequestPriority.INTERACTIVE_READ, Observable.just("card"))
+                .subscribe(ignored -> interactiveDone.countDown());
+        assertTrue(interactiveDone.await(5, TimeUnit.SECONDS));
+
+        blocker.countDown();
+        assertTrue(backgroundDone.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void raisedRequestLeavesSaturatedBackgroundLane() throws InterruptedException {
+        RequestScheduler scheduler = new RequestScheduler();
+        CountDownLatch blocker = new CountDownLatch(1);
+        int backgroundRequests = RequestPriority.BACKGROUND_SYNC.getMaxParallelRequests();
+        CountDownLatch backgroundDone = new CountDownLatch(backgroundRequests);
+        for (int i = 0; i < backgroundRequests; i++) {
+            scheduler.schedule(RequestPriority.BACKGROUND_SYNC, Observable.fromCallable(() -> blocker.await(10, TimeUnit.SECONDS)))
+                    .subscribe(ignored -> backgroundDone.countDown());
+        }
+
+        RequestScheduler.Ticket ticket = new RequestScheduler.Ticket(RequestPriority.BACKGROUND_SYNC);
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch raisedDone = new CountDownLatch(1);
+        scheduler.schedule(ticket, Observable.fromCallable(runs::incrementAndGet))
+                .subscribe(ignored -> raisedDone.countDown());
+        ticket.raise(RequestPriority.INTERACTIVE_READ);
+        assertTrue(raisedDone.await(5, TimeUnit.SECONDS));
+
+        blocker.countDown();
+        assertTrue(backgroundDone.await(5, TimeUnit.SECONDS));
+        // the slot it left in the background lane doesn't run it a second time
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    public void recordsQueueWaitPerLane() throws InterruptedException {
+        FakeClock clock = new FakeClock();
+        RequestScheduler scheduler = new RequestScheduler(clock);
+        CountDownLatch done = new CountDownLatch(3);
+        for (int i = 0; i < 3; i++) {
+            scheduler.schedule(RequestPriority.PREFETCH, Observable.fromCallable(() -> {
+                clock.advance(20);
+                return true;
+            })).subscribe(ignored -> done.countDown());
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        for (RequestScheduler.LaneStats stats : scheduler.getStats()) {
+            if (stats.getPriority() == RequestPriority.PREFETCH) {
+                assertEquals(3, stats.getStarted());
+                // a single slot, so the last request waited for both others
+                assertEquals(40, stats.getMaxWaitMillis());
+                assertEquals(20 + 40, stats.getTotalWaitMillis());
+                long recorded = 0;
+                for (long bucket : stats.getWaitHistogram()) {
+                    recorded += bucket;
+                }
+                assertEquals(3, recorded);
+            } else {
+                assertEquals(0, stats.getStarted());
+            }
+        }
+    }
+}
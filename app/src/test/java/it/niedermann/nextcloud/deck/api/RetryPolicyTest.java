@@ -0,0 +1,108 @@
+package it.niedermann.nextcloud.deck.api;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.Observable;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.ResponseBody;
+import retrofit2.HttpException;
+import retrofit2.Response;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Local unit tests for {@link RetryPolicy} and how {@link RequestHelper} applies it.
+ */
+public class RetryPolicyTest {
+
+    private static final RetryPolicy FAST = new RetryPolicy(3, 1, 4);
+
+    @Test
+    public void classifiesErrors() {
+        assertTrue(RetryPolicy.isTransient(httpError(503)));
+        assertTrue(RetryPolicy.isTransient(httpError(429)));
+        assertTrue(RetryPolicy.isTransient(new IOException("connection reset")));
+        assertFalse(RetryPolicy.isTransient(httpError(404)));
+        assertFalse(RetryPolicy.isTransient(httpError(304)));
+        assertFalse(RetryPolicy.isTransient(new IllegalArgumentException()));
+
+        assertTrue(RetryPolicy.isRejected(httpError(404)));
+        assertTrue(RetryPolicy.isRejected(httpError(403)));
+        assertFalse(RetryPolicy.isRejected(httpError(408)));
+        assertFalse(RetryPolicy.isRejected(httpError(429)));
+        assertFalse(RetryPolicy.isRejected(httpError(503)));
+        assertFalse(RetryPolicy.isRejected(new IOException("connection reset")));
+    }
+
+    @Test
+    public void delayIsJitteredAndBounded() {
+        for (int attempt = 1; attempt < 10; attempt++) {
+            long delay = new RetryPolicy(5, 100, 1000).getDelayMillis(attempt);
+            long backoff = Math.min(1000, 100L << (attempt - 1));
+            assertTrue("attempt " + attempt + ": " + delay, delay >= backoff / 2 && delay <= backoff);
+        }
+    }
+
+    @Test
+    public void retriesIdempotentRequestUntilItSucceeds() {
+        AtomicInteger attempts = new AtomicInteger();
+        Observable<String> request = Observable.defer(() -> attempts.incrementAndGet() < 3
+                ? Observable.<String>error(httpError(502))
+                : Observable.just("boards"));
+
+        assertEquals("boards", RequestHelper.withRetries(FAST, HttpMethod.GET, request).blockingFirst());
+        assertEquals(3, attempts.get());
+    }
+
+    @Test
+    public void givesUpAfterMaxAttempts() {
+        AtomicInteger attempts = new AtomicInteger();
+        Observable<String> request = Observable.defer(() -> {
+            attempts.incrementAndGet();
+            return Observable.<String>error(httpError(504));
+        });
+
+        assertFailsWithStatus(504, RequestHelper.withRetries(FAST, HttpMethod.PUT, request));
+        assertEquals(FAST.getMaxAttempts(), attempts.get());
+    }
+
+    @Test
+    public void doesNotRetryNonIdempotentRequests() {
+        AtomicInteger attempts = new AtomicInteger();
+        Observable<String> request = Observable.defer(() -> {
+            attempts.incrementAndGet();
+            return Observable.<String>error(httpError(503));
+        });
+
+        assertFailsWithStatus(503, RequestHelper.withRetries(FAST, HttpMethod.POST, request));
+        assertEquals(1, attempts.get());
+
+        // assigning twice could unassign again
+        assertFailsWithStatus(503, RequestHelper.withRetries(FAST, HttpMethod.PUT_TOGGLE, request));
+        assertEquals(2, attempts.get());
+    }
+
+    private static void assertFailsWithStatus(int expected, Observable<?> request) {
+        Throwable error = request.ignoreElements().blockingGet();
+        assertTrue(String.valueOf(error), error instanceof HttpException);
+        assertEquals(expected, ((HttpException) error).code());
+    }
+
+    static HttpException httpError(int code) {
+        // Response.error(int, ResponseBody) only accepts codes from 400 on
+        okhttp3.Response raw = new okhttp3.Response.Builder()
+                .code(code)
+                .message("HTTP " + code)
+                .protocol(Protocol.HTTP_1_1)
+                .request(new Request.Builder().url("https://cloud.example.com/").build())
+                .build();
+        return new HttpException(Response.error(ResponseBody.create(MediaType.parse("text/plain"), ""), raw));
+    }
+}
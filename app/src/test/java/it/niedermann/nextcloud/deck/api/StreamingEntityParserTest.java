@@ -0,0 +1,108 @@
+package it.niedermann.nextcloud.deck.api;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import it.niedermann.nextcloud.deck.model.AccessControl;
+import it.niedermann.nextcloud.deck.model.Label;
+import it.niedermann.nextcloud.deck.model.full.FullBoard;
+import it.niedermann.nextcloud.deck.model.full.FullCard;
+import it.niedermann.nextcloud.deck.model.full.FullStack;
+import it.niedermann.nextcloud.deck.util.DateCodec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Local unit tests which make sure the {@link StreamingEntityParser} reads stored responses of the Deck API into the expected entities.
+ */
+public class StreamingEntityParserTest {
+
+    private static final String LABEL = "{\"id\":3,\"title\":\"Urgent\",\"color\":\"ff0000\",\"boardId\":1,\"cardId\":null,\"lastModified\":0}";
+    private static final String USER = "{\"primaryKey\":\"alice\",\"uid\":\"alice\",\"displayname\":\"Alice\"}";
+    private static final String CARD = "{\"id\":7,\"title\":\"Card\",\"description\":null,\"stackId\":5,\"type\":\"plain\","
+            + "\"lastModified\":1546300800,\"createdAt\":1546300000,\"deletedAt\":0,"
+            + "\"labels\":[" + LABEL + "],"
+            + "\"assignedUsers\":[{\"id\":1,\"participant\":" + USER + ",\"cardId\":7,\"type\":0},{\"id\":2,\"participant\":null}],"
+            + "\"attachments\":[{\"id\":9,\"cardId\":7,\"type\":\"deck_file\",\"data\":\"file.pdf\",\"lastModified\":1546300800,"
+            + "\"createdAt\":1546300000,\"createdBy\":\"alice\",\"deletedAt\":0,"
+            + "\"extendedData\":{\"filesize\":1024,\"mimetype\":\"application/pdf\","
+            + "\"info\":{\"dirname\":\".\",\"basename\":\"file.pdf\",\"extension\":\"pdf\",\"filename\":\"file\"}}}],"
+            + "\"attachmentCount\":1,\"order\":2,\"overdue\":0,\"duedate\":\"2019-01-01T13:30:00+00:00\","
+            + "\"commentsUnread\":0,\"owner\":\"alice\",\"archived\":false,\"notified\":false}";
+    private static final String STACK = "{\"id\":5,\"title\":\"To do\",\"boardId\":1,\"lastModified\":1546300800,\"deletedAt\":0,\"order\":0,"
+            + "\"cards\":[" + CARD + "]}";
+    private static final String BOARD = "{\"id\":1,\"title\":\"Board\",\"color\":\"0087c5\",\"archived\":false,"
+            + "\"lastModified\":1546300800,\"deletedAt\":0,\"owner\":" + USER + ","
+            + "\"labels\":[" + LABEL + "],\"stacks\":[" + STACK + "],\"acl\":[],"
+            + "\"permissions\":{\"PERMISSION_READ\":true},\"users\":[]}";
+
+    private final Gson gson = GsonConfig.getGson();
+
+    @Test
+    public void readsEntities() {
+        Label label = gson.fromJson(LABEL, Label.class);
+        assertEquals(Long.valueOf(3), label.getId());
+        assertEquals("Urgent", label.getTitle());
+        assertEquals("ff0000", label.getColor());
+
+        FullCard card = gson.fromJson(CARD, FullCard.class);
+        assertEquals(Long.valueOf(7), card.getCard().getId());
+        assertEquals("Card", card.getCard().getTitle());
+        assertEquals(5, card.getCard().getStackId());
+        assertEquals(2, card.getCard().getOrder());
+        assertEquals(DateCodec.fromEpochSeconds(1546300800), card.getCard().getLastModified());
+        assertEquals(DateCodec.parseIso8601("2019-01-01T13:30:00+00:00"), card.getCard().getDueDate());
+        assertEquals(Collections.singletonList(label), card.getLabels());
+
+        FullStack stack = gson.fromJson(STACK, FullStack.class);
+        assertEquals("To do", stack.getStack().getTitle());
+        assertEquals(Collections.singletonList(card.getCard()), stack.getCards());
+        assertEquals(Collections.singletonList(card), stack.getEmbeddedCards());
+
+        List<FullBoard> boards = gson.fromJson("[" + BOARD + "," + BOARD + "]", new TypeToken<List<FullBoard>>() {}.getType());
+        assertEquals(2, boards.size());
+        FullBoard board = boards.get(0);
+        assertEquals("Board", board.getBoard().getTitle());
+        assertEquals("alice", board.getOwner().get(0).getUid());
+        assertEquals(Collections.singletonList(label), board.getLabels());
+        assertEquals(Collections.singletonList(stack.getStack()), board.getStacks());
+    }
+
+    @Test
+    public void readsNestedEntities() {
+        FullCard card = gson.fromJson(CARD, FullCard.class);
+        assertEquals("", card.getCard().getDescription());
+        assertEquals(1, card.getAssignedUsers().size());
+        assertEquals("alice", card.getAssignedUsers().get(0).getUid());
+        assertEquals(1024, card.getAttachments().get(0).getFilesize());
+        assertEquals("pdf", card.getAttachments().get(0).getExtension());
+        // sent as plain user id
+        assertNull(card.getOwner());
+    }
+
+    @Test
+    public void readsAccessControlKeyedByParticipant() {
+        String board = BOARD.replace("\"acl\":[]", "\"acl\":{\"bob\":{\"id\":4,\"participant\":{\"primaryKey\":\"bob\",\"uid\":\"bob\",\"displayname\":\"Bob\"},"
+                + "\"type\":0,\"boardId\":1,\"owner\":false,\"permissionEdit\":true,\"permissionShare\":false,\"permissionManage\":false}}");
+        List<AccessControl> acl = gson.fromJson(board, FullBoard.class).getParticipants();
+        assertEquals(1, acl.size());
+        assertEquals("bob", acl.get(0).getUser().getUid());
+        assertEquals(Long.valueOf(4), acl.get(0).getId());
+        assertTrue(acl.get(0).isPermissionEdit());
+    }
+
+    @Test
+    public void writesWithDefaultAdapter() {
+        Label label = new Label();
+        label.setTitle("Urgent");
+        label.setColor("ff0000");
+        assertTrue(gson.toJson(label).contains("\"title\":\"Urgent\""));
+    }
+}
@@ -0,0 +1,149 @@
+package it.niedermann.nextcloud.deck.persistence.sync.adapters.db;
+
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import it.niedermann.nextcloud.deck.model.Card;
+import it.niedermann.nextcloud.deck.model.JoinCardWithLabel;
+import it.niedermann.nextcloud.deck.model.JoinCardWithUser;
+import it.niedermann.nextcloud.deck.model.Label;
+import it.niedermann.nextcloud.deck.model.User;
+import it.niedermann.nextcloud.deck.model.enums.DBStatus;
+import it.niedermann.nextcloud.deck.model.full.FullCard;
+import it.niedermann.nextcloud.deck.persistence.sync.adapters.db.dao.JoinCardWithLabelDao;
+import it.niedermann.nextcloud.deck.persistence.sync.adapters.db.dao.JoinCardWithUserDao;
+import it.niedermann.nextcloud.deck.persistence.sync.adapters.db.dao.LabelDao;
+import it.niedermann.nextcloud.deck.persistence.sync.adapters.db.dao.UserDao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Local unit tests for {@link CardRelationLoader}, counting the DAO calls instead of running SQLite.
+ */
+public class CardRelationLoaderTest {
+
+    private static final long LABEL_URGENT = 1;
+    private static final long LABEL_DONE = 2;
+    private static final long USER_ALICE = 10;
+
+    private final AtomicInteger queries = new AtomicInteger();
+
+    @Test
+    public void needsTheSameNumberOfQueriesForAnyNumberOfCards() {
+        for (int cardCount : new int[]{1, 10, 300, 850}) {
+            queries.set(0);
+            List<FullCard> cards = createCards(cardCount);
+            loader(cards).readRelations(cards);
+            assertEquals("queries for " + cardCount + " cards", 4, queries.get());
+        }
+    }
+
+    @Test
+    public void assemblesRelationsPerCard() {
+        List<FullCard> cards = createCards(3);
+        loader(cards).readRelations(cards);
+        // card 0: both labels and alice, card 1: urgent only, card 2: nothing
+        assertEquals(2, cards.get(0).getLabels().size());
+        assertEquals(Long.valueOf(LABEL_URGENT), cards.get(0).getLabels().get(0).getLocalId());
+        assertEquals(Long.valueOf(USER_ALICE), cards.get(0).getAssignedUsers().get(0).getLocalId());
+        assertEquals(1, cards.get(1).getLabels().size());
+        assertNull(cards.get(1).getAssignedUsers());
+        assertNull(cards.get(2).getLabels());
+        assertNull(cards.get(2).getAssignedUsers());
+    }
+
+    @Test
+    public void leavesOutJoinsDeletedLocally() {
+        List<FullCard> cards = createCards(1);
+        CardRelationLoader loader = loader(cards, DBStatus.LOCAL_DELETED);
+        loader.readRelations(cards);
+        assertEquals(0, cards.get(0).getLabels().size());
+        assertEquals(0, cards.get(0).getAssignedUsers().size());
+    }
+
+    private static List<FullCard> createCards(int count) {
+        List<FullCard> cards = new ArrayList<>(count);
+        for (long i = 0; i < count; i++) {
+            Card card = new Card();
+            card.setLocalId(i);
+            FullCard fullCard = new FullCard();
+            fullCard.setCard(card);
+            switch ((int) (i % 3)) {
+                case 0:
+                    fullCard.setLabelIDs(new ArrayList<>(Arrays.asList(LABEL_URGENT, LABEL_DONE)));
+                    fullCard.setAssignedUserIDs(new ArrayList<>(Collections.singletonList(USER_ALICE)));
+                    break;
+                case 1:
+                    fullCard.setLabelIDs(new ArrayList<>(Collections.singletonList(LABEL_URGENT)));
+                    break;
+                default:
+                    break;
+            }
+            cards.add(fullCard);
+        }
+        return cards;
+    }
+
+    /**
+     * @return a loader whose DAOs answer like the database would for <code>cards</code>
+     */
+    private CardRelationLoader loader(List<FullCard> cards) {
+        return loader(cards, DBStatus.UP_TO_DATE);
+    }
+
+    /**
+     * @param joinStatus status of all joins, as if the query didn't filter it
+     */
+    private CardRelationLoader loader(List<FullCard> cards, DBStatus joinStatus) {
+        List<JoinCardWithLabel> labelJoins = new ArrayList<>();
+        List<JoinCardWithUser> userJoins = new ArrayList<>();
+        for (FullCard card : cards) {
+            if (card.getLabelIDs() != null) {
+                for (Long labelId : card.getLabelIDs()) {
+                    JoinCardWithLabel join = new JoinCardWithLabel();
+                    join.setCardId(card.getLocalId());
+                    join.setLabelId(labelId);
+                    join.setStatusEnum(joinStatus);
+                    labelJoins.add(join);
+                }
+            }
+            if (card.getAssignedUserIDs() != null) {
+                for (Long userId : card.getAssignedUserIDs()) {
+                    JoinCardWithUser join = new JoinCardWithUser();
+                    join.setCardId(card.getLocalId());
+                    join.setUserId(userId);
+                    join.setStatusEnum(joinStatus);
+                    userJoins.add(join);
+                }
+            }
+        }
+        List<Label> labels = new ArrayList<>();
+        for (long labelId : new long[]{LABEL_URGENT, LABEL_DONE}) {
+            Label label = new Label();
+            label.setLocalId(labelId);
+            labels.add(label);
+        }
+        User alice = new User();
+        alice.setLocalId(USER_ALICE);
+        return new CardRelationLoader(
+                countingDao(JoinCardWithLabelDao.class, labelJoins),
+                countingDao(JoinCardWithUserDao.class, userJoins),
+                countingDao(LabelDao.class, labels),
+                countingDao(UserDao.class, Collections.singletonList(alice)));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T countingDao(Class<T> daoClass, List<?> rows) {
+        return (T) Proxy.newProxyInstance(daoClass.getClassLoader(), new Class[]{daoClass}, (proxy, method, args) -> {
+            queries.incrementAndGet();
+            return rows;
+        });
+    }
+}
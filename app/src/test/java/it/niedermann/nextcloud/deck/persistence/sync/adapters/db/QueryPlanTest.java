@@ -0,0 +1,221 @@
+package it.niedermann.nextcloud.deck.persistence.sync.adapters.db;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs <code>EXPLAIN QUERY PLAN</code> for every <code>@Query</code> of the DAOs against the exported schema of {@link DeckDatabase}
+ * and fails for full table scans and temporary B-trees for sorting, except for the few queries which read whole tables by design.
+ * <p>
+ * The queries are read from the DAO sources, because Room keeps its annotations out of the class files.
+ * The exported schema is written by the Room annotation processor when compiling the app, so this test needs a compiled tree.
+ */
+public class QueryPlanTest {
+
+    private static final File SCHEMA_DIR = new File("schemas/" + DeckDatabase.class.getName());
+    private static final File DAO_DIR = new File("src/main/java/it/niedermann/nextcloud/deck/persistence/sync/adapters/db/dao");
+
+    private static final Set<String> FULL_SCANS_BY_DESIGN = new HashSet<>(Arrays.asList(
+            "AccountDao.getAccounts",
+            "AccountDao.selectAll",
+            "AccountDao.getAllAccountsDirectly"
+    ));
+    private static final String[] HOT_QUERIES = {
+            "CardDao.getFullCardsForStackDirectly",
+            "CardDao.getFullCardsForStackAfterDirectly",
+            "CardDao.getFullCardsForStackBeforeDirectly",
+            "JoinCardWithLabelDao.getJoinsForCardsDirectly",
+            "JoinCardWithUserDao.getJoinsForCardsDirectly",
+            "BoardDao.getBoardsForAccount",
+            "AttachmentDao.getAttachmentsForCard"
+    };
+
+    private static final Pattern QUERY_ANNOTATION = Pattern.compile("@Query\\(");
+    private static final Pattern STRING_LITERAL = Pattern.compile("\"((?:[^\"\\\\]|\\\\.)*)\"");
+    private static final Pattern METHOD_NAME = Pattern.compile("(\\w+)\\s*$");
+    private static final Pattern COLLECTION_PARAMETER = Pattern.compile("\\(\\s*:\\w+\\s*\\)");
+    private static final Pattern PARAMETER = Pattern.compile(":\\w+");
+
+    private static Connection connection;
+
+    @BeforeClass
+    public static void createSchema() throws Exception {
+        connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+        JsonObject database = readLatestSchema().getAsJsonObject("database");
+        try (Statement statement = connection.createStatement()) {
+            for (JsonElement element : database.getAsJsonArray("entities")) {
+                JsonObject entity = element.getAsJsonObject();
+                String tableName = entity.get("tableName").getAsString();
+                statement.execute(entity.get("createSql").getAsString().replace("${TABLE_NAME}", tableName));
+                if (entity.has("indices")) {
+                    for (JsonElement index : entity.getAsJsonArray("indices")) {
+                        statement.execute(index.getAsJsonObject().get("createSql").getAsString().replace("${TABLE_NAME}", tableName));
+                    }
+                }
+            }
+        }
+    }
+
+    @AfterClass
+    public static void closeDatabase() throws SQLException {
+        if (connection != null) {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void queriesUseIndices() throws Exception {
+        List<String[]> queries = readQueries();
+        Set<String> names = new HashSet<>();
+        StringBuilder offenders = new StringBuilder();
+        for (String[] query : queries) {
+            String name = query[0];
+            names.add(name);
+            List<String> plan = explain(query[1]);
+            if (!FULL_SCANS_BY_DESIGN.contains(name) && !usesIndices(plan)) {
+                offenders.append('\n').append(name).append(": ").append(plan);
+            }
+        }
+        for (String hotQuery : HOT_QUERIES) {
+            assertTrue("Hot query " + hotQuery + " not found in the DAOs, update QueryPlanTest after renaming it", names.contains(hotQuery));
+        }
+        if (offenders.length() > 0) {
+            fail("Queries scanning whole tables or sorting in a temporary B-tree, add a matching index or list them in FULL_SCANS_BY_DESIGN:" + offenders);
+        }
+    }
+
+    /**
+     * Covering index scans are fine, e.g. for <code>count(*)</code> and <code>NOT IN</code> subqueries.
+     */
+    private static boolean usesIndices(List<String> plan) {
+        for (String detail : plan) {
+            if ((detail.startsWith("SCAN") && !detail.contains("INDEX")) || detail.contains("TEMP B-TREE")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<String> explain(String sql) throws SQLException {
+        List<String> plan = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement("EXPLAIN QUERY PLAN " + sql)) {
+            int parameterCount = statement.getParameterMetaData().getParameterCount();
+            for (int i = 1; i <= parameterCount; i++) {
+                statement.setObject(i, null);
+            }
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    plan.add(resultSet.getString("detail"));
+                }
+            }
+        } catch (SQLException e) {
+            throw new SQLException("Could not explain " + sql, e);
+        }
+        return plan;
+    }
+
+    private static JsonObject readLatestSchema() throws IOException {
+        File[] schemas = SCHEMA_DIR.listFiles((dir, name) -> name.matches("\\d+\\.json"));
+        if (schemas == null || schemas.length == 0) {
+            throw new IllegalStateException("No exported schema found in " + SCHEMA_DIR.getAbsolutePath() + ", compile the app first");
+        }
+        File latest = schemas[0];
+        for (File schema : schemas) {
+            if (version(schema) > version(latest)) {
+                latest = schema;
+            }
+        }
+        try (Reader reader = new InputStreamReader(new FileInputStream(latest), StandardCharsets.UTF_8)) {
+            return new JsonParser().parse(reader).getAsJsonObject();
+        }
+    }
+
+    private static int version(File schema) {
+        return Integer.parseInt(schema.getName().substring(0, schema.getName().indexOf('.')));
+    }
+
+    /**
+     * @return pairs of <code>Dao.method</code> and the SQL of its <code>@Query</code>, with the parameters replaced by <code>?</code>
+     */
+    private static List<String[]> readQueries() throws IOException {
+        File[] daos = DAO_DIR.listFiles((dir, name) -> name.endsWith(".java"));
+        if (daos == null || daos.length == 0) {
+            throw new IllegalStateException("No DAOs found in " + DAO_DIR.getAbsolutePath());
+        }
+        List<String[]> queries = new ArrayList<>();
+        for (File dao : daos) {
+            String daoName = dao.getName().substring(0, dao.getName().length() - ".java".length());
+            String source = new String(Files.readAllBytes(dao.toPath()), StandardCharsets.UTF_8)
+                    .replaceAll("(?m)^\\s*//.*$", "");
+            Matcher annotation = QUERY_ANNOTATION.matcher(source);
+            while (annotation.find()) {
+                int end = findClosingParenthesis(source, annotation.end());
+                StringBuilder sql = new StringBuilder();
+                Matcher literal = STRING_LITERAL.matcher(source.substring(annotation.end(), end));
+                while (literal.find()) {
+                    sql.append(literal.group(1));
+                }
+                String declaration = source.substring(end + 1, source.indexOf(';', end)).replaceAll("//[^\\n]*", "");
+                declaration = declaration.substring(0, declaration.indexOf('('));
+                Matcher methodName = METHOD_NAME.matcher(declaration);
+                if (!methodName.find()) {
+                    throw new IllegalStateException("No method found after @Query in " + daoName + ": " + declaration);
+                }
+                String bound = COLLECTION_PARAMETER.matcher(sql).replaceAll("(?, ?, ?)");
+                queries.add(new String[]{daoName + "." + methodName.group(1), PARAMETER.matcher(bound).replaceAll("?")});
+            }
+        }
+        return queries;
+    }
+
+    private static int findClosingParenthesis(String source, int from) {
+        int depth = 1;
+        boolean inString = false;
+        for (int i = from; i < source.length(); i++) {
+            char c = source.charAt(i);
+            if (inString) {
+                if (c == '\\') {
+                    i++;
+                } else if (c == '"') {
+                    inString = false;
+                }
+            } else if (c == '"') {
+                inString = true;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')' && --depth == 0) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("Unterminated @Query at " + from);
+    }
+}
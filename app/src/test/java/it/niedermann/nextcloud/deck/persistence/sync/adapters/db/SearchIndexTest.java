@@ -0,0 +1,36 @@
+package it.niedermann.nextcloud.deck.persistence.sync.adapters.db;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Local unit tests for the FTS queries built by {@link SearchIndex} from what users type.
+ */
+public class SearchIndexTest {
+
+    @Test
+    public void matchesEveryWordAsPrefix() {
+        assertEquals("release* notes*", SearchIndex.toMatchQuery("  Release   NOTES ", null, 1));
+        assertEquals("title:release* title:notes*", SearchIndex.toMatchQuery("release notes", "title", 1));
+    }
+
+    @Test
+    public void dropsOperatorsAndQuotes() {
+        assertEquals("a* or* b* not* c*", SearchIndex.toMatchQuery("a OR b NOT \"c\"", null, 1));
+        assertEquals("title* x*", SearchIndex.toMatchQuery("title:x", null, 1));
+        assertEquals("foo* bar*", SearchIndex.toMatchQuery("-foo* (bar)", null, 1));
+        assertNull(SearchIndex.toMatchQuery("*-\" ()", null, 1));
+    }
+
+    @Test
+    public void keepsNonAsciiLikeTheTokenizer() {
+        assertEquals("\u00dcbergang* caf\u00c9*", SearchIndex.toMatchQuery("\u00dcbergang Caf\u00c9!", null, 1));
+    }
+
+    @Test
+    public void matchesShortWordsOnlyAsWholeWords() {
+        assertEquals("a bug*", SearchIndex.toMatchQuery("a bug", null, 2));
+    }
+}
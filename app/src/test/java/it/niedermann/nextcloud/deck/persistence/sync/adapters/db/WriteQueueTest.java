@@ -0,0 +1,234 @@
+package it.niedermann.nextcloud.deck.persistence.sync.adapters.db;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Local unit tests for {@link WriteQueue}, with a fake database that records what each committed transaction wrote.
+ */
+public class WriteQueueTest {
+
+    private final FakeDatabase database = new FakeDatabase();
+
+    @Test
+    public void groupsWritesQueuedAtTheSameTime() throws InterruptedException {
+        WriteQueue queue = new WriteQueue(database, 32, 10_000);
+        CountDownLatch blocker = new CountDownLatch(1);
+        List<Thread> writers = new ArrayList<>();
+        writers.add(write(queue, () -> {
+            awaitQuietly(blocker);
+            database.write("first");
+        }));
+        awaitQueued(queue, 0);
+        for (int i = 0; i < 5; i++) {
+            String value = "write " + i;
+            writers.add(write(queue, () -> database.write(value)));
+        }
+        awaitQueued(queue, 5);
+        blocker.countDown();
+        joinAll(writers);
+
+        assertEquals(1, database.committed.size());
+        assertEquals(6, database.committed.get(0).size());
+        WriteQueue.Stats stats = queue.getStats();
+        assertEquals(1, stats.getTransactions());
+        assertEquals(6, stats.getWrites());
+        assertEquals(5, stats.getMaxQueued());
+    }
+
+    @Test
+    public void failingWriteDoesNotTakeItsGroupDown() throws InterruptedException {
+        WriteQueue queue = new WriteQueue(database, 32, 10_000);
+        CountDownLatch blocker = new CountDownLatch(1);
+        List<Thread> writers = new ArrayList<>();
+        writers.add(write(queue, () -> {
+            awaitQuietly(blocker);
+            database.write("first");
+        }));
+        awaitQueued(queue, 0);
+        writers.add(write(queue, () -> database.write("a")));
+        final RuntimeException[] caught = {null};
+        writers.add(new Thread(() -> {
+            try {
+                queue.runInTransaction(() -> {
+                    database.write("broken");
+                    throw new IllegalStateException("constraint violated");
+                });
+            } catch (IllegalStateException e) {
+                caught[0] = e;
+            }
+        }));
+        writers.get(2).start();
+        writers.add(write(queue, () -> database.write("b")));
+        awaitQueued(queue, 3);
+        blocker.countDown();
+        joinAll(writers);
+
+        List<String> committed = new ArrayList<>();
+        for (List<String> transaction : database.committed) {
+            committed.addAll(transaction);
+        }
+        assertEquals(new HashSet<>(Arrays.asList("first", "a", "b")), new HashSet<>(committed));
+        assertEquals(3, committed.size());
+        assertEquals("constraint violated", caught[0].getMessage());
+        assertEquals(1, queue.getStats().getFailedWrites());
+    }
+
+    @Test
+    public void ownTransactionsAreNotGrouped() throws InterruptedException {
+        WriteQueue queue = new WriteQueue(database, 32, 10_000);
+        CountDownLatch blocker = new CountDownLatch(1);
+        List<Thread> writers = new ArrayList<>();
+        writers.add(write(queue, () -> {
+            awaitQuietly(blocker);
+            database.write("first");
+        }));
+        awaitQueued(queue, 0);
+        final int[] runs = {0};
+        Thread own = new Thread(() -> queue.runInOwnTransaction(() -> {
+            runs[0]++;
+            database.write("own");
+        }));
+        own.start();
+        writers.add(own);
+        awaitQueued(queue, 1);
+        writers.add(write(queue, () -> database.write("after")));
+        awaitQueued(queue, 2);
+        blocker.countDown();
+        joinAll(writers);
+
+        assertEquals(1, runs[0]);
+        assertEquals(Arrays.asList(Arrays.asList("first"), Arrays.asList("own"), Arrays.asList("after")), database.committed);
+    }
+
+    @Test
+    public void runsNestedWritesInline() throws InterruptedException {
+        WriteQueue queue = new WriteQueue(database);
+        joinAll(Arrays.asList(write(queue, () -> {
+            database.write("outer");
+            queue.runInTransaction(() -> database.write("inner"));
+        })));
+        assertEquals(Arrays.asList("outer", "inner"), database.committed.get(0));
+    }
+
+    @Test
+    public void closeRunsQueuedWritesAndStopsTheWriter() throws InterruptedException {
+        int writerThreads = countWriterThreads();
+        WriteQueue queue = new WriteQueue(database, 32, 10_000);
+        // started with the first write
+        assertEquals(writerThreads, countWriterThreads());
+        CountDownLatch blocker = new CountDownLatch(1);
+        List<Thread> writers = new ArrayList<>();
+        writers.add(write(queue, () -> {
+            awaitQuietly(blocker);
+            database.write("first");
+        }));
+        awaitQueued(queue, 0);
+        writers.add(write(queue, () -> database.write("queued")));
+        awaitQueued(queue, 1);
+        assertEquals(writerThreads + 1, countWriterThreads());
+        Thread closer = new Thread(queue::close);
+        closer.start();
+        blocker.countDown();
+        writers.add(closer);
+        joinAll(writers);
+
+        assertEquals(Arrays.asList(Arrays.asList("first", "queued")), database.committed);
+        assertEquals(writerThreads, countWriterThreads());
+        try {
+            queue.runInTransaction(() -> database.write("too late"));
+            fail("Ran a write after closing");
+        } catch (IllegalStateException expected) {
+            // the database is gone
+        }
+    }
+
+    private static Thread write(WriteQueue queue, Runnable body) {
+        Thread thread = new Thread(() -> queue.runInTransaction(body));
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Waits until the writer thread is busy and <code>count</code> writes wait behind it.
+     */
+    private void awaitQueued(WriteQueue queue, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        // the maximum is updated right after queueing, so wait for it too
+        while (queue.getStats().getQueued() != count || queue.getStats().getMaxQueued() < count || database.running == 0) {
+            assertTrue("Timed out waiting for " + count + " queued writes", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private static int countWriterThreads() {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if ("deck-db-writer".equals(thread.getName()) && thread.isAlive()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static void joinAll(List<Thread> threads) throws InterruptedException {
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+            assertFalse(thread.isAlive());
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class FakeDatabase implements WriteQueue.Transactor {
+        private final List<List<String>> committed = new ArrayList<>();
+        private final ThreadLocal<List<String>> current = new ThreadLocal<>();
+        private volatile int running;
+
+        @Override
+        public void runInTransaction(Runnable body) {
+            if (current.get() != null) {
+                body.run();
+                return;
+            }
+            List<String> transaction = new ArrayList<>();
+            current.set(transaction);
+            running++;
+            try {
+                body.run();
+                synchronized (committed) {
+                    committed.add(transaction);
+                }
+            } finally {
+                running--;
+                current.remove();
+            }
+        }
+
+        @Override
+        public boolean inTransaction() {
+            return current.get() != null;
+        }
+
+        private void write(String value) {
+            current.get().add(value);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package it.niedermann.nextcloud.deck.persistence.sync.helpers.providers;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import it.niedermann.nextcloud.deck.api.IResponseCallback;
+import it.niedermann.nextcloud.deck.model.Account;
+import it.niedermann.nextcloud.deck.model.Board;
+import it.niedermann.nextcloud.deck.model.Card;
+import it.niedermann.nextcloud.deck.model.Stack;
+import it.niedermann.nextcloud.deck.model.full.FullBoard;
+import it.niedermann.nextcloud.deck.model.full.FullCard;
+import it.niedermann.nextcloud.deck.model.full.FullStack;
+import it.niedermann.nextcloud.deck.model.interfaces.IRemoteEntity;
+import it.niedermann.nextcloud.deck.persistence.sync.helpers.SyncHelper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Local unit tests for {@link StackDataProvider}, without a database or a server.
+ */
+public class StackDataProviderTest {
+
+    @Test
+    public void updatedStackKeepsTheCardsEmbeddedByTheServer() {
+        FullBoard board = new FullBoard();
+        board.setBoard(new Board());
+        board.getBoard().setId(3L);
+        board.getBoard().setLocalId(1L);
+
+        FullCard embeddedCard = createCard(5L);
+        FullStack fromServer = createStack();
+        fromServer.setCards(Collections.singletonList(embeddedCard.getCard()));
+        fromServer.setEmbeddedCards(Collections.singletonList(embeddedCard));
+        // as read from the database after updating the stack
+        FullStack stored = createStack();
+
+        List<AbstractSyncDataProvider<?>> children = new ArrayList<>();
+        SyncHelper syncHelper = new SyncHelper(null, null, null) {
+            @Override
+            public <T extends IRemoteEntity> void doSyncFor(AbstractSyncDataProvider<T> provider) {
+                children.add(provider);
+            }
+        };
+        new StackDataProvider(null, board).goDeeper(syncHelper, stored, fromServer, null);
+
+        assertEquals(1, children.size());
+        List<List<FullCard>> responses = new ArrayList<>();
+        // no server adapter, the card must be taken from the stack without a request
+        ((CardDataProvider) children.get(0)).getAllFromServer(null, 1, new IResponseCallback<List<FullCard>>(new Account()) {
+            @Override
+            public void onResponse(List<FullCard> response) {
+                responses.add(response);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                throw new AssertionError("Requested the details of an embedded card", throwable);
+            }
+        }, null);
+        assertEquals(1, responses.size());
+        assertNotNull(responses.get(0));
+        assertSame(embeddedCard, responses.get(0).get(0));
+    }
+
+    private static FullStack createStack() {
+        FullStack stack = new FullStack();
+        stack.setStack(new Stack());
+        stack.getStack().setId(4L);
+        stack.getStack().setLocalId(2L);
+        return stack;
+    }
+
+    private static FullCard createCard(long id) {
+        FullCard card = new FullCard();
+        card.setCard(new Card());
+        card.getCard().setId(id);
+        card.setLabels(new ArrayList<>());
+        card.setAssignedUsers(new ArrayList<>());
+        return card;
+    }
+}
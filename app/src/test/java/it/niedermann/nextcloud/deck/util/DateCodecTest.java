@@ -0,0 +1,135 @@
+package it.niedermann.nextcloud.deck.util;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Conformance tests for {@link DateCodec}, using {@link SimpleDateFormat} as reference.
+ * Instants around daylight saving transitions are checked with offsets of time zones which observe them.
+ */
+public class DateCodecTest {
+
+    private static final String[] ZONES = {"UTC", "Europe/Berlin", "America/New_York", "Australia/Sydney", "Asia/Kolkata", "Pacific/Chatham"};
+    // 2019-03-31 01:00 UTC (Europe), 2019-11-03 06:00 UTC (US), 2019-04-07 16:00 UTC (Sydney), 2019-10-27 01:00 UTC (Europe)
+    private static final long[] TRANSITIONS = {1553994000000L, 1572760800000L, 1554652800000L, 1572138000000L};
+
+    private final TimeZone defaultTimeZone = TimeZone.getDefault();
+
+    @After
+    public void restoreDefaultTimeZone() {
+        TimeZone.setDefault(defaultTimeZone);
+    }
+
+    @Test
+    public void formatsImfFixdate() {
+        assertEquals("Sun, 06 Nov 1994 08:49:37 GMT", DateCodec.formatRfc1123(new Date(784111777000L)));
+    }
+
+    @Test
+    public void usesTwentyFourHourClock() {
+        // 20:49:37 GMT, a 12 hour pattern would give 08:49:37
+        assertEquals("Sun, 06 Nov 1994 20:49:37 GMT", DateCodec.formatRfc1123(new Date(784154977000L)));
+        assertEquals(new Date(784154977000L), DateCodec.parseIso8601("1994-11-06T20:49:37+00:00"));
+    }
+
+    @Test
+    public void formatsNullAsNoHeader() {
+        assertNull(DateCodec.formatRfc1123(null));
+        assertNull(DateCodec.formatIso8601(null));
+    }
+
+    @Test
+    public void parsesIso8601Variants() {
+        Date expected = new Date(1546349400000L); // 2019-01-01T13:30:00Z
+        assertEquals(expected, DateCodec.parseIso8601("2019-01-01T13:30:00+00:00"));
+        assertEquals(expected, DateCodec.parseIso8601("2019-01-01T13:30:00Z"));
+        assertEquals(expected, DateCodec.parseIso8601("2019-01-01T13:30:00"));
+        assertEquals(expected, DateCodec.parseIso8601("2019-01-01 13:30"));
+        assertEquals(expected, DateCodec.parseIso8601("2019-01-01T14:30:00+0100"));
+        assertEquals(expected, DateCodec.parseIso8601("2019-01-01T08:30:00-05"));
+        assertEquals(expected, DateCodec.parseIso8601("2019-01-01T19:00:00+05:30"));
+        assertEquals(new Date(1546349400123L), DateCodec.parseIso8601("2019-01-01T13:30:00.123456Z"));
+        assertEquals(new Date(1546300800000L), DateCodec.parseIso8601("2019-01-01"));
+    }
+
+    @Test
+    public void rejectsMalformedIso8601() {
+        String[] malformed = {null, "", "2019", "2019-13-01", "2019-02-29", "2019-01-01T24:00:00Z", "2019-01-01T13:30:00+25:00",
+                "2019-01-01T13:3", "2019-01-01T13:30:00.Z", "2019-01-01T13:30:00Zulu", "01.01.2019"};
+        for (String value : malformed) {
+            assertNull(value, DateCodec.parseIso8601(value));
+        }
+        assertEquals(new Date(1582934400000L), DateCodec.parseIso8601("2020-02-29"));
+    }
+
+    @Test
+    public void parsesOffsetsAroundDaylightSavingTransitions() throws ParseException {
+        for (String zone : ZONES) {
+            SimpleDateFormat reference = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssXXX", Locale.US);
+            reference.setTimeZone(TimeZone.getTimeZone(zone));
+            for (long transition : TRANSITIONS) {
+                for (long millis = transition - TimeUnit.HOURS.toMillis(3); millis <= transition + TimeUnit.HOURS.toMillis(3); millis += TimeUnit.MINUTES.toMillis(15)) {
+                    String local = reference.format(new Date(millis));
+                    assertEquals(local, reference.parse(local), DateCodec.parseIso8601(local));
+                    assertEquals(local, new Date(millis), DateCodec.parseIso8601(local));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void formatsIndependentOfDefaultTimeZone() {
+        SimpleDateFormat rfc1123 = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US);
+        rfc1123.setTimeZone(TimeZone.getTimeZone("GMT"));
+        SimpleDateFormat iso8601 = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'+00:00'", Locale.US);
+        iso8601.setTimeZone(TimeZone.getTimeZone("GMT"));
+        for (String zone : ZONES) {
+            TimeZone.setDefault(TimeZone.getTimeZone(zone));
+            for (long transition : TRANSITIONS) {
+                for (long millis = transition - TimeUnit.HOURS.toMillis(2); millis <= transition + TimeUnit.HOURS.toMillis(2); millis += TimeUnit.MINUTES.toMillis(30)) {
+                    Date date = new Date(millis);
+                    assertEquals(rfc1123.format(date), DateCodec.formatRfc1123(date));
+                    assertEquals(iso8601.format(date), DateCodec.formatIso8601(date));
+                    assertEquals(date, DateCodec.parseRfc1123(DateCodec.formatRfc1123(date)));
+                    assertEquals(date, DateCodec.parseIso8601(DateCodec.formatIso8601(date)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void matchesGregorianCalendarForEveryDay() {
+        Calendar calendar = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+        calendar.clear();
+        calendar.set(1900, Calendar.JANUARY, 1);
+        long days = DateCodec.daysFromCivil(1900, 1, 1);
+        assertEquals(calendar.getTimeInMillis(), TimeUnit.DAYS.toMillis(days));
+        for (; calendar.get(Calendar.YEAR) < 2101; calendar.add(Calendar.DAY_OF_MONTH, 1), days++) {
+            int[] civil = DateCodec.civilFromDays(days);
+            assertEquals(calendar.get(Calendar.YEAR), civil[0]);
+            assertEquals(calendar.get(Calendar.MONTH) + 1, civil[1]);
+            assertEquals(calendar.get(Calendar.DAY_OF_MONTH), civil[2]);
+            assertEquals(days, DateCodec.daysFromCivil(civil[0], civil[1], civil[2]));
+        }
+    }
+
+    @Test
+    public void convertsEpochValues() {
+        assertEquals(new Date(1546300800000L), DateCodec.fromEpochSeconds(1546300800L));
+        assertEquals(Long.valueOf(1546300800000L), DateCodec.toEpochMillis(DateCodec.fromEpochMillis(1546300800000L)));
+        assertNull(DateCodec.fromEpochMillis(null));
+        assertNull(DateCodec.toEpochMillis(null));
+    }
+}
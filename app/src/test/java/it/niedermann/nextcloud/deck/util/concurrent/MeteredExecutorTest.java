@@ -0,0 +1,124 @@
+package it.niedermann.nextcloud.deck.util.concurrent;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Local unit tests for the counters and the backpressure behaviour of {@link MeteredExecutor}.
+ */
+public class MeteredExecutorTest {
+
+    @Test
+    public void countsCompletedTasksAndRecordsLatency() throws InterruptedException {
+        MeteredExecutor executor = new MeteredExecutor("test", 2, 16);
+        CountDownLatch latch = new CountDownLatch(10);
+        for (int i = 0; i < 10; i++) {
+            executor.execute(latch::countDown);
+        }
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+        MeteredExecutor.Stats stats = executor.getStats();
+        assertEquals(10, stats.getCompleted());
+        assertEquals(0, stats.getRejected());
+        assertEquals(0, stats.getOverflowed());
+        assertEquals(0, stats.getActive());
+        long recorded = 0;
+        for (long bucket : stats.getLatencyHistogram()) {
+            recorded += bucket;
+        }
+        assertEquals(10, recorded);
+    }
+
+    @Test
+    public void poolThreadsRunOnCallerWhenQueueIsFull() throws InterruptedException {
+        MeteredExecutor executor = new MeteredExecutor("test", 1, 1);
+        MeteredExecutor producer = new MeteredExecutor("producer", 1, 1);
+        CountDownLatch blocker = new CountDownLatch(1);
+        AtomicInteger ranOnCaller = new AtomicInteger();
+
+        executor.execute(() -> awaitQuietly(blocker));
+        CountDownLatch submitted = new CountDownLatch(1);
+        producer.execute(() -> {
+            Thread caller = Thread.currentThread();
+            executor.execute(() -> { /* fills the queue */ });
+            executor.execute(() -> {
+                if (Thread.currentThread() == caller) {
+                    ranOnCaller.incrementAndGet();
+                }
+            });
+            submitted.countDown();
+        });
+        assertTrue(submitted.await(5, TimeUnit.SECONDS));
+        blocker.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        producer.shutdown();
+
+        assertEquals(1, ranOnCaller.get());
+        MeteredExecutor.Stats stats = executor.getStats();
+        assertEquals(1, stats.getRejected());
+        assertEquals(0, stats.getOverflowed());
+        assertEquals(3, stats.getCompleted());
+        assertEquals(3, recorded(stats));
+    }
+
+    @Test
+    public void otherThreadsQueueBeyondTheBound() throws InterruptedException {
+        assertQueuedBeyondDepth(new MeteredExecutor("test", 1, 1));
+    }
+
+    @Test
+    public void unboundedQueueNeverRunsOnCaller() throws InterruptedException {
+        assertQueuedBeyondDepth(new MeteredExecutor("test", 1, 1, MeteredExecutor.QueueMode.UNBOUNDED));
+    }
+
+    private static void assertQueuedBeyondDepth(MeteredExecutor executor) throws InterruptedException {
+        CountDownLatch blocker = new CountDownLatch(1);
+        AtomicInteger ranOnCaller = new AtomicInteger();
+        Thread caller = Thread.currentThread();
+
+        executor.execute(() -> awaitQuietly(blocker));
+        for (int i = 0; i < 3; i++) {
+            executor.execute(() -> {
+                if (Thread.currentThread() == caller) {
+                    ranOnCaller.incrementAndGet();
+                }
+            });
+        }
+        MeteredExecutor.Stats queued = executor.getStats();
+        blocker.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertEquals(0, ranOnCaller.get());
+        assertEquals(0, queued.getRejected());
+        assertEquals(2, queued.getOverflowed());
+        assertEquals(3, queued.getMaxQueued());
+        MeteredExecutor.Stats stats = executor.getStats();
+        assertEquals(4, stats.getCompleted());
+        assertEquals(4, recorded(stats));
+    }
+
+    private static long recorded(MeteredExecutor.Stats stats) {
+        long recorded = 0;
+        for (long bucket : stats.getLatencyHistogram()) {
+            recorded += bucket;
+        }
+        return recorded;
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ignored) {
+        }
+    }
+}